@@ -19,10 +19,12 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.CollectiveMapper;
 
 import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.kernel.DistanceKernel;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.kmeans.common.KMeansConstants;
+import edu.iu.kmeans.common.Utils;
 
 /**
  * The idea behind this implementation is to partition the points among the mappers and
@@ -39,6 +41,10 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
   private int iteration;
   // number of points
   private int numPoints;
+  // the points packed for the distance kernel
+  private double[] points;
+  private DistanceKernel kernel;
+  private boolean isBlocked;
   private double MSE;
 
   /**
@@ -55,6 +61,7 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
     Configuration configuration = context.getConfiguration();
     dimension = configuration.getInt(KMeansConstants.VECTOR_SIZE, 20);
     iteration = configuration.getInt(KMeansConstants.NUM_ITERATONS, 1);
+    isBlocked = configuration.getBoolean(KMeansConstants.BLOCKED_DISTANCE, false);
     long endTime = System.currentTimeMillis();
     LOG.info("config done (ms) :" + (endTime - startTime));
   }
@@ -112,6 +119,10 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
     // load data
     ArrayList<DoubleArray> dataPoints = loadData(fileNames, dimension, conf);
     numPoints = dataPoints.size();
+    if (isBlocked) {
+      points = Utils.packPoints(dataPoints, dimension);
+      kernel = new DistanceKernel(dimension);
+    }
 
     Table<DoubleArray> previousCenTable;
     // iterations
@@ -172,22 +183,16 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
    */
   private double computation(Table<DoubleArray> cenTable, Table<DoubleArray> previousCenTable,
                              ArrayList<DoubleArray> dataPoints) {
-    double err = 0;
+    int[] nearestIDs = new int[dataPoints.size()];
+    double err = isBlocked
+        ? Utils.findNearestCentroids(points, previousCenTable, dimension, kernel,
+            nearestIDs)
+        : Utils.findNearestCentroids(dataPoints, previousCenTable, dimension,
+            nearestIDs);
+    int pointIndex = 0;
     for (DoubleArray aPoint : dataPoints) {
-      // for each data point, find the nearest
-      // centroid
-      double minDist = -1;
-      double tempDist;
-      int nearestPartitionID = -1;
-      for (Partition ap : previousCenTable.getPartitions()) {
-        DoubleArray aCentroid = (DoubleArray) ap.get();
-        tempDist = calcEucDistSquare(aPoint, aCentroid, dimension);
-        if (minDist == -1 || tempDist < minDist) {
-          minDist = tempDist;
-          nearestPartitionID = ap.id();
-        }
-      }
-      err += minDist;
+      // for each data point, the nearest centroid
+      int nearestPartitionID = nearestIDs[pointIndex++];
 
       // for the certain data point, found the
       // nearest centroid.
@@ -282,15 +287,6 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
     printTable(cenTable);
   }
 
-  // calculate Euclidean distance.
-  private double calcEucDistSquare(DoubleArray aPoint, DoubleArray otherPoint, int vectorSize) {
-    double dist = 0;
-    for (int i = 0; i < vectorSize; i++) {
-      dist += Math.pow(aPoint.get()[i] - otherPoint.get()[i], 2);
-    }
-    return Math.sqrt(dist);
-  }
-
   /**
    * load centroids from HDFS, we read each centroind as a separate partition of the
    * partition table. We also allocate one element more that the number of features to accomadate
@@ -19,10 +19,12 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.CollectiveMapper;
 
 import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.kernel.DistanceKernel;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.kmeans.common.KMeansConstants;
+import edu.iu.kmeans.common.Utils;
 
 public class KmeansMapper extends
   CollectiveMapper<String, String, Object, Object> {
@@ -31,6 +33,10 @@ public class KmeansMapper extends
   private int vectorSize;
   private int iteration;
   private int numPoints;
+  // the points packed for the distance kernel
+  private double[] points;
+  private DistanceKernel kernel;
+  private boolean isBlocked;
   private double MSE;
 
   @Override
@@ -49,6 +55,8 @@ public class KmeansMapper extends
       .getInt(KMeansConstants.VECTOR_SIZE, 20);
     iteration = configuration
       .getInt(KMeansConstants.NUM_ITERATONS, 1);
+    isBlocked = configuration.getBoolean(
+      KMeansConstants.BLOCKED_DISTANCE, false);
     long endTime = System.currentTimeMillis();
     LOG.info(
       "config (ms) :" + (endTime - startTime));
@@ -96,25 +104,19 @@ public class KmeansMapper extends
     Table<DoubleArray> cenTable,
     Table<DoubleArray> previousCenTable,
     ArrayList<DoubleArray> dataPoints) {
-    double err = 0;
+    int[] nearestIDs = new int[dataPoints.size()];
+    double err = isBlocked
+      ? Utils.findNearestCentroids(points,
+        previousCenTable, vectorSize, kernel,
+        nearestIDs)
+      : Utils.findNearestCentroids(dataPoints,
+        previousCenTable, vectorSize, nearestIDs);
+    int pointIndex = 0;
     for (DoubleArray aPoint : dataPoints) {
-      // for each data point, find the nearest
+      // for each data point, the nearest
       // centroid
-      double minDist = -1;
-      double tempDist = 0;
-      int nearestPartitionID = -1;
-      for (Partition ap : previousCenTable
-        .getPartitions()) {
-        DoubleArray aCentroid =
-          (DoubleArray) ap.get();
-        tempDist = calcEucDistSquare(aPoint,
-          aCentroid, vectorSize);
-        if (minDist == -1 || tempDist < minDist) {
-          minDist = tempDist;
-          nearestPartitionID = ap.id();
-        }
-      }
-      err += minDist;
+      int nearestPartitionID =
+        nearestIDs[pointIndex++];
 
       // for the certain data point, found the
       // nearest centroid.
@@ -218,6 +220,11 @@ public class KmeansMapper extends
     ArrayList<DoubleArray> dataPoints =
       loadData(fileNames, vectorSize, conf);
     numPoints = dataPoints.size();
+    if (isBlocked) {
+      points =
+        Utils.packPoints(dataPoints, vectorSize);
+      kernel = new DistanceKernel(vectorSize);
+    }
 
     Table<DoubleArray> previousCenTable = null;
     // iterations
@@ -292,18 +299,6 @@ public class KmeansMapper extends
     printTable(cenTable);
   }
 
-  // calculate Euclidean distance.
-  private double calcEucDistSquare(
-    DoubleArray aPoint, DoubleArray otherPoint,
-    int vectorSize) {
-    double dist = 0;
-    for (int i = 0; i < vectorSize; i++) {
-      dist += Math.pow(
-        aPoint.get()[i] - otherPoint.get()[i], 2);
-    }
-    return Math.sqrt(dist);
-  }
-
   // load centroids from HDFS
   private void loadCentroids(
     Table<DoubleArray> cenTable, int vectorSize,
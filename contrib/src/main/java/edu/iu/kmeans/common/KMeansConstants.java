@@ -15,4 +15,6 @@ public class KMeansConstants {
     "num_mappers";
   public static final String CENTROID_FILE_PREFIX =
     "centroids_";
+  public static final String BLOCKED_DISTANCE =
+    "blocked_distance";
 }
@@ -6,6 +6,8 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 
@@ -14,6 +16,11 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+import edu.iu.harp.kernel.DistanceKernel;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+
 public class Utils {
   private final static int DATA_RANGE = 10;
 
@@ -151,4 +158,127 @@ public class Utils {
       .println("Wrote centroids data to file");
   }
 
+  /**
+   * Pack the points into one array for
+   * DistanceKernel, vectorSize doubles each
+   */
+  public static double[] packPoints(
+    List<DoubleArray> dataPoints, int vectorSize) {
+    double[] points =
+      new double[dataPoints.size() * vectorSize];
+    int start = 0;
+    for (DoubleArray aPoint : dataPoints) {
+      System.arraycopy(aPoint.get(),
+        aPoint.start(), points, start, vectorSize);
+      start += vectorSize;
+    }
+    return points;
+  }
+
+  /**
+   * Find the nearest centroid of each point by
+   * the exact distance. There is one centroid per
+   * partition, compared in the order of the
+   * partitions.
+   *
+   * @param dataPoints
+   *          the points
+   * @param cenTable
+   *          the centroids
+   * @param vectorSize
+   *          the number of features of a point
+   * @param nearestIDs
+   *          the partition ID of the nearest
+   *          centroid of each point, filled
+   * @return the sum of the distances to the
+   *         nearest centroids
+   */
+  public static double findNearestCentroids(
+    List<DoubleArray> dataPoints,
+    Table<DoubleArray> cenTable, int vectorSize,
+    int[] nearestIDs) {
+    double err = 0;
+    int pointIndex = 0;
+    for (DoubleArray aPoint : dataPoints) {
+      double minDist = -1;
+      double tempDist = 0;
+      int nearestPartitionID = -1;
+      for (Partition<DoubleArray> ap : cenTable
+        .getPartitions()) {
+        tempDist = calcEucDist(aPoint, ap.get(),
+          vectorSize);
+        if (minDist == -1 || tempDist < minDist) {
+          minDist = tempDist;
+          nearestPartitionID = ap.id();
+        }
+      }
+      nearestIDs[pointIndex++] = nearestPartitionID;
+      err += minDist;
+    }
+    return err;
+  }
+
+  // calculate Euclidean distance.
+  private static double calcEucDist(
+    DoubleArray aPoint, DoubleArray otherPoint,
+    int vectorSize) {
+    double dist = 0;
+    for (int i = 0; i < vectorSize; i++) {
+      dist += Math.pow(
+        aPoint.get()[i] - otherPoint.get()[i], 2);
+    }
+    return Math.sqrt(dist);
+  }
+
+  /**
+   * Find the nearest centroid of each point with
+   * DistanceKernel. There is one centroid per
+   * partition, compared in the order of the
+   * partitions as the loops over the table do.
+   * The kernel expands the squared distance, so
+   * it rounds differently from the exact loop and
+   * is only used with blocked_distance.
+   *
+   * @param points
+   *          the points packed by packPoints
+   * @param cenTable
+   *          the centroids
+   * @param vectorSize
+   *          the number of features of a point
+   * @param kernel
+   *          the kernel to load the centroids in
+   * @param nearestIDs
+   *          the partition ID of the nearest
+   *          centroid of each point, filled
+   * @return the sum of the distances to the
+   *         nearest centroids
+   */
+  public static double findNearestCentroids(
+    double[] points, Table<DoubleArray> cenTable,
+    int vectorSize, DistanceKernel kernel,
+    int[] nearestIDs) {
+    int numPoints = nearestIDs.length;
+    int[] parIDs =
+      new int[cenTable.getNumPartitions()];
+    kernel.setNumCentroids(parIDs.length);
+    int cenID = 0;
+    for (Partition<DoubleArray> ap : cenTable
+      .getPartitions()) {
+      kernel.setCentroid(cenID, ap.get().get(),
+        ap.get().start());
+      parIDs[cenID++] = ap.id();
+    }
+    double[] minDistances = new double[numPoints];
+    Arrays.fill(minDistances,
+      Double.POSITIVE_INFINITY);
+    int[] cenIDs = new int[numPoints];
+    kernel.assign(points, 0, vectorSize, numPoints,
+      minDistances, cenIDs);
+    double err = 0;
+    for (int i = 0; i < numPoints; i++) {
+      nearestIDs[i] = parIDs[cenIDs[i]];
+      err += Math.sqrt(minDistances[i]);
+    }
+    return err;
+  }
 }
@@ -1,12 +1,12 @@
 package edu.iu.svm;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
-import java.util.StringTokenizer;
 import java.util.HashSet;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -15,6 +15,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.CollectiveMapper;
 import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
@@ -57,62 +58,22 @@ public class SVMMapper extends
   private void runSVM(Configuration configuration,
     List<String> dataFiles, Context context)
     throws IOException {
-    // store labels and features
-    Vector<Double> vy = new Vector<Double>();
-    Vector<svm_node[]> vx =
-      new Vector<svm_node[]>();
-    Vector<Double> svy = new Vector<Double>();
-    Vector<svm_node[]> svx =
-      new Vector<svm_node[]>();
-    int maxIndex = 0;
-
-    // read data from HDFS
+    // read data from HDFS, in LibSVM format
+    HashSet<SVMRecord> originTrainingData =
+      new HashSet<SVMRecord>();
+    TextReader textReader = null;
     for (String dataFile : dataFiles) {
       FileSystem fs =
         FileSystem.get(configuration);
       Path dataPath = new Path(dataFile);
       FSDataInputStream in = fs.open(dataPath);
-      BufferedReader br = new BufferedReader(
-        new InputStreamReader(in));
-      String line = "";
-      while ((line = br.readLine()) != null) {
-        StringTokenizer st =
-          new StringTokenizer(line, " \t\n\r\f:");
-        vy.addElement(Double
-          .valueOf(st.nextToken()).doubleValue());
-        int m = st.countTokens() / 2;
-        svm_node[] x = new svm_node[m];
-        for (int i = 0; i < m; i++) {
-          x[i] = new svm_node();
-          x[i].index =
-            Integer.parseInt(st.nextToken());
-          x[i].value =
-            Double.valueOf(st.nextToken())
-              .doubleValue();
-        }
-        if (m > 0)
-          maxIndex =
-            Math.max(maxIndex, x[m - 1].index);
-        vx.addElement(x);
+      if (textReader == null) {
+        textReader = new TextReader(in, ":");
+      } else {
+        textReader.reset(in);
       }
-      br.close();
-    }
-
-    HashSet<String> originTrainingData =
-      new HashSet<String>();
-    for (int i = 0; i < vy.size(); i++) {
-      String line = "";
-      line += vy.get(i) + " ";
-      for (int j = 0; j < vx.get(i).length
-        - 1; j++) {
-        line += vx.get(i)[j].index + ":"
-          + vx.get(i)[j].value + " ";
-      }
-      line +=
-        vx.get(i)[vx.get(i).length - 1].index
-          + ":"
-          + vx.get(i)[vx.get(i).length - 1].value;
-      originTrainingData.add(line);
+      readRecords(textReader, originTrainingData);
+      in.close();
     }
 
     // initial svm paramter
@@ -134,16 +95,16 @@ public class SVMMapper extends
     svmParameter.weight_label = new int[0];
     svmParameter.weight = new double[0];
 
-    HashSet<String> supportVectors =
-      new HashSet<String>();
-    HashSet<String> currentTrainingData =
-      new HashSet<String>();
+    HashSet<SVMRecord> supportVectors =
+      new HashSet<SVMRecord>();
+    HashSet<SVMRecord> currentTrainingData =
+      new HashSet<SVMRecord>();
 
     for (int iter = 0; iter < iteration; iter++) {
       currentTrainingData = originTrainingData;
-      for (String line : supportVectors) {
-        if (!currentTrainingData.contains(line)) {
-          currentTrainingData.add(line);
+      for (SVMRecord record : supportVectors) {
+        if (!currentTrainingData.contains(record)) {
+          currentTrainingData.add(record);
         }
       }
 
@@ -153,22 +114,9 @@ public class SVMMapper extends
       svmProblem.x = new svm_node[svmProblem.l][];
       svmProblem.y = new double[svmProblem.l];
       int id = 0;
-      for (String line : currentTrainingData) {
-        StringTokenizer st =
-          new StringTokenizer(line, " \t\n\r\f:");
-        svmProblem.y[id] = Double
-          .valueOf(st.nextToken()).doubleValue();
-        int m = st.countTokens() / 2;
-        svm_node[] x = new svm_node[m];
-        for (int i = 0; i < m; i++) {
-          x[i] = new svm_node();
-          x[i].index =
-            Integer.parseInt(st.nextToken());
-          x[i].value =
-            Double.valueOf(st.nextToken())
-              .doubleValue();
-        }
-        svmProblem.x[id] = x;
+      for (SVMRecord record : currentTrainingData) {
+        svmProblem.y[id] = record.label;
+        svmProblem.x[id] = record.nodes;
         id++;
       }
 
@@ -210,16 +158,20 @@ public class SVMMapper extends
         svTable);
 	  LOG.info("Iteration:" + iter + "end allreduce");
 
-      supportVectors = new HashSet<String>();
-      String[] svString = svTable.getPartition(0)
-        .get().get().split("\n");
-      for (String line : svString) {
-        if (!supportVectors.contains(line)) {
-          supportVectors.add(line);
-        }
+      // parse the support vectors once
+      supportVectors = new HashSet<SVMRecord>();
+      ByteArrayInputStream svIn =
+        new ByteArrayInputStream(svTable.getPartition(0)
+          .get().get().getBytes(StandardCharsets.UTF_8));
+      if (textReader == null) {
+        textReader = new TextReader(svIn, ":");
+      } else {
+        textReader.reset(svIn);
       }
+      int numSVs =
+        readRecords(textReader, supportVectors);
 
-	  LOG.info("Iteration:" + iter + "supportVector Size:" + svString.length);
+	  LOG.info("Iteration:" + iter + "supportVector Size:" + numSVs);
 
     if ((iter == iteration -1) && this.isMaster()) {
       //outputResults(configuration, context,
@@ -238,12 +190,50 @@ public class SVMMapper extends
     }
   }
 
+  /**
+   * Read the LibSVM lines into records
+   *
+   * @param reader the reader of the lines
+   * @param records the records read
+   * @return the number of lines read
+   * @throws IOException
+   */
+  private static int readRecords(TextReader reader,
+    Collection<SVMRecord> records)
+    throws IOException {
+    int[] indices = new int[64];
+    double[] values = new double[64];
+    int numLines = 0;
+    while (reader.nextLine()) {
+      double label = reader.readDouble();
+      int m = 0;
+      while (reader.hasNext()) {
+        if (m == indices.length) {
+          indices = Arrays.copyOf(indices, m * 2);
+          values = Arrays.copyOf(values, m * 2);
+        }
+        indices[m] = reader.readInt();
+        values[m] = reader.readDouble();
+        m++;
+      }
+      svm_node[] x = new svm_node[m];
+      for (int i = 0; i < m; i++) {
+        x[i] = new svm_node();
+        x[i].index = indices[i];
+        x[i].value = values[i];
+      }
+      records.add(new SVMRecord(label, x));
+      numLines++;
+    }
+    return numLines;
+  }
+
   private void outputResults(
     Configuration configuration, Context context,
-    HashSet<String> supportVectors) {
+    HashSet<SVMRecord> supportVectors) {
     String outputString = "";
-    for (String line : supportVectors) {
-      outputString += line + "\n";
+    for (SVMRecord record : supportVectors) {
+      outputString += record + "\n";
     }
     try {
       context.write(null, new Text(outputString));
@@ -0,0 +1,71 @@
+package edu.iu.svm;
+
+import libsvm.svm_node;
+
+/**
+ * A LibSVM record parsed once, the label and the
+ * nodes. Records with the same label, indices and
+ * values are equal, so the sets of records drop
+ * the duplicates as the sets of lines did.
+ */
+public class SVMRecord {
+  final double label;
+  final svm_node[] nodes;
+  private final int hash;
+
+  public SVMRecord(double label, svm_node[] nodes) {
+    this.label = label;
+    this.nodes = nodes;
+    int h = Double.hashCode(label);
+    for (svm_node node : nodes) {
+      h = 31 * h + node.index;
+      h = 31 * h + Double.hashCode(node.value);
+    }
+    this.hash = h;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof SVMRecord)) {
+      return false;
+    }
+    SVMRecord other = (SVMRecord) obj;
+    if (hash != other.hash
+      || Double.doubleToLongBits(label) != Double
+        .doubleToLongBits(other.label)
+      || nodes.length != other.nodes.length) {
+      return false;
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      if (nodes[i].index != other.nodes[i].index
+        || Double.doubleToLongBits(
+          nodes[i].value) != Double
+            .doubleToLongBits(other.nodes[i].value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The record as a LibSVM line
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(label);
+    for (svm_node node : nodes) {
+      sb.append(" ").append(node.index)
+        .append(":").append(node.value);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Get and release through the shared array pools,
+ * single threaded and under contention
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArrayPoolBenchmark {
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  @Benchmark
+  @Threads(1)
+  public int doubleArraySingle() {
+    return getAndReleaseDoubles();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int doubleArrayContended() {
+    return getAndReleaseDoubles();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int intArrayContended() {
+    IntArray array = IntArray.create(size, false);
+    int len = array.get().length;
+    array.release();
+    return len;
+  }
+
+  private int getAndReleaseDoubles() {
+    DoubleArray array =
+      DoubleArray.create(size, false);
+    int len = array.get().length;
+    array.release();
+    return len;
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.collective.AllgatherCollective;
+import edu.iu.harp.collective.AllreduceCollective;
+import edu.iu.harp.collective.BcastCollective;
+import edu.iu.harp.collective.LocalGlobalSyncCollective;
+import edu.iu.harp.collective.ReduceCollective;
+import edu.iu.harp.collective.RegroupCollective;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Latency of each collective on a loopback
+ * cluster. One invocation runs the collective on
+ * all the workers and waits for every one of them.
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CollectiveBenchmark {
+
+  private static final String CONTEXT =
+    "benchmark";
+
+  @Param({"2", "4"})
+  public int numWorkers;
+
+  /**
+   * Doubles per partition
+   */
+  @Param({"1024", "262144"})
+  public int partitionSize;
+
+  /**
+   * Partitions per worker
+   */
+  @Param({"4"})
+  public int partitionsPerWorker;
+
+  private LoopbackCluster cluster;
+  private Partitioner partitioner;
+  private int numPartitions;
+  private int opCount;
+
+  /** All partitions on every worker */
+  private Table<DoubleArray>[] fullTables;
+  /** The partitions owned by every worker */
+  private Table<DoubleArray>[] ownTables;
+  /** All partitions on worker 0, nothing else */
+  private Table<DoubleArray>[] rootTables;
+
+  @Setup(Level.Trial)
+  public void startCluster() throws Exception {
+    cluster = new LoopbackCluster(numWorkers);
+    partitioner = new Partitioner(numWorkers);
+    numPartitions = numWorkers * partitionsPerWorker;
+    opCount = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Setup(Level.Invocation)
+  public void createTables() {
+    fullTables = new Table[numWorkers];
+    ownTables = new Table[numWorkers];
+    rootTables = new Table[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      fullTables[i] = new Table<>(0, new DoubleArrPlus());
+      ownTables[i] = new Table<>(0, new DoubleArrPlus());
+      rootTables[i] = new Table<>(0, new DoubleArrPlus());
+      for (int j = 0; j < numPartitions; j++) {
+        fullTables[i].addPartition(
+          new Partition<>(j, createArray(i)));
+        if (partitioner.getWorkerID(j) == i) {
+          ownTables[i].addPartition(
+            new Partition<>(j, createArray(i)));
+        }
+        if (i == 0) {
+          rootTables[i].addPartition(
+            new Partition<>(j, createArray(i)));
+        }
+      }
+    }
+    opCount++;
+  }
+
+  private DoubleArray createArray(int workerID) {
+    DoubleArray array =
+      DoubleArray.create(partitionSize, false);
+    double[] doubles = array.get();
+    for (int i = 0; i < partitionSize; i++) {
+      doubles[i] = workerID + i;
+    }
+    return array;
+  }
+
+  /**
+   * A new operation name for every invocation,
+   * the data left is cleaned after the run.
+   */
+  private String opName(String op) {
+    return op + "-" + opCount;
+  }
+
+  private boolean run(String op,
+    LoopbackCluster.WorkerOp workerOp)
+    throws Exception {
+    boolean success = cluster.runOnAll(workerOp);
+    for (int i = 0; i < numWorkers; i++) {
+      cluster.getDataMap(i)
+        .cleanOperationData(CONTEXT, op);
+    }
+    return success;
+  }
+
+  @Benchmark
+  public boolean allreduce() throws Exception {
+    final String op = opName("allreduce");
+    return run(op,
+      w -> AllreduceCollective.allreduce(CONTEXT,
+        op, fullTables[w], cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean allgather() throws Exception {
+    final String op = opName("allgather");
+    return run(op,
+      w -> AllgatherCollective.allgather(CONTEXT,
+        op, ownTables[w], cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean broadcast() throws Exception {
+    final String op = opName("broadcast");
+    return run(op,
+      w -> BcastCollective.broadcast(CONTEXT, op,
+        rootTables[w], 0, true,
+        cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean reduce() throws Exception {
+    final String op = opName("reduce");
+    return run(op,
+      w -> ReduceCollective.reduce(CONTEXT, op,
+        fullTables[w], 0, cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean regroup() throws Exception {
+    final String op = opName("regroup");
+    return run(op,
+      w -> RegroupCollective.regroupCombine(CONTEXT,
+        op, fullTables[w], partitioner,
+        cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean rotate() throws Exception {
+    final String op = opName("rotate");
+    return run(op,
+      w -> LocalGlobalSyncCollective.rotate(CONTEXT,
+        op, ownTables[w], null,
+        cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean push() throws Exception {
+    final String op = opName("push");
+    return run(op,
+      w -> LocalGlobalSyncCollective.push(CONTEXT,
+        op, fullTables[w], ownTables[w],
+        partitioner, cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @Benchmark
+  public boolean pull() throws Exception {
+    final String op = opName("pull");
+    return run(op,
+      w -> LocalGlobalSyncCollective.pull(CONTEXT,
+        op, fullTables[w], ownTables[w], false,
+        cluster.getDataMap(w),
+        cluster.getWorkers(w)));
+  }
+
+  @TearDown(Level.Invocation)
+  public void releaseTables() {
+    for (int i = 0; i < numWorkers; i++) {
+      fullTables[i].release();
+      ownTables[i].release();
+      rootTables[i].release();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stopCluster() {
+    cluster.stop();
+  }
+}
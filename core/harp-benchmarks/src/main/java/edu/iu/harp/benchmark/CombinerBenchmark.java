@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.combiner.DoubleArrCombiner;
+import edu.iu.harp.combiner.IntArrCombiner;
+import edu.iu.harp.combiner.Operation;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Element-wise combining of double and int arrays
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CombinerBenchmark {
+
+  @Param({"1024", "1048576"})
+  public int size;
+
+  @Param({"SUM", "MAX"})
+  public Operation operation;
+
+  private DoubleArray curDoubles;
+  private DoubleArray newDoubles;
+  private IntArray curInts;
+  private IntArray newInts;
+  private DoubleArrCombiner doubleCombiner;
+  private IntArrCombiner intCombiner;
+
+  @Setup
+  public void setup() {
+    curDoubles = new DoubleArray(new double[size], 0, size);
+    newDoubles = new DoubleArray(new double[size], 0, size);
+    curInts = new IntArray(new int[size], 0, size);
+    newInts = new IntArray(new int[size], 0, size);
+    for (int i = 0; i < size; i++) {
+      newDoubles.get()[i] = i;
+      newInts.get()[i] = i;
+    }
+    doubleCombiner = new DoubleArrCombiner(operation);
+    intCombiner = new IntArrCombiner(operation);
+  }
+
+  @Benchmark
+  public PartitionStatus combineDoubles() {
+    return doubleCombiner.combine(curDoubles, newDoubles);
+  }
+
+  @Benchmark
+  public PartitionStatus combineInts() {
+    return intCombiner.combine(curInts, newInts);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.Transferable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Cost of Data.encodeBody and
+ * Data.decodeBodyArray on a partition list of
+ * double arrays
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataCodecBenchmark {
+
+  @Param({"16"})
+  public int numPartitions;
+
+  @Param({"1024", "65536"})
+  public int partitionSize;
+
+  private List<Transferable> partitions;
+  private int bodySize;
+  private ByteArray headArray;
+  private ByteArray bodyArray;
+
+  @Setup
+  public void setup() {
+    partitions = new ArrayList<>(numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      DoubleArray array =
+        DoubleArray.create(partitionSize, false);
+      for (int j = 0; j < partitionSize; j++) {
+        array.get()[j] = j;
+      }
+      partitions.add(new Partition<>(i, array));
+    }
+    bodySize =
+      DataUtil.getNumTransListBytes(partitions);
+    Data data = newData();
+    data.encodeHead();
+    data.encodeBody();
+    headArray = data.getHeadArray();
+    bodyArray = data.getBodyArray();
+  }
+
+  private Data newData() {
+    return new Data(DataType.PARTITION_LIST,
+      "benchmark", 0, partitions, bodySize,
+      "codec");
+  }
+
+  @Benchmark
+  public DataStatus encodeBody() {
+    Data data = newData();
+    DataStatus status = data.encodeBody();
+    data.releaseBodyArray();
+    return status;
+  }
+
+  @Benchmark
+  public DataStatus decodeBodyArray() {
+    Data data = new Data(headArray, bodyArray);
+    data.decodeHeadArray();
+    DataStatus status = data.decodeBodyArray();
+    // Keep the shared arrays, drop the decoded
+    // partitions
+    DataUtil.releaseTransList(data.getBody());
+    return status;
+  }
+
+  @TearDown
+  public void tearDown() {
+    headArray.release();
+    bodyArray.release();
+    DataUtil.releaseTransList(partitions);
+  }
+}
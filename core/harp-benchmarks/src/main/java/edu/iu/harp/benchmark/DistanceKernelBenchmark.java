@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.kernel.DistanceKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Nearest centroid search for a block of points
+ * in the KMeans layout, the loop of CenCalcTask
+ * against DistanceKernel
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistanceKernelBenchmark {
+
+  private static final int NUM_POINTS = 2000;
+
+  /** The number of coordinates of a point */
+  @Param({"16", "64", "256"})
+  public int dimension;
+
+  /** The number of centroids */
+  @Param({"100", "1000"})
+  public int numCentroids;
+
+  private int cenVecSize;
+  private double[] points;
+  private double[] centroids;
+  private DistanceKernel kernel;
+  private double[] minDistances;
+  private int[] cenIDs;
+
+  /**
+   * Create the random points and centroids
+   */
+  @Setup
+  public void setup() {
+    // The first element of each vector is not a
+    // coordinate
+    cenVecSize = dimension + 1;
+    Random random = new Random(0);
+    points = new double[NUM_POINTS * cenVecSize];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = random.nextDouble();
+    }
+    centroids = new double[numCentroids * cenVecSize];
+    for (int i = 0; i < centroids.length; i++) {
+      centroids[i] = random.nextDouble();
+    }
+    kernel = new DistanceKernel(dimension);
+    kernel.setNumCentroids(numCentroids);
+    for (int i = 0; i < numCentroids; i++) {
+      kernel.setCentroid(i, centroids, i * cenVecSize + 1);
+    }
+    minDistances = new double[NUM_POINTS];
+    cenIDs = new int[NUM_POINTS];
+  }
+
+  /**
+   * Find the nearest centroids with the
+   * per-coordinate loop of CenCalcTask
+   */
+  @Benchmark
+  public int loop() {
+    int sum = 0;
+    for (int i = 0; i < points.length;) {
+      i++;
+      double minDistance = Double.MAX_VALUE;
+      int minOffset = 0;
+      for (int k = 0; k < centroids.length;) {
+        int pStart = i;
+        k++;
+        double distance = 0.0;
+        for (int l = 1; l < cenVecSize; l++) {
+          double diff = (points[pStart++] - centroids[k++]);
+          distance += diff * diff;
+        }
+        if (distance < minDistance) {
+          minDistance = distance;
+          minOffset = k - cenVecSize;
+        }
+      }
+      sum += minOffset;
+      i += cenVecSize - 1;
+    }
+    return sum;
+  }
+
+  /**
+   * Find the nearest centroids with
+   * DistanceKernel
+   */
+  @Benchmark
+  public int[] blocked() {
+    Arrays.fill(minDistances, Double.MAX_VALUE);
+    kernel.assign(points, 1, cenVecSize, NUM_POINTS, minDistances,
+        cenIDs);
+    return cenIDs;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.keyval.Int2IntKVPartition;
+import edu.iu.harp.keyval.TypeIntCombiner;
+import edu.iu.harp.resource.Writable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Inserting and combining keys in an
+ * Int2IntKVPartition
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KVPartitionBenchmark {
+
+  @Param({"10000"})
+  public int numPuts;
+
+  /**
+   * Distinct keys, fewer keys means more
+   * combining
+   */
+  @Param({"100", "10000"})
+  public int numKeys;
+
+  private int[] keys;
+  private TypeIntCombiner combiner;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    keys = new int[numPuts];
+    for (int i = 0; i < numPuts; i++) {
+      keys[i] = random.nextInt(numKeys);
+    }
+    combiner = new TypeIntCombiner();
+  }
+
+  @Benchmark
+  public int putKeyVal() {
+    Int2IntKVPartition partition =
+      Writable.create(Int2IntKVPartition.class);
+    partition.initialize();
+    for (int i = 0; i < numPuts; i++) {
+      partition.putKeyVal(keys[i], 1, combiner);
+    }
+    int size = partition.size();
+    partition.release();
+    return size;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*******************************************************
+ * Starts N workers with their servers on the
+ * loopback interface of one JVM, so collectives
+ * can be driven without Hadoop
+ ******************************************************/
+public class LoopbackCluster {
+
+  /**
+   * The operation run on every worker
+   */
+  public interface WorkerOp {
+    boolean run(int workerID) throws Exception;
+  }
+
+  private final int numWorkers;
+  private final Workers[] workers;
+  private final DataMap[] dataMaps;
+  private final Server[] servers;
+  private final ExecutorService executor;
+
+  public LoopbackCluster(int numWorkers)
+    throws Exception {
+    this.numWorkers = numWorkers;
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < numWorkers; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    workers = new Workers[numWorkers];
+    dataMaps = new DataMap[numWorkers];
+    servers = new Server[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      workers[i] = new Workers(new BufferedReader(
+        new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server("127.0.0.1",
+        workers[i].getSelfInfo().getPort(),
+        new EventQueue(), dataMaps[i], workers[i]);
+      servers[i].start();
+    }
+    executor = Executors.newFixedThreadPool(numWorkers);
+  }
+
+  public int getNumWorkers() {
+    return numWorkers;
+  }
+
+  public Workers getWorkers(int workerID) {
+    return workers[workerID];
+  }
+
+  public DataMap getDataMap(int workerID) {
+    return dataMaps[workerID];
+  }
+
+  /**
+   * Run the operation on all the workers
+   * concurrently and wait for all of them
+   *
+   * @param op the operation
+   * @return true if it succeeded on every worker
+   */
+  public boolean runOnAll(final WorkerOp op)
+    throws Exception {
+    List<Future<Boolean>> results =
+      new ArrayList<>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      final int workerID = i;
+      results.add(executor.submit(() -> op.run(workerID)));
+    }
+    boolean success = true;
+    for (Future<Boolean> result : results) {
+      success &= result.get();
+    }
+    return success;
+  }
+
+  /**
+   * Stop the servers and close the connections
+   */
+  public void stop() {
+    executor.shutdown();
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.io.Deserializer;
+import edu.iu.harp.io.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Throughput of the Serializer and the
+ * Deserializer on primitive values
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializerBenchmark {
+
+  @Param({"1024", "1048576"})
+  public int numValues;
+
+  private byte[] bytes;
+
+  @Setup
+  public void setup() throws IOException {
+    bytes = new byte[numValues * 8];
+    Serializer serializer =
+      new Serializer(bytes, 0, bytes.length);
+    for (int i = 0; i < numValues; i++) {
+      serializer.writeDouble(i);
+    }
+  }
+
+  @Benchmark
+  public int writeDoubles() throws IOException {
+    Serializer serializer =
+      new Serializer(bytes, 0, bytes.length);
+    for (int i = 0; i < numValues; i++) {
+      serializer.writeDouble(i);
+    }
+    return serializer.getPos();
+  }
+
+  @Benchmark
+  public double readDoubles() throws IOException {
+    Deserializer deserializer =
+      new Deserializer(bytes, 0, bytes.length);
+    double sum = 0;
+    for (int i = 0; i < numValues; i++) {
+      sum += deserializer.readDouble();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int writeInts() throws IOException {
+    Serializer serializer =
+      new Serializer(bytes, 0, bytes.length);
+    for (int i = 0; i < numValues; i++) {
+      serializer.writeInt(i);
+    }
+    return serializer.getPos();
+  }
+
+  @Benchmark
+  public long readInts() throws IOException {
+    Deserializer deserializer =
+      new Deserializer(bytes, 0, bytes.length);
+    long sum = 0;
+    for (int i = 0; i < numValues; i++) {
+      sum += deserializer.readInt();
+    }
+    return sum;
+  }
+}
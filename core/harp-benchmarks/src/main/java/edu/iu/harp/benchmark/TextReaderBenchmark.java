@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.io.TextReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Parsing a ratings file of "row col value" lines,
+ * the readLine and split of the loaders against
+ * TextReader
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextReaderBenchmark {
+
+  private static final int NUM_LINES = 200000;
+
+  private byte[] text;
+  private TextReader reader;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < NUM_LINES; i++) {
+      builder.append(random.nextInt(1000000)).append(' ')
+          .append(random.nextInt(100000)).append('\t')
+          .append(random.nextInt(50) / 10.0).append('\n');
+    }
+    text = builder.toString().getBytes(StandardCharsets.UTF_8);
+    reader = new TextReader(new ByteArrayInputStream(text));
+  }
+
+  @Benchmark
+  public double split() throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new ByteArrayInputStream(text)), 1048576);
+    double sum = 0;
+    String line = null;
+    while ((line = in.readLine()) != null) {
+      String[] tokens = line.split("\\p{Blank}+");
+      sum += Integer.parseInt(tokens[0]) + Integer.parseInt(tokens[1])
+          + Double.parseDouble(tokens[2]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double textReader() throws IOException {
+    reader.reset(new ByteArrayInputStream(text));
+    double sum = 0;
+    while (reader.nextLine()) {
+      sum += reader.readInt() + reader.readInt() + reader.readDouble();
+    }
+    return sum;
+  }
+}
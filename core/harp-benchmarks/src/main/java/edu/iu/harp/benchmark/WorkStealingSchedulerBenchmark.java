@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.schdynamic.WorkStealingScheduler;
+import edu.iu.harp.schdynamic.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Round trip latency of submit and waitForOutput
+ * through the WorkStealingScheduler, compare
+ * with DynamicSchedulerBenchmark
+ ******************************************************/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorkStealingSchedulerBenchmark {
+
+  private static class EchoTask
+    implements Task<Integer, Integer> {
+    @Override
+    public Integer run(Integer input) {
+      return input;
+    }
+  }
+
+  /** The number of tasks and threads */
+  @Param({"1", "4"})
+  public int numThreads;
+
+  /**
+   * Inputs submitted before waiting for all
+   * outputs
+   */
+  @Param({"1", "64"})
+  public int batchSize;
+
+  private WorkStealingScheduler<Integer, Integer, EchoTask> scheduler;
+  private Integer[] inputs;
+
+  /**
+   * Start the scheduler with the echo tasks
+   */
+  @Setup
+  public void setup() {
+    List<EchoTask> tasks = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      tasks.add(new EchoTask());
+    }
+    scheduler = new WorkStealingScheduler<>(tasks);
+    inputs = new Integer[batchSize];
+    for (int i = 0; i < batchSize; i++) {
+      inputs[i] = i;
+    }
+    scheduler.start();
+  }
+
+  /**
+   * Submit the inputs one by one, then wait for
+   * all the outputs
+   */
+  @Benchmark
+  public int submitAndWait() {
+    for (int i = 0; i < batchSize; i++) {
+      scheduler.submit(i);
+    }
+    int sum = 0;
+    for (int i = 0; i < batchSize; i++) {
+      sum += scheduler.waitForOutput();
+    }
+    return sum;
+  }
+
+  /**
+   * Submit the inputs in chunks, then wait for
+   * all the outputs
+   */
+  @Benchmark
+  public int submitAllAndWait() {
+    scheduler.submitAll(inputs);
+    int sum = 0;
+    for (int i = 0; i < batchSize; i++) {
+      sum += scheduler.waitForOutput();
+    }
+    return sum;
+  }
+
+  /**
+   * Stop the scheduler
+   */
+  @TearDown
+  public void tearDown() {
+    scheduler.stop();
+  }
+}
@@ -17,16 +17,24 @@
 package edu.iu.harp.client;
 
 import edu.iu.harp.io.Connection;
+import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataStatus;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.RawBodyWriter;
 import edu.iu.harp.io.Serializer;
+import edu.iu.harp.io.SharedMemory;
+import edu.iu.harp.io.StreamBodyWriter;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.worker.Workers;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
  * The actual sender for sending the data.
@@ -39,14 +47,138 @@ public class DataSender extends Sender {
   private static final Logger LOG =
           Logger.getLogger(DataSender.class);
 
+  /**
+   * Send SEND_DECODE data as SEND_RAW when the
+   * body is made of primitive arrays
+   */
+  private static volatile boolean useRawBody =
+          false;
+
+  /**
+   * Send the body through the shared memory to
+   * the workers on the same node
+   */
+  private static volatile boolean useSharedMemory =
+          false;
+
+  /**
+   * Stream large SEND_DECODE bodies in chunks
+   */
+  private static volatile boolean useStreaming =
+          false;
+
+  /** Send the body as raw arrays */
+  private final boolean isRawBody;
+  /** Encode and send the body chunk by chunk */
+  private final boolean isStreamBody;
+
   public DataSender(Data data, int destWorkerID,
                     Workers workers, byte command) {
     super(data, destWorkerID, workers, command);
+    isRawBody = isRawBody(data, command);
+    isStreamBody =
+            !isRawBody && isStreamBody(data, command);
   }
 
   public DataSender(Data data, String host,
                     int port, byte command) {
     super(data, host, port, command);
+    isRawBody = isRawBody(data, command);
+    isStreamBody =
+            !isRawBody && isStreamBody(data, command);
+  }
+
+  /**
+   * Enable or disable sending the SEND_DECODE
+   * data of primitive arrays as SEND_RAW
+   *
+   * @param enabled true to enable
+   */
+  public static void setUseRawBody(boolean enabled) {
+    useRawBody = enabled;
+  }
+
+  /**
+   * Enable or disable sending large bodies
+   * through the shared memory to the workers on
+   * the same node
+   *
+   * @param enabled true to enable
+   */
+  public static void setUseSharedMemory(
+          boolean enabled) {
+    useSharedMemory = enabled;
+  }
+
+  /**
+   * Enable or disable streaming the SEND_DECODE
+   * data larger than STREAM_THRESHOLD
+   *
+   * @param enabled true to enable
+   */
+  public static void setUseStreaming(
+          boolean enabled) {
+    useStreaming = enabled;
+  }
+
+  /**
+   * Check if the body should be sent as raw
+   * arrays. SEND_RAW falls back to SEND_DECODE if
+   * the body has other types of data. Bodies with
+   * off-heap arrays are always sent raw, so the
+   * native memory is written to the channel
+   * without encoding.
+   *
+   * @param data    the Data
+   * @param command the command
+   * @return true if the body is sent as raw arrays
+   */
+  private static boolean isRawBody(Data data,
+                                   byte command) {
+    return (command == Constant.SEND_RAW
+            || (command == Constant.SEND_DECODE
+            && (useRawBody
+            || RawBodyWriter.hasOffHeapArrays(data))))
+            && RawBodyWriter.isRawEncodable(data);
+  }
+
+  /**
+   * Check if the body should be encoded and sent
+   * in chunks. SEND_STREAM falls back to
+   * SEND_DECODE if the body is encoded already.
+   *
+   * @param data    the Data
+   * @param command the command
+   * @return true if the body is streamed
+   */
+  private static boolean isStreamBody(Data data,
+                                      byte command) {
+    return (command == Constant.SEND_STREAM
+            || (command == Constant.SEND_DECODE
+            && useStreaming && data != null
+            && data.getBodySize()
+            >= Constant.STREAM_THRESHOLD))
+            && StreamBodyWriter.isStreamable(data);
+  }
+
+  @Override
+  protected boolean isBodyEncoded() {
+    return !isRawBody && !isStreamBody;
+  }
+
+  @Override
+  protected byte getCommand() {
+    byte command = super.getCommand();
+    if (isRawBody) {
+      return Constant.SEND_RAW;
+    } else if (isStreamBody) {
+      return Constant.SEND_STREAM;
+    } else if (command == Constant.SEND_RAW
+            || command == Constant.SEND_STREAM) {
+      return Constant.SEND_DECODE;
+    } else {
+      return command;
+    }
   }
 
   /**
@@ -55,6 +187,10 @@ public class DataSender extends Sender {
   @Override
   protected void handleData(final Connection conn,
                             final Data data) throws Exception {
+    if (isSharedMemory(data)) {
+      sendSharedMemory(conn, data);
+      return;
+    }
     // Get head size and body size
     int headArrSize = getHeadSize(data);
     ByteArray opArray = getOPByteArray(headArrSize);
@@ -125,6 +261,10 @@ public class DataSender extends Sender {
     ByteArray headArray = data.getHeadArray();
     byte[] headBytes = headArray.get();
     int headArrSize = headArray.size();
+    if (isRawBody) {
+      sendRawBody(conn, opArray, headArray, data);
+      return;
+    }
     try {
       out.write(getCommand());
       IOUtil.sendBytes(out, opBytes, 0,
@@ -135,12 +275,104 @@ public class DataSender extends Sender {
         IOUtil.sendBytes(out, headBytes, 0,
                 headArrSize);
       }
-      sendBodyBytes(out, data);
+      if (isStreamBody) {
+        StreamBodyWriter.write(out, data);
+      } else {
+        sendBodyBytes(out, data);
+      }
     } catch (IOException e) {
       throw e;
     }
   }
 
+  /**
+   * Send the command, the op bytes and the head
+   * bytes with the body written as raw arrays
+   *
+   * @param conn      the Connection object
+   * @param opArray   the op bytes
+   * @param headArray the head bytes
+   * @param data      the Data
+   * @throws IOException
+   */
+  private void sendRawBody(Connection conn,
+                           ByteArray opArray, ByteArray headArray,
+                           Data data) throws IOException {
+    GatheringByteChannel channel =
+            conn.getByteChannel();
+    if (channel == null) {
+      throw new IOException("No socket channel.");
+    }
+    ByteBuffer prefix = ByteBuffer.allocate(
+            1 + opArray.size() + headArray.size());
+    prefix.put(getCommand());
+    prefix.put(opArray.get(), 0, opArray.size());
+    prefix.put(headArray.get(), 0,
+            headArray.size());
+    prefix.flip();
+    RawBodyWriter.write(channel, prefix, data);
+  }
+
+  /**
+   * Check if the body should be sent through the
+   * shared memory. It must be a large body sent
+   * to a worker on the same node.
+   *
+   * @param data the Data
+   * @return true if the body is sent through the
+   * shared memory
+   */
+  private boolean isSharedMemory(Data data) {
+    byte command = getCommand();
+    Workers workers = getWorkers();
+    return useSharedMemory && workers != null
+            && (command == Constant.SEND
+            || command == Constant.SEND_DECODE
+            || command == Constant.SEND_RAW)
+            && data.getBodySize() >= Constant.SHM_THRESHOLD
+            && (isRawBody || data.getBodyArray() != null)
+            && workers.isOnSameNode(getDestWorkerID())
+            && SharedMemory.isAvailable();
+  }
+
+  /**
+   * Write the body to the shared memory, then
+   * send the command SEND_SHM, the op bytes (head
+   * size, the actual command and the path size),
+   * the head bytes and the path of the file
+   *
+   * @param conn the Connection object
+   * @param data the Data
+   * @throws IOException
+   */
+  private void sendSharedMemory(Connection conn,
+                                Data data) throws IOException {
+    File file = SharedMemory.write(data, isRawBody);
+    boolean isFailed = true;
+    try {
+      byte[] pathBytes = file.getPath()
+              .getBytes(StandardCharsets.UTF_8);
+      ByteArray headArray = data.getHeadArray();
+      ByteBuffer frame = ByteBuffer.allocate(13
+              + headArray.size() + pathBytes.length);
+      frame.put(Constant.SEND_SHM);
+      frame.putInt(headArray.size());
+      frame.putInt(getCommand());
+      frame.putInt(pathBytes.length);
+      frame.put(headArray.get(), 0,
+              headArray.size());
+      frame.put(pathBytes);
+      IOUtil.sendBytes(conn.getOutputStream(),
+              frame.array(), 0, frame.position());
+      isFailed = false;
+    } finally {
+      // The receiver deletes the file
+      if (isFailed) {
+        SharedMemory.delete(file);
+      }
+    }
+  }
+
   /**
    * Send the data body
    *
@@ -20,6 +20,8 @@ import edu.iu.harp.io.Connection;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.metrics.Metrics;
+import edu.iu.harp.trace.Tracer;
 import edu.iu.harp.worker.WorkerInfo;
 import edu.iu.harp.worker.Workers;
 import org.apache.log4j.Logger;
@@ -122,7 +124,8 @@ public abstract class Sender {
     }
     // Encode body
     if (data
-            .getBodyStatus() == DataStatus.DECODED) {
+            .getBodyStatus() == DataStatus.DECODED
+            && isBodyEncoded()) {
       DataStatus bodyStatus = data.encodeBody();
       if (bodyStatus == DataStatus.ENCODE_FAILED_DECODED) {
         // No generating encoded data
@@ -138,6 +141,7 @@ public abstract class Sender {
     }
     // Send
     boolean isFailed = false;
+    long startTime = Tracer.begin();
     try {
       handleData(conn, data);
       conn.release();
@@ -146,6 +150,14 @@ public abstract class Sender {
       conn.free();
       isFailed = true;
     }
+    Tracer.end(Tracer.COMM, "send",
+            data.getOperationName(), startTime);
+    if (!isFailed && data.getHeadArray() != null) {
+      Metrics.recordBytesSent(data.getContextName(),
+              data.getOperationName(),
+              (long) data.getHeadArray().size()
+                      + data.getEncodedBodySize());
+    }
     // Do not release encoded arrays in data
     return !isFailed;
   }
@@ -168,6 +180,16 @@ public abstract class Sender {
     return this.workers;
   }
 
+  /**
+   * Check if the body is encoded to a byte array
+   * before sending
+   *
+   * @return true if the body is encoded
+   */
+  protected boolean isBodyEncoded() {
+    return true;
+  }
+
   /**
    * Get the command
    *
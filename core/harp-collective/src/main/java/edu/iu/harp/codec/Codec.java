@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import java.io.IOException;
+
+/*******************************************************
+ * The codec compressing the encoded body array.
+ * The ID of the codec is sent in the head, so
+ * the same codec must be registered on the
+ * receivers.
+ ******************************************************/
+public abstract class Codec {
+
+  /**
+   * Get the ID of the codec, positive and unique
+   * in Codecs
+   *
+   * @return the ID of the codec
+   */
+  public abstract byte getID();
+
+  /**
+   * Get the maximum size of the encoded bytes
+   *
+   * @param len the size of the input
+   * @return the maximum size of the output
+   */
+  public abstract int getMaxEncodedSize(int len);
+
+  /**
+   * Encode the bytes of the body array
+   *
+   * @param bodyType the type of the body
+   * @param src      the body bytes
+   * @param srcPos   the start of the body bytes
+   * @param len      the size of the body bytes
+   * @param dest     the output with at least
+   *                 getMaxEncodedSize(len) bytes
+   * @param destPos  the start of the output
+   * @return the size of the output, -1 if the
+   * body cannot be encoded by this codec
+   */
+  public abstract int encode(byte bodyType,
+    byte[] src, int srcPos, int len, byte[] dest,
+    int destPos);
+
+  /**
+   * Decode the bytes to the body array
+   *
+   * @param bodyType   the type of the body
+   * @param src        the encoded bytes
+   * @param srcPos     the start of the encoded
+   *                   bytes
+   * @param len        the size of the encoded
+   *                   bytes
+   * @param dest       the body array
+   * @param destPos    the start of the body
+   * @param decodedLen the size of the body
+   * @throws IOException if the encoded bytes are
+   *                     corrupted
+   */
+  public abstract void decode(byte bodyType,
+    byte[] src, int srcPos, int len, byte[] dest,
+    int destPos, int decodedLen)
+    throws IOException;
+
+  /**
+   * Write a varint
+   *
+   * @param dest the output
+   * @param pos  the position to write
+   * @param v    the value, unsigned
+   * @return the position after the varint
+   */
+  static int writeVarLong(byte[] dest, int pos,
+    long v) {
+    while ((v & ~0x7FL) != 0L) {
+      dest[pos++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    dest[pos++] = (byte) v;
+    return pos;
+  }
+
+  /**
+   * Read a big-endian int
+   *
+   * @param src the bytes
+   * @param pos the position to read
+   * @return the int
+   */
+  static int readIntBE(byte[] src, int pos) {
+    return ((src[pos] & 0xFF) << 24)
+      | ((src[pos + 1] & 0xFF) << 16)
+      | ((src[pos + 2] & 0xFF) << 8)
+      | (src[pos + 3] & 0xFF);
+  }
+
+  /**
+   * Write a big-endian int
+   *
+   * @param dest the output
+   * @param pos  the position to write
+   * @param v    the int
+   * @return the position after the int
+   */
+  static int writeIntBE(byte[] dest, int pos,
+    int v) {
+    dest[pos++] = (byte) (v >>> 24);
+    dest[pos++] = (byte) (v >>> 16);
+    dest[pos++] = (byte) (v >>> 8);
+    dest[pos++] = (byte) v;
+    return pos;
+  }
+}
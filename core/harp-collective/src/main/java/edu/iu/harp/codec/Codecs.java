@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.resource.ByteArray;
+import org.apache.log4j.Logger;
+
+/*******************************************************
+ * The registry of the codecs and the heuristic
+ * choosing a codec for the body array. Small
+ * and incompressible bodies are not compressed.
+ ******************************************************/
+public class Codecs {
+
+  private static final Logger LOG =
+    Logger.getLogger(Codecs.class);
+
+  public static final byte NONE = 0;
+  public static final byte LZ = 1;
+  public static final byte ZERO_RUN = 2;
+  public static final byte DELTA_VARINT = 3;
+
+  // The bytes sampled in each block
+  private static final int SAMPLE_BLOCK_SIZE =
+    4096;
+  // Bits per byte, the sampled bytes above this
+  // are considered incompressible
+  private static final double MAX_ENTROPY = 7.5;
+  // Use ZERO_RUN if the sampled zero bytes are
+  // more than this fraction
+  private static final double MIN_ZERO_FRACTION =
+    0.5;
+
+  private static final Codec[] codecs =
+    new Codec[Byte.MAX_VALUE + 1];
+  private static volatile boolean enabled = false;
+  private static volatile byte preferredID = NONE;
+
+  static {
+    register(new LZCodec());
+    register(new ZeroRunCodec());
+    register(new DeltaVarIntCodec());
+  }
+
+  /**
+   * Register a codec, the ID must not be used by
+   * another codec
+   *
+   * @param codec the codec
+   * @return true if the codec is registered
+   */
+  public static synchronized boolean
+    register(Codec codec) {
+    if (codec == null || codec.getID() <= NONE) {
+      LOG.error("Invalid codec: " + codec);
+      return false;
+    }
+    Codec old = codecs[codec.getID()];
+    if (old != null
+      && old.getClass() != codec.getClass()) {
+      LOG.error("Codec ID " + codec.getID()
+        + " is used by " + old.getClass());
+      return false;
+    }
+    codecs[codec.getID()] = codec;
+    return true;
+  }
+
+  /**
+   * Get the codec
+   *
+   * @param id the ID of the codec
+   * @return the codec, null if not registered
+   */
+  public static synchronized Codec get(byte id) {
+    if (id <= NONE) {
+      return null;
+    }
+    return codecs[id];
+  }
+
+  /**
+   * Enable or disable compressing the body
+   * arrays on sending. Receiving always decodes
+   * the compressed bodies.
+   *
+   * @param enable compress the body arrays
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * Check if the body arrays are compressed on
+   * sending
+   *
+   * @return true if enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Use the codec for all the bodies larger than
+   * the threshold instead of choosing by the
+   * content
+   *
+   * @param id the ID of a registered codec, NONE
+   *           for choosing by the content
+   */
+  public static void setPreferredCodec(byte id) {
+    preferredID = id;
+  }
+
+  /**
+   * Choose a codec for the body array
+   *
+   * @param bodyType the type of the body
+   * @param body     the body array
+   * @return the codec, null if the body should
+   * not be compressed
+   */
+  public static Codec choose(byte bodyType,
+    ByteArray body) {
+    if (!enabled || body == null
+      || body.size() < Constant.COMPRESS_THRESHOLD) {
+      return null;
+    }
+    byte id = preferredID;
+    if (id != NONE) {
+      return get(id);
+    }
+    if (DeltaVarIntCodec.isSorted(bodyType,
+      body.get(), body.start(), body.size())) {
+      return get(DELTA_VARINT);
+    }
+    int[] counts = sample(body);
+    long total = 0L;
+    for (int count : counts) {
+      total += count;
+    }
+    if (counts[0] >= total * MIN_ZERO_FRACTION) {
+      return get(ZERO_RUN);
+    }
+    if (getEntropy(counts, total) > MAX_ENTROPY) {
+      return null;
+    }
+    return get(LZ);
+  }
+
+  /**
+   * Count the bytes in the blocks evenly spaced
+   * in the body
+   *
+   * @param body the body array
+   * @return the counts of the byte values
+   */
+  private static int[] sample(ByteArray body) {
+    int[] counts = new int[256];
+    byte[] bytes = body.get();
+    int size = body.size();
+    int numBlocks = Math.max(1,
+      Math.min(size, Constant.COMPRESS_SAMPLE_SIZE)
+        / SAMPLE_BLOCK_SIZE);
+    int blockSize = Math.min(size / numBlocks,
+      SAMPLE_BLOCK_SIZE);
+    long stride = size / numBlocks;
+    for (int i = 0; i < numBlocks; i++) {
+      int start = body.start() + (int) (i * stride);
+      for (int j = 0; j < blockSize; j++) {
+        counts[bytes[start + j] & 0xFF]++;
+      }
+    }
+    return counts;
+  }
+
+  private static double getEntropy(int[] counts,
+    long total) {
+    double entropy = 0.0;
+    for (int count : counts) {
+      if (count > 0) {
+        double p = (double) count / total;
+        entropy -= p * Math.log(p);
+      }
+    }
+    return entropy / Math.log(2.0);
+  }
+
+  /**
+   * Compress the body array
+   *
+   * @param codec    the codec
+   * @param bodyType the type of the body
+   * @param body     the body array
+   * @return the compressed array, null if the
+   * codec fails or does not save enough bytes
+   */
+  public static ByteArray encode(Codec codec,
+    byte bodyType, ByteArray body) {
+    int len = body.size();
+    ByteArray encoded = ByteArray.create(
+      codec.getMaxEncodedSize(len), true);
+    if (encoded == null) {
+      return null;
+    }
+    int size = -1;
+    try {
+      size = codec.encode(bodyType, body.get(),
+        body.start(), len, encoded.get(), 0);
+    } catch (Exception e) {
+      LOG.error("Fail to encode with codec "
+        + codec.getID(), e);
+    }
+    if (size < 0 || (long) size * 100
+      > (long) len * Constant.COMPRESS_MAX_PERCENT) {
+      encoded.release();
+      return null;
+    }
+    return new ByteArray(encoded.get(), 0, size);
+  }
+
+  /**
+   * Decompress the body array
+   *
+   * @param id          the ID of the codec
+   * @param bodyType    the type of the body
+   * @param body        the compressed array
+   * @param decodedSize the size of the body
+   * @return the decompressed array, null if
+   * failed
+   */
+  public static ByteArray decode(byte id,
+    byte bodyType, ByteArray body,
+    int decodedSize) {
+    Codec codec = get(id);
+    if (codec == null) {
+      LOG.error("Unknown codec " + id);
+      return null;
+    }
+    ByteArray decoded =
+      ByteArray.create(decodedSize, true);
+    if (decoded == null) {
+      return null;
+    }
+    try {
+      codec.decode(bodyType, body.get(),
+        body.start(), body.size(), decoded.get(),
+        0, decodedSize);
+      return decoded;
+    } catch (Exception e) {
+      LOG.error("Fail to decode with codec " + id,
+        e);
+      decoded.release();
+      return null;
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import edu.iu.harp.io.DataType;
+
+import java.io.IOException;
+
+/*******************************************************
+ * Encode the bodies of IntArrays and LongArrays
+ * as the zigzag varints of the deltas between
+ * the neighbours. Sorted arrays of ids become a
+ * byte or two per element. Bodies with other
+ * types of arrays are not encoded.
+ ******************************************************/
+public class DeltaVarIntCodec extends Codec {
+
+  // The pairs checked in each array for sorting
+  private static final int NUM_SAMPLE_PAIRS = 64;
+
+  /**
+   * Get the ID of the delta varint codec
+   */
+  @Override
+  public byte getID() {
+    return Codecs.DELTA_VARINT;
+  }
+
+  /**
+   * Get the size of the delta varint encoding of the
+   * incompressible bytes
+   */
+  @Override
+  public int getMaxEncodedSize(int len) {
+    // 10 bytes at most for a long
+    return len + len / 4 + 16;
+  }
+
+  /**
+   * Encode the sorted-looking arrays of the body
+   * as the varints of their deltas
+   */
+  @Override
+  public int encode(byte bodyType, byte[] src,
+    int srcPos, int len, byte[] dest,
+    int destPos) {
+    boolean isPartitionList =
+      bodyType == DataType.PARTITION_LIST;
+    if (!isPartitionList
+      && bodyType != DataType.SIMPLE_LIST) {
+      return -1;
+    }
+    int pos = srcPos;
+    int end = srcPos + len;
+    int d = destPos;
+    while (pos < end) {
+      byte type = src[pos];
+      int size = getArraySize(type, src, pos, end,
+        isPartitionList);
+      if (size < 0) {
+        return -1;
+      }
+      pos += 5;
+      dest[d++] = type;
+      d = writeVarLong(dest, d, size);
+      if (type == DataType.INT_ARRAY) {
+        int prev = 0;
+        for (int i = 0; i < size; i++) {
+          int v = readIntBE(src, pos);
+          pos += 4;
+          d = writeVarLong(dest, d,
+            zigzag(v - prev));
+          prev = v;
+        }
+      } else {
+        long prev = 0L;
+        for (int i = 0; i < size; i++) {
+          long v = readLongBE(src, pos);
+          pos += 8;
+          d = writeVarLong(dest, d,
+            zigzag(v - prev));
+          prev = v;
+        }
+      }
+      if (isPartitionList) {
+        d = writeVarLong(dest, d,
+          zigzag(readIntBE(src, pos)));
+        pos += 4;
+      }
+    }
+    return d - destPos;
+  }
+
+  /**
+   * Decode the deltas back to the arrays
+   */
+  @Override
+  public void decode(byte bodyType, byte[] src,
+    int srcPos, int len, byte[] dest,
+    int destPos, int decodedLen)
+    throws IOException {
+    boolean isPartitionList =
+      bodyType == DataType.PARTITION_LIST;
+    VarIntReader reader =
+      new VarIntReader(src, srcPos, len);
+    int o = destPos;
+    int oEnd = destPos + decodedLen;
+    while (reader.hasRemaining()) {
+      byte type = reader.readByte();
+      int size = reader.readLength();
+      int width = getWidth(type);
+      if (width < 0 || 5L + (long) size * width
+        + (isPartitionList ? 4 : 0) > oEnd - o) {
+        throw new IOException(
+          "Corrupted array header.");
+      }
+      dest[o++] = type;
+      o = writeIntBE(dest, o, size);
+      if (type == DataType.INT_ARRAY) {
+        int prev = 0;
+        for (int i = 0; i < size; i++) {
+          prev += unzigzag(reader.readVarLong());
+          o = writeIntBE(dest, o, prev);
+        }
+      } else {
+        long prev = 0L;
+        for (int i = 0; i < size; i++) {
+          prev += unzigzagLong(reader.readVarLong());
+          o = writeIntBE(dest, o, (int) (prev >>> 32));
+          o = writeIntBE(dest, o, (int) prev);
+        }
+      }
+      if (isPartitionList) {
+        o = writeIntBE(dest, o,
+          unzigzag(reader.readVarLong()));
+      }
+    }
+    if (o != oEnd) {
+      throw new IOException("Decoded " + (o - destPos)
+        + " bytes, expected " + decodedLen);
+    }
+  }
+
+  /**
+   * Check if the body is made of IntArrays and
+   * LongArrays and the sampled neighbours are
+   * mostly in the ascending order
+   *
+   * @param bodyType the type of the body
+   * @param src      the body bytes
+   * @param srcPos   the start of the body bytes
+   * @param len      the size of the body bytes
+   * @return true if the body is worth encoding
+   */
+  public static boolean isSorted(byte bodyType,
+    byte[] src, int srcPos, int len) {
+    boolean isPartitionList =
+      bodyType == DataType.PARTITION_LIST;
+    if (!isPartitionList
+      && bodyType != DataType.SIMPLE_LIST) {
+      return false;
+    }
+    int pos = srcPos;
+    int end = srcPos + len;
+    int numPairs = 0;
+    int numAscending = 0;
+    while (pos < end) {
+      byte type = src[pos];
+      int size = getArraySize(type, src, pos, end,
+        isPartitionList);
+      if (size < 0) {
+        return false;
+      }
+      pos += 5;
+      int width = getWidth(type);
+      int step = Math.max(1,
+        (size - 1) / NUM_SAMPLE_PAIRS);
+      for (int i = 0; i + 1 < size; i += step) {
+        int p = pos + i * width;
+        boolean isAscending =
+          type == DataType.INT_ARRAY
+            ? readIntBE(src, p) <= readIntBE(src,
+            p + 4)
+            : readLongBE(src, p) <= readLongBE(src,
+            p + 8);
+        numPairs++;
+        if (isAscending) {
+          numAscending++;
+        }
+      }
+      pos += size * width
+        + (isPartitionList ? 4 : 0);
+    }
+    return numPairs > 0
+      && numAscending * 10 >= numPairs * 9;
+  }
+
+  /**
+   * Get the size of the array at the position
+   *
+   * @return the size, -1 if the array is not an
+   * IntArray or a LongArray or is truncated
+   */
+  private static int getArraySize(byte type,
+    byte[] src, int pos, int end,
+    boolean isPartitionList) {
+    int width = getWidth(type);
+    if (width < 0 || end - pos < 5) {
+      return -1;
+    }
+    int size = readIntBE(src, pos + 1);
+    if (size < 0 || 5L + (long) size * width
+      + (isPartitionList ? 4 : 0) > end - pos) {
+      return -1;
+    }
+    return size;
+  }
+
+  private static int getWidth(byte type) {
+    if (type == DataType.INT_ARRAY) {
+      return 4;
+    } else if (type == DataType.LONG_ARRAY) {
+      return 8;
+    } else {
+      return -1;
+    }
+  }
+
+  private static long readLongBE(byte[] src,
+    int pos) {
+    return ((long) readIntBE(src, pos) << 32)
+      | (readIntBE(src, pos + 4) & 0xFFFFFFFFL);
+  }
+
+  private static long zigzag(int v) {
+    return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+  }
+
+  private static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  private static int unzigzag(long v) {
+    int i = (int) v;
+    return (i >>> 1) ^ -(i & 1);
+  }
+
+  private static long unzigzagLong(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
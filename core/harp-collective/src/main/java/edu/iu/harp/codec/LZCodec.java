@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*******************************************************
+ * A fast LZ77 codec in the LZ4 block format. A
+ * sequence has a token (4 bits of the literal
+ * length and 4 bits of the match length), the
+ * literals, a 2-byte little-endian offset and
+ * the extra bytes of the match length. The last
+ * sequence only has literals.
+ ******************************************************/
+public class LZCodec extends Codec {
+
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  // A match cannot start in the last bytes
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_OFFSET = 65535;
+  private static final int HASH_LOG = 14;
+  // Skip faster in the incompressible bytes
+  private static final int SKIP_STRENGTH = 6;
+
+  private static final ThreadLocal<int[]> tables =
+    ThreadLocal
+      .withInitial(() -> new int[1 << HASH_LOG]);
+
+  /**
+   * Get the ID of the LZ codec
+   */
+  @Override
+  public byte getID() {
+    return Codecs.LZ;
+  }
+
+  /**
+   * Get the size of the LZ encoding of the
+   * incompressible bytes
+   */
+  @Override
+  public int getMaxEncodedSize(int len) {
+    return len + len / 255 + 16;
+  }
+
+  /**
+   * Encode the body as the literals and the
+   * matches found in the hash table
+   */
+  @Override
+  public int encode(byte bodyType, byte[] src,
+    int srcPos, int len, byte[] dest,
+    int destPos) {
+    int[] table = tables.get();
+    Arrays.fill(table, -1);
+    int end = srcPos + len;
+    int matchLimit = end - LAST_LITERALS;
+    int limit = end - MF_LIMIT;
+    int anchor = srcPos;
+    int pos = srcPos;
+    int d = destPos;
+    while (pos < limit) {
+      int seq = readIntLE(src, pos);
+      int h = hash(seq);
+      int ref = table[h];
+      table[h] = pos;
+      if (ref < 0 || pos - ref > MAX_OFFSET
+        || readIntLE(src, ref) != seq) {
+        pos += 1 + ((pos - anchor) >>> SKIP_STRENGTH);
+        continue;
+      }
+      int matchLen = MIN_MATCH;
+      while (pos + matchLen < matchLimit
+        && src[ref + matchLen] == src[pos
+          + matchLen]) {
+        matchLen++;
+      }
+      int litLen = pos - anchor;
+      int extraLen = matchLen - MIN_MATCH;
+      int tokenPos = d++;
+      d = writeLiterals(src, anchor, litLen, dest,
+        d);
+      int offset = pos - ref;
+      dest[d++] = (byte) offset;
+      dest[d++] = (byte) (offset >>> 8);
+      if (extraLen >= 15) {
+        d = writeLength(extraLen - 15, dest, d);
+      }
+      dest[tokenPos] =
+        (byte) ((Math.min(litLen, 15) << 4)
+          | Math.min(extraLen, 15));
+      pos += matchLen;
+      anchor = pos;
+    }
+    int litLen = end - anchor;
+    dest[d++] = (byte) (Math.min(litLen, 15) << 4);
+    d = writeLiterals(src, anchor, litLen, dest, d);
+    return d - destPos;
+  }
+
+  /**
+   * Write the extra bytes of the literal length
+   * and the literals
+   */
+  private static int writeLiterals(byte[] src,
+    int srcPos, int litLen, byte[] dest, int d) {
+    if (litLen >= 15) {
+      d = writeLength(litLen - 15, dest, d);
+    }
+    System.arraycopy(src, srcPos, dest, d, litLen);
+    return d + litLen;
+  }
+
+  private static int writeLength(int len,
+    byte[] dest, int d) {
+    while (len >= 255) {
+      dest[d++] = (byte) 255;
+      len -= 255;
+    }
+    dest[d++] = (byte) len;
+    return d;
+  }
+
+  /**
+   * Decode the literals and copy the matches
+   */
+  @Override
+  public void decode(byte bodyType, byte[] src,
+    int srcPos, int len, byte[] dest,
+    int destPos, int decodedLen)
+    throws IOException {
+    int s = srcPos;
+    int sEnd = srcPos + len;
+    int o = destPos;
+    int oEnd = destPos + decodedLen;
+    try {
+      while (true) {
+        int token = src[s++] & 0xFF;
+        int litLen = token >>> 4;
+        if (litLen == 15) {
+          int b;
+          do {
+            b = src[s++] & 0xFF;
+            litLen += b;
+          } while (b == 255);
+        }
+        if (litLen > sEnd - s || litLen > oEnd - o) {
+          throw new IOException(
+            "Corrupted literals.");
+        }
+        System.arraycopy(src, s, dest, o, litLen);
+        s += litLen;
+        o += litLen;
+        if (s >= sEnd) {
+          break;
+        }
+        int offset = (src[s] & 0xFF)
+          | ((src[s + 1] & 0xFF) << 8);
+        s += 2;
+        int matchLen = token & 0x0F;
+        if (matchLen == 15) {
+          int b;
+          do {
+            b = src[s++] & 0xFF;
+            matchLen += b;
+          } while (b == 255);
+        }
+        matchLen += MIN_MATCH;
+        int ref = o - offset;
+        if (offset == 0 || ref < destPos
+          || matchLen > oEnd - o) {
+          throw new IOException(
+            "Corrupted match.");
+        }
+        if (offset >= matchLen) {
+          System.arraycopy(dest, ref, dest, o,
+            matchLen);
+          o += matchLen;
+        } else {
+          // The match overlaps the output
+          for (int i = 0; i < matchLen; i++) {
+            dest[o++] = dest[ref + i];
+          }
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Corrupted block.", e);
+    }
+    if (o != oEnd) {
+      throw new IOException("Decoded " + (o - destPos)
+        + " bytes, expected " + decodedLen);
+    }
+  }
+
+  private static int readIntLE(byte[] src,
+    int pos) {
+    return (src[pos] & 0xFF)
+      | ((src[pos + 1] & 0xFF) << 8)
+      | ((src[pos + 2] & 0xFF) << 16)
+      | ((src[pos + 3] & 0xFF) << 24);
+  }
+
+  private static int hash(int seq) {
+    return (seq * -1640531535) >>> (32 - HASH_LOG);
+  }
+}
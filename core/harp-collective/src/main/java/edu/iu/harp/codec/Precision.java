@@ -0,0 +1,28 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+/*******************************************************
+ * The precisions of the quantized arrays. BF16
+ * keeps the exponent range of float with 8 bits
+ * of mantissa. FP16 is IEEE half precision. INT8
+ * rounds stochastically with a float scale for
+ * each block of values.
+ ******************************************************/
+public enum Precision {
+  BF16, FP16, INT8
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.Simple;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*******************************************************
+ * Quantize DoubleArrays and FloatArrays to bytes
+ * of lower precision. The bytes have the type of
+ * the array, the precision and the size, then
+ * the values. With error feedback, the rounding
+ * error of each partition is kept and added to
+ * the values quantized next time, so use one
+ * Quantizer for each table.
+ ******************************************************/
+public class Quantizer {
+
+  private static final Logger LOG =
+    Logger.getLogger(Quantizer.class);
+
+  // Array type, precision, size
+  private static final int HEAD_SIZE = 6;
+
+  private final Precision precision;
+  private final boolean useErrorFeedback;
+  private final Int2ObjectOpenHashMap<double[]> residuals;
+
+  /**
+   * Create a Quantizer for a table
+   *
+   * @param precision        the precision of the
+   *                         quantized values
+   * @param useErrorFeedback keep the rounding
+   *                         errors and add them
+   *                         to the next values
+   */
+  public Quantizer(Precision precision,
+    boolean useErrorFeedback) {
+    this.precision = precision;
+    this.useErrorFeedback = useErrorFeedback;
+    this.residuals = new Int2ObjectOpenHashMap<>();
+  }
+
+  /**
+   * Get the precision of the quantized values
+   *
+   * @return the precision
+   */
+  public Precision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Check if the rounding errors are kept and
+   * added to the next values
+   *
+   * @return true if using error feedback
+   */
+  public boolean isErrorFeedback() {
+    return useErrorFeedback;
+  }
+
+  /**
+   * Drop the rounding errors kept
+   */
+  public synchronized void clearResiduals() {
+    residuals.clear();
+  }
+
+  /**
+   * Check if the object can be quantized
+   *
+   * @param obj the object
+   * @return true if it is a DoubleArray or a
+   * FloatArray
+   */
+  public static boolean isQuantizable(Simple obj) {
+    return obj instanceof DoubleArray
+      || obj instanceof FloatArray;
+  }
+
+  /**
+   * Get the number of bytes of the quantized
+   * array
+   *
+   * @param precision the precision
+   * @param size      the size of the array
+   * @return the number of bytes
+   */
+  public static int getNumBytes(
+    Precision precision, int size) {
+    if (precision == Precision.INT8) {
+      int numBlocks = (size
+        + Constant.QUANTIZE_BLOCK_SIZE - 1)
+        / Constant.QUANTIZE_BLOCK_SIZE;
+      return HEAD_SIZE + size + numBlocks * 4;
+    } else {
+      return HEAD_SIZE + size * 2;
+    }
+  }
+
+  /**
+   * Quantize the array of the partition. With
+   * error feedback, the rounding error kept for
+   * the partition is added first.
+   *
+   * @param partitionID the ID of the partition
+   * @param obj         a DoubleArray or a
+   *                    FloatArray
+   * @return the quantized array, null if failed
+   */
+  public synchronized ByteArray
+    quantize(int partitionID, Simple obj) {
+    if (!isQuantizable(obj)) {
+      LOG.error("Cannot quantize " + obj);
+      return null;
+    }
+    int size = getSize(obj);
+    ByteArray bytes = ByteArray
+      .create(getNumBytes(precision, size), true);
+    if (bytes == null) {
+      return null;
+    }
+    double[] residual = null;
+    if (useErrorFeedback) {
+      residual = residuals.get(partitionID);
+      if (residual == null
+        || residual.length != size) {
+        residual = new double[size];
+        residuals.put(partitionID, residual);
+      }
+    }
+    encode(obj, precision, residual, bytes.get());
+    return bytes;
+  }
+
+  /**
+   * Quantize the array again to the bytes with
+   * the same precision and size, without error
+   * feedback
+   *
+   * @param obj   a DoubleArray or a FloatArray
+   * @param bytes the quantized array
+   * @return true if succeeded
+   */
+  public static boolean requantize(Simple obj,
+    ByteArray bytes) {
+    if (!isQuantizable(obj)
+      || bytes.size() < HEAD_SIZE) {
+      return false;
+    }
+    byte[] b = bytes.get();
+    int ordinal = b[1];
+    if (ordinal < 0
+      || ordinal >= Precision.values().length) {
+      return false;
+    }
+    Precision p = Precision.values()[ordinal];
+    if (bytes.size() != getNumBytes(p,
+      getSize(obj))) {
+      return false;
+    }
+    encode(obj, p, null, b);
+    return true;
+  }
+
+  /**
+   * Dequantize the bytes to an array
+   *
+   * @param bytes the quantized array
+   * @param reuse the array to decode to if it has
+   *              the same type and size, can be
+   *              null
+   * @return the reused array or a new one from
+   * the resource pool, null if failed
+   */
+  public static Simple dequantize(ByteArray bytes,
+    Simple reuse) {
+    if (bytes == null
+      || bytes.size() < HEAD_SIZE) {
+      LOG.error("Invalid quantized array.");
+      return null;
+    }
+    byte[] b = bytes.get();
+    byte type = b[0];
+    int ordinal = b[1];
+    int size = Codec.readIntBE(b, 2);
+    if (ordinal < 0
+      || ordinal >= Precision.values().length
+      || size <= 0 || bytes.size() != getNumBytes(
+        Precision.values()[ordinal], size)) {
+      LOG.error("Invalid quantized array.");
+      return null;
+    }
+    Precision p = Precision.values()[ordinal];
+    if (type == DataType.DOUBLE_ARRAY) {
+      DoubleArray array =
+        reuse instanceof DoubleArray
+          && ((DoubleArray) reuse).size() == size
+          ? (DoubleArray) reuse
+          : DoubleArray.create(size, false);
+      if (array == null) {
+        return null;
+      }
+      decode(b, p, array.get(), null,
+        array.start(), size);
+      return array;
+    } else if (type == DataType.FLOAT_ARRAY) {
+      FloatArray array =
+        reuse instanceof FloatArray
+          && ((FloatArray) reuse).size() == size
+          ? (FloatArray) reuse
+          : FloatArray.create(size, false);
+      if (array == null) {
+        return null;
+      }
+      decode(b, p, null, array.get(),
+        array.start(), size);
+      return array;
+    } else {
+      LOG.error("Invalid quantized type " + type);
+      return null;
+    }
+  }
+
+  private static int getSize(Simple obj) {
+    if (obj instanceof DoubleArray) {
+      return ((DoubleArray) obj).size();
+    } else {
+      return ((FloatArray) obj).size();
+    }
+  }
+
+  /**
+   * Write the head and the quantized values
+   */
+  private static void encode(Simple obj,
+    Precision p, double[] residual, byte[] b) {
+    double[] doubles = null;
+    float[] floats = null;
+    int start;
+    int size;
+    if (obj instanceof DoubleArray) {
+      DoubleArray array = (DoubleArray) obj;
+      doubles = array.get();
+      start = array.start();
+      size = array.size();
+      b[0] = DataType.DOUBLE_ARRAY;
+    } else {
+      FloatArray array = (FloatArray) obj;
+      floats = array.get();
+      start = array.start();
+      size = array.size();
+      b[0] = DataType.FLOAT_ARRAY;
+    }
+    b[1] = (byte) p.ordinal();
+    int pos = Codec.writeIntBE(b, 2, size);
+    if (p == Precision.INT8) {
+      double[] block =
+        new double[Constant.QUANTIZE_BLOCK_SIZE];
+      ThreadLocalRandom random =
+        ThreadLocalRandom.current();
+      for (int i = 0; i < size;
+           i += Constant.QUANTIZE_BLOCK_SIZE) {
+        int len = Math.min(
+          Constant.QUANTIZE_BLOCK_SIZE, size - i);
+        double max = 0.0;
+        for (int j = 0; j < len; j++) {
+          double v = doubles != null
+            ? doubles[start + i + j]
+            : floats[start + i + j];
+          if (residual != null) {
+            v += residual[i + j];
+          }
+          block[j] = v;
+          max = Math.max(max, Math.abs(v));
+        }
+        float scale = (float) (max / 127.0);
+        pos = Codec.writeIntBE(b, pos,
+          Float.floatToIntBits(scale));
+        for (int j = 0; j < len; j++) {
+          int q = 0;
+          if (scale > 0.0f) {
+            // Stochastic rounding is unbiased
+            q = (int) Math.floor(block[j] / scale
+              + random.nextDouble());
+            q = Math.max(-127, Math.min(127, q));
+          }
+          b[pos++] = (byte) q;
+          if (residual != null) {
+            residual[i + j] = block[j] - q * scale;
+          }
+        }
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        double v = doubles != null
+          ? doubles[start + i] : floats[start + i];
+        if (residual != null) {
+          v += residual[i];
+        }
+        int h;
+        float f;
+        if (p == Precision.BF16) {
+          h = toBFloat16((float) v);
+          f = fromBFloat16(h);
+        } else {
+          h = toHalf((float) v);
+          f = fromHalf(h);
+        }
+        b[pos++] = (byte) (h >>> 8);
+        b[pos++] = (byte) h;
+        if (residual != null) {
+          residual[i] = v - f;
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the quantized values to the array
+   */
+  private static void decode(byte[] b,
+    Precision p, double[] doubles,
+    float[] floats, int start, int size) {
+    int pos = HEAD_SIZE;
+    if (p == Precision.INT8) {
+      for (int i = 0; i < size;
+           i += Constant.QUANTIZE_BLOCK_SIZE) {
+        int len = Math.min(
+          Constant.QUANTIZE_BLOCK_SIZE, size - i);
+        float scale = Float.intBitsToFloat(
+          Codec.readIntBE(b, pos));
+        pos += 4;
+        for (int j = 0; j < len; j++) {
+          double v = b[pos++] * scale;
+          if (doubles != null) {
+            doubles[start + i + j] = v;
+          } else {
+            floats[start + i + j] = (float) v;
+          }
+        }
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        int h = ((b[pos] & 0xFF) << 8)
+          | (b[pos + 1] & 0xFF);
+        pos += 2;
+        float f = p == Precision.BF16
+          ? fromBFloat16(h) : fromHalf(h);
+        if (doubles != null) {
+          doubles[start + i] = f;
+        } else {
+          floats[start + i] = f;
+        }
+      }
+    }
+  }
+
+  /**
+   * Round the float to bfloat16 to the nearest
+   * even
+   */
+  static int toBFloat16(float f) {
+    int bits = Float.floatToRawIntBits(f);
+    if (Float.isNaN(f)) {
+      return 0x7FC0;
+    }
+    return (bits + 0x7FFF + ((bits >>> 16) & 1))
+      >>> 16;
+  }
+
+  static float fromBFloat16(int h) {
+    return Float.intBitsToFloat(h << 16);
+  }
+
+  /**
+   * Round the float to IEEE half precision to the
+   * nearest even
+   */
+  static int toHalf(float f) {
+    int bits = Float.floatToRawIntBits(f);
+    int sign = (bits >>> 16) & 0x8000;
+    int val = bits & 0x7FFFFFFF;
+    if (val >= 0x7F800000) {
+      // Infinity or NaN
+      return sign | 0x7C00
+        | (val > 0x7F800000 ? 0x200 : 0);
+    }
+    if (val >= 0x477FF000) {
+      // Overflow, not less than 65520
+      return sign | 0x7C00;
+    }
+    if (val < 0x38800000) {
+      // Subnormal, less than 2^-14
+      if (val < 0x33000000) {
+        return sign;
+      }
+      int exp = val >>> 23;
+      int mant = (val & 0x7FFFFF) | 0x800000;
+      int shift = 126 - exp;
+      int m = mant >>> shift;
+      int rem = mant & ((1 << shift) - 1);
+      int half = 1 << (shift - 1);
+      if (rem > half
+        || (rem == half && (m & 1) != 0)) {
+        m++;
+      }
+      return sign | m;
+    }
+    int h = (val - 0x38000000) >>> 13;
+    int rem = val & 0x1FFF;
+    if (rem > 0x1000
+      || (rem == 0x1000 && (h & 1) != 0)) {
+      h++;
+    }
+    return sign | h;
+  }
+
+  static float fromHalf(int h) {
+    int sign = (h & 0x8000) << 16;
+    int exp = (h >>> 10) & 0x1F;
+    int mant = h & 0x3FF;
+    if (exp == 0) {
+      float f = Math.scalb((float) mant, -24);
+      return sign == 0 ? f : -f;
+    } else if (exp == 31) {
+      return Float.intBitsToFloat(
+        sign | 0x7F800000 | (mant << 13));
+    } else {
+      return Float.intBitsToFloat(sign
+        | ((exp + 112) << 23) | (mant << 13));
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import java.io.IOException;
+
+/*******************************************************
+ * Read varints and bytes from an encoded array
+ * with bound checks
+ ******************************************************/
+class VarIntReader {
+
+  private final byte[] bytes;
+  private int pos;
+  private final int end;
+
+  VarIntReader(byte[] bytes, int pos, int len) {
+    this.bytes = bytes;
+    this.pos = pos;
+    this.end = pos + len;
+  }
+
+  boolean hasRemaining() {
+    return pos < end;
+  }
+
+  byte readByte() throws IOException {
+    if (pos >= end) {
+      throw new IOException("Unexpected end.");
+    }
+    return bytes[pos++];
+  }
+
+  /**
+   * Read an unsigned varint
+   *
+   * @return the value
+   * @throws IOException
+   */
+  long readVarLong() throws IOException {
+    long v = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = readByte();
+      v |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return v;
+      }
+    }
+    throw new IOException("Malformed varint.");
+  }
+
+  /**
+   * Read an unsigned varint as a non-negative
+   * int, usually a length
+   *
+   * @return the value
+   * @throws IOException
+   */
+  int readLength() throws IOException {
+    long v = readVarLong();
+    if (v < 0L || v > Integer.MAX_VALUE) {
+      throw new IOException(
+        "Invalid length " + v);
+    }
+    return (int) v;
+  }
+
+  /**
+   * Copy the bytes to the output
+   *
+   * @param dest the output
+   * @param destPos the start of the output
+   * @param len the number of bytes
+   * @throws IOException
+   */
+  void readBytes(byte[] dest, int destPos,
+    int len) throws IOException {
+    if (len > end - pos) {
+      throw new IOException("Unexpected end.");
+    }
+    System.arraycopy(bytes, pos, dest, destPos,
+      len);
+    pos += len;
+  }
+}
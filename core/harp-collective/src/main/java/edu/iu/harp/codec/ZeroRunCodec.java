@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*******************************************************
+ * Encode the runs of zero bytes in the sparse
+ * primitive arrays. The output is a sequence of
+ * (the literal length, the literals, the zero
+ * run length) with the lengths in varints.
+ ******************************************************/
+public class ZeroRunCodec extends Codec {
+
+  // Shorter zero runs are kept in the literals
+  private static final int MIN_ZERO_RUN = 4;
+
+  /**
+   * Get the ID of the zero run codec
+   */
+  @Override
+  public byte getID() {
+    return Codecs.ZERO_RUN;
+  }
+
+  /**
+   * Get the size of the zero run encoding of the
+   * incompressible bytes
+   */
+  @Override
+  public int getMaxEncodedSize(int len) {
+    return len + len / 64 + 16;
+  }
+
+  /**
+   * Encode the body as the literals and the
+   * zero runs
+   */
+  @Override
+  public int encode(byte bodyType, byte[] src,
+    int srcPos, int len, byte[] dest,
+    int destPos) {
+    int end = srcPos + len;
+    int pos = srcPos;
+    int d = destPos;
+    while (pos < end) {
+      int litStart = pos;
+      int zeroStart = end;
+      int zeroEnd = end;
+      while (pos < end) {
+        if (src[pos] != 0) {
+          pos++;
+          continue;
+        }
+        int z = pos + 1;
+        while (z < end && src[z] == 0) {
+          z++;
+        }
+        if (z - pos >= MIN_ZERO_RUN || z == end) {
+          zeroStart = pos;
+          zeroEnd = z;
+          break;
+        }
+        pos = z;
+      }
+      int litLen = zeroStart - litStart;
+      d = writeVarLong(dest, d, litLen);
+      System.arraycopy(src, litStart, dest, d,
+        litLen);
+      d += litLen;
+      d = writeVarLong(dest, d, zeroEnd - zeroStart);
+      pos = zeroEnd;
+    }
+    return d - destPos;
+  }
+
+  /**
+   * Decode the literals and fill the zero runs
+   */
+  @Override
+  public void decode(byte bodyType, byte[] src,
+    int srcPos, int len, byte[] dest,
+    int destPos, int decodedLen)
+    throws IOException {
+    VarIntReader reader =
+      new VarIntReader(src, srcPos, len);
+    int o = destPos;
+    int oEnd = destPos + decodedLen;
+    while (reader.hasRemaining()) {
+      int litLen = reader.readLength();
+      if (litLen > oEnd - o) {
+        throw new IOException(
+          "Corrupted literals.");
+      }
+      reader.readBytes(dest, o, litLen);
+      o += litLen;
+      int zeroLen = reader.readLength();
+      if (zeroLen > oEnd - o) {
+        throw new IOException(
+          "Corrupted zero run.");
+      }
+      // The pooled array is not cleared
+      Arrays.fill(dest, o, o + zeroLen, (byte) 0);
+      o += zeroLen;
+    }
+    if (o != oEnd) {
+      throw new IOException("Decoded " + (o - destPos)
+        + " bytes, expected " + decodedLen);
+    }
+  }
+}
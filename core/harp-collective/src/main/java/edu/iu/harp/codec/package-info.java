@@ -0,0 +1,4 @@
+/**
+ * Codecs compressing the encoded body arrays
+ */
+package edu.iu.harp.codec;
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+/*******************************************************
+ * The algorithms of allreduce. Recursive halving
+ * exchanges the whole table in log(P) rounds. Ring
+ * does a reduce-scatter and an allgather of P
+ * chunks, each worker sends 2(P-1)/P of the table.
+ * AUTO chooses by the largest table size of the
+ * workers and the number of workers.
+ ******************************************************/
+public enum AllreduceAlgorithm {
+  AUTO, RECURSIVE_HALVING, RING
+}
@@ -17,6 +17,8 @@
 package edu.iu.harp.collective;
 
 import edu.iu.harp.client.DataSender;
+import edu.iu.harp.combiner.LongArrCombiner;
+import edu.iu.harp.combiner.Operation;
 import edu.iu.harp.example.DoubleArrPlus;
 import edu.iu.harp.io.ConnPool;
 import edu.iu.harp.io.Constant;
@@ -27,16 +29,24 @@ import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
 import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.Array;
 import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.server.Server;
+import edu.iu.harp.trace.Tracer;
 import edu.iu.harp.worker.Workers;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
@@ -137,6 +147,115 @@ public class AllreduceCollective {
     System.exit(0);
   }
 
+  /**
+   * Allreduce communication operation with the
+   * given algorithm. The ring algorithm expects
+   * the table to have the same partitions of the
+   * same sizes on all the workers, as a dense
+   * model does, so that every worker makes the
+   * same choices. AUTO allreduces the table sizes
+   * first, so that every worker chooses the same
+   * algorithm.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @param algorithm     the allreduce algorithm
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  allreduce(final String contextName,
+            final String operationName,
+            final Table<P> table, final DataMap dataMap,
+            final Workers workers,
+            AllreduceAlgorithm algorithm) {
+    if (algorithm == AllreduceAlgorithm.AUTO) {
+      algorithm = chooseAlgorithm(contextName,
+          operationName, table, dataMap, workers);
+      if (algorithm == null) {
+        return false;
+      }
+    }
+    if (algorithm == AllreduceAlgorithm.RING) {
+      return ringAllreduce(contextName,
+          operationName, table, dataMap, workers);
+    } else {
+      return allreduce(contextName, operationName,
+          table, dataMap, workers);
+    }
+  }
+
+  /**
+   * Choose the allreduce algorithm by the largest
+   * table of the workers. The local tables may
+   * differ, so the sizes are allreduced first and
+   * all the workers make the same choice.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return the allreduce algorithm, null if the
+   *         sizes cannot be allreduced
+   */
+  private static <P extends Simple> AllreduceAlgorithm
+  chooseAlgorithm(final String contextName,
+                  final String operationName,
+                  final Table<P> table, final DataMap dataMap,
+                  final Workers workers) {
+    if (workers.getNumWorkers() <= 2) {
+      return AllreduceAlgorithm.RECURSIVE_HALVING;
+    }
+    long size = 0L;
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      size += partition.getNumEnocdeBytes();
+    }
+    Table<LongArray> sizeTable = new Table<>(0,
+        new LongArrCombiner(Operation.MAX));
+    LongArray array = LongArray.create(1, false);
+    array.get()[0] = size;
+    sizeTable.addPartition(new Partition<>(0, array));
+    boolean isSuccess = allreduce(contextName,
+        operationName + "-size", sizeTable, dataMap,
+        workers);
+    long maxSize =
+        sizeTable.getPartition(0).get().get()[0];
+    sizeTable.release();
+    dataMap.cleanOperationData(contextName,
+        operationName + "-size");
+    if (!isSuccess) {
+      LOG.error("Fail to allreduce the table sizes");
+      return null;
+    }
+    return chooseAlgorithm(maxSize,
+        workers.getNumWorkers());
+  }
+
+  /**
+   * Choose the allreduce algorithm. Recursive
+   * halving has fewer rounds, ring sends less data
+   * when the table is large and there are more
+   * than two workers.
+   *
+   * @param size       the encoded bytes of the
+   *                   largest table
+   * @param numWorkers the number of workers
+   * @return the allreduce algorithm
+   */
+  public static AllreduceAlgorithm
+  chooseAlgorithm(long size, int numWorkers) {
+    if (numWorkers > 2
+        && size >= Constant.RING_ALLREDUCE_THRESHOLD) {
+      return AllreduceAlgorithm.RING;
+    } else {
+      return AllreduceAlgorithm.RECURSIVE_HALVING;
+    }
+  }
+
   /**
    * Allreduce communication operation.
    *
@@ -290,4 +409,325 @@ public class AllreduceCollective {
     }
     return true;
   }
+
+  /**
+   * Ring allreduce. The partitions are grouped to
+   * P chunks, large array partitions are split to
+   * P segments. A reduce-scatter of P - 1 steps
+   * leaves each worker with one reduced chunk, an
+   * allgather of P - 1 steps passes the reduced
+   * chunks around the ring. In every step a worker
+   * sends one chunk to the next worker and
+   * receives one from the previous worker.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  private static <P extends Simple> boolean
+  ringAllreduce(final String contextName,
+                final String operationName,
+                final Table<P> table, final DataMap dataMap,
+                final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int selfID = workers.getSelfID();
+    int nextID = workers.getNextID();
+    int numWorkers = workers.getNumWorkers();
+    int rank = selfID - workers.getMinID();
+    // Move the partitions to the chunks
+    List<Table<P>> chunks =
+        new ArrayList<>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      chunks.add(new Table<>(table.getTableID(),
+          table.getCombiner()));
+    }
+    Int2ObjectOpenHashMap<Partition<P>> splitPartitions =
+        new Int2ObjectOpenHashMap<>();
+    for (int id : table.getPartitionIDs()
+        .toIntArray()) {
+      Partition<P> partition =
+          table.removePartition(id);
+      if (isSplittable(partition.get(),
+          numWorkers)) {
+        splitPartitions.put(id, partition);
+        Array<?> array = (Array<?>) partition.get();
+        for (int i = 0; i < numWorkers; i++) {
+          int start =
+              getSegmentStart(array.size(), i,
+                  numWorkers);
+          int end = getSegmentStart(array.size(),
+              i + 1, numWorkers);
+          @SuppressWarnings("unchecked")
+          P segment = (P) PartitionUtil.copyArray(
+              array, start, end - start);
+          chunks.get(i).addPartition(
+              new Partition<>(id, segment));
+        }
+      } else {
+        chunks.get(Math.floorMod(id, numWorkers))
+            .addPartition(partition);
+      }
+    }
+    Int2ObjectOpenHashMap<Data> cachedDataMap =
+        new Int2ObjectOpenHashMap<>();
+    int numSteps = 2 * (numWorkers - 1);
+    boolean isFailed = false;
+    for (int step = 0; step < numSteps
+        && !isFailed; step++) {
+      boolean isReducing = step < numWorkers - 1;
+      int sendChunk = 0;
+      int recvChunk = 0;
+      if (isReducing) {
+        sendChunk =
+            Math.floorMod(rank - step, numWorkers);
+        recvChunk = Math.floorMod(rank - step - 1,
+            numWorkers);
+      } else {
+        int gatherStep = step - numWorkers + 1;
+        sendChunk = Math.floorMod(
+            rank + 1 - gatherStep, numWorkers);
+        recvChunk = Math.floorMod(
+            rank - gatherStep, numWorkers);
+      }
+      // Send the chunk, the step is used as the
+      // partition ID of the data
+      List<Transferable> sendPartitions =
+          new LinkedList<>(
+              chunks.get(sendChunk).getPartitions());
+      Data sendData =
+          new Data(DataType.PARTITION_LIST,
+              contextName, selfID, sendPartitions,
+              DataUtil.getNumTransListBytes(
+                  sendPartitions),
+              operationName, step);
+      DataSender sender = new DataSender(sendData,
+          nextID, workers, Constant.SEND_DECODE);
+      if (!sender.execute()) {
+        LOG.error("Fail to send chunk " + sendChunk
+            + " in step " + step);
+        isFailed = true;
+      }
+      sendData.releaseHeadArray();
+      sendData.releaseBodyArray();
+      sendData = null;
+      sendPartitions = null;
+      if (isFailed) {
+        break;
+      }
+      // Wait for the chunk of this step
+      Data recvData = cachedDataMap.remove(step);
+      while (recvData == null) {
+        recvData = IOUtil.waitAndGet(dataMap,
+            contextName, operationName);
+        if (recvData == null) {
+          isFailed = true;
+          break;
+        }
+        recvData.releaseHeadArray();
+        recvData.releaseBodyArray();
+        if (recvData.getPartitionID() != step) {
+          cachedDataMap.put(
+              recvData.getPartitionID(), recvData);
+          recvData = null;
+        }
+      }
+      if (!isFailed) {
+        if (isReducing) {
+          isFailed = !combinePartitions(
+              recvData.getBody(),
+              chunks.get(recvChunk));
+        } else {
+          replacePartitions(recvData.getBody(),
+              chunks.get(recvChunk));
+        }
+      }
+    }
+    if (isFailed) {
+      // Release
+      for (Data d : cachedDataMap.values()) {
+        d.release();
+      }
+      cachedDataMap = null;
+      for (Table<P> chunk : chunks) {
+        chunk.release();
+      }
+      for (Partition<P> partition : splitPartitions
+          .values()) {
+        partition.release();
+      }
+      table.release();
+      return false;
+    }
+    // A partition split only on other workers
+    // comes as segments in all the chunks, join
+    // them to a new array
+    for (int i = 0; i < numWorkers; i++) {
+      for (Partition<P> piece : chunks.get(i)
+          .getPartitions()) {
+        int id = piece.id();
+        if (Math.floorMod(id, numWorkers) != i
+            && !splitPartitions.containsKey(id)) {
+          int size = 0;
+          for (Table<P> chunk : chunks) {
+            Partition<P> segment =
+                chunk.getPartition(id);
+            if (segment != null) {
+              size += ((Array<?>) segment.get()).size();
+            }
+          }
+          @SuppressWarnings("unchecked")
+          P joined = (P) PartitionUtil.createArray(
+              (Array<?>) piece.get(), size);
+          splitPartitions.put(id,
+              new Partition<>(id, joined));
+        }
+      }
+    }
+    // Move the reduced partitions back, copy the
+    // segments to the original arrays
+    for (int i = 0; i < numWorkers; i++) {
+      for (Partition<P> piece : chunks.get(i)
+          .getPartitions()) {
+        Partition<P> partition =
+            splitPartitions.get(piece.id());
+        if (partition != null) {
+          Array<?> array =
+              (Array<?>) partition.get();
+          Array<?> segment = (Array<?>) piece.get();
+          System.arraycopy(segment.get(),
+              segment.start(), array.get(),
+              array.start() + getSegmentStart(
+                  array.size(), i, numWorkers),
+              segment.size());
+          piece.release();
+        } else {
+          table.addPartition(piece);
+        }
+      }
+    }
+    for (Partition<P> partition : splitPartitions
+        .values()) {
+      table.addPartition(partition);
+    }
+    return true;
+  }
+
+  /**
+   * Check if the partition is an array large
+   * enough to be split
+   *
+   * @param obj        the partition body
+   * @param numWorkers the number of workers
+   * @return true if the partition is split
+   */
+  private static boolean isSplittable(Simple obj,
+                                      int numWorkers) {
+    if (!(obj instanceof DoubleArray
+        || obj instanceof FloatArray
+        || obj instanceof IntArray
+        || obj instanceof LongArray)) {
+      return false;
+    }
+    Array<?> array = (Array<?>) obj;
+    return array.size() >= numWorkers && obj
+        .getNumEnocdeBytes() > Constant.RING_SPLIT_THRESHOLD;
+  }
+
+  /**
+   * Get the start of a segment
+   *
+   * @param size        the size of the array
+   * @param segment     the segment
+   * @param numSegments the number of segments
+   * @return the start of the segment
+   */
+  private static int getSegmentStart(int size,
+                                     int segment, int numSegments) {
+    return (int) ((long) size * segment
+        / numSegments);
+  }
+
+  /**
+   * Combine the partitions received to the chunk
+   *
+   * @param partitions the partitions received
+   * @param chunk      the chunk
+   * @return false if the combining fails
+   */
+  private static <P extends Simple> boolean
+  combinePartitions(List<Transferable> partitions,
+                    Table<P> chunk) {
+    PartitionCombiner<P> combiner =
+        chunk.getCombiner();
+    boolean isFailed = false;
+    long startTime = Tracer.begin();
+    for (Transferable obj : partitions) {
+      @SuppressWarnings("unchecked")
+      Partition<P> partition = (Partition<P>) obj;
+      Partition<P> curPar =
+          chunk.getPartition(partition.id());
+      if (curPar == null) {
+        chunk.addPartition(partition);
+      } else {
+        if (!isFailed && combiner.combine(
+            curPar.get(), partition.get())
+            == PartitionStatus.COMBINE_FAILED) {
+          LOG.error("Fail to combine partition "
+              + partition.id());
+          isFailed = true;
+        }
+        partition.release();
+      }
+    }
+    Tracer.end(Tracer.COMM, "combine", null,
+        startTime);
+    partitions.clear();
+    return !isFailed;
+  }
+
+  /**
+   * Replace the partitions in the chunk with the
+   * reduced partitions received. Arrays are
+   * copied to the current partitions, so that the
+   * partitions in the table are kept.
+   *
+   * @param partitions the partitions received
+   * @param chunk      the chunk
+   */
+  private static <P extends Simple> void
+  replacePartitions(List<Transferable> partitions,
+                    Table<P> chunk) {
+    for (Transferable obj : partitions) {
+      @SuppressWarnings("unchecked")
+      Partition<P> partition = (Partition<P>) obj;
+      Partition<P> curPar =
+          chunk.getPartition(partition.id());
+      if (curPar != null
+          && curPar.get() instanceof Array
+          && curPar.get().getClass() == partition
+          .get().getClass()
+          && ((Array<?>) curPar.get())
+          .size() == ((Array<?>) partition.get())
+          .size()) {
+        Array<?> curArray = (Array<?>) curPar.get();
+        Array<?> array = (Array<?>) partition.get();
+        PartitionUtil.copyElements(array,
+            array.start(), curArray,
+            curArray.start(), array.size());
+        partition.release();
+      } else {
+        if (curPar != null) {
+          chunk.removePartition(partition.id());
+          curPar.release();
+        }
+        chunk.addPartition(partition);
+      }
+    }
+    partitions.clear();
+  }
 }
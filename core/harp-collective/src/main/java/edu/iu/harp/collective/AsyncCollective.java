@@ -0,0 +1,256 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*******************************************************
+ * Run the collectives on a communication
+ * executor and return futures, so the caller can
+ * compute while the data is synchronized.
+ * Several operations can be in flight, each is
+ * keyed by its context name and operation name,
+ * which must be unique among the operations in
+ * flight. The operations must be submitted in
+ * the same order on all the workers, since the
+ * executor runs them in order with a fixed
+ * number of threads. The tables given to an
+ * operation must not be used until its future
+ * is completed.
+ ******************************************************/
+public class AsyncCollective {
+
+  private static final Logger LOG =
+      Logger.getLogger(AsyncCollective.class);
+
+  private final DataMap dataMap;
+  private final Workers workers;
+  private final ExecutorService executor;
+  /** The futures of the operations in flight */
+  private final ConcurrentHashMap<String, CompletableFuture<Boolean>> inFlight;
+
+  public AsyncCollective(DataMap dataMap,
+                         Workers workers, int numThreads) {
+    this.dataMap = dataMap;
+    this.workers = workers;
+    final AtomicInteger threadCount =
+        new AtomicInteger(0);
+    this.executor = Executors.newFixedThreadPool(
+        numThreads, runnable -> {
+          Thread thread = new Thread(runnable,
+              "harp-comm-" + threadCount.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.inFlight = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Run an operation on the communication
+   * executor. The data of the operation left in
+   * the DataMap is cleaned when it is done.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param operation     the operation
+   * @return the future of the result, completed
+   * with false if an operation with the same
+   * names is in flight
+   */
+  public CompletableFuture<Boolean> submit(
+      final String contextName,
+      final String operationName,
+      final Supplier<Boolean> operation) {
+    final String key =
+        contextName + "/" + operationName;
+    final CompletableFuture<Boolean> future =
+        new CompletableFuture<>();
+    if (inFlight.putIfAbsent(key, future) != null) {
+      LOG.error("Operation " + key
+          + " is in flight already.");
+      return CompletableFuture.completedFuture(false);
+    }
+    try {
+      executor.execute(() -> {
+        boolean isSuccess = false;
+        try {
+          isSuccess = operation.get();
+        } catch (Throwable t) {
+          LOG.error("Fail to run operation " + key,
+              t);
+        } finally {
+          dataMap.cleanOperationData(contextName,
+              operationName);
+          inFlight.remove(key);
+        }
+        future.complete(isSuccess);
+      });
+    } catch (Exception e) {
+      LOG.error("Fail to submit operation " + key,
+          e);
+      inFlight.remove(key);
+      future.complete(false);
+    }
+    return future;
+  }
+
+  /**
+   * Allreduce the partitions of the tables
+   * asynchronously
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @return the future of the result
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+  allreduce(String contextName,
+            String operationName, Table<P> table) {
+    return submit(contextName, operationName,
+        () -> AllreduceCollective.allreduce(
+            contextName, operationName, table,
+            dataMap, workers));
+  }
+
+  /**
+   * Regroup the partitions of the tables
+   * asynchronously
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param partitioner   the Partitioner
+   * @return the future of the result
+   */
+  public <P extends Simple, PT extends Partitioner>
+  CompletableFuture<Boolean> regroup(
+      String contextName, String operationName,
+      Table<P> table, PT partitioner) {
+    return submit(contextName, operationName,
+        () -> RegroupCollective.regroupCombine(
+            contextName, operationName, table,
+            partitioner, dataMap, workers));
+  }
+
+  /**
+   * Rotate the partitions of the global table
+   * asynchronously
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param globalTable   the global Table
+   * @param rotateMap     the map from worker to
+   *                      worker, null for the ring
+   * @return the future of the result
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+  rotate(String contextName,
+         String operationName, Table<P> globalTable,
+         Int2IntMap rotateMap) {
+    return submit(contextName, operationName,
+        () -> LocalGlobalSyncCollective.rotate(
+            contextName, operationName, globalTable,
+            rotateMap, dataMap, workers));
+  }
+
+  /**
+   * Push the partitions of the local tables to
+   * the global table asynchronously
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param localTable    the local Table
+   * @param globalTable   the global Table
+   * @param partitioner   the Partitioner
+   * @return the future of the result
+   */
+  public <P extends Simple, PT extends Partitioner>
+  CompletableFuture<Boolean> push(
+      String contextName, String operationName,
+      Table<P> localTable, Table<P> globalTable,
+      PT partitioner) {
+    return submit(contextName, operationName,
+        () -> LocalGlobalSyncCollective.push(
+            contextName, operationName, localTable,
+            globalTable, partitioner, dataMap,
+            workers));
+  }
+
+  /**
+   * Pull the partitions of the global table to
+   * the local tables asynchronously
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param localTable    the local Table
+   * @param globalTable   the global Table
+   * @param useBcast      if using broadcast
+   * @return the future of the result
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+  pull(String contextName, String operationName,
+       Table<P> localTable, Table<P> globalTable,
+       boolean useBcast) {
+    return submit(contextName, operationName,
+        () -> LocalGlobalSyncCollective.pull(
+            contextName, operationName, localTable,
+            globalTable, useBcast, dataMap,
+            workers));
+  }
+
+  /**
+   * Get the number of the operations in flight
+   *
+   * @return the number of the operations
+   */
+  public int getNumInFlight() {
+    return inFlight.size();
+  }
+
+  /**
+   * Wait for the operations in flight and stop
+   * the communication executor
+   */
+  public void stop() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(
+          Constant.TERMINATION_TIMEOUT,
+          TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      LOG.error("Fail to stop the executor.", e);
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.partition.PartitionUtil;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.worker.WorkerInfo;
+import edu.iu.harp.worker.Workers;
+import org.apache.log4j.Logger;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/*******************************************************
+ * Collective communication aware of the nodes
+ * and the racks of the workers. The partitions
+ * are combined among the workers on each node
+ * first, then among the node leaders on each
+ * rack, so only one leader of each rack
+ * communicates across the racks. The result is
+ * broadcasted back through the same levels. The
+ * traffic inside a node goes through the shared
+ * memory if it is enabled in DataSender.
+ ******************************************************/
+public class HierarchicalCollective {
+
+  private static final Logger LOG =
+      Logger.getLogger(HierarchicalCollective.class);
+
+  /** The suffixes of the phase operations */
+  private static final String NODE_REDUCE =
+      "-node-reduce";
+  private static final String RACK_REDUCE =
+      "-rack-reduce";
+  private static final String LEADERS = "-leaders";
+  private static final String RACK_BCAST =
+      "-rack-bcast";
+  private static final String NODE_BCAST =
+      "-node-bcast";
+
+  /**
+   * Allreduce the partitions of the tables. The
+   * partitions are reduced to the node leaders,
+   * then to the rack leaders, allreduced among the
+   * rack leaders and then broadcasted inside each
+   * rack and each node.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final DataMap dataMap,
+      final Workers workers) {
+    return combineAcrossRacks(contextName,
+        operationName, table, dataMap, workers,
+        true);
+  }
+
+  /**
+   * Allgather the partitions of the tables. The
+   * partitions are gathered to the node leaders,
+   * then to the rack leaders, allgathered among the
+   * rack leaders and then broadcasted inside each
+   * rack and each node.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean allgather(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final DataMap dataMap,
+      final Workers workers) {
+    return combineAcrossRacks(contextName,
+        operationName, table, dataMap, workers,
+        false);
+  }
+
+  /**
+   * Broadcast the partitions of the table on the
+   * root worker. The root sends to one worker on
+   * each other rack, they send to one worker on
+   * each node of their racks, then each of them
+   * sends inside its node.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param bcastWorkerID the root worker
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean broadcast(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final int bcastWorkerID,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    Levels levels =
+        new Levels(workers, bcastWorkerID);
+    boolean isSuccess = true;
+    if (levels.leaderWorkers.isSelfInWorker()) {
+      isSuccess = treeBcast(contextName,
+          operationName + LEADERS, table,
+          levels.leaderRoot, dataMap,
+          levels.leaderWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + LEADERS);
+    }
+    if (isSuccess
+        && levels.rackWorkers.isSelfInWorker()) {
+      isSuccess = treeBcast(contextName,
+          operationName + RACK_BCAST, table,
+          levels.rackRoot, dataMap,
+          levels.rackWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + RACK_BCAST);
+    }
+    if (isSuccess) {
+      isSuccess = treeBcast(contextName,
+          operationName + NODE_BCAST, table,
+          levels.nodeRoot, dataMap,
+          levels.nodeWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + NODE_BCAST);
+    }
+    return isSuccess;
+  }
+
+  /**
+   * Reduce the partitions to the root worker. The
+   * partitions are reduced inside each node, then
+   * inside each rack, then across the racks. As
+   * in ReduceCollective, the tables of the other
+   * workers are released.
+   *
+   * @param contextName    the name of the context
+   * @param operationName  the name of the operation
+   * @param table          the Table
+   * @param reduceWorkerID the root worker
+   * @param dataMap        the DataMap
+   * @param workers        the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean reduce(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final int reduceWorkerID,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    Levels levels =
+        new Levels(workers, reduceWorkerID);
+    boolean isSuccess =
+        ReduceCollective.reduce(contextName,
+            operationName + NODE_REDUCE, table,
+            levels.nodeRoot, dataMap,
+            levels.nodeWorkers);
+    dataMap.cleanOperationData(contextName,
+        operationName + NODE_REDUCE);
+    if (isSuccess
+        && levels.rackWorkers.isSelfInWorker()) {
+      isSuccess = ReduceCollective.reduce(
+          contextName, operationName + RACK_REDUCE,
+          table, levels.rackRoot, dataMap,
+          levels.rackWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + RACK_REDUCE);
+    }
+    if (isSuccess
+        && levels.leaderWorkers.isSelfInWorker()) {
+      isSuccess = ReduceCollective.reduce(
+          contextName, operationName + LEADERS,
+          table, levels.leaderRoot, dataMap,
+          levels.leaderWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + LEADERS);
+    }
+    return isSuccess;
+  }
+
+  /**
+   * Reduce the partitions to the node leaders and
+   * the rack leaders, combine them among the rack
+   * leaders, then broadcast inside each rack and
+   * each node
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @param isAllreduce   allreduce or allgather
+   *                      among the leaders
+   * @return true if succeeded, false otherwise
+   */
+  private static <P extends Simple> boolean combineAcrossRacks(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final DataMap dataMap,
+      final Workers workers,
+      final boolean isAllreduce) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    Levels levels = new Levels(workers,
+        Constant.UNKNOWN_WORKER_ID);
+    // The leaders are 0 in the groups
+    boolean isSuccess =
+        ReduceCollective.reduce(contextName,
+            operationName + NODE_REDUCE, table, 0,
+            dataMap, levels.nodeWorkers);
+    dataMap.cleanOperationData(contextName,
+        operationName + NODE_REDUCE);
+    boolean isRackMember =
+        levels.rackWorkers.isSelfInWorker();
+    if (isSuccess && isRackMember) {
+      isSuccess = ReduceCollective.reduce(
+          contextName, operationName + RACK_REDUCE,
+          table, 0, dataMap, levels.rackWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + RACK_REDUCE);
+    }
+    if (isSuccess
+        && levels.leaderWorkers.isSelfInWorker()) {
+      if (isAllreduce) {
+        isSuccess = AllreduceCollective.allreduce(
+            contextName, operationName + LEADERS,
+            table, dataMap, levels.leaderWorkers);
+      } else {
+        isSuccess = AllgatherCollective.allgather(
+            contextName, operationName + LEADERS,
+            table, dataMap, levels.leaderWorkers);
+      }
+      dataMap.cleanOperationData(contextName,
+          operationName + LEADERS);
+    }
+    if (isSuccess && isRackMember) {
+      isSuccess = treeBcast(contextName,
+          operationName + RACK_BCAST, table, 0,
+          dataMap, levels.rackWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + RACK_BCAST);
+    }
+    if (isSuccess) {
+      isSuccess = treeBcast(contextName,
+          operationName + NODE_BCAST, table, 0,
+          dataMap, levels.nodeWorkers);
+      dataMap.cleanOperationData(contextName,
+          operationName + NODE_BCAST);
+    }
+    return isSuccess;
+  }
+
+  /*******************************************************
+   * The groups of the workers on the three levels:
+   * the workers on the node of this worker, the
+   * node leaders on the rack of this worker and
+   * the rack leaders. The root worker, if given,
+   * replaces the leaders of its node and its rack,
+   * so that it is in the groups on all the levels.
+   ******************************************************/
+  private static class Levels {
+    private final Workers nodeWorkers;
+    private final Workers rackWorkers;
+    private final Workers leaderWorkers;
+    /** The root in each group */
+    private int nodeRoot = 0;
+    private int rackRoot = 0;
+    private int leaderRoot = 0;
+
+    private Levels(Workers workers, int rootID) {
+      int[] nodeIDs = workers.getNodeWorkerIDs();
+      int[] rackIDs = workers.getRackNodeLeaderIDs();
+      int[] leaderIDs = workers.getRackLeaderIDs();
+      WorkerInfo rootInfo = rootID >= 0
+          ? workers.getWorkerInfo(rootID) : null;
+      if (rootInfo != null) {
+        for (int i = 0; i < nodeIDs.length; i++) {
+          if (nodeIDs[i] == rootID) {
+            nodeRoot = i;
+          }
+        }
+        for (int i = 0; i < rackIDs.length; i++) {
+          if (workers.getWorkerInfo(rackIDs[i])
+              .getNode().equals(rootInfo.getNode())) {
+            rackIDs[i] = rootID;
+            rackRoot = i;
+          }
+        }
+        for (int i = 0; i < leaderIDs.length; i++) {
+          if (workers.getWorkerInfo(leaderIDs[i])
+              .getRack() == rootInfo.getRack()) {
+            leaderIDs[i] = rootID;
+            leaderRoot = i;
+          }
+        }
+      }
+      nodeWorkers = workers.createGroup(nodeIDs);
+      rackWorkers = workers.createGroup(rackIDs);
+      leaderWorkers = workers.createGroup(leaderIDs);
+    }
+  }
+
+  /**
+   * Broadcast in a binomial tree with
+   * point-to-point sending, so it works on a
+   * group of the workers. Each worker forwards
+   * the encoded data it receives to its children
+   * before adding the partitions to the table.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param rootID        the root in the workers
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  static <P extends Simple> boolean treeBcast(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final int rootID,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int numWorkers = workers.getNumWorkers();
+    int selfID = workers.getSelfID();
+    int rank = Math.floorMod(selfID - rootID,
+        numWorkers);
+    // The children are rank + mask * 2^i
+    int mask = 1;
+    Data data = null;
+    if (rank == 0) {
+      List<Transferable> ownedPartitions =
+          new LinkedList<>(table.getPartitions());
+      data = new Data(DataType.PARTITION_LIST,
+          contextName, selfID, ownedPartitions,
+          DataUtil.getNumTransListBytes(
+              ownedPartitions),
+          operationName, ownedPartitions.size());
+    } else {
+      while (mask <= rank) {
+        mask <<= 1;
+      }
+      data = IOUtil.waitAndGet(dataMap,
+          contextName, operationName);
+      if (data == null) {
+        return false;
+      }
+    }
+    // Send to the farthest child first
+    int numChildren = 0;
+    while (rank + (mask << numChildren) < numWorkers) {
+      numChildren++;
+    }
+    boolean isFailed = false;
+    for (int i = numChildren - 1; i >= 0; i--) {
+      int destID = (rank + (mask << i) + rootID)
+          % numWorkers;
+      DataSender sender = new DataSender(data,
+          destID, workers, Constant.SEND_DECODE);
+      if (!sender.execute()) {
+        LOG.error("Fail to send to " + destID);
+        isFailed = true;
+      }
+    }
+    data.releaseHeadArray();
+    data.releaseBodyArray();
+    if (rank != 0) {
+      PartitionUtil.addPartitionsToTable(
+          data.getBody(), table);
+    }
+    return !isFailed;
+  }
+}
@@ -403,7 +403,9 @@ public class LocalGlobalSyncCollective {
   }
 
   /**
-   * Copy local partitions
+   * Copy local partitions. The partitions of
+   * primitive arrays are copied in bulk, others
+   * are copied through encoding and decoding.
    *
    * @param contextName     the name of the context
    * @param operationName   the name of the operation
@@ -419,6 +421,15 @@ public class LocalGlobalSyncCollective {
       List<Transferable> localPartitions, int size,
       Workers workers, DataMap dataMap) {
     if (localPartitions.size() > 0) {
+      List<Transferable> copies = PartitionUtil
+          .copyArrayPartitions(localPartitions);
+      if (copies != null) {
+        dataMap.putData(new Data(
+            DataType.PARTITION_LIST, contextName,
+            selfID, copies, size, operationName,
+            copies.size()));
+        return;
+      }
       Data data = new Data(
           DataType.PARTITION_LIST, contextName,
           selfID, localPartitions, size,
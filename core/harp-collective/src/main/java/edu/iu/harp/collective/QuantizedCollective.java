@@ -0,0 +1,376 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.codec.Quantizer;
+import edu.iu.harp.combiner.QuantizedArrCombiner;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import org.apache.log4j.Logger;
+
+/*******************************************************
+ * The collectives sending the DoubleArray and
+ * FloatArray partitions in lower precision. The
+ * partitions are quantized on the calling thread,
+ * the collective runs on the quantized table,
+ * then the partitions are dequantized back to the
+ * table, reusing the arrays of the same IDs and
+ * sizes. Partitions combined in the collective
+ * are dequantized, combined by the combiner of the
+ * table and quantized again.
+ ******************************************************/
+public class QuantizedCollective {
+
+  private static final Logger LOG =
+      Logger.getLogger(QuantizedCollective.class);
+
+  /**
+   * Allreduce the table in lower precision. All
+   * the partitions are rounded to the precision.
+   *
+   * @param <P>           the type of the partitions
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param quantizer     the Quantizer of the table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  allreduce(final String contextName,
+            final String operationName,
+            final Table<P> table, Quantizer quantizer,
+            final DataMap dataMap,
+            final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    Table<ByteArray> qTable =
+        quantize(table, quantizer);
+    if (qTable == null) {
+      return false;
+    }
+    Int2ObjectOpenHashMap<P> originals =
+        removePartitions(table);
+    boolean isSuccess =
+        AllreduceCollective.allreduce(contextName,
+            operationName, qTable, dataMap, workers);
+    return dequantize(qTable, table, originals)
+        && isSuccess;
+  }
+
+  /**
+   * Regroup the table in lower precision. The
+   * partitions staying on this worker are also
+   * rounded to the precision.
+   *
+   * @param <P>           the type of the partitions
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Table
+   * @param partitioner   the Partitioner
+   * @param quantizer     the Quantizer of the table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  regroup(final String contextName,
+          String operationName, Table<P> table,
+          Partitioner partitioner,
+          Quantizer quantizer, DataMap dataMap,
+          Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    Table<ByteArray> qTable =
+        quantize(table, quantizer);
+    if (qTable == null) {
+      return false;
+    }
+    Int2ObjectOpenHashMap<P> originals =
+        removePartitions(table);
+    boolean isSuccess =
+        RegroupCollective.regroupCombine(contextName,
+            operationName, qTable, partitioner,
+            dataMap, workers);
+    return dequantize(qTable, table, originals)
+        && isSuccess;
+  }
+
+  /**
+   * Rotate the table in lower precision
+   *
+   * @param <P>           the type of the partitions
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param globalTable   the global Table
+   * @param rotateMap     the rotation map
+   * @param quantizer     the Quantizer of the table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  rotate(final String contextName,
+         final String operationName,
+         Table<P> globalTable, Int2IntMap rotateMap,
+         Quantizer quantizer, DataMap dataMap,
+         Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    Table<ByteArray> qTable =
+        quantize(globalTable, quantizer);
+    if (qTable == null) {
+      return false;
+    }
+    Int2ObjectOpenHashMap<P> originals =
+        removePartitions(globalTable);
+    boolean isSuccess =
+        LocalGlobalSyncCollective.rotate(contextName,
+            operationName, qTable, rotateMap,
+            dataMap, workers);
+    return dequantize(qTable, globalTable,
+        originals) && isSuccess;
+  }
+
+  /**
+   * Push the local table to the global table in
+   * lower precision. The local table is not
+   * changed, the received partitions are
+   * dequantized and combined to the global table
+   * in full precision.
+   *
+   * @param <P>           the type of the partitions
+   * @param <PT>          the type of the partitioner
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param localTable    the local Table
+   * @param globalTable   the global Table
+   * @param partitioner   the Partitioner
+   * @param quantizer     the Quantizer of the local
+   *                      table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  @SuppressWarnings("unchecked")
+  public static <P extends Simple, PT extends Partitioner>
+  boolean push(final String contextName,
+               final String operationName,
+               Table<P> localTable, Table<P> globalTable,
+               PT partitioner, Quantizer quantizer,
+               DataMap dataMap, Workers workers) {
+    Table<ByteArray> qLocalTable =
+        quantize(localTable, quantizer);
+    if (qLocalTable == null) {
+      return false;
+    }
+    // The global partitions are represented by
+    // placeholders, received partitions are
+    // combined to the global partitions directly
+    Reference2ObjectOpenHashMap<ByteArray, P> targets =
+        new Reference2ObjectOpenHashMap<>();
+    Table<ByteArray> qGlobalTable = new Table<>(
+        globalTable.getTableID(),
+        new GlobalCombiner<>(targets,
+            globalTable.getCombiner()));
+    boolean isFailed = false;
+    for (Partition<P> partition : globalTable
+        .getPartitions()) {
+      ByteArray placeholder =
+          ByteArray.create(1, true);
+      if (placeholder == null) {
+        isFailed = true;
+        break;
+      }
+      targets.put(placeholder, partition.get());
+      qGlobalTable.addPartition(new Partition<>(
+          partition.id(), placeholder));
+    }
+    boolean isSuccess = !isFailed
+        && LocalGlobalSyncCollective.push(contextName,
+        operationName, qLocalTable, qGlobalTable,
+        partitioner, dataMap, workers);
+    qLocalTable.release();
+    for (Partition<ByteArray> partition : qGlobalTable
+        .getPartitions()) {
+      if (!targets.containsKey(partition.get())) {
+        Simple obj = Quantizer
+            .dequantize(partition.get(), null);
+        if (obj == null) {
+          isSuccess = false;
+        } else {
+          globalTable.addPartition(
+              new Partition<>(partition.id(), (P) obj));
+        }
+      }
+    }
+    qGlobalTable.release();
+    return isSuccess;
+  }
+
+  /**
+   * Quantize the partitions of the table. The
+   * table is not changed.
+   *
+   * @param <P>       the type of the partitions
+   * @param table     the Table
+   * @param quantizer the Quantizer
+   * @return the quantized table, null if a
+   * partition cannot be quantized
+   */
+  private static <P extends Simple> Table<ByteArray>
+  quantize(Table<P> table, Quantizer quantizer) {
+    Table<ByteArray> qTable = new Table<>(
+        table.getTableID(),
+        new QuantizedArrCombiner(table.getCombiner()),
+        table.getNumPartitions());
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      ByteArray bytes = quantizer
+          .quantize(partition.id(), partition.get());
+      if (bytes == null) {
+        LOG.error("Fail to quantize partition "
+            + partition.id());
+        qTable.release();
+        return null;
+      }
+      qTable.addPartition(
+          new Partition<>(partition.id(), bytes));
+    }
+    return qTable;
+  }
+
+  /**
+   * Remove the partitions from the table
+   *
+   * @param <P>   the type of the partitions
+   * @param table the Table
+   * @return the arrays of the partitions
+   */
+  private static <P extends Simple> Int2ObjectOpenHashMap<P>
+  removePartitions(Table<P> table) {
+    Int2ObjectOpenHashMap<P> originals =
+        new Int2ObjectOpenHashMap<>(
+            table.getNumPartitions());
+    for (int id : table.getPartitionIDs()
+        .toIntArray()) {
+      originals.put(id,
+          table.removePartition(id).get());
+    }
+    return originals;
+  }
+
+  /**
+   * Dequantize the partitions back to the table,
+   * the original arrays are reused or released
+   *
+   * @param <P>       the type of the partitions
+   * @param qTable    the quantized table
+   * @param table     the Table
+   * @param originals the original arrays
+   * @return true if succeeded
+   */
+  @SuppressWarnings("unchecked")
+  private static <P extends Simple> boolean
+  dequantize(Table<ByteArray> qTable,
+             Table<P> table,
+             Int2ObjectOpenHashMap<P> originals) {
+    boolean isSuccess = true;
+    for (Partition<ByteArray> partition : qTable
+        .getPartitions()) {
+      P original = originals.remove(partition.id());
+      Simple obj = Quantizer
+          .dequantize(partition.get(), original);
+      if (original != null && obj != original) {
+        original.release();
+      }
+      if (obj == null) {
+        LOG.error("Fail to dequantize partition "
+            + partition.id());
+        isSuccess = false;
+      } else {
+        table.addPartition(
+            new Partition<>(partition.id(), (P) obj));
+      }
+    }
+    for (P original : originals.values()) {
+      original.release();
+    }
+    qTable.release();
+    return isSuccess;
+  }
+
+  /*******************************************************
+   * Combine the received partitions to the global
+   * partitions represented by the placeholders.
+   * The partitions not in the global table are
+   * combined in the quantized form.
+   ******************************************************/
+  private static class GlobalCombiner<P extends Simple>
+      extends PartitionCombiner<ByteArray> {
+
+    private final Reference2ObjectOpenHashMap<ByteArray, P> targets;
+    private final PartitionCombiner<P> combiner;
+    /** For the partitions without targets */
+    private final QuantizedArrCombiner qCombiner;
+
+    GlobalCombiner(
+        Reference2ObjectOpenHashMap<ByteArray, P> targets,
+        PartitionCombiner<P> combiner) {
+      this.targets = targets;
+      this.combiner = combiner;
+      this.qCombiner = new QuantizedArrCombiner(combiner);
+    }
+
+    /**
+     * Combine the received partition to its
+     * global partition
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public PartitionStatus combine(ByteArray curPar,
+                                   ByteArray newPar) {
+      P target = targets.get(curPar);
+      if (target == null) {
+        // Added by an earlier push of the ID
+        return qCombiner.combine(curPar, newPar);
+      }
+      Simple obj = Quantizer.dequantize(newPar, null);
+      if (obj == null) {
+        return PartitionStatus.COMBINE_FAILED;
+      }
+      PartitionStatus status =
+          combiner.combine(target, (P) obj);
+      obj.release();
+      return status;
+    }
+  }
+}
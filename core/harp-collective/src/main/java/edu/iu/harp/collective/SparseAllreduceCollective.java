@@ -0,0 +1,408 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.keyval.Int2IntKVPartition;
+import edu.iu.harp.keyval.Int2IntKVTable;
+import edu.iu.harp.keyval.Int2LongKVPartition;
+import edu.iu.harp.keyval.Int2LongKVTable;
+import edu.iu.harp.keyval.KVPartition;
+import edu.iu.harp.keyval.KVTable;
+import edu.iu.harp.keyval.Long2DoubleKVPartition;
+import edu.iu.harp.keyval.Long2DoubleKVTable;
+import edu.iu.harp.keyval.Long2IntKVPartition;
+import edu.iu.harp.keyval.Long2IntKVTable;
+import edu.iu.harp.keyval.SparseKVBlock;
+import edu.iu.harp.keyval.SparseKVBlockCombiner;
+import edu.iu.harp.keyval.TypeDoubleCombiner;
+import edu.iu.harp.keyval.TypeIntCombiner;
+import edu.iu.harp.keyval.TypeLongCombiner;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.Writable;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import org.apache.log4j.Logger;
+
+import java.util.function.Predicate;
+
+/*******************************************************
+ * Allreduce the key-value tables by sending only
+ * the existing keys. The keys are sorted and
+ * split into chunks of consecutive keys, each
+ * chunk is owned by one worker. The pairs are
+ * regrouped to the owners and combined there,
+ * then the combined pairs are allgathered. The
+ * keys are encoded as deltas in the sparse
+ * chunks and as bitmaps in the dense chunks.
+ ******************************************************/
+public class SparseAllreduceCollective {
+
+  private static final Logger LOG =
+      Logger.getLogger(
+          SparseAllreduceCollective.class);
+
+  /**
+   * Allreduce the Int2IntKVTable
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Int2IntKVTable
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Int2IntKVTable table,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    final TypeIntCombiner combiner =
+        table.getValCombiner();
+    Table<SparseKVBlock> blockTable =
+        new Table<>(table.getTableID(),
+            new SparseKVBlockCombiner(
+                (v1, v2) -> combiner.combine(
+                    (int) v1, (int) v2)));
+    for (Partition<Int2IntKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Int2IntMap.Entry> iterator =
+          partition.get().getKVMap()
+              .int2IntEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        Int2IntMap.Entry entry = iterator.next();
+        getBlock(blockTable, entry.getIntKey(),
+            SparseKVBlock.INT_VALUE, workers)
+            .add(entry.getIntKey(),
+                entry.getIntValue());
+      }
+    }
+    if (!allreduce(contextName, operationName,
+        blockTable, dataMap, workers)) {
+      blockTable.release();
+      return false;
+    }
+    clearPartitions(table);
+    for (Partition<SparseKVBlock> partition : blockTable
+        .getPartitions()) {
+      SparseKVBlock block = partition.get();
+      for (int i = 0; i < block.size(); i++) {
+        table.addKeyVal((int) block.getKey(i),
+            (int) block.getVal(i));
+      }
+    }
+    removeEmptyPartitions(table,
+        Int2IntKVPartition::isEmpty);
+    blockTable.release();
+    return true;
+  }
+
+  /**
+   * Allreduce the Int2LongKVTable
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Int2LongKVTable
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Int2LongKVTable table,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    final TypeLongCombiner combiner =
+        table.getValCombiner();
+    Table<SparseKVBlock> blockTable =
+        new Table<>(table.getTableID(),
+            new SparseKVBlockCombiner(
+                combiner::combine));
+    for (Partition<Int2LongKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Int2LongMap.Entry> iterator =
+          partition.get().getKVMap()
+              .int2LongEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        Int2LongMap.Entry entry = iterator.next();
+        getBlock(blockTable, entry.getIntKey(),
+            SparseKVBlock.LONG_VALUE, workers)
+            .add(entry.getIntKey(),
+                entry.getLongValue());
+      }
+    }
+    if (!allreduce(contextName, operationName,
+        blockTable, dataMap, workers)) {
+      blockTable.release();
+      return false;
+    }
+    clearPartitions(table);
+    for (Partition<SparseKVBlock> partition : blockTable
+        .getPartitions()) {
+      SparseKVBlock block = partition.get();
+      for (int i = 0; i < block.size(); i++) {
+        table.addKeyVal((int) block.getKey(i),
+            block.getVal(i));
+      }
+    }
+    removeEmptyPartitions(table,
+        Int2LongKVPartition::isEmpty);
+    blockTable.release();
+    return true;
+  }
+
+  /**
+   * Allreduce the Long2DoubleKVTable
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Long2DoubleKVTable
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Long2DoubleKVTable table,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    final TypeDoubleCombiner combiner =
+        table.getValCombiner();
+    Table<SparseKVBlock> blockTable =
+        new Table<>(table.getTableID(),
+            new SparseKVBlockCombiner(
+                (v1, v2) -> Double.doubleToRawLongBits(
+                    combiner.combine(
+                        Double.longBitsToDouble(v1),
+                        Double.longBitsToDouble(v2)))));
+    for (Partition<Long2DoubleKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Long2DoubleMap.Entry> iterator =
+          partition.get().getKVMap()
+              .long2DoubleEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        Long2DoubleMap.Entry entry =
+            iterator.next();
+        getBlock(blockTable, entry.getLongKey(),
+            SparseKVBlock.DOUBLE_VALUE, workers)
+            .add(entry.getLongKey(),
+                Double.doubleToRawLongBits(
+                    entry.getDoubleValue()));
+      }
+    }
+    if (!allreduce(contextName, operationName,
+        blockTable, dataMap, workers)) {
+      blockTable.release();
+      return false;
+    }
+    clearPartitions(table);
+    for (Partition<SparseKVBlock> partition : blockTable
+        .getPartitions()) {
+      SparseKVBlock block = partition.get();
+      for (int i = 0; i < block.size(); i++) {
+        table.addKeyVal(block.getKey(i),
+            Double.longBitsToDouble(
+                block.getVal(i)));
+      }
+    }
+    removeEmptyPartitions(table,
+        Long2DoubleKVPartition::isEmpty);
+    blockTable.release();
+    return true;
+  }
+
+  /**
+   * Allreduce the Long2IntKVTable
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the Long2IntKVTable
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Long2IntKVTable table,
+      final DataMap dataMap,
+      final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    final TypeIntCombiner combiner =
+        table.getValCombiner();
+    Table<SparseKVBlock> blockTable =
+        new Table<>(table.getTableID(),
+            new SparseKVBlockCombiner(
+                (v1, v2) -> combiner.combine(
+                    (int) v1, (int) v2)));
+    for (Partition<Long2IntKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Long2IntMap.Entry> iterator =
+          partition.get().getKVMap()
+              .long2IntEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        Long2IntMap.Entry entry = iterator.next();
+        getBlock(blockTable, entry.getLongKey(),
+            SparseKVBlock.INT_VALUE, workers)
+            .add(entry.getLongKey(),
+                entry.getIntValue());
+      }
+    }
+    if (!allreduce(contextName, operationName,
+        blockTable, dataMap, workers)) {
+      blockTable.release();
+      return false;
+    }
+    clearPartitions(table);
+    for (Partition<SparseKVBlock> partition : blockTable
+        .getPartitions()) {
+      SparseKVBlock block = partition.get();
+      for (int i = 0; i < block.size(); i++) {
+        table.addKeyVal(block.getKey(i),
+            (int) block.getVal(i));
+      }
+    }
+    removeEmptyPartitions(table,
+        Long2IntKVPartition::isEmpty);
+    blockTable.release();
+    return true;
+  }
+
+  /**
+   * Reduce the blocks to the owners, then
+   * allgather the reduced blocks. The blocks are
+   * not changed if failed.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param blockTable    the blocks by the owners
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  private static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Table<SparseKVBlock> blockTable,
+      final DataMap dataMap,
+      final Workers workers) {
+    boolean isSuccess =
+        RegroupCollective.regroupCombine(
+            contextName, operationName + ".regroup",
+            blockTable,
+            new Partitioner(workers.getNumWorkers()),
+            dataMap, workers);
+    if (!isSuccess) {
+      LOG.error("Fail to reduce the key-value"
+          + " blocks to the owners.");
+      return false;
+    }
+    isSuccess = AllgatherCollective.allgather(
+        contextName, operationName + ".allgather",
+        blockTable, dataMap, workers);
+    if (!isSuccess) {
+      LOG.error("Fail to allgather the reduced"
+          + " key-value blocks.");
+    }
+    return isSuccess;
+  }
+
+  /**
+   * Get the block of the worker owning the chunk
+   * of the key, or create it if not exists
+   *
+   * @param blockTable the blocks by the owners
+   * @param key        the key
+   * @param valueType  the type of the values
+   * @param workers    the Workers
+   * @return the block
+   */
+  private static SparseKVBlock getBlock(
+      Table<SparseKVBlock> blockTable, long key,
+      byte valueType, Workers workers) {
+    int ownerID = (int) Math.floorMod(
+        SparseKVBlock.getChunk(key),
+        (long) workers.getNumWorkers());
+    Partition<SparseKVBlock> partition =
+        blockTable.getPartition(ownerID);
+    if (partition == null) {
+      SparseKVBlock block =
+          Writable.create(SparseKVBlock.class);
+      block.initialize(valueType);
+      partition = new Partition<>(ownerID, block);
+      blockTable.addPartition(partition);
+    }
+    return partition.get();
+  }
+
+  /**
+   * Clear the key-value pairs in the partitions
+   *
+   * @param table the KVTable
+   */
+  private static <P extends KVPartition> void
+  clearPartitions(KVTable<P> table) {
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      partition.get().clear();
+    }
+  }
+
+  /**
+   * Remove and release the partitions without
+   * key-value pairs
+   *
+   * @param table   the KVTable
+   * @param isEmpty tell if a partition is empty
+   */
+  private static <P extends KVPartition> void
+  removeEmptyPartitions(KVTable<P> table,
+                        Predicate<P> isEmpty) {
+    IntArrayList emptyIDs = new IntArrayList();
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      if (isEmpty.test(partition.get())) {
+        emptyIDs.add(partition.id());
+      }
+    }
+    for (int i = 0; i < emptyIDs.size(); i++) {
+      table.removePartition(emptyIDs.getInt(i))
+          .release();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package edu.iu.harp.combiner;
+
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+
+/**
+ * Combine two off-heap double arrays according to a operation specified.
+ * Supported operations are
+ *     SUM,
+ *     MINUS,
+ *     MULTIPLY,
+ *     MAX,
+ *     MIN
+ */
+public class OffHeapDoubleArrCombiner
+    extends PartitionCombiner<OffHeapDoubleArray> {
+  private Operation operation;
+
+  public OffHeapDoubleArrCombiner(Operation operation) {
+    this.operation = operation;
+  }
+
+  @Override
+  public PartitionStatus combine(
+      OffHeapDoubleArray curPar, OffHeapDoubleArray newPar) {
+    int size1 = curPar.size();
+    int size2 = newPar.size();
+    if (size1 != size2) {
+      return PartitionStatus.COMBINE_FAILED;
+    }
+
+    switch (operation) {
+      case SUM:
+        for (int i = 0; i < size2; i++) {
+          curPar.set(i, curPar.get(i) + newPar.get(i));
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < size2; i++) {
+          curPar.set(i, curPar.get(i) - newPar.get(i));
+        }
+        break;
+      case MAX:
+        for (int i = 0; i < size2; i++) {
+          if (curPar.get(i) < newPar.get(i)) {
+            curPar.set(i, newPar.get(i));
+          }
+        }
+        break;
+      case MIN:
+        for (int i = 0; i < size2; i++) {
+          if (curPar.get(i) > newPar.get(i)) {
+            curPar.set(i, newPar.get(i));
+          }
+        }
+        break;
+      case MULTIPLY:
+        for (int i = 0; i < size2; i++) {
+          curPar.set(i, curPar.get(i) * newPar.get(i));
+        }
+        break;
+    }
+    return PartitionStatus.COMBINED;
+  }
+}
@@ -0,0 +1,55 @@
+package edu.iu.harp.combiner;
+
+import edu.iu.harp.codec.Quantizer;
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.Simple;
+
+/**
+ * Combine two quantized arrays. Both arrays are
+ * dequantized and combined by the combiner of the
+ * original table, then the result is quantized
+ * again to the current array.
+ */
+public class QuantizedArrCombiner extends PartitionCombiner<ByteArray> {
+  private PartitionCombiner<Simple> combiner;
+
+  /**
+   * Create the combiner of the quantized arrays
+   *
+   * @param combiner the combiner of the original
+   *                 table
+   */
+  @SuppressWarnings("unchecked")
+  public QuantizedArrCombiner(
+      PartitionCombiner<? extends Simple> combiner) {
+    this.combiner = (PartitionCombiner<Simple>) combiner;
+  }
+
+  /**
+   * Combine the new array to the current array
+   * and quantize the result again
+   */
+  @Override
+  public PartitionStatus combine(
+      ByteArray curPar, ByteArray newPar) {
+    Simple cur = Quantizer.dequantize(curPar, null);
+    Simple next = Quantizer.dequantize(newPar, null);
+    PartitionStatus status = PartitionStatus.COMBINE_FAILED;
+    if (cur != null && next != null) {
+      status = combiner.combine(cur, next);
+      if (status == PartitionStatus.COMBINED
+          && !Quantizer.requantize(cur, curPar)) {
+        status = PartitionStatus.COMBINE_FAILED;
+      }
+    }
+    if (cur != null) {
+      cur.release();
+    }
+    if (next != null) {
+      next.release();
+    }
+    return status;
+  }
+}
@@ -22,7 +22,11 @@ import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import org.apache.log4j.Logger;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /*******************************************************
  * This class manages connection objects
@@ -36,6 +40,9 @@ public class ConnPool {
 
   private Object2ObjectOpenHashMap<HostPort, Pool> connMap =
     new Object2ObjectOpenHashMap<>();
+  /** The multiplexed channels of each peer */
+  private final ConcurrentHashMap<HostPort, MuxPeer> muxMap;
+  private volatile int numMuxChannels;
 
   /*******************************************************
    * The class for host and port information
@@ -53,7 +60,7 @@ public class ConnPool {
      * The hashCode function
      */
     public int hashCode() {
-      return port;
+      return 31 * host.hashCode() + port;
     }
 
     /**
@@ -85,8 +92,47 @@ public class ConnPool {
     }
   }
 
+  /*******************************************************
+   * The multiplexed channels to one peer, used in
+   * turn by the sends
+   ******************************************************/
+  private class MuxPeer {
+    private final AtomicReferenceArray<MuxChannel> channels;
+    private final AtomicInteger next;
+
+    private MuxPeer(int numChannels) {
+      channels =
+        new AtomicReferenceArray<>(numChannels);
+      next = new AtomicInteger(0);
+    }
+
+    /**
+     * Get the next channel, open it if it is not
+     * open or broken. Only the sends to this peer
+     * wait for the connecting.
+     */
+    private MuxChannel get(String host, int port) {
+      int i = Math.floorMod(next.getAndIncrement(),
+        channels.length());
+      MuxChannel channel = channels.get(i);
+      if (channel != null && !channel.isBroken()) {
+        return channel;
+      }
+      synchronized (this) {
+        channel = channels.get(i);
+        if (channel == null || channel.isBroken()) {
+          channel = newMuxChannel(host, port);
+          channels.set(i, channel);
+        }
+        return channel;
+      }
+    }
+  }
+
   private ConnPool() {
     connMap = new Object2ObjectOpenHashMap<>();
+    muxMap = new ConcurrentHashMap<>();
+    numMuxChannels = Constant.NUM_MUX_CHANNELS;
   }
 
   /**
@@ -114,6 +160,22 @@ public class ConnPool {
     return instance;
   }
 
+  /**
+   * Set the number of the multiplexed channels to
+   * each peer. With 0, every send checks out a
+   * connection of its own.
+   *
+   * @param numChannels
+   *          the number of the channels
+   */
+  public void setNumMuxChannels(int numChannels) {
+    numMuxChannels = Math.max(0, numChannels);
+  }
+
+  public int getNumMuxChannels() {
+    return numMuxChannels;
+  }
+
   /**
    * Get a connection object by host and port
    * information.
@@ -126,34 +188,98 @@ public class ConnPool {
    *          use cache or not
    * @return the connection object
    */
-  synchronized Connection getConn(String host,
-    int port, boolean useCache) {
-    if (useCache) {
+  Connection getConn(String host, int port,
+    boolean useCache) {
+    if (useCache && numMuxChannels > 0) {
+      MuxPeer peer = muxMap.computeIfAbsent(
+        new HostPort(host, port),
+        hostPort -> new MuxPeer(numMuxChannels));
+      MuxChannel channel = peer.get(host, port);
+      if (channel == null) {
+        return null;
+      }
+      return new Connection(channel);
+    } else if (useCache) {
       HostPort hostPort =
         new HostPort(host, port);
-      Pool pool = connMap.get(hostPort);
-      if (pool == null) {
-        pool = new Pool();
-        connMap.put(hostPort, pool);
-      }
-      if (!pool.freeQueue.isEmpty()) {
-        Connection conn =
-          pool.freeQueue.removeFirst();
-        pool.inUseSet.add(conn);
+      Connection conn = getFreeConn(hostPort);
+      if (conn != null) {
         return conn;
-      } else {
-        Connection conn =
-          newConn(host, port, useCache);
-        if (conn != null) {
-          pool.inUseSet.add(conn);
+      }
+      // Connect without holding the lock
+      conn = newConn(host, port, useCache);
+      if (conn != null) {
+        synchronized (this) {
+          connMap.get(hostPort).inUseSet.add(conn);
         }
-        return conn;
       }
+      return conn;
     } else {
       return newConn(host, port, useCache);
     }
   }
 
+  /**
+   * Get a released connection of the host and
+   * the port
+   *
+   * @param hostPort
+   *          the host and the port
+   * @return the connection object, null if no
+   *         connection is released
+   */
+  private synchronized Connection
+    getFreeConn(HostPort hostPort) {
+    Pool pool = connMap.get(hostPort);
+    if (pool == null) {
+      pool = new Pool();
+      connMap.put(hostPort, pool);
+    }
+    if (!pool.freeQueue.isEmpty()) {
+      Connection conn =
+        pool.freeQueue.removeFirst();
+      pool.inUseSet.add(conn);
+      return conn;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Open a multiplexed channel to the host and
+   * the port
+   *
+   * @param host
+   *          the host
+   * @param port
+   *          the port
+   * @return the channel, null if failed
+   */
+  private MuxChannel newMuxChannel(String host,
+    int port) {
+    MuxChannel channel = null;
+    int count = 0;
+    do {
+      try {
+        channel = new MuxChannel(host, port);
+      } catch (Exception e) {
+        count++;
+        LOG.error("Error when connecting " + host
+          + ":" + port + ", " + e.getMessage());
+        try {
+          Thread.sleep(Constant.LONG_SLEEP);
+        } catch (Exception e1) {
+        }
+      }
+    } while (channel == null
+      && count < Constant.SMALL_RETRY_COUNT);
+    if (channel == null) {
+      LOG.error(
+        "Fail to connect " + host + ":" + port);
+    }
+    return channel;
+  }
+
   /**
    * Create a new connection for the host and the
    * port
@@ -244,7 +370,8 @@ public class ConnPool {
   }
 
   /**
-   * Clean all released connections
+   * Clean all released connections and the
+   * multiplexed channels without open streams
    */
   public synchronized void clean() {
     for (Pool pool : connMap.values()) {
@@ -253,6 +380,83 @@ public class ConnPool {
       }
       pool.freeQueue.clear();
     }
+    for (MuxPeer peer : muxMap.values()) {
+      synchronized (peer) {
+        for (int i = 0; i < peer.channels.length(); i++) {
+          MuxChannel channel = peer.channels.get(i);
+          if (channel != null
+            && channel.getNumOpenStreams() == 0) {
+            channel.close();
+            peer.channels.set(i, null);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the number of the connections in use
+   *
+   * @return the number of the connections
+   */
+  public synchronized int
+    getNumInUseConnections() {
+    int count = 0;
+    for (Pool pool : connMap.values()) {
+      count += pool.inUseSet.size();
+    }
+    return count;
+  }
+
+  /**
+   * Get the number of the connections released
+   * for reuse
+   *
+   * @return the number of the connections
+   */
+  public synchronized int getNumFreeConnections() {
+    int count = 0;
+    for (Pool pool : connMap.values()) {
+      count += pool.freeQueue.size();
+    }
+    return count;
+  }
+
+  /**
+   * Get the number of the multiplexed channels
+   * opened
+   *
+   * @return the number of the channels
+   */
+  public int getNumOpenMuxChannels() {
+    int count = 0;
+    for (MuxPeer peer : muxMap.values()) {
+      for (int i = 0; i < peer.channels.length(); i++) {
+        if (peer.channels.get(i) != null) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the number of the streams open on the
+   * multiplexed channels
+   *
+   * @return the number of the streams
+   */
+  public int getNumOpenMuxStreams() {
+    int count = 0;
+    for (MuxPeer peer : muxMap.values()) {
+      for (int i = 0; i < peer.channels.length(); i++) {
+        MuxChannel channel = peer.channels.get(i);
+        if (channel != null) {
+          count += channel.getNumOpenStreams();
+        }
+      }
+    }
+    return count;
   }
 
   public synchronized void log() {
@@ -269,5 +473,19 @@ public class ConnPool {
         + ", released="
         + entry.getValue().freeQueue.size());
     }
+    for (Map.Entry<HostPort, MuxPeer> entry : muxMap
+      .entrySet()) {
+      HostPort hostPort = entry.getKey();
+      MuxPeer peer = entry.getValue();
+      for (int i = 0; i < peer.channels.length(); i++) {
+        MuxChannel channel = peer.channels.get(i);
+        if (channel != null) {
+          LOG.info("channel=" + hostPort.host + ":"
+            + hostPort.port + "#" + i + ", streams="
+            + channel.getNumOpenStreams()
+            + ", broken=" + channel.isBroken());
+        }
+      }
+    }
   }
 }
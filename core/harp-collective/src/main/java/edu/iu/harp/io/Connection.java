@@ -23,6 +23,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
 
 /*******************************************************
  * The connection object as a client
@@ -34,7 +36,10 @@ public class Connection {
   private OutputStream out;
   private InputStream in;
   private Socket socket;
+  private SocketChannel channel;
   private final boolean useCache;
+  /** The stream if on a multiplexed channel */
+  private MuxStream muxStream;
 
   /**
    * Construct a connection
@@ -56,7 +61,11 @@ public class Connection {
           InetAddress.getByName(node);
       SocketAddress sockaddr =
           new InetSocketAddress(addr, port);
-      this.socket = new Socket();
+      // Open through a channel, so that raw
+      // arrays can be written with gathering
+      // writes
+      this.channel = SocketChannel.open();
+      this.socket = channel.socket();
       IOUtil.setSocketOptions(socket);
       this.socket.connect(sockaddr, timeOutMs);
       this.out = socket.getOutputStream();
@@ -67,6 +76,20 @@ public class Connection {
     }
   }
 
+  /**
+   * Construct a connection as a new stream on a
+   * multiplexed channel
+   *
+   * @param channel the channel
+   */
+  Connection(MuxChannel channel) {
+    this.node = channel.getNode();
+    this.port = channel.getPort();
+    this.useCache = true;
+    this.muxStream = channel.openStream();
+    this.out = muxStream;
+  }
+
   /**
    * Get the host
    *
@@ -94,6 +117,39 @@ public class Connection {
     return this.out;
   }
 
+  /**
+   * Get the SocketChannel in blocking mode. Don't
+   * mix it with the OutputStream in one write.
+   *
+   * @return the SocketChannel
+   */
+  public SocketChannel getChannel() {
+    return this.channel;
+  }
+
+  /**
+   * Get the channel for writing raw arrays. It is
+   * the stream itself on a multiplexed channel.
+   *
+   * @return the channel
+   */
+  public GatheringByteChannel getByteChannel() {
+    if (muxStream != null) {
+      return muxStream;
+    }
+    return this.channel;
+  }
+
+  /**
+   * Check if the connection is a stream on a
+   * multiplexed channel
+   *
+   * @return true if multiplexed
+   */
+  public boolean isMultiplexed() {
+    return muxStream != null;
+  }
+
   /**
    * Get the InputStream
    *
@@ -107,6 +163,12 @@ public class Connection {
    * Close the connection
    */
   void close() {
+    if (muxStream != null) {
+      muxStream.abort();
+      muxStream = null;
+      out = null;
+      return;
+    }
     if (out != null || in != null
         || socket != null) {
       try {
@@ -130,6 +192,7 @@ public class Connection {
       out = null;
       in = null;
       socket = null;
+      channel = null;
     }
   }
 
@@ -151,7 +214,17 @@ public class Connection {
    * Release the connection object
    */
   public void release() {
-    if (useCache) {
+    if (muxStream != null) {
+      // End the stream, the channel stays open
+      try {
+        muxStream.write(Constant.CONNECTION_END);
+        muxStream.close();
+      } catch (IOException e) {
+        muxStream.abort();
+      }
+      muxStream = null;
+      out = null;
+    } else if (useCache) {
       ConnPool.get().releaseConn(this);
     } else {
       close();
@@ -163,7 +236,9 @@ public class Connection {
    * Free the connection object
    */
   public void free() {
-    if (useCache) {
+    if (muxStream != null) {
+      close();
+    } else if (useCache) {
       ConnPool.get().freeConn(this);
     } else {
       close();
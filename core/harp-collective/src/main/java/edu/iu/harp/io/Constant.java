@@ -31,6 +31,18 @@ public class Constant {
   public static final byte MST_BCAST = 5;
   public static final byte MST_BCAST_DECODE = 6;
   public static final byte CONNECTION_END = 7;
+  // Send primitive arrays as raw little-endian
+  // blocks, decoded as they are received
+  public static final byte SEND_RAW = 8;
+  // Send the body through a file in the shared
+  // memory to a worker on the same node
+  public static final byte SEND_SHM = 9;
+  // Encode and send the body in chunks, decoded
+  // as the chunks are received
+  public static final byte SEND_STREAM = 10;
+  // Open a channel carrying the frames of
+  // concurrent sends
+  public static final byte MUX_CHANNEL = 11;
 
   public static final int DATA_MAX_WAIT_TIME =
     1800; // seconds
@@ -45,6 +57,85 @@ public class Constant {
   // 256 KB
   public static final int MAX_ARRAY_SIZE =
     Integer.MAX_VALUE - 5;
+  // Allreduce uses the ring algorithm for tables
+  // larger than this
+  public static final int RING_ALLREDUCE_THRESHOLD =
+    1048576;
+  // 1 MB
+  // The ring allreduce splits array partitions
+  // larger than this
+  public static final int RING_SPLIT_THRESHOLD =
+    65536;
+  // 64 KB
+  // Workers on the same node send bodies larger
+  // than this through the shared memory
+  public static final int SHM_THRESHOLD =
+    1048576;
+  // 1 MB
+  public static final String SHM_DIR = "/dev/shm";
+  // Bodies larger than this are streamed
+  public static final int STREAM_THRESHOLD =
+    16777216;
+  // 16 MB
+  // The threads running the asynchronous
+  // collectives
+  public static final int ASYNC_COLLECTIVE_THREADS =
+    4;
+  // The size of a chunk in streaming
+  public static final int STREAM_CHUNK_SIZE =
+    4194304;
+  // 4 MB
+  // The NioServer stops reading a stream when
+  // this number of chunks are not decoded yet
+  public static final int STREAM_MAX_PENDING_CHUNKS =
+    4;
+  // The long-lived channels to each peer shared
+  // by the sends, 0 uses a connection per send.
+  // Off by default, the frames are copied while
+  // the connections write the arrays directly
+  public static final int NUM_MUX_CHANNELS = 0;
+  // The payload size of a frame on the channel
+  public static final int MUX_FRAME_SIZE = 65536;
+  // 64 KB
+  // A multiplexed channel is not read while a
+  // stream has this number of frames not read
+  public static final int MUX_MAX_PENDING_FRAMES =
+    64;
+  // Encoded bodies smaller than this are not
+  // compressed
+  public static final int COMPRESS_THRESHOLD =
+    8192;
+  // 8 KB
+  // The bytes sampled for choosing the codec
+  public static final int COMPRESS_SAMPLE_SIZE =
+    65536;
+  // 64 KB
+  // The compressed body is sent only if it is at
+  // most this percent of the body
+  public static final int COMPRESS_MAX_PERCENT =
+    90;
+  // The values of a block share a scale in the
+  // int8 quantization
+  public static final int QUANTIZE_BLOCK_SIZE =
+    256;
+  // The number of the free arrays of each size
+  // cached by a thread
+  public static final int POOL_MAGAZINE_SIZE = 16;
+  // Larger arrays are not cached by threads
+  public static final int POOL_MAGAZINE_MAX_BYTES =
+    1048576;
+  // 1 MB
+  // The default limit of the bytes of the free
+  // arrays of each size in a pool
+  public static final long POOL_MAX_RETAINED_BYTES =
+    Runtime.getRuntime().maxMemory() / 8;
+  // The native memory is allocated in slabs,
+  // larger blocks are allocated separately
+  public static final int OFF_HEAP_SLAB_SIZE =
+    67108864;
+  // 64 MB
+  public static final int OFF_HEAP_MAX_SLAB_BLOCK =
+    OFF_HEAP_SLAB_SIZE / 4;
 
   public static final int SHORT_SLEEP = 100;
   public static final int LONG_SLEEP = 1000;
@@ -54,6 +145,9 @@ public class Constant {
 
   public static final int NUM_THREADS =
     Runtime.getRuntime().availableProcessors();
+  // Event loops of the NIO server
+  public static final int NUM_EVENT_LOOPS =
+    Math.max(1, Math.min(4, NUM_THREADS / 4));
   public static final int DEFAULT_WORKER_POART_BASE =
     12800;
 
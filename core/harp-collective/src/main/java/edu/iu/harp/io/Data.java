@@ -16,8 +16,12 @@
 
 package edu.iu.harp.io;
 
+import edu.iu.harp.codec.Codec;
+import edu.iu.harp.codec.Codecs;
+import edu.iu.harp.metrics.Metrics;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.trace.Tracer;
 import org.apache.log4j.Logger;
 
 import java.io.DataOutput;
@@ -59,6 +63,16 @@ public class Data {
    * The size in bytes of the body
    */
   private int bodySize = 0;
+  /**
+   * The codec of the body array, NONE if the
+   * body array is not compressed
+   */
+  private byte codecID = Codecs.NONE;
+  /**
+   * The size in bytes of the compressed body
+   * array
+   */
+  private int encodedBodySize = 0;
   /**
    * Data object contained
    */
@@ -211,6 +225,8 @@ public class Data {
     operationName = null;
     partitionID = Constant.UNKNOWN_PARTITION_ID;
     bodySize = 0;
+    codecID = Codecs.NONE;
+    encodedBodySize = 0;
     body = null;
   }
 
@@ -268,6 +284,32 @@ public class Data {
     return bodySize;
   }
 
+  /**
+   * Get the ID of the codec compressing the body
+   * array
+   *
+   * @return the ID of the codec, Codecs.NONE if
+   * the body array is not compressed
+   */
+  public byte getCodecID() {
+    return codecID;
+  }
+
+  /**
+   * Get the size of the encoded body array sent
+   * on the wire. The body sent as raw arrays or
+   * streamed is still the body size.
+   *
+   * @return the size of the encoded body array
+   */
+  public int getEncodedBodySize() {
+    if (codecID == Codecs.NONE) {
+      return bodySize;
+    } else {
+      return encodedBodySize;
+    }
+  }
+
   /**
    * Get the body
    *
@@ -389,6 +431,30 @@ public class Data {
    * @return
    */
   public DataStatus decodeHeadArray() {
+    return decodeHeadArray(true);
+  }
+
+  /**
+   * Decode the headArray as the head without
+   * preparing the body array. The body sent as
+   * raw arrays or streamed is set later by
+   * setRawBody.
+   *
+   * @return the DataStatus of the head
+   */
+  public DataStatus decodeHeadArrayOnly() {
+    return decodeHeadArray(false);
+  }
+
+  /**
+   * Decode the headArray as the head
+   *
+   * @param prepareBodyArray
+   *          prepare the body array for receiving
+   * @return the DataStatus of the head
+   */
+  private DataStatus
+  decodeHeadArray(boolean prepareBodyArray) {
     if (headStatus == DataStatus.ENCODED_ARRAY) {
       // Decode head array to fields
       // If head array is null, the status cannot
@@ -399,9 +465,16 @@ public class Data {
       try {
         bodyType = deserializer.readByte();
         // LOG.info("body type: " + bodyType);
+        boolean isCompressed = (bodyType
+            & DataType.COMPRESSED_BODY) != 0;
+        bodyType &= ~DataType.COMPRESSED_BODY;
         contextName = deserializer.readUTF();
         workerID = deserializer.readInt();
         bodySize = deserializer.readInt();
+        if (isCompressed) {
+          codecID = deserializer.readByte();
+          encodedBodySize = deserializer.readInt();
+        }
       } catch (IOException e) {
         LOG.error("Fail to decode head array", e);
         resetHead();
@@ -435,12 +508,12 @@ public class Data {
       } else {
         headStatus =
             DataStatus.ENCODED_ARRAY_DECODED;
-        if (bodyArray == null
+        if (prepareBodyArray && bodyArray == null
             && bodyStatus == DataStatus.DECODE_FAILED) {
           // Prepare body array
           // if there is no such one
-          bodyArray =
-              ByteArray.create(bodySize, true);
+          bodyArray = ByteArray
+              .create(getEncodedBodySize(), true);
           if (bodyArray != null) {
             bodyStatus = DataStatus.ENCODED_ARRAY;
           }
@@ -450,6 +523,25 @@ public class Data {
     return headStatus;
   }
 
+  /**
+   * Set the body received as raw arrays or
+   * decoded from a stream. The head must be
+   * decoded without the body array.
+   *
+   * @param objs the body received
+   * @return the DataStatus of the body
+   */
+  public DataStatus setRawBody(
+      List<Transferable> objs) {
+    if (headStatus == DataStatus.ENCODED_ARRAY_DECODED
+        && bodyStatus == DataStatus.DECODE_FAILED
+        && bodyArray == null && objs != null) {
+      body = objs;
+      bodyStatus = DataStatus.DECODED;
+    }
+    return bodyStatus;
+  }
+
   /**
    * Reset the Head
    */
@@ -458,6 +550,8 @@ public class Data {
     contextName = null;
     workerID = Constant.UNKNOWN_WORKER_ID;
     bodySize = 0;
+    codecID = Codecs.NONE;
+    encodedBodySize = 0;
     operationName = null;
     partitionID = Constant.UNKNOWN_PARTITION_ID;
   }
@@ -472,19 +566,33 @@ public class Data {
         || headStatus == DataStatus.ENCODED_ARRAY_DECODED
         || headStatus == DataStatus.ENCODE_FAILED_DECODED)
         && bodyStatus == DataStatus.ENCODED_ARRAY) {
+      long startTime = System.nanoTime();
       // If body status is encoded array
       // body array cannot be null.
       // body object must be null;
-      if (bodyType == DataType.SIMPLE_LIST) {
+      // The compressed body array is kept,
+      // it may be relayed to other workers
+      ByteArray decodedArray = bodyArray;
+      if (codecID != Codecs.NONE) {
+        decodedArray = Codecs.decode(codecID,
+            bodyType, bodyArray, bodySize);
+      }
+      if (decodedArray == null) {
+        LOG.error("Cannot decompress the body.");
+      } else if (bodyType == DataType.SIMPLE_LIST) {
         body =
-            DataUtil.decodeSimpleList(bodyArray);
+            DataUtil.decodeSimpleList(decodedArray);
       } else if (bodyType == DataType.PARTITION_LIST) {
         body =
-            DataUtil.decodePartitionList(bodyArray);
+            DataUtil.decodePartitionList(decodedArray);
       } else {
         LOG.error("Cannot decode unknown body: "
             + bodyType);
       }
+      if (decodedArray != null
+          && decodedArray != bodyArray) {
+        decodedArray.release();
+      }
       if (body == null) {
         bodyStatus =
             DataStatus.ENCODED_ARRAY_DECODE_FAILED;
@@ -492,6 +600,11 @@ public class Data {
         bodyStatus =
             DataStatus.ENCODED_ARRAY_DECODED;
       }
+      Metrics.recordDecode(contextName,
+          operationName,
+          System.nanoTime() - startTime);
+      Tracer.end(Tracer.COMM, "decode",
+          operationName, startTime);
     }
     return bodyStatus;
   }
@@ -516,16 +629,28 @@ public class Data {
       if (isParData) {
         headArrSize += 4;
       }
+      boolean isCompressed =
+          codecID != Codecs.NONE;
+      if (isCompressed) {
+        // codecID, encodedBodySize
+        headArrSize += 5;
+      }
       headArray =
           ByteArray.create(headArrSize, true);
       Serializer serializer =
           new Serializer(headArray);
       boolean isFailed = false;
       try {
-        serializer.writeByte(bodyType);
+        serializer.writeByte(isCompressed
+            ? bodyType | DataType.COMPRESSED_BODY
+            : bodyType);
         serializer.writeUTF(contextName);
         serializer.writeInt(workerID);
         serializer.writeInt(bodySize);
+        if (isCompressed) {
+          serializer.writeByte(codecID);
+          serializer.writeInt(encodedBodySize);
+        }
       } catch (Exception e) {
         LOG.error(
             "Fail to encode body type, context name"
@@ -575,6 +700,7 @@ public class Data {
    */
   public DataStatus encodeBody() {
     if (bodyStatus == DataStatus.DECODED) {
+      long startTime = System.nanoTime();
       if (headStatus == DataStatus.DECODED
           || headStatus == DataStatus.ENCODED_ARRAY_DECODED
           || headStatus == DataStatus.ENCODE_FAILED_DECODED) {
@@ -602,13 +728,46 @@ public class Data {
             "Cannot encode unknown data type.");
       }
       if (bodyArray != null) {
+        compressBodyArray();
         bodyStatus =
             DataStatus.ENCODED_ARRAY_DECODED;
       } else {
         bodyStatus =
             DataStatus.ENCODE_FAILED_DECODED;
       }
+      Metrics.recordEncode(contextName,
+          operationName,
+          System.nanoTime() - startTime);
+      Tracer.end(Tracer.COMM, "encode",
+          operationName, startTime);
     }
     return bodyStatus;
   }
+
+  /**
+   * Compress the encoded body array if a codec
+   * is chosen for it. The head is encoded again
+   * if it is encoded already.
+   */
+  private void compressBodyArray() {
+    Codec codec = Codecs.choose(bodyType, bodyArray);
+    if (codec == null) {
+      return;
+    }
+    ByteArray encoded =
+        Codecs.encode(codec, bodyType, bodyArray);
+    if (encoded == null) {
+      return;
+    }
+    bodyArray.release();
+    bodyArray = encoded;
+    codecID = codec.getID();
+    encodedBodySize = encoded.size();
+    if (headStatus == DataStatus.ENCODED_ARRAY_DECODED) {
+      headArray.release();
+      headArray = null;
+      headStatus = DataStatus.DECODED;
+      encodeHead();
+    }
+  }
 }
@@ -31,4 +31,15 @@ public class DataType {
   public static final byte WRITABLE = 7;
   public static final byte SIMPLE_LIST = 8;
   public static final byte PARTITION_LIST = 9;
+  // Arrays in the native memory
+  public static final byte OFF_HEAP_INT_ARRAY = 10;
+  public static final byte OFF_HEAP_DOUBLE_ARRAY =
+    11;
+  // Writable encoded with the type ID in
+  // WritableRegistry
+  public static final byte REGISTERED_WRITABLE =
+    12;
+  // Set on the body type in the head if the body
+  // array is compressed
+  public static final byte COMPRESSED_BODY = 0x40;
 }
@@ -18,20 +18,26 @@ package edu.iu.harp.io;
 
 import edu.iu.harp.client.Event;
 import edu.iu.harp.client.EventType;
+import edu.iu.harp.metrics.Metrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.harp.resource.FloatArray;
 import edu.iu.harp.resource.IntArray;
 import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.OffHeapArray;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+import edu.iu.harp.resource.OffHeapIntArray;
 import edu.iu.harp.resource.ShortArray;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.resource.Writable;
+import edu.iu.harp.resource.WritableRegistry;
 import org.apache.log4j.Logger;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
@@ -54,7 +60,7 @@ public class DataUtil {
    * Deserializer
    */
   public static ByteArray
-  deserializeByteArray(Deserializer din) {
+  deserializeByteArray(DataInput din) {
     int bytesSize = 0;
     try {
       bytesSize = din.readInt();
@@ -90,7 +96,7 @@ public class DataUtil {
    * Deserializer
    */
   public static ShortArray
-  deserializeShortArray(Deserializer din) {
+  deserializeShortArray(DataInput din) {
     int shortsSize = 0;
     try {
       shortsSize = din.readInt();
@@ -120,7 +126,7 @@ public class DataUtil {
    * Deserializer
    */
   public static IntArray
-  deserializeIntArray(Deserializer din) {
+  deserializeIntArray(DataInput din) {
     int intsSize = 0;
     try {
       intsSize = din.readInt();
@@ -150,7 +156,7 @@ public class DataUtil {
    * Deserializer
    */
   public static FloatArray
-  deserializeFloatArray(Deserializer din) {
+  deserializeFloatArray(DataInput din) {
     int floatsSize = 0;
     try {
       floatsSize = din.readInt();
@@ -180,7 +186,7 @@ public class DataUtil {
    * Deserializer
    */
   public static LongArray
-  deserializeLongArray(Deserializer din) {
+  deserializeLongArray(DataInput din) {
     int longsSize = 0;
     try {
       longsSize = din.readInt();
@@ -205,6 +211,31 @@ public class DataUtil {
     }
   }
 
+  /**
+   * Deserialize the data from a Deserializer as an
+   * OffHeapArray
+   *
+   * @param dataType the data type read
+   * @param din      the DataInput
+   * @return an OffHeapArray deserialized from the
+   * Deserializer
+   */
+  public static OffHeapArray
+  deserializeOffHeapArray(byte dataType,
+                          DataInput din) {
+    try {
+      if (dataType == DataType.OFF_HEAP_INT_ARRAY) {
+        return OffHeapIntArray.decode(din);
+      } else {
+        return OffHeapDoubleArray.decode(din);
+      }
+    } catch (IOException e) {
+      LOG.error(
+          "Fail to deserialize off-heap array", e);
+      return null;
+    }
+  }
+
   /**
    * Deserialize the data from a Deserializer as a
    * DoubleArray
@@ -214,7 +245,7 @@ public class DataUtil {
    * Deserializer
    */
   public static DoubleArray
-  deserializeDoubleArray(Deserializer din) {
+  deserializeDoubleArray(DataInput din) {
     int doublesSize = 0;
     try {
       doublesSize = din.readInt();
@@ -278,6 +309,133 @@ public class DataUtil {
     }
   }
 
+  /**
+   * Deserialize the data from a Deserializer as a
+   * Writable encoded with the type ID
+   *
+   * @param din the Deserializer
+   * @return a Writable deserialized from the
+   * Deserializer
+   */
+  public static Writable
+  deserializeRegisteredWritable(DataInput din) {
+    int typeID = -1;
+    try {
+      typeID = din.readUnsignedShort();
+    } catch (Exception e) {
+      LOG.error(
+          "Fail to deserialize the type ID", e);
+      return null;
+    }
+    Class<Writable> clazz =
+        WritableRegistry.getClass(typeID);
+    if (clazz == null) {
+      LOG.error(
+          "Unknown Writable type ID " + typeID);
+      return null;
+    }
+    Writable obj = Writable.create(clazz);
+    if (obj == null) {
+      return null;
+    }
+    try {
+      obj.read(din);
+      return obj;
+    } catch (Exception e) {
+      LOG.error(
+          "Fail to deserialize writable with class name "
+              + clazz.getName(),
+          e);
+      obj.release();
+      return null;
+    }
+  }
+
+  /**
+   * Deserialize an object of the data type
+   *
+   * @param dataType the data type read
+   * @param din      the DataInput
+   * @return the object, null if failed
+   */
+  private static Simple deserializeSimple(
+      byte dataType, DataInput din) {
+    if (dataType == DataType.BYTE_ARRAY) {
+      return deserializeByteArray(din);
+    } else if (dataType == DataType.SHORT_ARRAY) {
+      return deserializeShortArray(din);
+    } else if (dataType == DataType.INT_ARRAY) {
+      return deserializeIntArray(din);
+    } else if (dataType == DataType.FLOAT_ARRAY) {
+      return deserializeFloatArray(din);
+    } else if (dataType == DataType.LONG_ARRAY) {
+      return deserializeLongArray(din);
+    } else if (dataType == DataType.DOUBLE_ARRAY) {
+      return deserializeDoubleArray(din);
+    } else if (dataType == DataType.WRITABLE) {
+      return deserializeWritable(din);
+    } else if (dataType
+        == DataType.REGISTERED_WRITABLE) {
+      return deserializeRegisteredWritable(din);
+    } else if (dataType == DataType.OFF_HEAP_INT_ARRAY
+        || dataType == DataType.OFF_HEAP_DOUBLE_ARRAY) {
+      return deserializeOffHeapArray(dataType, din);
+    } else {
+      LOG.info("Unkown data type.");
+      return null;
+    }
+  }
+
+  /**
+   * Decode a body from a stream as it arrives.
+   * The stream must end at the end of the body.
+   *
+   * @param din      the DataInput of the stream
+   * @param bodyType the type of the body
+   * @return a list of objects or Partitions, null
+   * if failed
+   */
+  public static List<Transferable>
+  decodeTransList(DataInput din, byte bodyType) {
+    boolean isPartitionList =
+        bodyType == DataType.PARTITION_LIST;
+    List<Transferable> objs = new LinkedList<>();
+    while (true) {
+      byte dataType = DataType.UNKNOWN_DATA_TYPE;
+      try {
+        dataType = din.readByte();
+      } catch (EOFException e) {
+        break;
+      } catch (IOException e) {
+        LOG.error("Fail to decode stream.", e);
+        releaseTransList(objs);
+        return null;
+      }
+      if (dataType == DataType.UNKNOWN_DATA_TYPE) {
+        break;
+      }
+      Simple obj = deserializeSimple(dataType, din);
+      if (obj == null) {
+        releaseTransList(objs);
+        return null;
+      }
+      if (isPartitionList) {
+        try {
+          objs.add(new Partition<Simple>(
+              din.readInt(), obj));
+        } catch (IOException e) {
+          LOG.error("Fail to decode stream.", e);
+          obj.release();
+          releaseTransList(objs);
+          return null;
+        }
+      } else {
+        objs.add(obj);
+      }
+    }
+    return objs;
+  }
+
   /**
    * Decode the ByteArray as a list of
    * Transferable objects
@@ -299,26 +457,11 @@ public class DataUtil {
         releaseTransList(objs);
         return null;
       }
-      Simple obj = null;
       if (dataType == DataType.UNKNOWN_DATA_TYPE) {
         break;
-      } else if (dataType == DataType.BYTE_ARRAY) {
-        obj = deserializeByteArray(decoder);
-      } else if (dataType == DataType.SHORT_ARRAY) {
-        obj = deserializeShortArray(decoder);
-      } else if (dataType == DataType.INT_ARRAY) {
-        obj = deserializeIntArray(decoder);
-      } else if (dataType == DataType.FLOAT_ARRAY) {
-        obj = deserializeFloatArray(decoder);
-      } else if (dataType == DataType.LONG_ARRAY) {
-        obj = deserializeLongArray(decoder);
-      } else if (dataType == DataType.DOUBLE_ARRAY) {
-        obj = deserializeDoubleArray(decoder);
-      } else if (dataType == DataType.WRITABLE) {
-        obj = deserializeWritable(decoder);
-      } else {
-        LOG.info("Unkown data type.");
       }
+      Simple obj = deserializeSimple(dataType,
+          decoder);
       if (obj == null) {
         releaseTransList(objs);
         return null;
@@ -353,29 +496,11 @@ public class DataUtil {
         releaseTransList(partitions);
         return null;
       }
-      Simple partition = null;
       if (dataType == DataType.UNKNOWN_DATA_TYPE) {
         break;
-      } else if (dataType == DataType.BYTE_ARRAY) {
-        partition = deserializeByteArray(decoder);
-      } else if (dataType == DataType.SHORT_ARRAY) {
-        partition =
-            deserializeShortArray(decoder);
-      } else if (dataType == DataType.INT_ARRAY) {
-        partition = deserializeIntArray(decoder);
-      } else if (dataType == DataType.FLOAT_ARRAY) {
-        partition =
-            deserializeFloatArray(decoder);
-      } else if (dataType == DataType.LONG_ARRAY) {
-        partition = deserializeLongArray(decoder);
-      } else if (dataType == DataType.DOUBLE_ARRAY) {
-        partition =
-            deserializeDoubleArray(decoder);
-      } else if (dataType == DataType.WRITABLE) {
-        partition = deserializeWritable(decoder);
-      } else {
-        LOG.info("Unkown data type.");
       }
+      Simple partition = deserializeSimple(dataType,
+          decoder);
       if (partition == null) {
         releaseTransList(partitions);
         return null;
@@ -508,8 +633,17 @@ public class DataUtil {
         && (data
         .getBodyStatus() == DataStatus.ENCODED_ARRAY
         || data
-        .getBodyStatus() == DataStatus.ENCODED_ARRAY_DECODED)) {
+        .getBodyStatus() == DataStatus.ENCODED_ARRAY_DECODED
+        || data
+        .getBodyStatus() == DataStatus.DECODED)) {
       if (data.isOperationData()) {
+        if (data.getHeadArray() != null) {
+          Metrics.recordBytesReceived(
+              data.getContextName(),
+              data.getOperationName(),
+              (long) data.getHeadArray().size()
+                  + data.getEncodedBodySize());
+        }
         dataMap.putData(data);
       } else if (data.isData()) {
         if (data
@@ -16,6 +16,8 @@
 
 package edu.iu.harp.io;
 
+import edu.iu.harp.metrics.Metrics;
+import edu.iu.harp.trace.Tracer;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
@@ -128,11 +130,18 @@ public class IOUtil {
   public static Data waitAndGet(DataMap dataMap,
     String contextName, String operationName) {
     int count = 0;
+    long startTime = System.nanoTime();
     do {
       try {
-        return dataMap.waitAndGetData(contextName,
-          operationName,
+        Data data = dataMap.waitAndGetData(
+          contextName, operationName,
           Constant.DATA_MAX_WAIT_TIME);
+        Metrics.recordWait(contextName,
+          operationName,
+          System.nanoTime() - startTime);
+        Tracer.end(Tracer.COMM, "wait",
+          operationName, startTime);
+        return data;
       } catch (InterruptedException e) {
         if (count == Constant.SMALL_RETRY_COUNT) {
           return null;
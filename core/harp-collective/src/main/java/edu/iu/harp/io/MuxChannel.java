@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * A long-lived connection to a peer shared by
+ * concurrent senders. Every send is a stream of
+ * frames: 1. stream ID 2. payload size 3. the
+ * payload. A frame with size 0 ends the stream.
+ * Frames of different streams are interleaved,
+ * only the write of one frame holds the lock of
+ * the channel.
+ ******************************************************/
+class MuxChannel {
+
+  /** Stream ID and payload size */
+  static final int FRAME_HEAD_SIZE = 8;
+
+  private final String node;
+  private final int port;
+  private Socket socket;
+  private OutputStream out;
+  private final AtomicInteger nextStreamID;
+  private final AtomicInteger numOpenStreams;
+  private volatile boolean isBroken;
+
+  /**
+   * Connect to the peer and tell it the frames
+   * follow
+   *
+   * @param node the host
+   * @param port the port
+   * @throws Exception
+   */
+  MuxChannel(String node, int port)
+    throws Exception {
+    this.node = node;
+    this.port = port;
+    nextStreamID = new AtomicInteger(1);
+    numOpenStreams = new AtomicInteger(0);
+    isBroken = false;
+    try {
+      socket = new Socket();
+      IOUtil.setSocketOptions(socket);
+      socket.connect(new InetSocketAddress(
+        InetAddress.getByName(node), port), 0);
+      out = socket.getOutputStream();
+      out.write(Constant.MUX_CHANNEL);
+      out.flush();
+    } catch (Exception e) {
+      close();
+      throw e;
+    }
+  }
+
+  String getNode() {
+    return node;
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  /**
+   * Start a new stream on the channel
+   *
+   * @return the stream
+   */
+  MuxStream openStream() {
+    numOpenStreams.incrementAndGet();
+    return new MuxStream(this,
+      nextStreamID.getAndIncrement());
+  }
+
+  /**
+   * Called when a stream is closed or aborted
+   */
+  void closeStream() {
+    numOpenStreams.decrementAndGet();
+  }
+
+  int getNumOpenStreams() {
+    return numOpenStreams.get();
+  }
+
+  /**
+   * Check if a write failed on the channel
+   *
+   * @return true if the channel cannot be used
+   */
+  boolean isBroken() {
+    return isBroken;
+  }
+
+  /**
+   * Write a frame. The first FRAME_HEAD_SIZE
+   * bytes of the frame are reserved for the
+   * head, the payload follows.
+   *
+   * @param frame    the frame
+   * @param streamID the ID of the stream
+   * @param size     the size of the payload
+   * @throws IOException
+   */
+  synchronized void writeFrame(byte[] frame,
+    int streamID, int size) throws IOException {
+    if (isBroken) {
+      throw new IOException("The channel to "
+        + node + ":" + port + " is broken.");
+    }
+    frame[0] = (byte) (streamID >>> 24);
+    frame[1] = (byte) (streamID >>> 16);
+    frame[2] = (byte) (streamID >>> 8);
+    frame[3] = (byte) streamID;
+    frame[4] = (byte) (size >>> 24);
+    frame[5] = (byte) (size >>> 16);
+    frame[6] = (byte) (size >>> 8);
+    frame[7] = (byte) size;
+    try {
+      out.write(frame, 0, FRAME_HEAD_SIZE + size);
+    } catch (IOException e) {
+      isBroken = true;
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Close the socket, the peer aborts the
+   * streams not ended yet
+   */
+  synchronized void close() {
+    isBroken = true;
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+    } catch (IOException e) {
+    }
+    out = null;
+    socket = null;
+  }
+}
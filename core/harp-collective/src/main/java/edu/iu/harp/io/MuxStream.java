@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.resource.ByteArray;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/*******************************************************
+ * One send on a MuxChannel. The bytes written are
+ * cut into frames of MUX_FRAME_SIZE, a frame is
+ * written when it is full or flushed. It is also
+ * a channel, so raw arrays can be written to it
+ * in the same way as to a socket channel.
+ ******************************************************/
+class MuxStream extends OutputStream
+  implements GatheringByteChannel {
+
+  private final MuxChannel channel;
+  private final int streamID;
+  private ByteArray frameArray;
+  private byte[] frame;
+  private final int limit;
+  private int pos;
+
+  MuxStream(MuxChannel channel, int streamID) {
+    this.channel = channel;
+    this.streamID = streamID;
+    this.limit = MuxChannel.FRAME_HEAD_SIZE
+      + Constant.MUX_FRAME_SIZE;
+    this.frameArray = ByteArray.create(limit, true);
+    this.frame = frameArray.get();
+    this.pos = MuxChannel.FRAME_HEAD_SIZE;
+  }
+
+  int getStreamID() {
+    return streamID;
+  }
+
+  private void checkOpen() throws IOException {
+    if (frame == null) {
+      throw new IOException("The stream is closed.");
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    checkOpen();
+    if (pos == limit) {
+      flush();
+    }
+    frame[pos++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len)
+    throws IOException {
+    checkOpen();
+    while (len > 0) {
+      if (pos == limit) {
+        flush();
+      }
+      int n = Math.min(len, limit - pos);
+      System.arraycopy(b, off, frame, pos, n);
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src)
+    throws IOException {
+    checkOpen();
+    int total = src.remaining();
+    while (src.hasRemaining()) {
+      if (pos == limit) {
+        flush();
+      }
+      int n = Math.min(src.remaining(), limit - pos);
+      src.get(frame, pos, n);
+      pos += n;
+    }
+    return total;
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset,
+    int length) throws IOException {
+    long total = 0;
+    for (int i = offset; i < offset + length; i++) {
+      total += write(srcs[i]);
+    }
+    return total;
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs)
+    throws IOException {
+    return write(srcs, 0, srcs.length);
+  }
+
+  /**
+   * Write the bytes buffered as a frame
+   */
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    int size = pos - MuxChannel.FRAME_HEAD_SIZE;
+    if (size > 0) {
+      channel.writeFrame(frame, streamID, size);
+      pos = MuxChannel.FRAME_HEAD_SIZE;
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return frame != null;
+  }
+
+  /**
+   * Flush and end the stream
+   */
+  @Override
+  public void close() throws IOException {
+    if (frame == null) {
+      return;
+    }
+    try {
+      flush();
+      channel.writeFrame(frame, streamID, 0);
+    } finally {
+      releaseFrame();
+    }
+  }
+
+  /**
+   * End the stream without the bytes buffered,
+   * the peer drops the partial data.
+   */
+  void abort() {
+    if (frame == null) {
+      return;
+    }
+    try {
+      channel.writeFrame(frame, streamID, 0);
+    } catch (IOException e) {
+    } finally {
+      releaseFrame();
+    }
+  }
+
+  private void releaseFrame() {
+    frameArray.release();
+    frameArray = null;
+    frame = null;
+    channel.closeStream();
+  }
+}
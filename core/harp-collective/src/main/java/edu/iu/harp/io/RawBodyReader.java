@@ -0,0 +1,333 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.Array;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.OffHeapArray;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+import edu.iu.harp.resource.OffHeapIntArray;
+import edu.iu.harp.resource.ShortArray;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Transferable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedList;
+import java.util.List;
+
+/*******************************************************
+ * Read a body written by RawBodyWriter. The bytes
+ * can be given piece by piece as they arrive, the
+ * elements are copied in bulk to the arrays from
+ * the resource pool. An element split between two
+ * pieces is kept in a small buffer.
+ ******************************************************/
+public class RawBodyReader {
+
+  private static final int READ_TYPE = 0;
+  private static final int READ_SIZE = 1;
+  private static final int READ_ELEMENTS = 2;
+  private static final int READ_PARTITION_ID = 3;
+  private static final int END = 4;
+
+  private final boolean isPartitionList;
+  /** The number of bytes not given yet */
+  private int remaining;
+  private final List<Transferable> body;
+  /** Keep the bytes of a split field */
+  private final ByteBuffer split;
+
+  private int state;
+  private byte dataType;
+  private int width;
+  private Array<?> array;
+  private int numReadElements;
+
+  /**
+   * Prepare to read a body
+   *
+   * @param bodyType
+   *          the type of the body
+   * @param bodySize
+   *          the size in bytes of the body
+   * @throws IOException
+   */
+  public RawBodyReader(byte bodyType,
+    int bodySize) throws IOException {
+    if (bodyType != DataType.SIMPLE_LIST
+      && bodyType != DataType.PARTITION_LIST) {
+      throw new IOException(
+        "Cannot read unknown body: " + bodyType);
+    }
+    this.isPartitionList =
+      bodyType == DataType.PARTITION_LIST;
+    this.remaining = bodySize;
+    this.body = new LinkedList<>();
+    this.split = ByteBuffer.allocate(8)
+      .order(ByteOrder.LITTLE_ENDIAN);
+    this.state = READ_TYPE;
+  }
+
+  /**
+   * Get the number of bytes not read yet
+   *
+   * @return the number of bytes left
+   */
+  public int remaining() {
+    return remaining;
+  }
+
+  /**
+   * Check if the whole body is read
+   *
+   * @return true if the body is read
+   */
+  public boolean isDone() {
+    return remaining == 0;
+  }
+
+  /**
+   * Get the body read
+   *
+   * @return the body
+   */
+  public List<Transferable> getBody() {
+    return body;
+  }
+
+  /**
+   * Read all the bytes left in the buffer
+   *
+   * @param buffer
+   *          the buffer, no more than the bytes
+   *          left in the body
+   * @throws IOException
+   */
+  public void read(ByteBuffer buffer)
+    throws IOException {
+    if (buffer.remaining() > remaining) {
+      throw new IOException(
+        "More bytes than the body size.");
+    }
+    remaining -= buffer.remaining();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (state == READ_TYPE) {
+        readType(buffer.get());
+      } else if (state == READ_SIZE) {
+        if (fill(buffer, 4)) {
+          createArray(split.getInt(0));
+          split.clear();
+        }
+      } else if (state == READ_ELEMENTS) {
+        readElements(buffer);
+      } else if (state == READ_PARTITION_ID) {
+        if (fill(buffer, 4)) {
+          body.add(new Partition<Simple>(
+            split.getInt(0), array));
+          split.clear();
+          array = null;
+          state = READ_TYPE;
+        }
+      } else {
+        throw new IOException(
+          "Bytes after the end of the body.");
+      }
+    }
+    if (remaining == 0 && state != READ_TYPE
+      && state != END) {
+      throw new IOException(
+        "Incomplete body.");
+    }
+  }
+
+  /**
+   * Release the arrays read if the body is not
+   * used
+   */
+  public void release() {
+    if (array != null) {
+      array.release();
+      array = null;
+    }
+    DataUtil.releaseTransList(body);
+  }
+
+  private void readType(byte type)
+    throws IOException {
+    if (type == DataType.UNKNOWN_DATA_TYPE) {
+      state = END;
+      return;
+    }
+    width = RawBodyWriter.getElementBytes(type);
+    if (width == 0) {
+      throw new IOException(
+        "Cannot read data type: " + type);
+    }
+    dataType = type;
+    state = READ_SIZE;
+  }
+
+  private void createArray(int size)
+    throws IOException {
+    switch (dataType) {
+      case DataType.BYTE_ARRAY:
+        array = ByteArray.create(size, false);
+        break;
+      case DataType.SHORT_ARRAY:
+        array = ShortArray.create(size, false);
+        break;
+      case DataType.INT_ARRAY:
+        array = IntArray.create(size, false);
+        break;
+      case DataType.FLOAT_ARRAY:
+        array = FloatArray.create(size, false);
+        break;
+      case DataType.LONG_ARRAY:
+        array = LongArray.create(size, false);
+        break;
+      case DataType.OFF_HEAP_INT_ARRAY:
+        array = OffHeapIntArray.create(size);
+        break;
+      case DataType.OFF_HEAP_DOUBLE_ARRAY:
+        array = OffHeapDoubleArray.create(size);
+        break;
+      default:
+        array = DoubleArray.create(size, false);
+        break;
+    }
+    if (array == null) {
+      throw new IOException(
+        "Cannot create array with size " + size);
+    }
+    numReadElements = 0;
+    state = READ_ELEMENTS;
+  }
+
+  /**
+   * Copy the elements in bulk, keep the bytes of
+   * a split element
+   *
+   * @param buffer
+   *          the buffer
+   */
+  private void readElements(ByteBuffer buffer) {
+    if (split.position() > 0) {
+      if (!fill(buffer, width)) {
+        return;
+      }
+      split.flip();
+      getElements(split, 1);
+      split.clear();
+    }
+    int len = Math.min(
+      array.size() - numReadElements,
+      buffer.remaining() / width);
+    if (len > 0) {
+      getElements(buffer, len);
+      buffer.position(
+        buffer.position() + len * width);
+    }
+    if (numReadElements == array.size()) {
+      if (isPartitionList) {
+        state = READ_PARTITION_ID;
+      } else {
+        body.add(array);
+        array = null;
+        state = READ_TYPE;
+      }
+    } else if (buffer.hasRemaining()) {
+      fill(buffer, width);
+    }
+  }
+
+  /**
+   * Copy the elements to the array in bulk
+   * without moving the buffer position
+   *
+   * @param buffer
+   *          the buffer
+   * @param len
+   *          the number of elements
+   */
+  private void getElements(ByteBuffer buffer,
+    int len) {
+    ByteBuffer view =
+      buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    int start = array.start() + numReadElements;
+    switch (dataType) {
+      case DataType.BYTE_ARRAY:
+        view.get(((ByteArray) array).get(), start,
+          len);
+        break;
+      case DataType.SHORT_ARRAY:
+        view.asShortBuffer()
+          .get(((ShortArray) array).get(), start, len);
+        break;
+      case DataType.INT_ARRAY:
+        view.asIntBuffer()
+          .get(((IntArray) array).get(), start, len);
+        break;
+      case DataType.FLOAT_ARRAY:
+        view.asFloatBuffer()
+          .get(((FloatArray) array).get(), start, len);
+        break;
+      case DataType.LONG_ARRAY:
+        view.asLongBuffer()
+          .get(((LongArray) array).get(), start, len);
+        break;
+      case DataType.OFF_HEAP_INT_ARRAY:
+      case DataType.OFF_HEAP_DOUBLE_ARRAY:
+        view.limit(len * width);
+        ByteBuffer dest =
+          ((OffHeapArray) array).get().duplicate();
+        dest.position(start * width);
+        dest.put(view);
+        break;
+      default:
+        view.asDoubleBuffer().get(
+          ((DoubleArray) array).get(), start, len);
+        break;
+    }
+    numReadElements += len;
+  }
+
+  /**
+   * Collect the bytes of a split field
+   *
+   * @param buffer
+   *          the buffer
+   * @param size
+   *          the size of the field
+   * @return true if the field is complete
+   */
+  private boolean fill(ByteBuffer buffer,
+    int size) {
+    while (split.position() < size
+      && buffer.hasRemaining()) {
+      split.put(buffer.get());
+    }
+    return split.position() == size;
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.Array;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.OffHeapArray;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+import edu.iu.harp.resource.OffHeapIntArray;
+import edu.iu.harp.resource.ShortArray;
+import edu.iu.harp.resource.Transferable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.util.List;
+
+/*******************************************************
+ * Write a body of primitive arrays as raw
+ * little-endian blocks. The layout is the same as
+ * the encoded body (type, size, elements and the
+ * partition ID for partitions), so the body size
+ * doesn't change, but the elements are copied in
+ * bulk to a direct buffer instead of being
+ * serialized one by one.
+ ******************************************************/
+public class RawBodyWriter {
+
+  /** The staging buffer of each sending thread */
+  private static final ThreadLocal<ByteBuffer> stagingBuffers =
+    ThreadLocal.withInitial(() -> ByteBuffer
+      .allocateDirect(Constant.PIPELINE_SIZE)
+      .order(ByteOrder.LITTLE_ENDIAN));
+
+  /**
+   * Check if the body of the data can be written
+   * as raw arrays. The body must be decoded and
+   * contain only primitive arrays, or partitions
+   * of primitive arrays.
+   *
+   * @param data
+   *          the Data
+   * @return true if the body can be written as
+   *         raw arrays
+   */
+  public static boolean isRawEncodable(Data data) {
+    if (data == null || data.getBody() == null
+      || (data.getBodyStatus() != DataStatus.DECODED
+        && data
+          .getBodyStatus() != DataStatus.ENCODED_ARRAY_DECODED)) {
+      return false;
+    }
+    byte bodyType = data.getBodyType();
+    if (bodyType != DataType.SIMPLE_LIST
+      && bodyType != DataType.PARTITION_LIST) {
+      return false;
+    }
+    for (Transferable obj : data.getBody()) {
+      if (bodyType == DataType.PARTITION_LIST) {
+        if (!(obj instanceof Partition)) {
+          return false;
+        }
+        obj = ((Partition<?>) obj).get();
+      }
+      if (getDataType(obj) == DataType.UNKNOWN_DATA_TYPE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the data type of a primitive array
+   *
+   * @param obj
+   *          the object
+   * @return the data type, UNKNOWN_DATA_TYPE if
+   *         it is not a primitive array
+   */
+  static byte getDataType(Object obj) {
+    if (obj instanceof ByteArray) {
+      return DataType.BYTE_ARRAY;
+    } else if (obj instanceof ShortArray) {
+      return DataType.SHORT_ARRAY;
+    } else if (obj instanceof IntArray) {
+      return DataType.INT_ARRAY;
+    } else if (obj instanceof FloatArray) {
+      return DataType.FLOAT_ARRAY;
+    } else if (obj instanceof LongArray) {
+      return DataType.LONG_ARRAY;
+    } else if (obj instanceof DoubleArray) {
+      return DataType.DOUBLE_ARRAY;
+    } else if (obj instanceof OffHeapArray) {
+      return ((OffHeapArray) obj).getDataType();
+    } else {
+      return DataType.UNKNOWN_DATA_TYPE;
+    }
+  }
+
+  /**
+   * Get the number of bytes of an element
+   *
+   * @param dataType
+   *          the data type
+   * @return the number of bytes, 0 for unknown
+   *         types
+   */
+  static int getElementBytes(byte dataType) {
+    switch (dataType) {
+      case DataType.BYTE_ARRAY:
+        return 1;
+      case DataType.SHORT_ARRAY:
+        return 2;
+      case DataType.INT_ARRAY:
+      case DataType.FLOAT_ARRAY:
+      case DataType.OFF_HEAP_INT_ARRAY:
+        return 4;
+      case DataType.LONG_ARRAY:
+      case DataType.DOUBLE_ARRAY:
+      case DataType.OFF_HEAP_DOUBLE_ARRAY:
+        return 8;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Write the prefix and the body of the data.
+   * The prefix (command, op bytes and head bytes)
+   * goes out with the first piece of the body in
+   * one gathering write.
+   *
+   * @param channel
+   *          the channel
+   * @param prefix
+   *          the bytes before the body
+   * @param data
+   *          the Data, the body must be raw
+   *          encodable
+   * @throws IOException
+   */
+  public static void write(
+    GatheringByteChannel channel,
+    ByteBuffer prefix, Data data)
+    throws IOException {
+    ByteBuffer[] buffers =
+      {prefix, stagingBuffers.get()};
+    ByteBuffer buffer = buffers[1];
+    buffer.clear();
+    boolean isPartitionList = data
+      .getBodyType() == DataType.PARTITION_LIST;
+    List<Transferable> body = data.getBody();
+    if (body.isEmpty()) {
+      buffer.put(DataType.UNKNOWN_DATA_TYPE);
+    }
+    for (Transferable obj : body) {
+      int partitionID =
+        Constant.UNKNOWN_PARTITION_ID;
+      if (isPartitionList) {
+        Partition<?> partition = (Partition<?>) obj;
+        partitionID = partition.id();
+        obj = partition.get();
+      }
+      Array<?> array = (Array<?>) obj;
+      byte dataType = getDataType(array);
+      int width = getElementBytes(dataType);
+      if (buffer.remaining() < 5) {
+        flush(channel, buffers);
+      }
+      buffer.put(dataType);
+      buffer.putInt(array.size());
+      int start = array.start();
+      int left = array.size();
+      if (array instanceof OffHeapArray) {
+        // The native memory goes to the channel
+        // directly after the staged bytes
+        flush(channel, buffers);
+        writeNative(channel, (OffHeapArray) array);
+        left = 0;
+      }
+      while (left > 0) {
+        int len =
+          Math.min(left, buffer.remaining() / width);
+        if (len == 0) {
+          flush(channel, buffers);
+          continue;
+        }
+        putElements(buffer, dataType, array, start,
+          len);
+        buffer.position(
+          buffer.position() + len * width);
+        start += len;
+        left -= len;
+      }
+      if (isPartitionList) {
+        if (buffer.remaining() < 4) {
+          flush(channel, buffers);
+        }
+        buffer.putInt(partitionID);
+      }
+    }
+    flush(channel, buffers);
+  }
+
+  /**
+   * Copy the elements to the buffer in bulk
+   * without moving the buffer position
+   *
+   * @param buffer
+   *          the buffer
+   * @param dataType
+   *          the data type
+   * @param array
+   *          the array
+   * @param start
+   *          the start of the elements
+   * @param len
+   *          the number of the elements
+   */
+  private static void putElements(
+    ByteBuffer buffer, byte dataType,
+    Array<?> array, int start, int len) {
+    ByteBuffer view =
+      buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    switch (dataType) {
+      case DataType.BYTE_ARRAY:
+        view.put(((ByteArray) array).get(), start,
+          len);
+        break;
+      case DataType.SHORT_ARRAY:
+        view.asShortBuffer()
+          .put(((ShortArray) array).get(), start, len);
+        break;
+      case DataType.INT_ARRAY:
+        view.asIntBuffer()
+          .put(((IntArray) array).get(), start, len);
+        break;
+      case DataType.FLOAT_ARRAY:
+        view.asFloatBuffer()
+          .put(((FloatArray) array).get(), start, len);
+        break;
+      case DataType.LONG_ARRAY:
+        view.asLongBuffer()
+          .put(((LongArray) array).get(), start, len);
+        break;
+      case DataType.DOUBLE_ARRAY:
+        view.asDoubleBuffer().put(
+          ((DoubleArray) array).get(), start, len);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Write the elements of an off-heap array to
+   * the channel without copying
+   *
+   * @param channel
+   *          the channel
+   * @param array
+   *          the off-heap array
+   * @throws IOException
+   */
+  private static void writeNative(
+    GatheringByteChannel channel,
+    OffHeapArray array) throws IOException {
+    ByteBuffer src = array.get().duplicate();
+    src.clear();
+    src.limit(array.getNumBytes());
+    while (src.hasRemaining()) {
+      channel.write(src);
+    }
+  }
+
+  /**
+   * Check if the body has off-heap arrays
+   *
+   * @param data
+   *          the Data
+   * @return true if an off-heap array is found
+   */
+  public static boolean hasOffHeapArrays(
+    Data data) {
+    if (data == null || data.getBody() == null) {
+      return false;
+    }
+    for (Transferable obj : data.getBody()) {
+      if (obj instanceof Partition) {
+        obj = ((Partition<?>) obj).get();
+      }
+      if (obj instanceof OffHeapArray) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Write the buffers to the channel and clear
+   * the staging buffer
+   *
+   * @param channel
+   *          the channel
+   * @param buffers
+   *          the prefix and the staging buffer
+   * @throws IOException
+   */
+  private static void flush(
+    GatheringByteChannel channel,
+    ByteBuffer[] buffers) throws IOException {
+    ByteBuffer buffer = buffers[1];
+    buffer.flip();
+    while (buffers[0].hasRemaining()
+      || buffer.hasRemaining()) {
+      channel.write(buffers);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.resource.ByteArray;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*******************************************************
+ * Pass the body between the workers on the same
+ * node through the files in the shared memory
+ * file system. The sender writes the body to a
+ * new file and sends only the path, the receiver
+ * reads the body in bulk and deletes the file.
+ ******************************************************/
+public class SharedMemory {
+
+  private static final Logger LOG =
+    Logger.getLogger(SharedMemory.class);
+
+  /** The directory, null if not writable */
+  private static final File dir = getDirectory();
+
+  /** The reading buffer of each receiving thread */
+  private static final ThreadLocal<ByteBuffer> readBuffers =
+    ThreadLocal.withInitial(() -> ByteBuffer
+      .allocateDirect(Constant.PIPELINE_SIZE)
+      .order(ByteOrder.LITTLE_ENDIAN));
+
+  private static File getDirectory() {
+    File file = new File(Constant.SHM_DIR);
+    if (file.isDirectory() && file.canWrite()) {
+      return file;
+    } else {
+      LOG.info("No shared memory directory "
+        + Constant.SHM_DIR);
+      return null;
+    }
+  }
+
+  /**
+   * Check if the shared memory can be used
+   *
+   * @return true if the directory is writable
+   */
+  public static boolean isAvailable() {
+    return dir != null;
+  }
+
+  /**
+   * Write the body of the data to a new file
+   *
+   * @param data
+   *          the Data
+   * @param isRaw
+   *          write the body as raw arrays, or
+   *          write the encoded body array
+   * @return the file
+   * @throws IOException
+   */
+  public static File write(Data data,
+    boolean isRaw) throws IOException {
+    File file =
+      File.createTempFile("harp-", ".shm", dir);
+    boolean isFailed = true;
+    try (FileChannel channel = FileChannel.open(
+      file.toPath(), StandardOpenOption.WRITE)) {
+      if (isRaw) {
+        RawBodyWriter.write(channel,
+          ByteBuffer.allocate(0), data);
+      } else {
+        ByteArray bodyArray = data.getBodyArray();
+        int pos = bodyArray.start();
+        int end = pos + bodyArray.size();
+        // Write by pieces to bound the temporary
+        // direct buffer used by the channel
+        while (pos < end) {
+          int len = Math.min(end - pos,
+            Constant.PIPELINE_SIZE);
+          ByteBuffer buffer = ByteBuffer
+            .wrap(bodyArray.get(), pos, len);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          pos += len;
+        }
+      }
+      isFailed = false;
+    } finally {
+      if (isFailed) {
+        delete(file);
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Read the body of the data from the file and
+   * delete the file. The data is released in
+   * failures.
+   *
+   * @param path
+   *          the path of the file
+   * @param data
+   *          the Data with the head array
+   * @param isRaw
+   *          the body is written as raw arrays
+   * @throws IOException
+   */
+  public static void read(String path, Data data,
+    boolean isRaw) throws IOException {
+    File file = new File(path);
+    RawBodyReader reader = null;
+    try (FileChannel channel = FileChannel.open(
+      file.toPath(), StandardOpenOption.READ)) {
+      if (isRaw) {
+        data.decodeHeadArrayOnly();
+        reader = new RawBodyReader(
+          data.getBodyType(), data.getBodySize());
+      } else {
+        data.decodeHeadArray();
+      }
+      if (data
+        .getHeadStatus() != DataStatus.ENCODED_ARRAY_DECODED) {
+        throw new IOException(
+          "Fail to decode head array.");
+      }
+      ByteArray bodyArray = data.getBodyArray();
+      if (!isRaw && bodyArray == null) {
+        throw new IOException("Null body array.");
+      }
+      ByteBuffer buffer = readBuffers.get();
+      int left = isRaw ? data.getBodySize()
+        : bodyArray.size();
+      int pos = isRaw ? 0 : bodyArray.start();
+      while (left > 0) {
+        buffer.clear();
+        buffer.limit(
+          Math.min(left, buffer.capacity()));
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) < 0) {
+            throw new IOException(
+              "Incomplete file " + path);
+          }
+        }
+        buffer.flip();
+        left -= buffer.remaining();
+        if (isRaw) {
+          reader.read(buffer);
+        } else {
+          int len = buffer.remaining();
+          buffer.get(bodyArray.get(), pos, len);
+          pos += len;
+        }
+      }
+      if (isRaw) {
+        data.setRawBody(reader.getBody());
+      }
+    } catch (IOException e) {
+      if (reader != null) {
+        reader.release();
+      }
+      data.release();
+      throw e;
+    } finally {
+      delete(file);
+    }
+  }
+
+  /**
+   * Delete the file
+   *
+   * @param file
+   *          the file
+   */
+  public static void delete(File file) {
+    if (!file.delete()) {
+      LOG.error("Fail to delete " + file);
+    }
+  }
+}
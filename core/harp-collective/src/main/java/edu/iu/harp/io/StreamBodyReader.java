@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.Transferable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/*******************************************************
+ * Decode a body written by StreamBodyWriter as
+ * it arrives. Only a chunk of the body is held
+ * in memory, the objects are created while the
+ * rest of the body is still in transmission.
+ ******************************************************/
+public class StreamBodyReader {
+
+  /**
+   * Receive and decode the body from a blocking
+   * stream
+   *
+   * @param in
+   *          the InputStream of the connection
+   * @param bodyType
+   *          the type of the body
+   * @param bodySize
+   *          the size in bytes of the body
+   * @return the body decoded
+   * @throws IOException
+   */
+  public static List<Transferable> read(
+    InputStream in, byte bodyType, int bodySize)
+    throws IOException {
+    int chunkSize =
+      Math.min(bodySize, Constant.STREAM_CHUNK_SIZE);
+    ByteArray chunk = ByteArray.create(chunkSize, true);
+    if (chunk == null) {
+      throw new IOException(
+        "Cannot get chunk array.");
+    }
+    try {
+      return decode(new ChunkInputStream(in,
+        chunk.get(), chunkSize, bodySize),
+        bodyType);
+    } finally {
+      chunk.release();
+    }
+  }
+
+  /**
+   * Decode the body from a stream ending at the
+   * end of the body. The bytes left are skipped
+   * so the connection stays in step.
+   *
+   * @param body
+   *          the stream of the body
+   * @param bodyType
+   *          the type of the body
+   * @return the body decoded
+   * @throws IOException
+   */
+  public static List<Transferable> decode(
+    InputStream body, byte bodyType)
+    throws IOException {
+    List<Transferable> objs = DataUtil
+      .decodeTransList(new StreamDeserializer(body),
+        bodyType);
+    while (body.skip(Long.MAX_VALUE) > 0) {
+    }
+    if (objs == null) {
+      throw new IOException(
+        "Fail to decode the stream.");
+    }
+    return objs;
+  }
+
+  /*******************************************************
+   * Read the body from the connection through a
+   * chunk, end at the end of the body
+   ******************************************************/
+  private static class ChunkInputStream
+    extends InputStream {
+
+    private final InputStream in;
+    private final byte[] chunk;
+    private final int chunkSize;
+    /** The bytes not read from the connection */
+    private int remaining;
+    private int pos;
+    private int limit;
+
+    private ChunkInputStream(InputStream in,
+      byte[] chunk, int chunkSize, int bodySize) {
+      this.in = in;
+      this.chunk = chunk;
+      this.chunkSize = chunkSize;
+      this.remaining = bodySize;
+      this.pos = 0;
+      this.limit = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      return chunk[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+      throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      int n = Math.min(len, limit - pos);
+      System.arraycopy(chunk, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0L;
+      while (skipped < n
+        && (pos < limit || fill())) {
+        int len =
+          (int) Math.min(n - skipped, limit - pos);
+        pos += len;
+        skipped += len;
+      }
+      return skipped;
+    }
+
+    private boolean fill() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      int len = 0;
+      do {
+        len = in.read(chunk, 0,
+          Math.min(chunkSize, remaining));
+      } while (len == 0);
+      if (len < 0) {
+        throw new EOFException(
+          "Connection closed in receiving.");
+      }
+      remaining -= len;
+      pos = 0;
+      limit = len;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.resource.ByteArray;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*******************************************************
+ * Encode a body in chunks and send each chunk as
+ * soon as it is full. The layout is the same as
+ * the encoded body, but the body is never held
+ * as a whole in a byte array, and the encoding
+ * of a chunk overlaps with the transmission of
+ * the previous one.
+ ******************************************************/
+public class StreamBodyWriter {
+
+  /**
+   * Check if the body of the data can be streamed.
+   * The body must be decoded.
+   *
+   * @param data
+   *          the Data
+   * @return true if the body can be streamed
+   */
+  public static boolean isStreamable(Data data) {
+    return data != null && data.getBody() != null
+      && data.getBodyStatus() == DataStatus.DECODED
+      && (data.getBodyType() == DataType.SIMPLE_LIST
+        || data
+          .getBodyType() == DataType.PARTITION_LIST);
+  }
+
+  /**
+   * Encode the body and write it chunk by chunk
+   *
+   * @param out
+   *          the OutputStream
+   * @param data
+   *          the Data, the body must be
+   *          streamable
+   * @throws IOException
+   */
+  public static void write(OutputStream out,
+    Data data) throws IOException {
+    int bodySize = data.getBodySize();
+    int chunkSize =
+      Math.min(bodySize, Constant.STREAM_CHUNK_SIZE);
+    ByteArray chunk = ByteArray.create(chunkSize, true);
+    if (chunk == null) {
+      throw new IOException(
+        "Cannot get chunk array.");
+    }
+    try {
+      ChunkOutputStream chunkOut =
+        new ChunkOutputStream(out, chunk.get(),
+          chunkSize);
+      StreamSerializer dout =
+        new StreamSerializer(chunkOut);
+      try {
+        DataUtil.encodeTransList(data.getBody(),
+          bodySize, dout);
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException(
+          "Fail to encode the body.", e);
+      }
+      dout.flush();
+      if (chunkOut.getNumBytes() != bodySize) {
+        throw new IOException("Encoded "
+          + chunkOut.getNumBytes()
+          + " bytes, but the body size is "
+          + bodySize);
+      }
+    } finally {
+      chunk.release();
+    }
+  }
+
+  /*******************************************************
+   * Collect the bytes in a chunk, send the chunk
+   * when it is full
+   ******************************************************/
+  private static class ChunkOutputStream
+    extends OutputStream {
+
+    private final OutputStream out;
+    private final byte[] chunk;
+    private final int chunkSize;
+    private int pos;
+    private long numBytes;
+
+    private ChunkOutputStream(OutputStream out,
+      byte[] chunk, int chunkSize) {
+      this.out = out;
+      this.chunk = chunk;
+      this.chunkSize = chunkSize;
+      this.pos = 0;
+      this.numBytes = 0L;
+    }
+
+    private long getNumBytes() {
+      return numBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (pos == chunkSize) {
+        sendChunk();
+      }
+      chunk[pos++] = (byte) b;
+      numBytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+      throws IOException {
+      while (len > 0) {
+        if (pos == chunkSize) {
+          sendChunk();
+        }
+        int n = Math.min(len, chunkSize - pos);
+        System.arraycopy(b, off, chunk, pos, n);
+        pos += n;
+        off += n;
+        len -= n;
+        numBytes += n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      sendChunk();
+    }
+
+    private void sendChunk() throws IOException {
+      if (pos > 0) {
+        IOUtil.sendBytes(out, chunk, 0, pos);
+        pos = 0;
+      }
+    }
+  }
+}
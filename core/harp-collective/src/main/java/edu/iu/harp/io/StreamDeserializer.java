@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*******************************************************
+ * A Deserializer reading from a stream, the
+ * counterpart of StreamSerializer
+ ******************************************************/
+public class StreamDeserializer implements DataInput {
+
+  private final DataInputStream in;
+
+  public StreamDeserializer(InputStream in) {
+    this.in = new DataInputStream(in);
+  }
+
+  @Override
+  public void readFully(byte[] b)
+    throws IOException {
+    in.readFully(b);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len)
+    throws IOException {
+    in.readFully(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    return in.skipBytes(n);
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return in.readByte();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return in.readUnsignedByte();
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    return in.readShort();
+  }
+
+  @Override
+  public int readUnsignedShort()
+    throws IOException {
+    return in.readUnsignedShort();
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return in.readChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    return in.readInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return in.readLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return in.readFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return in.readDouble();
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    return readUTF();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    int length = in.readInt();
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = in.readChar();
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*******************************************************
+ * A Serializer writing to a stream. The bytes
+ * are the same as Serializer, strings are
+ * written as the length and the chars.
+ ******************************************************/
+public class StreamSerializer implements DataOutput {
+
+  private final DataOutputStream out;
+
+  public StreamSerializer(OutputStream out) {
+    this.out = new DataOutputStream(out);
+  }
+
+  /**
+   * Get the number of bytes written
+   *
+   * @return the number of bytes written
+   */
+  public int size() {
+    return out.size();
+  }
+
+  /**
+   * Flush the stream
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+  }
+
+  @Override
+  public void write(byte[] b) throws IOException {
+    out.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len)
+    throws IOException {
+    out.write(b, off, len);
+  }
+
+  @Override
+  public void writeBoolean(boolean v)
+    throws IOException {
+    out.writeBoolean(v);
+  }
+
+  @Override
+  public void writeByte(int v) throws IOException {
+    out.writeByte(v);
+  }
+
+  @Override
+  public void writeShort(int v) throws IOException {
+    out.writeShort(v);
+  }
+
+  @Override
+  public void writeChar(int v) throws IOException {
+    out.writeChar(v);
+  }
+
+  @Override
+  public void writeInt(int v) throws IOException {
+    out.writeInt(v);
+  }
+
+  @Override
+  public void writeLong(long v) throws IOException {
+    out.writeLong(v);
+  }
+
+  @Override
+  public void writeFloat(float v) throws IOException {
+    out.writeFloat(v);
+  }
+
+  @Override
+  public void writeDouble(double v)
+    throws IOException {
+    out.writeDouble(v);
+  }
+
+  @Override
+  public void writeBytes(String s)
+    throws IOException {
+    writeChars(s);
+  }
+
+  @Override
+  public void writeChars(String s)
+    throws IOException {
+    out.writeInt(s.length());
+    out.writeChars(s);
+  }
+
+  @Override
+  public void writeUTF(String s) throws IOException {
+    writeChars(s);
+  }
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/*******************************************************
+ * Read the numbers of a text input line by line
+ * without creating Strings. The bytes are read
+ * into a reusable buffer and the numbers are
+ * parsed in place. The tokens of a line are
+ * separated by blanks and the given separators,
+ * so the reader works on CSV, whitespace and
+ * LibSVM (with ':') files. Blank lines are
+ * skipped by nextLine and kept by nextAnyLine.
+ * Repeated separators are collapsed unless empty
+ * fields are rejected, then the separators other
+ * than the blanks must be followed by a token.
+ * The buffer can be reused on the next input
+ * with reset. Not thread-safe.
+ ******************************************************/
+public class TextReader implements Closeable {
+
+  public static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * 10^0 to 10^22 are exact in double
+   */
+  private static final double[] POW10 = {1e0,
+    1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+    1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  /**
+   * The largest mantissa exact in double, 2^53
+   */
+  private static final long MAX_EXACT_MANTISSA =
+    1L << 53;
+
+  private final boolean[] isSeparator;
+  /** The separators ending a field, if strict */
+  private final boolean[] isFieldSeparator;
+  private InputStream in;
+  private byte[] buffer;
+  /** The next byte to read */
+  private int pos;
+  /** The end of the bytes in the buffer */
+  private int limit;
+  private boolean isEOF;
+  private boolean inLine;
+  /** No token is read from the line yet */
+  private boolean atLineStart;
+  /** The field separators before the next token */
+  private int numFieldSeparators;
+
+  /**
+   * Read the tokens separated by blanks
+   *
+   * @param in
+   *          the InputStream
+   */
+  public TextReader(InputStream in) {
+    this(in, "", BUFFER_SIZE);
+  }
+
+  /**
+   * @param in
+   *          the InputStream
+   * @param separators
+   *          the separators besides the blanks,
+   *          each char is a separator
+   */
+  public TextReader(InputStream in,
+    String separators) {
+    this(in, separators, false, BUFFER_SIZE);
+  }
+
+  /**
+   * @param in
+   *          the InputStream
+   * @param separators
+   *          the separators besides the blanks,
+   *          each char is a separator
+   * @param rejectEmptyFields
+   *          reject an empty field between two
+   *          separators or at the line start
+   */
+  public TextReader(InputStream in,
+    String separators, boolean rejectEmptyFields) {
+    this(in, separators, rejectEmptyFields,
+      BUFFER_SIZE);
+  }
+
+  /**
+   * @param in
+   *          the InputStream
+   * @param separators
+   *          the separators besides the blanks,
+   *          each char is a separator
+   * @param bufferSize
+   *          the initial size of the buffer, it
+   *          grows for the tokens larger than it
+   */
+  public TextReader(InputStream in,
+    String separators, int bufferSize) {
+    this(in, separators, false, bufferSize);
+  }
+
+  /**
+   * @param in
+   *          the InputStream
+   * @param separators
+   *          the separators besides the blanks,
+   *          each char is a separator
+   * @param rejectEmptyFields
+   *          reject an empty field between two
+   *          separators or at the line start
+   * @param bufferSize
+   *          the initial size of the buffer, it
+   *          grows for the tokens larger than it
+   */
+  public TextReader(InputStream in,
+    String separators, boolean rejectEmptyFields,
+    int bufferSize) {
+    this.isSeparator = new boolean[128];
+    this.isFieldSeparator = new boolean[128];
+    isSeparator[' '] = true;
+    isSeparator['\t'] = true;
+    isSeparator['\r'] = true;
+    for (int i = 0; i < separators.length(); i++) {
+      char c = separators.charAt(i);
+      if (c < 128 && c != '\n') {
+        isFieldSeparator[c] =
+          rejectEmptyFields && !isSeparator[c];
+        isSeparator[c] = true;
+      }
+    }
+    this.buffer = new byte[Math.max(bufferSize, 16)];
+    reset(in);
+  }
+
+  /**
+   * Get the separators of a simple pattern for
+   * String.split, such as ",", " ", "\\s+" or
+   * "\\t". Escaped chars are literal, character
+   * classes and quantifiers are dropped, and the
+   * blanks are always separators.
+   *
+   * @param regex
+   *          the pattern
+   * @return the separators
+   */
+  public static String separatorsOf(String regex) {
+    StringBuilder separators = new StringBuilder();
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\' && i + 1 < regex.length()) {
+        char escaped = regex.charAt(++i);
+        if (escaped == 't') {
+          separators.append('\t');
+        } else if (escaped != 's') {
+          separators.append(escaped);
+        }
+      } else if ("[]+*".indexOf(c) < 0) {
+        separators.append(c);
+      }
+    }
+    return separators.toString();
+  }
+
+  /**
+   * Read another input with the same buffer
+   *
+   * @param in
+   *          the InputStream
+   */
+  public void reset(InputStream in) {
+    this.in = in;
+    this.pos = 0;
+    this.limit = 0;
+    this.isEOF = false;
+    this.inLine = false;
+    this.atLineStart = false;
+    this.numFieldSeparators = 0;
+  }
+
+  /**
+   * Move to the next line with tokens, the rest
+   * of the current line is skipped
+   *
+   * @return true if there is a line, false at the
+   *         end of the input
+   * @throws IOException
+   */
+  public boolean nextLine() throws IOException {
+    if (inLine) {
+      skipLine();
+    }
+    while (true) {
+      while (pos < limit) {
+        byte b = buffer[pos];
+        if (b != '\n' && (!isSeparator(b)
+          || isFieldSeparator(b))) {
+          startLine();
+          return true;
+        }
+        pos++;
+      }
+      if (!fill()) {
+        inLine = false;
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Move to the next line, which may be empty or
+   * blank, the rest of the current line is
+   * skipped. The lines are the ones of
+   * BufferedReader.readLine.
+   *
+   * @return true if there is a line, false at the
+   *         end of the input
+   * @throws IOException
+   */
+  public boolean nextAnyLine() throws IOException {
+    if (inLine) {
+      skipLine();
+    }
+    if (pos < limit || fill()) {
+      startLine();
+      return true;
+    }
+    inLine = false;
+    return false;
+  }
+
+  private void startLine() {
+    inLine = true;
+    atLineStart = true;
+    numFieldSeparators = 0;
+  }
+
+  /**
+   * Check if the current line has more tokens
+   *
+   * @return true if there is a token
+   * @throws IOException
+   */
+  public boolean hasNext() throws IOException {
+    if (!inLine) {
+      return false;
+    }
+    while (true) {
+      while (pos < limit) {
+        byte b = buffer[pos];
+        if (!isSeparator(b)) {
+          return b != '\n';
+        }
+        if (isFieldSeparator(b)) {
+          numFieldSeparators++;
+        }
+        pos++;
+      }
+      if (!fill()) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Read the next token of the line as an int
+   *
+   * @return the int
+   * @throws IOException
+   *           if the line has no more tokens
+   * @throws NumberFormatException
+   *           if the token is not an int
+   */
+  public int readInt() throws IOException {
+    int end = scanToken();
+    long value = parseLong(pos, end);
+    if (value < Integer.MIN_VALUE
+      || value > Integer.MAX_VALUE) {
+      throw invalidToken(end);
+    }
+    pos = end;
+    return (int) value;
+  }
+
+  /**
+   * Read the next token of the line as a long
+   *
+   * @return the long
+   * @throws IOException
+   *           if the line has no more tokens
+   * @throws NumberFormatException
+   *           if the token is not a long
+   */
+  public long readLong() throws IOException {
+    int end = scanToken();
+    long value = parseLong(pos, end);
+    pos = end;
+    return value;
+  }
+
+  /**
+   * Read the next token of the line as a double.
+   * The decimals whose digits form a mantissa up
+   * to 2^53, so at most 16 significant digits,
+   * and whose decimal exponent is within -22 to
+   * 22 are parsed in place and rounded
+   * correctly, the others are given to
+   * Double.parseDouble.
+   *
+   * @return the double
+   * @throws IOException
+   *           if the line has no more tokens
+   * @throws NumberFormatException
+   *           if the token is not a double
+   */
+  public double readDouble() throws IOException {
+    int end = scanToken();
+    double value = parseDouble(pos, end);
+    pos = end;
+    return value;
+  }
+
+  /**
+   * Read the next token of the line as a String
+   *
+   * @return the String
+   * @throws IOException
+   *           if the line has no more tokens
+   */
+  public String readString() throws IOException {
+    int end = scanToken();
+    String value = new String(buffer, pos,
+      end - pos, StandardCharsets.UTF_8);
+    pos = end;
+    return value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private boolean isSeparator(byte b) {
+    return b >= 0 && isSeparator[b];
+  }
+
+  private boolean isFieldSeparator(byte b) {
+    return b >= 0 && isFieldSeparator[b];
+  }
+
+  /**
+   * Find the end of the next token, with the
+   * whole token in the buffer
+   */
+  private int scanToken() throws IOException {
+    if (!hasNext()) {
+      throw new IOException(
+        "No more tokens in the line");
+    }
+    // One field separator between two tokens,
+    // none before the first one. Always 0 if
+    // empty fields are allowed.
+    if (numFieldSeparators > (atLineStart ? 0
+      : 1)) {
+      throw new NumberFormatException(
+        "Empty field in the line");
+    }
+    atLineStart = false;
+    numFieldSeparators = 0;
+    int end = pos;
+    while (true) {
+      while (end < limit) {
+        byte b = buffer[end];
+        if (b == '\n' || isSeparator(b)) {
+          return end;
+        }
+        end++;
+      }
+      int len = end - pos;
+      if (!fill()) {
+        return pos + len;
+      }
+      end = pos + len;
+    }
+  }
+
+  private void skipLine() throws IOException {
+    while (true) {
+      while (pos < limit) {
+        if (buffer[pos++] == '\n') {
+          return;
+        }
+      }
+      if (!fill()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Move the unread bytes to the start of the
+   * buffer and read more bytes after them
+   *
+   * @return false if no more bytes
+   */
+  private boolean fill() throws IOException {
+    if (isEOF) {
+      return false;
+    }
+    if (pos > 0) {
+      System.arraycopy(buffer, pos, buffer, 0,
+        limit - pos);
+      limit -= pos;
+      pos = 0;
+    }
+    if (limit == buffer.length) {
+      byte[] newBuffer = new byte[buffer.length * 2];
+      System.arraycopy(buffer, 0, newBuffer, 0,
+        limit);
+      buffer = newBuffer;
+    }
+    int len =
+      in.read(buffer, limit, buffer.length - limit);
+    if (len < 0) {
+      isEOF = true;
+      return false;
+    }
+    limit += len;
+    return true;
+  }
+
+  private long parseLong(int start, int end) {
+    int i = start;
+    boolean isNegative = false;
+    if (i < end
+      && (buffer[i] == '-' || buffer[i] == '+')) {
+      isNegative = buffer[i] == '-';
+      i++;
+    }
+    if (i == end) {
+      throw invalidToken(end);
+    }
+    // Accumulate negatively to reach Long.MIN_VALUE
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = buffer[i] - '0';
+      if (digit < 0 || digit > 9
+        || value < (Long.MIN_VALUE + digit) / 10) {
+        throw invalidToken(end);
+      }
+      value = value * 10 - digit;
+    }
+    if (!isNegative) {
+      if (value == Long.MIN_VALUE) {
+        throw invalidToken(end);
+      }
+      value = -value;
+    }
+    return value;
+  }
+
+  private double parseDouble(int start, int end) {
+    int i = start;
+    boolean isNegative = false;
+    if (i < end
+      && (buffer[i] == '-' || buffer[i] == '+')) {
+      isNegative = buffer[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int exponent = 0;
+    int numDigits = 0;
+    boolean hasDigits = false;
+    for (; i < end && buffer[i] >= '0'
+      && buffer[i] <= '9'; i++) {
+      mantissa = mantissa * 10 + (buffer[i] - '0');
+      if (mantissa != 0) {
+        numDigits++;
+      }
+      hasDigits = true;
+      if (numDigits > 18) {
+        return parseSlow(start, end);
+      }
+    }
+    if (i < end && buffer[i] == '.') {
+      for (i++; i < end && buffer[i] >= '0'
+        && buffer[i] <= '9'; i++) {
+        mantissa =
+          mantissa * 10 + (buffer[i] - '0');
+        if (mantissa != 0) {
+          numDigits++;
+        }
+        exponent--;
+        hasDigits = true;
+        if (numDigits > 18) {
+          return parseSlow(start, end);
+        }
+      }
+    }
+    if (hasDigits && i < end
+      && (buffer[i] == 'e' || buffer[i] == 'E')) {
+      i++;
+      boolean isNegativeExp = false;
+      if (i < end
+        && (buffer[i] == '-' || buffer[i] == '+')) {
+        isNegativeExp = buffer[i] == '-';
+        i++;
+      }
+      int exp = 0;
+      int expStart = i;
+      for (; i < end && buffer[i] >= '0'
+        && buffer[i] <= '9'
+        && i - expStart < 4; i++) {
+        exp = exp * 10 + (buffer[i] - '0');
+      }
+      if (i == expStart) {
+        throw invalidToken(end);
+      }
+      exponent += isNegativeExp ? -exp : exp;
+    }
+    if (!hasDigits || i != end
+      || mantissa > MAX_EXACT_MANTISSA
+      || exponent < -22 || exponent > 22) {
+      // NaN, Infinity, hex, long or large numbers
+      return parseSlow(start, end);
+    }
+    // One rounding of two exact numbers
+    double value = mantissa;
+    if (exponent < 0) {
+      value /= POW10[-exponent];
+    } else {
+      value *= POW10[exponent];
+    }
+    return isNegative ? -value : value;
+  }
+
+  private double parseSlow(int start, int end) {
+    return Double.parseDouble(new String(buffer,
+      start, end - start, StandardCharsets.US_ASCII));
+  }
+
+  private NumberFormatException invalidToken(
+    int end) {
+    return new NumberFormatException(
+      "For input string: \"" + new String(buffer,
+        pos, end - pos, StandardCharsets.UTF_8)
+        + "\"");
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.kernel;
+
+/*******************************************************
+ * Squared Euclidean distances from points to a set
+ * of centroids, computed as ||x||^2 + ||c||^2 -
+ * 2x.c in tiles. A tile of points stays in L1
+ * while it is compared with a tile of centroids
+ * kept in L2, and the dot products are computed
+ * two points by four centroids at a time so that
+ * each load feeds several independent sums.
+ *
+ * The centroids are copied into one row-major
+ * array with their norms. Set them from one
+ * thread, then assign can be invoked from many.
+ ******************************************************/
+public class DistanceKernel {
+
+  /** The bytes of a tile of points */
+  public static final int L1_TILE_BYTES = 16384;
+  /** The bytes of a tile of centroids */
+  public static final int L2_TILE_BYTES = 131072;
+
+  private final int dimension;
+  private final int pointTileSize;
+  private final int cenTileSize;
+  private int numCentroids;
+  /** The centroids, one row per centroid */
+  private double[] centroids;
+  private double[] cenNorms;
+
+  /**
+   * @param dimension
+   *          the number of coordinates of a point
+   */
+  public DistanceKernel(int dimension) {
+    this.dimension = dimension;
+    int rowBytes = Math.max(1, dimension) * 8;
+    // Two points and four centroids per step
+    pointTileSize = Math.max(2,
+      L1_TILE_BYTES / rowBytes / 2 * 2);
+    cenTileSize = Math.max(4,
+      L2_TILE_BYTES / rowBytes / 4 * 4);
+    numCentroids = 0;
+    centroids = new double[0];
+    cenNorms = new double[0];
+  }
+
+  /**
+   * Get the number of coordinates of a vector
+   *
+   * @return the dimension
+   */
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * Get the number of centroids set
+   *
+   * @return the number of centroids
+   */
+  public int getNumCentroids() {
+    return numCentroids;
+  }
+
+  /**
+   * Set the number of centroids, the arrays only
+   * grow
+   *
+   * @param numCentroids
+   *          the number of centroids
+   */
+  public void setNumCentroids(int numCentroids) {
+    if (numCentroids > cenNorms.length) {
+      centroids =
+        new double[numCentroids * dimension];
+      cenNorms = new double[numCentroids];
+    }
+    this.numCentroids = numCentroids;
+  }
+
+  /**
+   * Copy a centroid into the kernel
+   *
+   * @param cenID
+   *          the index of the centroid, below
+   *          the number of centroids
+   * @param array
+   *          the array holding the centroid
+   * @param start
+   *          the first coordinate in the array
+   */
+  public void setCentroid(int cenID, double[] array,
+    int start) {
+    int row = cenID * dimension;
+    System.arraycopy(array, start, centroids, row,
+      dimension);
+    cenNorms[cenID] = norm(centroids, row);
+  }
+
+  /**
+   * Find the nearest centroid of each point. A
+   * centroid replaces the current one of a point
+   * only if it is strictly nearer, and centroids
+   * are compared in the order of their indices,
+   * so ties go to the current one and then to the
+   * lowest index.
+   *
+   * @param points
+   *          the array holding the points
+   * @param start
+   *          the first coordinate of the first
+   *          point
+   * @param stride
+   *          the distance between two points in
+   *          the array
+   * @param numPoints
+   *          the number of points
+   * @param minDistances
+   *          the squared distance of each point to
+   *          its current centroid, updated
+   * @param cenIDs
+   *          the current centroid of each point,
+   *          updated
+   */
+  public void assign(double[] points, int start,
+    int stride, int numPoints,
+    double[] minDistances, int[] cenIDs) {
+    double[] pointNorms =
+      new double[Math.min(pointTileSize,
+        numPoints)];
+    for (int pTile =
+      0; pTile < numPoints; pTile += pointTileSize) {
+      int pEnd =
+        Math.min(pTile + pointTileSize, numPoints);
+      for (int i = pTile; i < pEnd; i++) {
+        pointNorms[i - pTile] =
+          norm(points, start + i * stride);
+      }
+      for (int cTile = 0; cTile < numCentroids;
+        cTile += cenTileSize) {
+        int cEnd = Math.min(cTile + cenTileSize,
+          numCentroids);
+        int i = pTile;
+        for (; i + 1 < pEnd; i += 2) {
+          assignTwo(points, start + i * stride,
+            start + (i + 1) * stride,
+            pointNorms[i - pTile],
+            pointNorms[i + 1 - pTile], i, cTile,
+            cEnd, minDistances, cenIDs);
+        }
+        if (i < pEnd) {
+          assignOne(points, start + i * stride,
+            pointNorms[i - pTile], i, cTile, cEnd,
+            minDistances, cenIDs);
+        }
+      }
+    }
+  }
+
+  /**
+   * Compare two points with the centroids in
+   * [cStart, cEnd)
+   */
+  private void assignTwo(double[] points,
+    int p0, int p1, double norm0, double norm1,
+    int i, int cStart, int cEnd,
+    double[] minDistances, int[] cenIDs) {
+    final int d = dimension;
+    final double[] c = centroids;
+    int j = cStart;
+    for (; j + 3 < cEnd; j += 4) {
+      int q0 = j * d;
+      int q1 = q0 + d;
+      int q2 = q1 + d;
+      int q3 = q2 + d;
+      double s00 = 0.0;
+      double s01 = 0.0;
+      double s02 = 0.0;
+      double s03 = 0.0;
+      double s10 = 0.0;
+      double s11 = 0.0;
+      double s12 = 0.0;
+      double s13 = 0.0;
+      for (int l = 0; l < d; l++) {
+        double x0 = points[p0 + l];
+        double x1 = points[p1 + l];
+        double c0 = c[q0 + l];
+        double c1 = c[q1 + l];
+        double c2 = c[q2 + l];
+        double c3 = c[q3 + l];
+        s00 += x0 * c0;
+        s01 += x0 * c1;
+        s02 += x0 * c2;
+        s03 += x0 * c3;
+        s10 += x1 * c0;
+        s11 += x1 * c1;
+        s12 += x1 * c2;
+        s13 += x1 * c3;
+      }
+      update(i, j, norm0, s00, minDistances, cenIDs);
+      update(i, j + 1, norm0, s01, minDistances,
+        cenIDs);
+      update(i, j + 2, norm0, s02, minDistances,
+        cenIDs);
+      update(i, j + 3, norm0, s03, minDistances,
+        cenIDs);
+      update(i + 1, j, norm1, s10, minDistances,
+        cenIDs);
+      update(i + 1, j + 1, norm1, s11,
+        minDistances, cenIDs);
+      update(i + 1, j + 2, norm1, s12,
+        minDistances, cenIDs);
+      update(i + 1, j + 3, norm1, s13,
+        minDistances, cenIDs);
+    }
+    for (; j < cEnd; j++) {
+      int q = j * d;
+      double s0 = 0.0;
+      double s1 = 0.0;
+      for (int l = 0; l < d; l++) {
+        double cl = c[q + l];
+        s0 += points[p0 + l] * cl;
+        s1 += points[p1 + l] * cl;
+      }
+      update(i, j, norm0, s0, minDistances, cenIDs);
+      update(i + 1, j, norm1, s1, minDistances,
+        cenIDs);
+    }
+  }
+
+  /**
+   * Compare one point with the centroids in
+   * [cStart, cEnd)
+   */
+  private void assignOne(double[] points, int p,
+    double norm, int i, int cStart, int cEnd,
+    double[] minDistances, int[] cenIDs) {
+    final int d = dimension;
+    final double[] c = centroids;
+    int j = cStart;
+    for (; j + 3 < cEnd; j += 4) {
+      int q0 = j * d;
+      int q1 = q0 + d;
+      int q2 = q1 + d;
+      int q3 = q2 + d;
+      double s0 = 0.0;
+      double s1 = 0.0;
+      double s2 = 0.0;
+      double s3 = 0.0;
+      for (int l = 0; l < d; l++) {
+        double x = points[p + l];
+        s0 += x * c[q0 + l];
+        s1 += x * c[q1 + l];
+        s2 += x * c[q2 + l];
+        s3 += x * c[q3 + l];
+      }
+      update(i, j, norm, s0, minDistances, cenIDs);
+      update(i, j + 1, norm, s1, minDistances,
+        cenIDs);
+      update(i, j + 2, norm, s2, minDistances,
+        cenIDs);
+      update(i, j + 3, norm, s3, minDistances,
+        cenIDs);
+    }
+    for (; j < cEnd; j++) {
+      int q = j * d;
+      double s = 0.0;
+      for (int l = 0; l < d; l++) {
+        s += points[p + l] * c[q + l];
+      }
+      update(i, j, norm, s, minDistances, cenIDs);
+    }
+  }
+
+  private void update(int i, int cenID,
+    double pointNorm, double dot,
+    double[] minDistances, int[] cenIDs) {
+    double distance =
+      pointNorm + cenNorms[cenID] - 2.0 * dot;
+    if (distance < 0.0) {
+      // Cancellation of nearly equal vectors
+      distance = 0.0;
+    }
+    if (distance < minDistances[i]) {
+      minDistances[i] = distance;
+      cenIDs[i] = cenID;
+    }
+  }
+
+  private double norm(double[] array, int start) {
+    double norm = 0.0;
+    int end = start + dimension;
+    for (int l = start; l < end; l++) {
+      norm += array[l] * array[l];
+    }
+    return norm;
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Numeric kernels shared by the applications
+ */
+package edu.iu.harp.kernel;
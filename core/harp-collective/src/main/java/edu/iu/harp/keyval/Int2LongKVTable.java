@@ -124,6 +124,15 @@ public class Int2LongKVTable
     }
   }
 
+  /**
+   * Get the combiner of the values
+   *
+   * @return the value combiner
+   */
+  public TypeLongCombiner getValCombiner() {
+    return valCombiner;
+  }
+
   /**
    * Get a partition by key if exists, or create a
    * new partition if not.
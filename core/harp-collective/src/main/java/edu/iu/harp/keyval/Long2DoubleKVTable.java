@@ -108,6 +108,15 @@ public class Long2DoubleKVTable
     }
   }
 
+  /**
+   * Get the combiner of the values
+   *
+   * @return the value combiner
+   */
+  public TypeDoubleCombiner getValCombiner() {
+    return valCombiner;
+  }
+
   /**
    * Get a partition by key if exists, or create a
    * new partition if not.
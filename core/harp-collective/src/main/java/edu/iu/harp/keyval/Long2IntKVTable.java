@@ -106,6 +106,15 @@ public class Long2IntKVTable
     }
   }
 
+  /**
+   * Get the combiner of the values
+   *
+   * @return the value combiner
+   */
+  public TypeIntCombiner getValCombiner() {
+    return valCombiner;
+  }
+
   /**
    * Get a partition by key if exists, or create a
    * new partition if not.
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.keyval;
+
+import edu.iu.harp.resource.Writable;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.LongBinaryOperator;
+
+/*******************************************************
+ * The key-value pairs sorted by the keys, used
+ * in the sparse allreduce. Values are stored as
+ * raw bits. The keys are grouped by chunks of
+ * 1024 consecutive keys. In each chunk the keys
+ * are written as varint deltas, or as a bitmap
+ * if that is smaller, so dense key ranges cost
+ * one bit per key.
+ ******************************************************/
+public class SparseKVBlock extends Writable {
+
+  /** The types of the values */
+  public static final byte INT_VALUE = 0;
+  public static final byte LONG_VALUE = 1;
+  public static final byte DOUBLE_VALUE = 2;
+
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE =
+    1 << CHUNK_BITS;
+  private static final int BITMAP_BYTES =
+    CHUNK_SIZE / 8;
+  private static final byte SPARSE_CHUNK = 0;
+  private static final byte DENSE_CHUNK = 1;
+
+  private byte valueType;
+  private long[] keys;
+  private long[] vals;
+  private int size;
+  private boolean isSorted;
+  // Cached for write
+  private int numWriteBytes;
+
+  /**
+   * Create an empty block of int values
+   */
+  public SparseKVBlock() {
+    keys = new long[0];
+    vals = new long[0];
+    clear();
+  }
+
+  /**
+   * Initialization
+   *
+   * @param type the type of the values
+   */
+  public void initialize(byte type) {
+    clear();
+    valueType = type;
+  }
+
+  /**
+   * Append a key-value pair, the keys must be
+   * unique
+   *
+   * @param key the key
+   * @param val the raw bits of the value
+   */
+  public void add(long key, long val) {
+    if (size == keys.length) {
+      int capacity = Math.max(16, size * 2);
+      keys = java.util.Arrays.copyOf(keys, capacity);
+      vals = java.util.Arrays.copyOf(vals, capacity);
+    }
+    keys[size] = key;
+    vals[size] = val;
+    size++;
+    isSorted = false;
+    numWriteBytes = -1;
+  }
+
+  /**
+   * Sort the pairs by the keys
+   */
+  public void sort() {
+    if (!isSorted) {
+      Arrays.quickSort(0, size,
+        new AbstractIntComparator() {
+          private static final long serialVersionUID =
+            1L;
+
+          @Override
+          public int compare(int i, int j) {
+            return Long.compare(keys[i], keys[j]);
+          }
+        }, (i, j) -> {
+          long key = keys[i];
+          keys[i] = keys[j];
+          keys[j] = key;
+          long val = vals[i];
+          vals[i] = vals[j];
+          vals[j] = val;
+        });
+      isSorted = true;
+    }
+  }
+
+  /**
+   * Get the chunk of the key
+   *
+   * @param key the key
+   * @return the chunk
+   */
+  public static long getChunk(long key) {
+    return key >> CHUNK_BITS;
+  }
+
+  /**
+   * Get the type of the values
+   *
+   * @return INT_VALUE, LONG_VALUE or
+   *         DOUBLE_VALUE
+   */
+  public byte getValueType() {
+    return valueType;
+  }
+
+  /**
+   * Get the number of the pairs
+   *
+   * @return the number of the pairs
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the key of the pair
+   *
+   * @param i the index of the pair
+   * @return the key
+   */
+  public long getKey(int i) {
+    return keys[i];
+  }
+
+  /**
+   * Get the raw bits of the value of the pair
+   *
+   * @param i the index of the pair
+   * @return the raw bits of the value
+   */
+  public long getVal(int i) {
+    return vals[i];
+  }
+
+  /**
+   * Merge the pairs of the other block, the
+   * values of the same keys are combined
+   *
+   * @param other    the other block
+   * @param combiner combine the raw bits of the
+   *                 values
+   */
+  public void merge(SparseKVBlock other,
+    LongBinaryOperator combiner) {
+    sort();
+    other.sort();
+    long[] newKeys = new long[size + other.size];
+    long[] newVals = new long[size + other.size];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < size && j < other.size) {
+      if (keys[i] < other.keys[j]) {
+        newKeys[k] = keys[i];
+        newVals[k++] = vals[i++];
+      } else if (keys[i] > other.keys[j]) {
+        newKeys[k] = other.keys[j];
+        newVals[k++] = other.vals[j++];
+      } else {
+        newKeys[k] = keys[i];
+        newVals[k++] = combiner
+          .applyAsLong(vals[i++], other.vals[j++]);
+      }
+    }
+    for (; i < size; i++, k++) {
+      newKeys[k] = keys[i];
+      newVals[k] = vals[i];
+    }
+    for (; j < other.size; j++, k++) {
+      newKeys[k] = other.keys[j];
+      newVals[k] = other.vals[j];
+    }
+    keys = newKeys;
+    vals = newVals;
+    size = k;
+    numWriteBytes = -1;
+  }
+
+  /**
+   * Clear the pairs
+   */
+  @Override
+  public void clear() {
+    valueType = INT_VALUE;
+    size = 0;
+    isSorted = true;
+    numWriteBytes = -1;
+  }
+
+  /**
+   * Get the number of bytes of the sorted pairs
+   * encoded by chunks
+   */
+  @Override
+  public int getNumWriteBytes() {
+    if (numWriteBytes < 0) {
+      sort();
+      try {
+        numWriteBytes = writeChunks(null);
+      } catch (IOException e) {
+        // Not thrown without the output
+      }
+    }
+    return numWriteBytes;
+  }
+
+  /**
+   * Write the sorted pairs to DataOutput
+   */
+  @Override
+  public void write(DataOutput out)
+    throws IOException {
+    sort();
+    writeChunks(out);
+  }
+
+  /**
+   * Write the pairs, or count the bytes if the
+   * output is null
+   *
+   * @param out the output, can be null
+   * @return the number of bytes
+   * @throws IOException
+   */
+  private int writeChunks(DataOutput out)
+    throws IOException {
+    int numBytes = 1;
+    if (out != null) {
+      out.writeByte(valueType);
+    }
+    numBytes += writeVarLong(out, size);
+    long prevChunk = 0L;
+    byte[] bitmap =
+      out != null ? new byte[BITMAP_BYTES] : null;
+    int i = 0;
+    while (i < size) {
+      long chunk = keys[i] >> CHUNK_BITS;
+      int j = i;
+      int sparseBytes = 0;
+      int prevOffset = 0;
+      while (j < size
+        && (keys[j] >> CHUNK_BITS) == chunk) {
+        int offset =
+          (int) (keys[j] & (CHUNK_SIZE - 1));
+        sparseBytes +=
+          getVarLongSize(offset - prevOffset);
+        prevOffset = offset;
+        j++;
+      }
+      numBytes += writeVarLong(out,
+        zigzag(chunk - prevChunk));
+      numBytes += writeVarLong(out, j - i);
+      numBytes++;
+      prevChunk = chunk;
+      if (sparseBytes > BITMAP_BYTES) {
+        numBytes += BITMAP_BYTES;
+        if (out != null) {
+          out.writeByte(DENSE_CHUNK);
+          java.util.Arrays.fill(bitmap, (byte) 0);
+          for (int k = i; k < j; k++) {
+            int offset =
+              (int) (keys[k] & (CHUNK_SIZE - 1));
+            bitmap[offset >>> 3] |= 1 << (offset & 7);
+          }
+          out.write(bitmap);
+        }
+      } else {
+        numBytes += sparseBytes;
+        if (out != null) {
+          out.writeByte(SPARSE_CHUNK);
+          prevOffset = 0;
+          for (int k = i; k < j; k++) {
+            int offset =
+              (int) (keys[k] & (CHUNK_SIZE - 1));
+            writeVarLong(out, offset - prevOffset);
+            prevOffset = offset;
+          }
+        }
+      }
+      for (int k = i; k < j; k++) {
+        if (valueType == DOUBLE_VALUE) {
+          numBytes += 8;
+          if (out != null) {
+            out.writeLong(vals[k]);
+          }
+        } else {
+          numBytes += writeVarLong(out,
+            zigzag(vals[k]));
+        }
+      }
+      i = j;
+    }
+    return numBytes;
+  }
+
+  /**
+   * Read the pairs from DataInput
+   */
+  @Override
+  public void read(DataInput in)
+    throws IOException {
+    clear();
+    valueType = in.readByte();
+    int numPairs = (int) readVarLong(in);
+    if (numPairs < 0) {
+      throw new IOException(
+        "Invalid size " + numPairs);
+    }
+    if (keys.length < numPairs) {
+      keys = new long[numPairs];
+      vals = new long[numPairs];
+    }
+    byte[] bitmap = new byte[BITMAP_BYTES];
+    long chunk = 0L;
+    while (size < numPairs) {
+      chunk += unzigzag(readVarLong(in));
+      int count = (int) readVarLong(in);
+      if (count <= 0 || count > numPairs - size) {
+        throw new IOException(
+          "Invalid chunk size " + count);
+      }
+      int start = size;
+      byte mode = in.readByte();
+      if (mode == DENSE_CHUNK) {
+        in.readFully(bitmap);
+        for (int offset = 0; offset < CHUNK_SIZE
+          && size < start + count; offset++) {
+          if ((bitmap[offset >>> 3]
+            & (1 << (offset & 7))) != 0) {
+            keys[size++] =
+              (chunk << CHUNK_BITS) | offset;
+          }
+        }
+      } else {
+        int offset = 0;
+        for (int k = 0; k < count; k++) {
+          offset += (int) readVarLong(in);
+          keys[size++] =
+            (chunk << CHUNK_BITS) | offset;
+        }
+      }
+      if (size != start + count) {
+        throw new IOException(
+          "Invalid chunk bitmap.");
+      }
+      for (int k = start; k < size; k++) {
+        if (valueType == DOUBLE_VALUE) {
+          vals[k] = in.readLong();
+        } else {
+          vals[k] = unzigzag(readVarLong(in));
+        }
+      }
+    }
+    isSorted = true;
+  }
+
+  private static int writeVarLong(DataOutput out,
+    long v) throws IOException {
+    int numBytes = 1;
+    while ((v & ~0x7FL) != 0L) {
+      if (out != null) {
+        out.writeByte((int) ((v & 0x7F) | 0x80));
+      }
+      v >>>= 7;
+      numBytes++;
+    }
+    if (out != null) {
+      out.writeByte((int) v);
+    }
+    return numBytes;
+  }
+
+  private static int getVarLongSize(long v) {
+    int numBytes = 1;
+    while ((v & ~0x7FL) != 0L) {
+      v >>>= 7;
+      numBytes++;
+    }
+    return numBytes;
+  }
+
+  private static long readVarLong(DataInput in)
+    throws IOException {
+    long v = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.readByte();
+      v |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return v;
+      }
+    }
+    throw new IOException("Malformed varint.");
+  }
+
+  private static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  private static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.keyval;
+
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
+
+import java.util.function.LongBinaryOperator;
+
+/*******************************************************
+ * Merge two SparseKVBlocks with the value
+ * combiner of the table
+ ******************************************************/
+public class SparseKVBlockCombiner
+  extends PartitionCombiner<SparseKVBlock> {
+
+  private final LongBinaryOperator valCombiner;
+
+  /**
+   * @param combiner combine the raw bits of the
+   *                 values
+   */
+  public SparseKVBlockCombiner(
+    LongBinaryOperator combiner) {
+    this.valCombiner = combiner;
+  }
+
+  /**
+   * Merge the pairs of the new block to the
+   * current block
+   */
+  @Override
+  public PartitionStatus combine(
+    SparseKVBlock curPar, SparseKVBlock newPar) {
+    if (curPar.getValueType() != newPar
+      .getValueType()) {
+      return PartitionStatus.COMBINE_FAILED;
+    }
+    curPar.merge(newPar, valCombiner);
+    return PartitionStatus.COMBINED;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import edu.iu.harp.io.ConnPool;
+
+/*******************************************************
+ * The connections of the worker, read from
+ * ConnPool when exported
+ ******************************************************/
+public class ConnectionMetrics
+  implements ConnectionMetricsMXBean {
+
+  /**
+   * Get the number of the connections in use
+   */
+  @Override
+  public int getInUseConnections() {
+    return ConnPool.get().getNumInUseConnections();
+  }
+
+  /**
+   * Get the number of the idle connections kept
+   * in the pool
+   */
+  @Override
+  public int getFreeConnections() {
+    return ConnPool.get().getNumFreeConnections();
+  }
+
+  /**
+   * Get the number of the open multiplexed
+   * channels
+   */
+  @Override
+  public int getMuxChannels() {
+    return ConnPool.get().getNumOpenMuxChannels();
+  }
+
+  /**
+   * Get the number of the open streams on the
+   * multiplexed channels
+   */
+  @Override
+  public int getMuxStreams() {
+    return ConnPool.get().getNumOpenMuxStreams();
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+/*******************************************************
+ * The JMX view of the connections of the worker
+ ******************************************************/
+public interface ConnectionMetricsMXBean {
+
+  /**
+   * Get the number of the connections in use
+   *
+   * @return the connections in use
+   */
+  int getInUseConnections();
+
+  /**
+   * Get the number of the idle connections kept
+   * in the pool
+   *
+   * @return the idle connections
+   */
+  int getFreeConnections();
+
+  /**
+   * Get the number of the open multiplexed
+   * channels
+   *
+   * @return the open channels
+   */
+  int getMuxChannels();
+
+  /**
+   * Get the number of the open streams on the
+   * multiplexed channels
+   *
+   * @return the open streams
+   */
+  int getMuxStreams();
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import org.apache.log4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*******************************************************
+ * The registry of the metrics of the worker. The
+ * collective operations are recorded by their
+ * context names and operation name prefixes, the
+ * trailing numbers of the operation names are
+ * removed so the operations repeated in the
+ * iterations are aggregated. The metrics are
+ * exported as JMX MBeans and as the Prometheus
+ * text format. Nothing is recorded unless the
+ * metrics are enabled.
+ ******************************************************/
+public class Metrics {
+
+  private static final Logger LOG =
+    Logger.getLogger(Metrics.class);
+
+  /** The domain of the MBeans */
+  public static final String DOMAIN = "edu.iu.harp";
+
+  private static volatile boolean enabled = false;
+  private static final ConcurrentHashMap<String, OperationMetrics> operations =
+    new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, PoolMetrics> pools =
+    new ConcurrentHashMap<>();
+  private static final ConnectionMetrics connections =
+    new ConnectionMetrics();
+  /** The worker ID in the MBean names */
+  private static volatile String jmxWorker = null;
+
+  /**
+   * Enable or disable recording the metrics
+   *
+   * @param isEnabled
+   *          true to enable
+   */
+  public static void setEnabled(boolean isEnabled) {
+    enabled = isEnabled;
+  }
+
+  /**
+   * Check if the metrics are recorded
+   *
+   * @return true if enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Record the wall time of a collective call
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param nanos
+   *          the wall time
+   */
+  public static void recordCall(
+    String contextName, String operationName,
+    long nanos) {
+    OperationMetrics metrics =
+      getOperation(contextName, operationName);
+    if (metrics != null) {
+      metrics.addCall(nanos);
+    }
+  }
+
+  /**
+   * Record the bytes sent for an operation
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param bytes
+   *          the number of bytes
+   */
+  public static void recordBytesSent(
+    String contextName, String operationName,
+    long bytes) {
+    OperationMetrics metrics =
+      getOperation(contextName, operationName);
+    if (metrics != null) {
+      metrics.addBytesSent(bytes);
+    }
+  }
+
+  /**
+   * Record the bytes received for an operation
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param bytes
+   *          the number of bytes
+   */
+  public static void recordBytesReceived(
+    String contextName, String operationName,
+    long bytes) {
+    OperationMetrics metrics =
+      getOperation(contextName, operationName);
+    if (metrics != null) {
+      metrics.addBytesReceived(bytes);
+    }
+  }
+
+  /**
+   * Record the time encoding a body
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param nanos
+   *          the encoding time
+   */
+  public static void recordEncode(
+    String contextName, String operationName,
+    long nanos) {
+    OperationMetrics metrics =
+      getOperation(contextName, operationName);
+    if (metrics != null) {
+      metrics.addEncodeTime(nanos);
+    }
+  }
+
+  /**
+   * Record the time decoding a body
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param nanos
+   *          the decoding time
+   */
+  public static void recordDecode(
+    String contextName, String operationName,
+    long nanos) {
+    OperationMetrics metrics =
+      getOperation(contextName, operationName);
+    if (metrics != null) {
+      metrics.addDecodeTime(nanos);
+    }
+  }
+
+  /**
+   * Record the time waiting for the data
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param nanos
+   *          the waiting time
+   */
+  public static void recordWait(
+    String contextName, String operationName,
+    long nanos) {
+    OperationMetrics metrics =
+      getOperation(contextName, operationName);
+    if (metrics != null) {
+      metrics.addWaitTime(nanos);
+    }
+  }
+
+  /**
+   * Get the metrics of the operation, create
+   * them if not exist
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return the metrics, null if the metrics are
+   *         disabled or the names are null
+   */
+  public static OperationMetrics getOperation(
+    String contextName, String operationName) {
+    if (!enabled || contextName == null
+      || operationName == null) {
+      return null;
+    }
+    String name = contextName + "/"
+      + getOperationPrefix(operationName);
+    OperationMetrics metrics = operations.get(name);
+    if (metrics == null) {
+      metrics = operations.computeIfAbsent(name,
+        k -> {
+          OperationMetrics m =
+            new OperationMetrics(k);
+          registerMBean("Operation", k, m);
+          return m;
+        });
+    }
+    return metrics;
+  }
+
+  /**
+   * Register the metrics of a pool. A pool with
+   * the same name is only registered once.
+   *
+   * @param metrics
+   *          the metrics of the pool
+   */
+  public static void registerPool(
+    PoolMetrics metrics) {
+    if (pools.putIfAbsent(metrics.getName(),
+      metrics) == null) {
+      registerMBean("Pool", metrics.getName(),
+        metrics);
+    }
+  }
+
+  /**
+   * Register the metrics as JMX MBeans in the
+   * platform MBeanServer, the metrics created
+   * later are registered when created
+   *
+   * @param workerID
+   *          the ID of this worker
+   */
+  public static synchronized void
+    registerMBeans(int workerID) {
+    if (jmxWorker != null) {
+      return;
+    }
+    jmxWorker = Integer.toString(workerID);
+    registerMBean("Connections", "connections",
+      connections);
+    for (PoolMetrics metrics : pools.values()) {
+      registerMBean("Pool", metrics.getName(),
+        metrics);
+    }
+    for (OperationMetrics metrics : operations
+      .values()) {
+      registerMBean("Operation",
+        metrics.getName(), metrics);
+    }
+  }
+
+  /**
+   * Unregister the MBeans of the metrics
+   */
+  public static synchronized void
+    unregisterMBeans() {
+    String worker = jmxWorker;
+    if (worker == null) {
+      return;
+    }
+    jmxWorker = null;
+    MBeanServer server =
+      ManagementFactory.getPlatformMBeanServer();
+    try {
+      for (ObjectName name : server.queryNames(
+        new ObjectName(DOMAIN + ":worker="
+          + worker + ",*"),
+        null)) {
+        server.unregisterMBean(name);
+      }
+    } catch (Exception e) {
+      LOG.error("Fail to unregister MBeans.", e);
+    }
+  }
+
+  private static void registerMBean(String type,
+    String name, Object mbean) {
+    String worker = jmxWorker;
+    if (worker == null) {
+      return;
+    }
+    try {
+      ObjectName objectName = new ObjectName(
+        DOMAIN + ":worker=" + worker + ",type="
+          + type + ",name="
+          + ObjectName.quote(name));
+      MBeanServer server =
+        ManagementFactory.getPlatformMBeanServer();
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(mbean, objectName);
+      }
+    } catch (Exception e) {
+      LOG.error("Fail to register MBean " + name,
+        e);
+    }
+  }
+
+  /**
+   * Remove the trailing number and its separator
+   * from the operation name
+   *
+   * @param operationName
+   *          the name of the operation
+   * @return the prefix of the operation name
+   */
+  static String getOperationPrefix(
+    String operationName) {
+    int end = operationName.length();
+    while (end > 0 && Character
+      .isDigit(operationName.charAt(end - 1))) {
+      end--;
+    }
+    if (end == operationName.length()) {
+      return operationName;
+    }
+    while (end > 0 && "-_.#:".indexOf(
+      operationName.charAt(end - 1)) >= 0) {
+      end--;
+    }
+    return end == 0 ? operationName
+      : operationName.substring(0, end);
+  }
+
+  /**
+   * Get the metrics of the operations
+   *
+   * @return the metrics sorted by the names
+   */
+  public static Map<String, OperationMetrics>
+    getOperations() {
+    return new TreeMap<>(operations);
+  }
+
+  /**
+   * Get the metrics of the pools
+   *
+   * @return the metrics sorted by the names
+   */
+  public static Map<String, PoolMetrics>
+    getPools() {
+    return new TreeMap<>(pools);
+  }
+
+  /**
+   * Clear the metrics of the operations
+   */
+  public static void reset() {
+    operations.clear();
+  }
+
+  /**
+   * Logging the metrics of the operations and
+   * the pools
+   */
+  public static void log() {
+    for (OperationMetrics m : getOperations()
+      .values()) {
+      LOG.info("operation=" + m.getName()
+        + ", calls=" + m.getCalls() + ", wall="
+        + m.getWallTimeMillis() + "ms, sent="
+        + m.getBytesSent() + ", received="
+        + m.getBytesReceived() + ", encode="
+        + m.getEncodeTimeMillis() + "ms, decode="
+        + m.getDecodeTimeMillis() + "ms, wait="
+        + m.getWaitTimeMillis() + "ms");
+    }
+    for (PoolMetrics m : getPools().values()) {
+      LOG.info("pool=" + m.getName() + ", hits="
+        + m.getHits() + ", misses="
+        + m.getMisses() + ", live bytes="
+        + m.getLiveBytes());
+    }
+  }
+
+  /**
+   * Write the metrics in the Prometheus text
+   * format
+   *
+   * @param out
+   *          the output
+   * @throws IOException
+   */
+  public static void writeText(Writer out)
+    throws IOException {
+    Map<String, OperationMetrics> ops =
+      getOperations();
+    writeType(out, "harp_operation_calls_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_calls_total", m,
+        m.getCalls());
+    }
+    writeType(out,
+      "harp_operation_wall_seconds_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_wall_seconds_total", m,
+        m.getWallTimeNanos() / 1e9);
+    }
+    writeType(out,
+      "harp_operation_max_wall_seconds", "gauge");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_max_wall_seconds", m,
+        m.getMaxWallTimeNanos() / 1e9);
+    }
+    writeType(out,
+      "harp_operation_sent_bytes_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_sent_bytes_total", m,
+        m.getBytesSent());
+    }
+    writeType(out,
+      "harp_operation_received_bytes_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_received_bytes_total", m,
+        m.getBytesReceived());
+    }
+    writeType(out,
+      "harp_operation_encode_seconds_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_encode_seconds_total", m,
+        m.getEncodeTimeNanos() / 1e9);
+    }
+    writeType(out,
+      "harp_operation_decode_seconds_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_decode_seconds_total", m,
+        m.getDecodeTimeNanos() / 1e9);
+    }
+    writeType(out,
+      "harp_operation_wait_seconds_total",
+      "counter");
+    for (OperationMetrics m : ops.values()) {
+      writeOperation(out,
+        "harp_operation_wait_seconds_total", m,
+        m.getWaitTimeNanos() / 1e9);
+    }
+    Map<String, PoolMetrics> poolMap = getPools();
+    writeType(out, "harp_pool_hits_total",
+      "counter");
+    for (PoolMetrics m : poolMap.values()) {
+      writePool(out, "harp_pool_hits_total", m,
+        null, m.getHits());
+    }
+    writeType(out, "harp_pool_misses_total",
+      "counter");
+    for (PoolMetrics m : poolMap.values()) {
+      writePool(out, "harp_pool_misses_total", m,
+        null, m.getMisses());
+    }
+    writeType(out, "harp_pool_live_arrays",
+      "gauge");
+    for (PoolMetrics m : poolMap.values()) {
+      for (Map.Entry<String, Long> entry : m
+        .getLiveArraysBySizeClass().entrySet()) {
+        writePool(out, "harp_pool_live_arrays", m,
+          entry.getKey(), entry.getValue());
+      }
+    }
+    writeType(out, "harp_pool_live_bytes",
+      "gauge");
+    for (PoolMetrics m : poolMap.values()) {
+      for (Map.Entry<String, Long> entry : m
+        .getLiveBytesBySizeClass().entrySet()) {
+        writePool(out, "harp_pool_live_bytes", m,
+          entry.getKey(), entry.getValue());
+      }
+    }
+    writeType(out, "harp_connections", "gauge");
+    out.write("harp_connections{state=\"in_use\"} "
+      + connections.getInUseConnections() + "\n");
+    out.write("harp_connections{state=\"free\"} "
+      + connections.getFreeConnections() + "\n");
+    writeType(out, "harp_mux_channels", "gauge");
+    out.write("harp_mux_channels "
+      + connections.getMuxChannels() + "\n");
+    writeType(out, "harp_mux_streams", "gauge");
+    out.write("harp_mux_streams "
+      + connections.getMuxStreams() + "\n");
+    out.flush();
+  }
+
+  private static void writeType(Writer out,
+    String metric, String type)
+    throws IOException {
+    out.write("# TYPE " + metric + " " + type
+      + "\n");
+  }
+
+  private static void writeOperation(Writer out,
+    String metric, OperationMetrics m,
+    Number value) throws IOException {
+    out.write(metric + "{operation=\""
+      + escape(m.getName()) + "\"} " + value
+      + "\n");
+  }
+
+  private static void writePool(Writer out,
+    String metric, PoolMetrics m,
+    String sizeClass, Number value)
+    throws IOException {
+    out.write(metric + "{pool=\""
+      + escape(m.getName()) + "\"");
+    if (sizeClass != null) {
+      out.write(",size_class=\"" + sizeClass
+        + "\"");
+    }
+    out.write("} " + value + "\n");
+  }
+
+  private static String escape(String label) {
+    return label.replace("\\", "\\\\")
+      .replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/*******************************************************
+ * A small HTTP server on the worker serving the
+ * metrics in the Prometheus text format at
+ * /metrics
+ ******************************************************/
+public class MetricsHttpServer {
+
+  private static final Logger LOG =
+    Logger.getLogger(MetricsHttpServer.class);
+
+  private final HttpServer server;
+
+  /**
+   * Create the server, the metrics are served at
+   * /metrics after start
+   *
+   * @param host
+   *          the host to bind
+   * @param port
+   *          the port to bind, 0 for any free
+   *          port
+   * @throws IOException
+   *           if the address cannot be bound
+   */
+  public MetricsHttpServer(String host, int port)
+    throws IOException {
+    server = HttpServer
+      .create(new InetSocketAddress(host, port), 0);
+    server.createContext("/metrics",
+      this::handle);
+  }
+
+  /**
+   * Start serving the metrics
+   */
+  public void start() {
+    server.start();
+    LOG.info("Serve metrics at "
+      + server.getAddress());
+  }
+
+  /**
+   * Stop serving the metrics
+   */
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * Get the port bound
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange)
+    throws IOException {
+    StringWriter writer = new StringWriter();
+    Metrics.writeText(writer);
+    byte[] bytes = writer.toString()
+      .getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set(
+      "Content-Type",
+      "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200,
+      bytes.length);
+    try (OutputStream out =
+      exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
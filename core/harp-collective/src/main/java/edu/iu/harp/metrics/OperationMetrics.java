@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*******************************************************
+ * The metrics of the collective operations with
+ * the same context name and operation name
+ * prefix. The bytes count the encoded heads and
+ * bodies on the wire.
+ ******************************************************/
+public class OperationMetrics
+  implements OperationMetricsMXBean {
+
+  private final String name;
+  private final LongAdder calls;
+  private final LongAdder wallNanos;
+  private final AtomicLong maxWallNanos;
+  private final LongAdder bytesSent;
+  private final LongAdder bytesReceived;
+  private final LongAdder encodeNanos;
+  private final LongAdder decodeNanos;
+  private final LongAdder waitNanos;
+
+  /**
+   * @param name
+   *          the context name and the operation
+   *          name prefix
+   */
+  OperationMetrics(String name) {
+    this.name = name;
+    calls = new LongAdder();
+    wallNanos = new LongAdder();
+    maxWallNanos = new AtomicLong();
+    bytesSent = new LongAdder();
+    bytesReceived = new LongAdder();
+    encodeNanos = new LongAdder();
+    decodeNanos = new LongAdder();
+    waitNanos = new LongAdder();
+  }
+
+  /**
+   * Get the name prefix of the operations
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  void addCall(long nanos) {
+    calls.increment();
+    wallNanos.add(nanos);
+    long max = maxWallNanos.get();
+    while (nanos > max
+      && !maxWallNanos.compareAndSet(max, nanos)) {
+      max = maxWallNanos.get();
+    }
+  }
+
+  void addBytesSent(long bytes) {
+    bytesSent.add(bytes);
+  }
+
+  void addBytesReceived(long bytes) {
+    bytesReceived.add(bytes);
+  }
+
+  void addEncodeTime(long nanos) {
+    encodeNanos.add(nanos);
+  }
+
+  void addDecodeTime(long nanos) {
+    decodeNanos.add(nanos);
+  }
+
+  void addWaitTime(long nanos) {
+    waitNanos.add(nanos);
+  }
+
+  /**
+   * Get the number of the calls
+   */
+  @Override
+  public long getCalls() {
+    return calls.sum();
+  }
+
+  /**
+   * Get the total wall time of the calls
+   */
+  @Override
+  public long getWallTimeMillis() {
+    return toMillis(wallNanos.sum());
+  }
+
+  /**
+   * Get the longest wall time of a call
+   */
+  @Override
+  public long getMaxWallTimeMillis() {
+    return toMillis(maxWallNanos.get());
+  }
+
+  /**
+   * Get the bytes sent by the calls
+   */
+  @Override
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  /**
+   * Get the bytes received by the calls
+   */
+  @Override
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  /**
+   * Get the time spent encoding the data
+   */
+  @Override
+  public long getEncodeTimeMillis() {
+    return toMillis(encodeNanos.sum());
+  }
+
+  /**
+   * Get the time spent decoding the data
+   */
+  @Override
+  public long getDecodeTimeMillis() {
+    return toMillis(decodeNanos.sum());
+  }
+
+  /**
+   * Get the time spent waiting for the data
+   */
+  @Override
+  public long getWaitTimeMillis() {
+    return toMillis(waitNanos.sum());
+  }
+
+  long getWallTimeNanos() {
+    return wallNanos.sum();
+  }
+
+  long getMaxWallTimeNanos() {
+    return maxWallNanos.get();
+  }
+
+  long getEncodeTimeNanos() {
+    return encodeNanos.sum();
+  }
+
+  long getDecodeTimeNanos() {
+    return decodeNanos.sum();
+  }
+
+  long getWaitTimeNanos() {
+    return waitNanos.sum();
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
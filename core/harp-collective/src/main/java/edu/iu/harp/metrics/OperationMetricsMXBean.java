@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+/*******************************************************
+ * The JMX view of the metrics of the collective
+ * operations with the same name prefix
+ ******************************************************/
+public interface OperationMetricsMXBean {
+
+  /**
+   * Get the number of the calls
+   *
+   * @return the number of the calls
+   */
+  long getCalls();
+
+  /**
+   * Get the total wall time of the calls
+   *
+   * @return the wall time in milliseconds
+   */
+  long getWallTimeMillis();
+
+  /**
+   * Get the longest wall time of a call
+   *
+   * @return the wall time in milliseconds
+   */
+  long getMaxWallTimeMillis();
+
+  /**
+   * Get the bytes sent by the calls
+   *
+   * @return the bytes sent
+   */
+  long getBytesSent();
+
+  /**
+   * Get the bytes received by the calls
+   *
+   * @return the bytes received
+   */
+  long getBytesReceived();
+
+  /**
+   * Get the time spent encoding the data
+   *
+   * @return the time in milliseconds
+   */
+  long getEncodeTimeMillis();
+
+  /**
+   * Get the time spent decoding the data
+   *
+   * @return the time in milliseconds
+   */
+  long getDecodeTimeMillis();
+
+  /**
+   * Get the time spent waiting for the data
+   *
+   * @return the time in milliseconds
+   */
+  long getWaitTimeMillis();
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*******************************************************
+ * The metrics of a pool. The arrays got from the
+ * pool are hits if they are reused and misses if
+ * they are newly created. The live arrays are
+ * counted by the size classes of the powers of
+ * two. The metrics are only updated when Metrics
+ * is enabled.
+ ******************************************************/
+public class PoolMetrics
+  implements PoolMetricsMXBean {
+
+  private static final int NUM_SIZE_CLASSES = 32;
+
+  private final String name;
+  private final int elementBytes;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final AtomicLongArray liveArrays;
+  private final AtomicLongArray liveBytes;
+
+  /**
+   * @param name
+   *          the name of the pool
+   * @param elementBytes
+   *          the number of bytes of an element
+   */
+  public PoolMetrics(String name,
+    int elementBytes) {
+    this.name = name;
+    this.elementBytes = elementBytes;
+    hits = new LongAdder();
+    misses = new LongAdder();
+    liveArrays =
+      new AtomicLongArray(NUM_SIZE_CLASSES);
+    liveBytes =
+      new AtomicLongArray(NUM_SIZE_CLASSES);
+  }
+
+  /**
+   * Get the name of the pool
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Count an array got from the pool
+   *
+   * @param size
+   *          the size of the array
+   * @param isReused
+   *          true if the array is reused
+   */
+  public void get(int size, boolean isReused) {
+    if (!Metrics.isEnabled()) {
+      return;
+    }
+    if (isReused) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    int sizeClass = getSizeClass(size);
+    liveArrays.incrementAndGet(sizeClass);
+    liveBytes.addAndGet(sizeClass,
+      (long) size * elementBytes);
+  }
+
+  /**
+   * Count an array returned to the pool or freed
+   *
+   * @param size
+   *          the size of the array
+   */
+  public void release(int size) {
+    if (!Metrics.isEnabled() || size <= 0) {
+      return;
+    }
+    int sizeClass = getSizeClass(size);
+    liveArrays.decrementAndGet(sizeClass);
+    liveBytes.addAndGet(sizeClass,
+      -(long) size * elementBytes);
+  }
+
+  /**
+   * Get the number of the arrays reused from
+   * the pool
+   */
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Get the number of the arrays newly
+   * allocated
+   */
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Get the ratio of the hits to all the
+   * requests
+   */
+  @Override
+  public double getHitRate() {
+    long numHits = hits.sum();
+    long total = numHits + misses.sum();
+    return total == 0 ? 0.0
+      : (double) numHits / total;
+  }
+
+  /**
+   * Get the number of the arrays in use
+   */
+  @Override
+  public long getLiveArrays() {
+    long sum = 0L;
+    for (int i = 0; i < NUM_SIZE_CLASSES; i++) {
+      sum += liveArrays.get(i);
+    }
+    return sum;
+  }
+
+  /**
+   * Get the bytes of the arrays in use
+   */
+  @Override
+  public long getLiveBytes() {
+    long sum = 0L;
+    for (int i = 0; i < NUM_SIZE_CLASSES; i++) {
+      sum += liveBytes.get(i);
+    }
+    return sum;
+  }
+
+  /**
+   * Get the live bytes of each size class
+   */
+  @Override
+  public Map<String, Long> getLiveBytesBySizeClass() {
+    Map<String, Long> classes = new LinkedHashMap<>();
+    for (int i = 0; i < NUM_SIZE_CLASSES; i++) {
+      if (liveArrays.get(i) != 0L) {
+        classes.put(getClassSize(i),
+          liveBytes.get(i));
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Get the live arrays of each size class
+   *
+   * @return the live arrays keyed by the largest
+   *         size of the class
+   */
+  public Map<String, Long> getLiveArraysBySizeClass() {
+    Map<String, Long> classes = new LinkedHashMap<>();
+    for (int i = 0; i < NUM_SIZE_CLASSES; i++) {
+      long count = liveArrays.get(i);
+      if (count != 0L) {
+        classes.put(getClassSize(i), count);
+      }
+    }
+    return classes;
+  }
+
+  private static String getClassSize(int sizeClass) {
+    return Long.toString(1L << sizeClass);
+  }
+
+  private static int getSizeClass(int size) {
+    return Math.min(NUM_SIZE_CLASSES - 1,
+      32 - Integer.numberOfLeadingZeros(size - 1));
+  }
+}
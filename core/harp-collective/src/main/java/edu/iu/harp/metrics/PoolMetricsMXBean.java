@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import java.util.Map;
+
+/*******************************************************
+ * The JMX view of the metrics of a pool
+ ******************************************************/
+public interface PoolMetricsMXBean {
+
+  /**
+   * Get the number of the arrays reused from
+   * the pool
+   *
+   * @return the number of the hits
+   */
+  long getHits();
+
+  /**
+   * Get the number of the arrays newly
+   * allocated
+   *
+   * @return the number of the misses
+   */
+  long getMisses();
+
+  /**
+   * Get the ratio of the hits to all the
+   * requests
+   *
+   * @return the hit rate, 0 without requests
+   */
+  double getHitRate();
+
+  /**
+   * Get the number of the arrays in use
+   *
+   * @return the number of the live arrays
+   */
+  long getLiveArrays();
+
+  /**
+   * Get the bytes of the arrays in use
+   *
+   * @return the live bytes
+   */
+  long getLiveBytes();
+
+  /**
+   * Get the live bytes of each size class
+   *
+   * @return the live bytes of each size class,
+   *         keyed by the largest size of the
+   *         class
+   */
+  Map<String, Long> getLiveBytesBySizeClass();
+}
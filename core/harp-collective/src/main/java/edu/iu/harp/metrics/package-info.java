@@ -0,0 +1,5 @@
+/**
+ * Metrics of the collectives, the pools and the
+ * connections, exported through JMX and text
+ */
+package edu.iu.harp.metrics;
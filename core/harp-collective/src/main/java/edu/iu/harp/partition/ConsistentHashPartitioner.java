@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+
+/*******************************************************
+ * A Partitioner using consistent hashing. Each
+ * worker owns a number of points on a hash ring,
+ * a partition goes to the owner of the first
+ * point after its hash. So the assignment of a
+ * partition is stable across the iterations.
+ *
+ * When the sizes are known, the loads are
+ * bounded: a worker takes no more partitions
+ * once its bytes reach balanceFactor times the
+ * average, the partition moves on along the
+ * ring.
+ ******************************************************/
+public class ConsistentHashPartitioner
+  extends SizeAwarePartitioner {
+
+  /** The default number of points of a worker */
+  public static final int DEFAULT_NUM_REPLICAS =
+    64;
+  /** The default bound of the load to average */
+  public static final double DEFAULT_BALANCE_FACTOR =
+    1.25;
+
+  private final long[] ringHashes;
+  private final int[] ringWorkers;
+  private final double balanceFactor;
+
+  /**
+   * Use the default number of points and the
+   * default balance factor
+   *
+   * @param numWorkers
+   *          the number of workers
+   */
+  public ConsistentHashPartitioner(
+    int numWorkers) {
+    this(numWorkers, DEFAULT_NUM_REPLICAS,
+      DEFAULT_BALANCE_FACTOR);
+  }
+
+  /**
+   * Place the points of the workers on the ring
+   *
+   * @param numWorkers
+   *          the number of workers
+   * @param numReplicas
+   *          the number of points of each worker
+   * @param balanceFactor
+   *          the bound of the load of a worker to
+   *          the average load, no less than 1
+   */
+  public ConsistentHashPartitioner(
+    int numWorkers, int numReplicas,
+    double balanceFactor) {
+    super(numWorkers);
+    this.balanceFactor =
+      Math.max(1.0, balanceFactor);
+    int numPoints = numWorkers * numReplicas;
+    ringHashes = new long[numPoints];
+    ringWorkers = new int[numPoints];
+    int k = 0;
+    for (int i = 0; i < numWorkers; i++) {
+      for (int j = 0; j < numReplicas; j++) {
+        ringHashes[k] =
+          hash(((long) i << 32) | j);
+        ringWorkers[k] = i;
+        k++;
+      }
+    }
+    Arrays.quickSort(0, numPoints,
+      new AbstractIntComparator() {
+        private static final long serialVersionUID =
+          1L;
+
+        @Override
+        public int compare(int i, int j) {
+          int result = Long.compare(ringHashes[i],
+            ringHashes[j]);
+          return result != 0 ? result
+            : Integer.compare(ringWorkers[i],
+              ringWorkers[j]);
+        }
+      }, (i, j) -> {
+        long hash = ringHashes[i];
+        ringHashes[i] = ringHashes[j];
+        ringHashes[j] = hash;
+        int worker = ringWorkers[i];
+        ringWorkers[i] = ringWorkers[j];
+        ringWorkers[j] = worker;
+      });
+  }
+
+  /**
+   * The finalizer of MurmurHash3
+   *
+   * @param key
+   *          the key
+   * @return the hash
+   */
+  private static long hash(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Get the first point no less than the hash of
+   * the partition
+   *
+   * @param partitionID
+   *          the partition ID
+   * @return the index of the point
+   */
+  private int getPoint(int partitionID) {
+    long key = hash(partitionID);
+    int low = 0;
+    int high = ringHashes.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (ringHashes[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low == ringHashes.length ? 0 : low;
+  }
+
+  /**
+   * Get the worker of the next point on the ring
+   */
+  @Override
+  protected int getDefaultWorkerID(
+    int partitionID) {
+    return ringWorkers[getPoint(partitionID)];
+  }
+
+  /**
+   * Assign each partition to the worker of the
+   * next point on the ring with room under the
+   * balance bound
+   */
+  @Override
+  protected void assign(int[] partitionIDs,
+    long[] bytes) {
+    long totalBytes = 0L;
+    for (long b : bytes) {
+      totalBytes += b;
+    }
+    long capacity = (long) Math.ceil(balanceFactor
+      * totalBytes / getNumWorkers());
+    long[] loads = new long[getNumWorkers()];
+    for (int i = 0; i < partitionIDs.length; i++) {
+      int point = getPoint(partitionIDs[i]);
+      int workerID = ringWorkers[point];
+      // The total load is less than the total
+      // capacity, a worker under the capacity
+      // is always found
+      for (int j = 0; j < ringHashes.length
+        && loads[workerID] >= capacity
+        && capacity > 0; j++) {
+        point = (point + 1) % ringHashes.length;
+        workerID = ringWorkers[point];
+      }
+      loads[workerID] += bytes[i];
+      setWorkerID(partitionIDs[i], workerID,
+        bytes[i]);
+    }
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import edu.iu.harp.resource.Simple;
+import it.unimi.dsi.fastutil.ints.AbstractInt2ObjectMap;
+import it.unimi.dsi.fastutil.ints.AbstractIntSet;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.AbstractObjectCollection;
+import it.unimi.dsi.fastutil.objects.AbstractObjectSet;
+import it.unimi.dsi.fastutil.objects.ObjectCollection;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*******************************************************
+ * The partitions of a DenseTable stored in an
+ * array indexed by the partition IDs. The keys,
+ * the values and the entries are iterated in the
+ * order of the partition IDs.
+ ******************************************************/
+class DensePartitionMap<P extends Simple>
+  extends AbstractInt2ObjectMap<Partition<P>> {
+
+  private static final long serialVersionUID =
+    1L;
+
+  private Partition<P>[] partitions;
+  private int size;
+  /** The largest partition ID plus one */
+  private int bound;
+
+  @SuppressWarnings("unchecked")
+  DensePartitionMap(int capacity) {
+    partitions = (Partition<P>[])
+      new Partition<?>[Math.max(capacity, 1)];
+    size = 0;
+    bound = 0;
+  }
+
+  /**
+   * Get the largest partition ID plus one
+   *
+   * @return the bound of the partition IDs
+   */
+  int getBound() {
+    return bound;
+  }
+
+  /**
+   * Get the partition by indexing the array
+   */
+  @Override
+  public Partition<P> get(int partitionID) {
+    if (partitionID < 0 || partitionID >= bound) {
+      return null;
+    }
+    return partitions[partitionID];
+  }
+
+  /**
+   * Check if the partition is in the array
+   */
+  @Override
+  public boolean containsKey(int partitionID) {
+    return get(partitionID) != null;
+  }
+
+  /**
+   * Put the partition to the array, which grows
+   * to hold the ID
+   */
+  @Override
+  public Partition<P> put(int partitionID,
+    Partition<P> partition) {
+    if (partitionID < 0) {
+      throw new IllegalArgumentException(
+        "Negative partition ID " + partitionID);
+    }
+    if (partitionID >= partitions.length) {
+      partitions = Arrays.copyOf(partitions,
+        Math.max(partitionID + 1,
+          partitions.length * 2));
+    }
+    Partition<P> old = partitions[partitionID];
+    partitions[partitionID] = partition;
+    if (old == null) {
+      size++;
+    }
+    if (partitionID >= bound) {
+      bound = partitionID + 1;
+    }
+    return old;
+  }
+
+  /**
+   * Remove the partition, the bound shrinks to
+   * the largest ID left
+   */
+  @Override
+  public Partition<P> remove(int partitionID) {
+    Partition<P> old = get(partitionID);
+    if (old != null) {
+      partitions[partitionID] = null;
+      size--;
+      while (bound > 0
+        && partitions[bound - 1] == null) {
+        bound--;
+      }
+    }
+    return old;
+  }
+
+  /**
+   * Get the number of the partitions
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Check if there is no partition
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove all the partitions
+   */
+  @Override
+  public void clear() {
+    Arrays.fill(partitions, 0, bound, null);
+    size = 0;
+    bound = 0;
+  }
+
+  /**
+   * Iterate the partition IDs in order
+   */
+  private abstract class IDIterator {
+    private int next = advance(0);
+    private int last = -1;
+
+    private int advance(int from) {
+      int i = from;
+      while (i < bound && partitions[i] == null) {
+        i++;
+      }
+      return i;
+    }
+
+    public boolean hasNext() {
+      return next < bound;
+    }
+
+    int nextID() {
+      if (next >= bound) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = advance(next + 1);
+      return last;
+    }
+
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      DensePartitionMap.this.remove(last);
+      last = -1;
+    }
+  }
+
+  private class KeyIterator extends IDIterator
+    implements IntIterator {
+
+    @Override
+    public int nextInt() {
+      return nextID();
+    }
+
+    @Override
+    public Integer next() {
+      return nextID();
+    }
+
+    @Override
+    public int skip(int n) {
+      int i = 0;
+      while (i < n && hasNext()) {
+        nextID();
+        i++;
+      }
+      return i;
+    }
+  }
+
+  /**
+   * Get the partition IDs in ascending order
+   */
+  @Override
+  public IntSet keySet() {
+    return new AbstractIntSet() {
+      @Override
+      public IntIterator iterator() {
+        return new KeyIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(int partitionID) {
+        return containsKey(partitionID);
+      }
+
+      @Override
+      public boolean remove(int partitionID) {
+        return DensePartitionMap.this
+          .remove(partitionID) != null;
+      }
+
+      @Override
+      public void clear() {
+        DensePartitionMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Get the partitions in the order of the IDs
+   */
+  @Override
+  public ObjectCollection<Partition<P>> values() {
+    return new AbstractObjectCollection<Partition<P>>() {
+      @Override
+      public ObjectIterator<Partition<P>> iterator() {
+        return new ValueIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public void clear() {
+        DensePartitionMap.this.clear();
+      }
+    };
+  }
+
+  private class ValueIterator extends IDIterator
+    implements ObjectIterator<Partition<P>> {
+
+    @Override
+    public Partition<P> next() {
+      return partitions[nextID()];
+    }
+
+    @Override
+    public int skip(int n) {
+      int i = 0;
+      while (i < n && hasNext()) {
+        nextID();
+        i++;
+      }
+      return i;
+    }
+  }
+
+  private class EntryIterator extends IDIterator
+    implements ObjectIterator<Int2ObjectMap.Entry<Partition<P>>> {
+
+    @Override
+    public Int2ObjectMap.Entry<Partition<P>> next() {
+      int partitionID = nextID();
+      return new BasicEntry<>(partitionID,
+        partitions[partitionID]);
+    }
+
+    @Override
+    public int skip(int n) {
+      int i = 0;
+      while (i < n && hasNext()) {
+        nextID();
+        i++;
+      }
+      return i;
+    }
+  }
+
+  /**
+   * Get the entries in the order of the IDs
+   */
+  @Override
+  public ObjectSet<Int2ObjectMap.Entry<Partition<P>>>
+    int2ObjectEntrySet() {
+    return new AbstractObjectSet<Int2ObjectMap.Entry<Partition<P>>>() {
+      @Override
+      public ObjectIterator<Int2ObjectMap.Entry<Partition<P>>>
+        iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import edu.iu.harp.resource.Simple;
+
+/*******************************************************
+ * A table for the partitions with dense IDs
+ * 0..N-1. The partitions are stored in an array
+ * indexed by the partition IDs and iterated in
+ * the order of the IDs. It can be used wherever
+ * a Table is used. Negative partition IDs are
+ * not allowed.
+ ******************************************************/
+public class DenseTable<P extends Simple>
+  extends Table<P> {
+
+  private final DensePartitionMap<P> densePartitions;
+
+  /**
+   * @param tableID
+   *          the ID of the table
+   * @param combiner
+   *          the combiner used for partitions
+   */
+  public DenseTable(int tableID,
+    PartitionCombiner<P> combiner) {
+    this(tableID, combiner,
+      new DensePartitionMap<>(16));
+  }
+
+  /**
+   * @param tableID
+   *          the ID of the table
+   * @param combiner
+   *          the combiner used for partitions
+   * @param numPartitions
+   *          the expected number of partitions
+   */
+  public DenseTable(int tableID,
+    PartitionCombiner<P> combiner,
+    int numPartitions) {
+    this(tableID, combiner,
+      new DensePartitionMap<>(numPartitions));
+  }
+
+  private DenseTable(int tableID,
+    PartitionCombiner<P> combiner,
+    DensePartitionMap<P> partitions) {
+    super(tableID, combiner, partitions);
+    this.densePartitions = partitions;
+  }
+
+  /**
+   * Get the largest partition ID plus one. All
+   * the partition IDs are less than it.
+   *
+   * @return the bound of the partition IDs
+   */
+  public final int getIDBound() {
+    return densePartitions.getBound();
+  }
+
+  /**
+   * Get the data of the partition by the
+   * partition ID
+   *
+   * @param partitionID
+   *          the partition ID
+   * @return the data of the partition, null if
+   *         the partition doesn't exist
+   */
+  public final P get(int partitionID) {
+    Partition<P> partition =
+      densePartitions.get(partitionID);
+    return partition == null ? null
+      : partition.get();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.PriorityQueue;
+
+/*******************************************************
+ * A Partitioner using the longest processing
+ * time first rule. The partitions are assigned
+ * from the largest one, each to the worker with
+ * the fewest bytes so far. The ties are broken
+ * by the IDs.
+ ******************************************************/
+public class LPTPartitioner
+  extends SizeAwarePartitioner {
+
+  /**
+   * @param numWorkers
+   *          the number of workers
+   */
+  public LPTPartitioner(int numWorkers) {
+    super(numWorkers);
+  }
+
+  /**
+   * Assign the partitions from the largest one
+   * to the least loaded workers
+   */
+  @Override
+  protected void assign(int[] partitionIDs,
+    final long[] bytes) {
+    int[] order = new int[partitionIDs.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // The IDs are ascending, the ties keep the
+    // order of the IDs
+    IntArrays.quickSort(order,
+      new AbstractIntComparator() {
+        private static final long serialVersionUID =
+          1L;
+
+        @Override
+        public int compare(int i, int j) {
+          int result = Long.compare(bytes[j], bytes[i]);
+          return result != 0 ? result
+            : Integer.compare(i, j);
+        }
+      });
+    final long[] loads = new long[getNumWorkers()];
+    PriorityQueue<Integer> workerQueue =
+      new PriorityQueue<>(getNumWorkers(),
+        (w1, w2) -> {
+          int result =
+            Long.compare(loads[w1], loads[w2]);
+          return result != 0 ? result
+            : Integer.compare(w1, w2);
+        });
+    for (int i = 0; i < getNumWorkers(); i++) {
+      workerQueue.add(i);
+    }
+    for (int index : order) {
+      int workerID = workerQueue.poll();
+      loads[workerID] += bytes[index];
+      setWorkerID(partitionIDs[index], workerID,
+        bytes[index]);
+      workerQueue.add(workerID);
+    }
+  }
+}
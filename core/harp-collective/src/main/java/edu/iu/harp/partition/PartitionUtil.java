@@ -18,25 +18,43 @@ package edu.iu.harp.partition;
 
 import edu.iu.harp.client.DataSender;
 import edu.iu.harp.collective.Communication;
+import edu.iu.harp.collective.SparseAllreduceCollective;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.keyval.Int2LongKVPartition;
+import edu.iu.harp.keyval.Int2LongKVTable;
+import edu.iu.harp.keyval.TypeLongCombiner;
+import edu.iu.harp.resource.Array;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.OffHeapArray;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+import edu.iu.harp.resource.OffHeapIntArray;
+import edu.iu.harp.resource.ShortArray;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.resource.Writable;
+import edu.iu.harp.trace.Tracer;
 import edu.iu.harp.util.PartitionCount;
 import edu.iu.harp.util.PartitionSet;
 import edu.iu.harp.worker.WorkerInfo;
 import edu.iu.harp.worker.Workers;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.apache.log4j.Logger;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -111,6 +129,7 @@ public class PartitionUtil {
       }
     }
     if (!combineMap.isEmpty()) {
+      long startTime = Tracer.begin();
       PartitionCombiner<P> combiner =
           table.getCombiner();
       combineMap.int2ObjectEntrySet()
@@ -125,10 +144,122 @@ public class PartitionUtil {
           p.release();
         }
       });
+      Tracer.end(Tracer.COMM, "combine", null,
+          startTime);
     }
     partitions.clear();
   }
 
+  /**
+   * Copy the partitions of primitive arrays to
+   * arrays from the resource pool
+   *
+   * @param partitions the partitions
+   * @return the copies, null if there is a
+   * partition not of a primitive array
+   */
+  public static List<Transferable> copyArrayPartitions(
+      List<Transferable> partitions) {
+    List<Transferable> copies = new LinkedList<>();
+    for (Transferable obj : partitions) {
+      Partition<?> partition = (Partition<?>) obj;
+      Array<?> copy = null;
+      if (partition.get() instanceof Array) {
+        Array<?> array = (Array<?>) partition.get();
+        copy = copyArray(array, 0, array.size());
+      }
+      if (copy == null) {
+        DataUtil.releaseTransList(copies);
+        return null;
+      }
+      copies.add(new Partition<>(partition.id(),
+          copy));
+    }
+    return copies;
+  }
+
+  /**
+   * Create an array of the same type from the
+   * resource pool
+   *
+   * @param array the array giving the type
+   * @param len   the length of the new array
+   * @return the new array, null if the array is
+   * not a primitive array
+   */
+  public static Array<?> createArray(Array<?> array,
+                                     int len) {
+    if (array instanceof DoubleArray) {
+      return DoubleArray.create(len, false);
+    } else if (array instanceof FloatArray) {
+      return FloatArray.create(len, false);
+    } else if (array instanceof IntArray) {
+      return IntArray.create(len, false);
+    } else if (array instanceof LongArray) {
+      return LongArray.create(len, false);
+    } else if (array instanceof ShortArray) {
+      return ShortArray.create(len, false);
+    } else if (array instanceof ByteArray) {
+      return ByteArray.create(len, false);
+    } else if (array instanceof OffHeapDoubleArray) {
+      return OffHeapDoubleArray.create(len);
+    } else if (array instanceof OffHeapIntArray) {
+      return OffHeapIntArray.create(len);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Copy a segment of the primitive array to an
+   * array from the resource pool
+   *
+   * @param array the array
+   * @param start the start of the segment
+   * @param len   the length of the segment
+   * @return the copy of the segment, null if the
+   * array is not a primitive array
+   */
+  public static Array<?> copyArray(Array<?> array,
+                                   int start, int len) {
+    Array<?> copy = createArray(array, len);
+    if (copy != null) {
+      copyElements(array, array.start() + start,
+          copy, 0, len);
+    }
+    return copy;
+  }
+
+  /**
+   * Copy the elements between two arrays of the
+   * same type
+   *
+   * @param src       the source array
+   * @param srcStart  the start in the source
+   * @param dest      the destination array
+   * @param destStart the start in the destination
+   * @param len       the number of elements
+   */
+  public static void copyElements(Array<?> src,
+                                  int srcStart, Array<?> dest,
+                                  int destStart, int len) {
+    if (src instanceof OffHeapArray) {
+      int width =
+          ((OffHeapArray) src).getElementBytes();
+      ByteBuffer from =
+          ((OffHeapArray) src).get().duplicate();
+      from.limit((srcStart + len) * width);
+      from.position(srcStart * width);
+      ByteBuffer to =
+          ((OffHeapArray) dest).get().duplicate();
+      to.position(destStart * width);
+      to.put(from);
+    } else {
+      System.arraycopy(src.get(), srcStart,
+          dest.get(), destStart, len);
+    }
+  }
+
   public static <P extends Simple> boolean regroupPartitionCount(String contextName,
                         String operationName, Table<P> table,
                         List<Transferable> recvPCounts,
@@ -137,6 +268,13 @@ public class PartitionUtil {
                         DataMap dataMap, Workers workers) {
     partitionMap.defaultReturnValue(
         Constant.UNKNOWN_WORKER_ID);
+    if (regroupPartitioner instanceof SizeAwarePartitioner
+        && !assignPartitionsBySize(contextName,
+        operationName + ".sizes", table,
+        (SizeAwarePartitioner) regroupPartitioner,
+        dataMap, workers)) {
+      return false;
+    }
     int selfID = workers.getSelfID();
     int numWorkers = workers.getNumWorkers();
     int[] workerParCounts = new int[numWorkers];
@@ -206,6 +344,57 @@ public class PartitionUtil {
     return !isFailed;
   }
 
+  /**
+   * Sum the sizes of the partitions over the
+   * workers and assign the partitions by the
+   * sizes
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the table
+   * @param partitioner   the partitioner
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean assignPartitionsBySize(
+      String contextName, String operationName,
+      Table<P> table, SizeAwarePartitioner partitioner,
+      DataMap dataMap, Workers workers) {
+    Int2LongKVTable sizeTable = new Int2LongKVTable(
+        0, new TypeLongCombiner());
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      sizeTable.addKeyVal(partition.id(),
+          partition.getNumEnocdeBytes());
+    }
+    boolean isSuccess =
+        SparseAllreduceCollective.allreduce(
+            contextName, operationName, sizeTable,
+            dataMap, workers);
+    dataMap.cleanOperationData(contextName,
+        operationName + ".regroup");
+    dataMap.cleanOperationData(contextName,
+        operationName + ".allgather");
+    if (!isSuccess) {
+      sizeTable.release();
+      return false;
+    }
+    Int2LongOpenHashMap partitionBytes =
+        new Int2LongOpenHashMap();
+    for (Partition<Int2LongKVPartition> partition : sizeTable
+        .getPartitions()) {
+      for (Int2LongMap.Entry entry : partition
+          .get().getKVMap().int2LongEntrySet()) {
+        partitionBytes.put(entry.getIntKey(),
+            entry.getLongValue());
+      }
+    }
+    sizeTable.release();
+    partitioner.assign(partitionBytes);
+    return true;
+  }
+
   public static <P extends Simple> boolean rotatePartitionCount(String contextName,
                        String operationName, Table<P> table,
                        List<Transferable> recvPCounts, int destID,
@@ -275,6 +464,13 @@ public class PartitionUtil {
                       DataMap dataMap, Workers workers) {
     partitionMap.defaultReturnValue(
         Constant.UNKNOWN_WORKER_ID);
+    if (regroupPartitioner instanceof SizeAwarePartitioner
+        && !assignPartitionsBySize(contextName,
+        operationName + ".sizes", table,
+        (SizeAwarePartitioner) regroupPartitioner,
+        dataMap, workers)) {
+      return FAIL_TO_REGROUP_PARTITION_SET;
+    }
     int selfID = workers.getSelfID();
     int numWorkers = workers.getNumWorkers();
     // Initialize entries in workerParIDCounts
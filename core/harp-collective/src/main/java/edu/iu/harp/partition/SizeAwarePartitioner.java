@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import edu.iu.harp.io.Constant;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+/*******************************************************
+ * A Partitioner assigning the partitions by their
+ * sizes. Before regrouping, the sizes of the
+ * partitions are summed over the workers and the
+ * same assignment is computed on every worker.
+ * The partitions not assigned are distributed by
+ * getDefaultWorkerID.
+ ******************************************************/
+public abstract class SizeAwarePartitioner
+  extends Partitioner {
+
+  private final Int2IntOpenHashMap assignment;
+  private final long[] workerBytes;
+
+  /**
+   * @param numWorkers
+   *          the number of workers
+   */
+  public SizeAwarePartitioner(int numWorkers) {
+    super(numWorkers);
+    assignment = new Int2IntOpenHashMap();
+    assignment
+      .defaultReturnValue(Constant.UNKNOWN_WORKER_ID);
+    workerBytes = new long[numWorkers];
+  }
+
+  /**
+   * Assign the partitions by their sizes. The
+   * previous assignment is dropped.
+   *
+   * @param partitionBytes
+   *          the number of bytes of each partition
+   *          summed over the workers
+   */
+  public final void
+    assign(Int2LongMap partitionBytes) {
+    int[] partitionIDs =
+      partitionBytes.keySet().toIntArray();
+    // The same order on all the workers
+    IntArrays.quickSort(partitionIDs);
+    long[] bytes = new long[partitionIDs.length];
+    for (int i = 0; i < partitionIDs.length; i++) {
+      bytes[i] = partitionBytes.get(partitionIDs[i]);
+    }
+    assignment.clear();
+    for (int i = 0; i < workerBytes.length; i++) {
+      workerBytes[i] = 0L;
+    }
+    assign(partitionIDs, bytes);
+  }
+
+  /**
+   * Assign the partitions, setWorkerID is called
+   * for each partition
+   *
+   * @param partitionIDs
+   *          the partition IDs in ascending order
+   * @param bytes
+   *          the number of bytes of each partition
+   */
+  protected abstract void assign(
+    int[] partitionIDs, long[] bytes);
+
+  /**
+   * Assign a partition to a worker
+   *
+   * @param partitionID
+   *          the partition ID
+   * @param workerID
+   *          the worker ID
+   * @param bytes
+   *          the number of bytes of the partition
+   */
+  protected final void setWorkerID(
+    int partitionID, int workerID, long bytes) {
+    assignment.put(partitionID, workerID);
+    workerBytes[workerID] += bytes;
+  }
+
+  /**
+   * Get the number of bytes assigned to each
+   * worker
+   *
+   * @return the number of bytes of each worker
+   */
+  public final long[] getWorkerBytes() {
+    return workerBytes.clone();
+  }
+
+  /**
+   * Get the worker of a partition not assigned
+   *
+   * @param partitionID
+   *          the partition ID
+   * @return the worker ID
+   */
+  protected int getDefaultWorkerID(
+    int partitionID) {
+    return super.getWorkerID(partitionID);
+  }
+
+  /**
+   * Get the assigned worker of the partition, or
+   * the default worker if not assigned
+   */
+  @Override
+  public final int getWorkerID(int partitionID) {
+    int workerID = assignment.get(partitionID);
+    if (workerID == Constant.UNKNOWN_WORKER_ID) {
+      return getDefaultWorkerID(partitionID);
+    }
+    return workerID;
+  }
+}
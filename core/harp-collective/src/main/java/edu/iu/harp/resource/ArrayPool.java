@@ -17,45 +17,135 @@
 package edu.iu.harp.resource;
 
 import edu.iu.harp.io.Constant;
+import edu.iu.harp.metrics.Metrics;
+import edu.iu.harp.metrics.PoolMetrics;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import org.apache.log4j.Logger;
 
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /*******************************************************
  * The abstract class of pools. An ArrayPool is
  * used for caching arrays. The arrays, which were
  * allocated before and are no longer used, will
  * be cached for reuse.
+ *
+ * Each thread caches a few small arrays of each
+ * size in its own magazines without any
+ * synchronization. The other released arrays go
+ * to a lock-free depot (a Treiber stack) of the
+ * size, shared by all the threads. The bytes
+ * retained for each size, in the depot and in
+ * the magazines of all the threads, are capped.
+ * In-use arrays are only tracked when leak
+ * tracking is enabled.
  ******************************************************/
 public abstract class ArrayPool<T> {
 
   private static final Logger LOG =
     Logger.getLogger(ArrayPool.class);
-  /* A map from size to ArrayStore */
-  private Int2ObjectOpenHashMap<ArrayStore> arrayMap;
+
+  /** The number of bytes of an element */
+  private final int elementBytes;
+  /** The depots of the power-of-two sizes */
+  private final AtomicReferenceArray<Depot<T>> classDepots;
+  /** The depots of the other sizes */
+  private final ConcurrentHashMap<Integer, Depot<T>> sizeDepots;
+  /** The magazines of each thread */
+  private final ThreadLocal<Magazines> magazines;
+  /**
+   * Increased on cleaning, the magazines of an
+   * older epoch are dropped
+   */
+  private final AtomicInteger epoch;
+  private volatile long maxRetainedBytes;
+  /** The in-use arrays if leak tracking is on */
+  private volatile Set<T> inUseSet;
+  /** The hits, misses and live arrays */
+  private final PoolMetrics metrics;
 
   /**
-   * ArrayStore is used for buffering Arrays.
-   * freeQueue stores not-in-use Arrays, which can
-   * be used as required to avoid reallocating
-   * Arrays. inUseSet stores in-use arrays.
+   * The lock-free stack of the free arrays of one
+   * size
    */
-  private class ArrayStore {
-    private LinkedList<T> freeQueue;
-    private HashSet<T> inUseSet;
+  private static class Depot<T> {
+    private final AtomicReference<Node<T>> top;
+    /**
+     * The bytes in the stack and in the magazines
+     * of the size
+     */
+    private final AtomicLong retainedBytes;
 
-    private ArrayStore() {
-      freeQueue = new LinkedList<>();
-      inUseSet = new HashSet<>();
+    private Depot() {
+      top = new AtomicReference<>();
+      retainedBytes = new AtomicLong();
     }
   }
 
-  public ArrayPool() {
-    arrayMap = new Int2ObjectOpenHashMap<>();
+  private static class Node<T> {
+    private final T array;
+    private final long bytes;
+    private Node<T> next;
+
+    private Node(T array, long bytes) {
+      this.array = array;
+      this.bytes = bytes;
+    }
+  }
+
+  /** The free arrays of one size in a thread */
+  private static class Magazine<T> {
+    /** The depot counting the bytes */
+    private final Depot<T> depot;
+    private final Object[] arrays;
+    private int count;
+
+    private Magazine(Depot<T> depot) {
+      this.depot = depot;
+      arrays =
+        new Object[Constant.POOL_MAGAZINE_SIZE];
+      count = 0;
+    }
+  }
+
+  /**
+   * The magazines of one thread, one for each
+   * size
+   */
+  private static class Magazines {
+    private final Int2ObjectOpenHashMap<Magazine<?>> sizeMagazines;
+    private int epoch;
+
+    private Magazines(int epoch) {
+      sizeMagazines = new Int2ObjectOpenHashMap<>();
+      this.epoch = epoch;
+    }
+  }
+
+  /**
+   * @param elementBytes
+   *          the number of bytes of an element
+   */
+  public ArrayPool(int elementBytes) {
+    this.elementBytes = elementBytes;
+    classDepots = new AtomicReferenceArray<>(32);
+    sizeDepots = new ConcurrentHashMap<>();
+    epoch = new AtomicInteger();
+    magazines = ThreadLocal
+      .withInitial(() -> new Magazines(epoch.get()));
+    maxRetainedBytes =
+      Constant.POOL_MAX_RETAINED_BYTES;
+    inUseSet = null;
+    metrics = new PoolMetrics(
+      getClass().getSimpleName(), elementBytes);
+    Metrics.registerPool(metrics);
   }
 
   /**
@@ -99,6 +189,37 @@ public abstract class ArrayPool<T> {
    */
   protected abstract int getLength(T array);
 
+  /**
+   * Set the maximum number of bytes retained for
+   * each size, in the depot and in the magazines.
+   * The arrays released beyond the limit are left
+   * to the garbage collector.
+   *
+   * @param bytes
+   *          the maximum bytes of each size
+   */
+  void setMaxRetainedBytes(long bytes) {
+    maxRetainedBytes = bytes;
+  }
+
+  /**
+   * Enable or disable tracking the in-use arrays.
+   * With tracking, releasing an array not from
+   * the pool or releasing twice is rejected, and
+   * the in-use arrays are logged.
+   *
+   * @param enabled
+   *          true to enable
+   */
+  synchronized void setLeakTracking(
+    boolean enabled) {
+    if (enabled && inUseSet == null) {
+      inUseSet = ConcurrentHashMap.newKeySet();
+    } else if (!enabled) {
+      inUseSet = null;
+    }
+  }
+
   /**
    * If approximate is false, get an array of
    * required size. else, get an array of adjusted
@@ -110,8 +231,7 @@ public abstract class ArrayPool<T> {
    * @param approximate
    * @return an array
    */
-  synchronized T getArray(int size,
-    boolean approximate) {
+  T getArray(int size, boolean approximate) {
     int originSize = size;
     if (originSize <= 0) {
       return null;
@@ -121,25 +241,17 @@ public abstract class ArrayPool<T> {
     if (adjustSize < originSize) {
       return null;
     }
-    ArrayStore arrayStore =
-      arrayMap.get(adjustSize);
-    if (arrayStore == null) {
-      arrayStore = new ArrayStore();
-      arrayMap.put(adjustSize, arrayStore);
+    T array = takeFromMagazine(adjustSize);
+    if (array == null) {
+      Depot<T> depot = getDepot(adjustSize, false);
+      if (depot != null) {
+        array = pop(depot);
+      }
     }
-    if (arrayStore.freeQueue.isEmpty()) {
+    boolean isReused = array != null;
+    if (array == null) {
       try {
-        T array = createNewArray(adjustSize);
-        arrayStore.inUseSet.add(array);
-        // LOG
-        // .info("Create a new array with original
-        // size: "
-        // + originSize
-        // + ", adjusted size: "
-        // + adjustSize
-        // + ", with type: "
-        // + array.getClass().getName());
-        return array;
+        array = createNewArray(adjustSize);
       } catch (Throwable t) {
         LOG.error(
           "Cannot create array with size "
@@ -151,107 +263,302 @@ public abstract class ArrayPool<T> {
           t);
         return null;
       }
-    } else {
-      T array =
-        arrayStore.freeQueue.removeFirst();
-      arrayStore.inUseSet.add(array);
-      // LOG
-      // .info("Get an existing array with
-      // adjusted size: "
-      // + adjustSize
-      // + ", with type "
-      // + array.getClass().getName());
-      return array;
     }
+    Set<T> inUse = inUseSet;
+    if (inUse != null) {
+      inUse.add(array);
+    }
+    metrics.get(adjustSize, isReused);
+    return array;
   }
 
   /**
-   * Release the array by moving the array from
-   * inUseSet to freeQueue. The array can be used
-   * as a new array later.
+   * Release the array to the pool. The array can
+   * be used as a new array later.
    * 
    * @param array
    *          the array to release
    * @return true if succeeded, false if failed.
    */
-  synchronized boolean releaseArray(T array) {
+  boolean releaseArray(T array) {
     if (array == null) {
       return false;
     }
     int size = getLength(array);
-    ArrayStore arrayStore = arrayMap.get(size);
-    if (arrayStore == null) {
-      // LOG
-      // .info("Fail to release an array with
-      // size: "
-      // + size
-      // + ", with type "
-      // + array.getClass().getName()
-      // + ". no such store.");
+    if (size <= 0) {
       return false;
+    }
+    Set<T> inUse = inUseSet;
+    if (inUse != null && !inUse.remove(array)) {
+      LOG.warn("Release an array not in use, size "
+        + size);
+      return false;
+    }
+    if ((long) size
+      * elementBytes <= Constant.POOL_MAGAZINE_MAX_BYTES) {
+      putToMagazine(size, array);
     } else {
-      if (arrayStore.inUseSet.remove(array)) {
-        arrayStore.freeQueue.add(array);
-        return true;
-      } else {
-        // LOG
-        // .info("Fail to release an array with
-        // size: "
-        // + size
-        // + ", with type "
-        // + array.getClass().getName()
-        // + ". no such an array.");
-        return false;
-      }
+      push(getDepot(size, true), array, size);
     }
+    metrics.release(size);
+    return true;
   }
 
   /**
-   * Free the array by removing it from the
-   * inUseSet. It is no longer available.
+   * Free the array. It is no longer tracked and
+   * not cached.
    * 
    * @param array
    *          the array to be freed
    * @return true if succeeded, false if failed
    */
-  synchronized boolean freeArray(T array) {
-    int size = getLength(array);
-    // LOG.info("Free an array with size: " + size
-    // + ", with type "
-    // + array.getClass().getName());
-    ArrayStore arrayStore = arrayMap.get(size);
-    if (arrayStore == null) {
-      return false;
-    } else {
-      return arrayStore.inUseSet.remove(array);
+  boolean freeArray(T array) {
+    Set<T> inUse = inUseSet;
+    boolean isFreed = inUse != null
+      ? inUse.remove(array) : array != null;
+    if (isFreed) {
+      metrics.release(getLength(array));
     }
+    return isFreed;
   }
 
   /**
-   * Clean all arrays in freeQueue, namely remove
-   * all not-in-use arrays.
+   * Clean all the cached arrays. The depots are
+   * replaced, so the bytes in the magazines of
+   * the threads no longer count. The magazines
+   * are dropped when they are used next time.
    */
-  synchronized void clean() {
-    for (ArrayStore store : arrayMap.values()) {
-      store.freeQueue.clear();
+  void clean() {
+    epoch.incrementAndGet();
+    for (int i = 0; i < classDepots.length(); i++) {
+      classDepots.set(i, null);
     }
+    sizeDepots.clear();
   }
 
   /**
    * Logging the usage of the arrays.
    */
-  synchronized void log() {
-    ObjectIterator<Int2ObjectMap.Entry<ArrayStore>> iterator =
-      arrayMap.int2ObjectEntrySet()
-        .fastIterator();
-    while (iterator.hasNext()) {
-      Int2ObjectMap.Entry<ArrayStore> entry =
-        iterator.next();
-      LOG.info(this + ": size="
-        + entry.getIntKey() + ", use="
-        + entry.getValue().inUseSet.size()
-        + ", released="
-        + entry.getValue().freeQueue.size());
+  void log() {
+    for (int i = 0; i < classDepots.length(); i++) {
+      logDepot(1 << i, classDepots.get(i));
+    }
+    for (Map.Entry<Integer, Depot<T>> entry : sizeDepots
+      .entrySet()) {
+      logDepot(entry.getKey(), entry.getValue());
+    }
+    Set<T> inUse = inUseSet;
+    if (inUse != null) {
+      Int2ObjectOpenHashMap<int[]> counts =
+        new Int2ObjectOpenHashMap<>();
+      for (T array : inUse) {
+        int[] count = counts.get(getLength(array));
+        if (count == null) {
+          count = new int[1];
+          counts.put(getLength(array), count);
+        }
+        count[0]++;
+      }
+      for (Int2ObjectMap.Entry<int[]> entry : counts
+        .int2ObjectEntrySet()) {
+        LOG.info(this + ": size="
+          + entry.getIntKey() + ", use="
+          + entry.getValue()[0]);
+      }
+    }
+  }
+
+  private void logDepot(int size, Depot<T> depot) {
+    if (depot != null && depot.top.get() != null) {
+      LOG.info(this + ": size=" + size
+        + ", released bytes="
+        + depot.retainedBytes.get());
+    }
+  }
+
+  /**
+   * Get the depot of the size
+   *
+   * @param size
+   *          the size of the arrays
+   * @param create
+   *          create the depot if it doesn't exist
+   * @return the depot, null if it doesn't exist
+   */
+  private Depot<T> getDepot(int size,
+    boolean create) {
+    if (Integer.bitCount(size) == 1) {
+      int index = Integer.numberOfTrailingZeros(size);
+      Depot<T> depot = classDepots.get(index);
+      if (depot == null && create) {
+        classDepots.compareAndSet(index, null,
+          new Depot<>());
+        depot = classDepots.get(index);
+      }
+      return depot;
+    } else if (create) {
+      return sizeDepots.computeIfAbsent(size,
+        k -> new Depot<>());
+    } else {
+      return sizeDepots.get(size);
+    }
+  }
+
+  /**
+   * Push the array to the depot if the retained
+   * bytes are under the limit
+   *
+   * @param depot
+   *          the depot
+   * @param array
+   *          the array
+   * @param size
+   *          the size of the array
+   */
+  private void push(Depot<T> depot, T array,
+    int size) {
+    long bytes = (long) size * elementBytes;
+    if (reserve(depot, bytes)) {
+      link(depot, new Node<>(array, bytes));
+    }
+  }
+
+  /**
+   * Count the bytes in the depot if they are
+   * under the limit
+   *
+   * @param depot
+   *          the depot
+   * @param bytes
+   *          the bytes of the array
+   * @return true if counted, false if over the
+   *         limit
+   */
+  private boolean reserve(Depot<T> depot,
+    long bytes) {
+    if (depot.retainedBytes
+      .addAndGet(bytes) > maxRetainedBytes) {
+      depot.retainedBytes.addAndGet(-bytes);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Link the node to the top of the depot. The
+   * bytes are already counted.
+   *
+   * @param depot
+   *          the depot
+   * @param node
+   *          the node of the array
+   */
+  private void link(Depot<T> depot,
+    Node<T> node) {
+    Node<T> top;
+    do {
+      top = depot.top.get();
+      node.next = top;
+    } while (!depot.top.compareAndSet(top, node));
+  }
+
+  /**
+   * Pop an array from the depot. Nodes are never
+   * reused, so there is no ABA problem.
+   *
+   * @param depot
+   *          the depot
+   * @return the array, null if the depot is empty
+   */
+  private T pop(Depot<T> depot) {
+    Node<T> top;
+    do {
+      top = depot.top.get();
+      if (top == null) {
+        return null;
+      }
+    } while (!depot.top.compareAndSet(top,
+      top.next));
+    depot.retainedBytes.addAndGet(-top.bytes);
+    return top.array;
+  }
+
+  /**
+   * Get the magazines of this thread, dropping
+   * the arrays cached before the last cleaning
+   *
+   * @return the magazines
+   */
+  private Magazines getMagazines() {
+    Magazines local = magazines.get();
+    int current = epoch.get();
+    if (local.epoch != current) {
+      // The depots may be created after the
+      // cleaning, uncount the dropped bytes
+      for (Int2ObjectMap.Entry<Magazine<?>> entry : local.sizeMagazines
+        .int2ObjectEntrySet()) {
+        Magazine<?> magazine = entry.getValue();
+        magazine.depot.retainedBytes
+          .addAndGet(-(long) entry.getIntKey()
+            * elementBytes * magazine.count);
+      }
+      local.sizeMagazines.clear();
+      local.epoch = current;
+    }
+    return local;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T takeFromMagazine(int size) {
+    Magazine<T> magazine =
+      (Magazine<T>) getMagazines().sizeMagazines
+        .get(size);
+    if (magazine == null || magazine.count == 0) {
+      return null;
+    }
+    T array =
+      (T) magazine.arrays[--magazine.count];
+    magazine.arrays[magazine.count] = null;
+    magazine.depot.retainedBytes
+      .addAndGet(-(long) size * elementBytes);
+    return array;
+  }
+
+  /**
+   * Put the array to the magazine of this thread
+   * if the retained bytes of the size are under
+   * the limit. If the magazine is full, move half
+   * of it to the depot.
+   *
+   * @param size
+   *          the size of the array
+   * @param array
+   *          the array
+   */
+  @SuppressWarnings("unchecked")
+  private void putToMagazine(int size, T array) {
+    Int2ObjectOpenHashMap<Magazine<?>> sizeMagazines =
+      getMagazines().sizeMagazines;
+    Magazine<T> magazine =
+      (Magazine<T>) sizeMagazines.get(size);
+    if (magazine == null) {
+      magazine = new Magazine<>(getDepot(size, true));
+      sizeMagazines.put(size, magazine);
+    }
+    long bytes = (long) size * elementBytes;
+    if (!reserve(magazine.depot, bytes)) {
+      return;
+    }
+    Object[] arrays = magazine.arrays;
+    if (magazine.count == arrays.length) {
+      // Already counted in the depot
+      int half = arrays.length / 2;
+      while (magazine.count > half) {
+        link(magazine.depot, new Node<>(
+          (T) arrays[--magazine.count], bytes));
+        arrays[magazine.count] = null;
+      }
     }
+    arrays[magazine.count++] = array;
   }
 }
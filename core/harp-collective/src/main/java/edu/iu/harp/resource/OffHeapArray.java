@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*******************************************************
+ * The abstract class of primitive arrays in the
+ * native memory. The elements are stored
+ * little-endian in a direct buffer from the
+ * OffHeapPool, so large arrays don't add to the
+ * work of the garbage collector. The encoded
+ * elements are little-endian too, they are
+ * copied in bulk.
+ ******************************************************/
+public abstract class OffHeapArray
+  extends Array<ByteBuffer> {
+
+  /** The chunk for copying between heap and native memory */
+  private static final ThreadLocal<byte[]> chunks =
+    ThreadLocal.withInitial(() -> new byte[8192]);
+
+  public OffHeapArray(ByteBuffer buffer,
+    int size) {
+    super(buffer, 0, size);
+  }
+
+  /**
+   * Get a block of the native memory
+   *
+   * @param len
+   *          the number of elements
+   * @param elementBytes
+   *          the bytes of an element
+   * @return the block, null if failed
+   */
+  static ByteBuffer allocate(int len,
+    int elementBytes) {
+    if (len > 0) {
+      return ResourcePool.get().getOffHeapPool()
+        .allocate((long) len * elementBytes);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Get the data type of the array
+   *
+   * @return the data type
+   */
+  public abstract byte getDataType();
+
+  /**
+   * Get the number of bytes of an element
+   *
+   * @return the number of bytes
+   */
+  public abstract int getElementBytes();
+
+  /**
+   * Get the number of bytes of the elements
+   *
+   * @return the number of bytes
+   */
+  public int getNumBytes() {
+    return size * getElementBytes();
+  }
+
+  /**
+   * Get the number of Bytes of encoded data. One
+   * byte for storing DataType, four bytes for
+   * storing the size, and the bytes of the
+   * elements.
+   */
+  @Override
+  public int getNumEnocdeBytes() {
+    return getNumBytes() + 5;
+  }
+
+  /**
+   * Encode the array as DataOutput
+   */
+  @Override
+  public void encode(DataOutput out)
+    throws IOException {
+    out.writeByte(getDataType());
+    out.writeInt(size);
+    ByteBuffer src = array.duplicate();
+    src.clear();
+    src.limit(getNumBytes());
+    byte[] chunk = chunks.get();
+    while (src.hasRemaining()) {
+      int len = Math.min(chunk.length,
+        src.remaining());
+      src.get(chunk, 0, len);
+      out.write(chunk, 0, len);
+    }
+  }
+
+  /**
+   * Read the encoded elements to the array
+   *
+   * @param in
+   *          the DataInput
+   * @throws IOException
+   */
+  void decodeElements(DataInput in)
+    throws IOException {
+    ByteBuffer dest = array.duplicate();
+    dest.clear();
+    dest.limit(getNumBytes());
+    byte[] chunk = chunks.get();
+    while (dest.hasRemaining()) {
+      int len = Math.min(chunk.length,
+        dest.remaining());
+      in.readFully(chunk, 0, len);
+      dest.put(chunk, 0, len);
+    }
+  }
+
+  /**
+   * Release the native memory to the pool
+   */
+  @Override
+  public void release() {
+    ResourcePool.get().getOffHeapPool()
+      .release(array);
+    this.reset();
+  }
+
+  /**
+   * Free the array, the native memory is
+   * reclaimed when the buffer is collected
+   */
+  @Override
+  public void free() {
+    this.reset();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.DataType;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/*******************************************************
+ * OffHeapDoubleArray class for managing double data in
+ * the native memory.
+ ******************************************************/
+public final class OffHeapDoubleArray
+  extends OffHeapArray {
+
+  public OffHeapDoubleArray(ByteBuffer buffer,
+    int size) {
+    super(buffer, size);
+  }
+
+  /**
+   * Create an array with the native memory from
+   * the ResourcePool.
+   *
+   * @param len
+   *          the number of elements
+   * @return the array, null if failed
+   */
+  public static OffHeapDoubleArray create(int len) {
+    ByteBuffer buffer = allocate(len, 8);
+    if (buffer != null) {
+      return new OffHeapDoubleArray(buffer, len);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Decode an array from the DataInput, the data
+   * type is read already.
+   *
+   * @param in
+   *          the DataInput
+   * @return the array, null if failed
+   */
+  public static OffHeapDoubleArray decode(
+    DataInput in) throws IOException {
+    OffHeapDoubleArray array = create(in.readInt());
+    if (array != null) {
+      try {
+        array.decodeElements(in);
+      } catch (IOException e) {
+        array.release();
+        throw e;
+      }
+    }
+    return array;
+  }
+
+  @Override
+  public byte getDataType() {
+    return DataType.OFF_HEAP_DOUBLE_ARRAY;
+  }
+
+  @Override
+  public int getElementBytes() {
+    return 8;
+  }
+
+  /**
+   * Get the element
+   *
+   * @param i
+   *          the index
+   * @return the element
+   */
+  public double get(int i) {
+    return array.getDouble(i << 3);
+  }
+
+  /**
+   * Set the element
+   *
+   * @param i
+   *          the index
+   * @param value
+   *          the value
+   */
+  public void set(int i, double value) {
+    array.putDouble(i << 3, value);
+  }
+
+  /**
+   * View the elements as a DoubleBuffer
+   *
+   * @return the DoubleBuffer of the elements
+   */
+  public DoubleBuffer asDoubleBuffer() {
+    ByteBuffer view = array.duplicate()
+      .order(array.order());
+    view.clear();
+    view.limit(getNumBytes());
+    return view.slice().order(array.order())
+      .asDoubleBuffer();
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.metrics.Metrics;
+import edu.iu.harp.metrics.PoolMetrics;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*******************************************************
+ * A pool of the native memory blocks used by the
+ * off-heap arrays. Small blocks have power-of-two
+ * sizes and are cut from large direct slabs, so
+ * the garbage collector only sees a few buffer
+ * objects. Large blocks are allocated with the
+ * exact size. Released blocks are cached by their
+ * capacity for reuse.
+ ******************************************************/
+public class OffHeapPool {
+
+  private static final Logger LOG =
+    Logger.getLogger(OffHeapPool.class);
+
+  private static final int MIN_BLOCK_SHIFT = 6;
+
+  /** The free small blocks of each power of two */
+  private final AtomicReferenceArray<Queue<ByteBuffer>> freeBlocks;
+  /** The free large blocks of each capacity */
+  private final ConcurrentHashMap<Integer, Queue<ByteBuffer>> freeLargeBlocks;
+  /** The slab to cut the small blocks */
+  private ByteBuffer slab;
+  /** The hits, misses and live blocks */
+  private final PoolMetrics metrics;
+
+  public OffHeapPool() {
+    freeBlocks = new AtomicReferenceArray<>(32);
+    freeLargeBlocks = new ConcurrentHashMap<>();
+    slab = null;
+    metrics = new PoolMetrics("OffHeapPool", 1);
+    Metrics.registerPool(metrics);
+  }
+
+  /**
+   * Get a block with at least the number of
+   * bytes. The block is little-endian, its limit
+   * is set to the number of bytes.
+   *
+   * @param bytes
+   *          the number of bytes
+   * @return the block, null if failed
+   */
+  ByteBuffer allocate(long bytes) {
+    if (bytes <= 0 || bytes > Integer.MAX_VALUE) {
+      return null;
+    }
+    int capacity = getCapacity((int) bytes);
+    Queue<ByteBuffer> queue =
+      getFreeQueue(capacity, false);
+    ByteBuffer block = null;
+    if (queue != null) {
+      block = queue.poll();
+    }
+    metrics.get(capacity, block != null);
+    if (block == null) {
+      try {
+        if (capacity <= Constant.OFF_HEAP_MAX_SLAB_BLOCK) {
+          block = cut(capacity);
+        } else {
+          block = ByteBuffer.allocateDirect(capacity);
+        }
+      } catch (Throwable t) {
+        LOG.error("Cannot allocate native memory "
+          + "with size " + capacity, t);
+        metrics.release(capacity);
+        return null;
+      }
+    }
+    block.clear();
+    block.limit((int) bytes);
+    return block.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Release the block for reuse
+   *
+   * @param block
+   *          the block from this pool
+   */
+  void release(ByteBuffer block) {
+    if (block != null) {
+      getFreeQueue(block.capacity(), true)
+        .offer(block);
+      metrics.release(block.capacity());
+    }
+  }
+
+  /**
+   * Drop the free blocks. The native memory is
+   * reclaimed when the buffers are collected.
+   */
+  void clean() {
+    for (int i = 0; i < freeBlocks.length(); i++) {
+      Queue<ByteBuffer> queue = freeBlocks.get(i);
+      if (queue != null) {
+        queue.clear();
+      }
+    }
+    freeLargeBlocks.clear();
+    synchronized (this) {
+      slab = null;
+    }
+  }
+
+  /**
+   * Logging the free blocks
+   */
+  void log() {
+    for (int i = 0; i < freeBlocks.length(); i++) {
+      Queue<ByteBuffer> queue = freeBlocks.get(i);
+      if (queue != null && !queue.isEmpty()) {
+        LOG.info(this + ": size=" + (1 << i)
+          + ", released=" + queue.size());
+      }
+    }
+    for (Map.Entry<Integer, Queue<ByteBuffer>> entry : freeLargeBlocks
+      .entrySet()) {
+      LOG.info(this + ": size=" + entry.getKey()
+        + ", released=" + entry.getValue().size());
+    }
+  }
+
+  /**
+   * Small blocks are rounded up to powers of two,
+   * large blocks keep the exact size
+   *
+   * @param bytes
+   *          the number of bytes
+   * @return the capacity of the block
+   */
+  private static int getCapacity(int bytes) {
+    if (bytes > Constant.OFF_HEAP_MAX_SLAB_BLOCK) {
+      return bytes;
+    }
+    int shift = Math.max(MIN_BLOCK_SHIFT,
+      32 - Integer.numberOfLeadingZeros(bytes - 1));
+    return 1 << shift;
+  }
+
+  private Queue<ByteBuffer> getFreeQueue(
+    int capacity, boolean create) {
+    if (capacity <= Constant.OFF_HEAP_MAX_SLAB_BLOCK) {
+      int index =
+        Integer.numberOfTrailingZeros(capacity);
+      Queue<ByteBuffer> queue = freeBlocks.get(index);
+      if (queue == null && create) {
+        freeBlocks.compareAndSet(index, null,
+          new ConcurrentLinkedQueue<>());
+        queue = freeBlocks.get(index);
+      }
+      return queue;
+    } else if (create) {
+      return freeLargeBlocks.computeIfAbsent(
+        capacity, k -> new ConcurrentLinkedQueue<>());
+    } else {
+      return freeLargeBlocks.get(capacity);
+    }
+  }
+
+  /**
+   * Cut a block from the current slab, start a
+   * new slab if there is no enough space
+   *
+   * @param capacity
+   *          the capacity of the block
+   * @return the block
+   */
+  private synchronized ByteBuffer cut(
+    int capacity) {
+    if (slab == null || slab.remaining() < capacity) {
+      slab = ByteBuffer
+        .allocateDirect(Constant.OFF_HEAP_SLAB_SIZE);
+    }
+    int pos = slab.position();
+    slab.limit(pos + capacity);
+    ByteBuffer block = slab.slice();
+    slab.limit(slab.capacity());
+    slab.position(pos + capacity);
+    return block;
+  }
+}
@@ -27,6 +27,7 @@ public class ResourcePool {
   private final LongsPool longArrays;
   private final DoublesPool doubleArrays;
   private final WritablePool writables;
+  private final OffHeapPool offHeapBlocks;
 
   private ResourcePool() {
     byteArrays = new BytesPool();
@@ -36,6 +37,7 @@ public class ResourcePool {
     longArrays = new LongsPool();
     doubleArrays = new DoublesPool();
     writables = new WritablePool();
+    offHeapBlocks = new OffHeapPool();
   }
 
   public static ResourcePool get() {
@@ -82,6 +84,40 @@ public class ResourcePool {
     return writables;
   }
 
+  OffHeapPool getOffHeapPool() {
+    return offHeapBlocks;
+  }
+
+  /**
+   * Set the maximum bytes of the free arrays
+   * retained for each size in each array pool
+   *
+   * @param bytes the maximum bytes of each size
+   */
+  public void setMaxRetainedBytes(long bytes) {
+    byteArrays.setMaxRetainedBytes(bytes);
+    shortArrays.setMaxRetainedBytes(bytes);
+    intArrays.setMaxRetainedBytes(bytes);
+    floatArrays.setMaxRetainedBytes(bytes);
+    longArrays.setMaxRetainedBytes(bytes);
+    doubleArrays.setMaxRetainedBytes(bytes);
+  }
+
+  /**
+   * Enable or disable tracking the in-use arrays
+   * of the array pools
+   *
+   * @param enabled true to enable
+   */
+  public void setLeakTracking(boolean enabled) {
+    byteArrays.setLeakTracking(enabled);
+    shortArrays.setLeakTracking(enabled);
+    intArrays.setLeakTracking(enabled);
+    floatArrays.setLeakTracking(enabled);
+    longArrays.setLeakTracking(enabled);
+    doubleArrays.setLeakTracking(enabled);
+  }
+
   public void clean() {
     byteArrays.clean();
     shortArrays.clean();
@@ -90,6 +126,7 @@ public class ResourcePool {
     longArrays.clean();
     doubleArrays.clean();
     writables.clean();
+    offHeapBlocks.clean();
   }
 
   public void log() {
@@ -100,5 +137,6 @@ public class ResourcePool {
     longArrays.log();
     doubleArrays.log();
     writables.log();
+    offHeapBlocks.log();
   }
 }
@@ -31,9 +31,15 @@ public abstract class Writable extends Simple {
 
   /**
    * Get the number of Bytes of encoded data.
+   * The registered classes are encoded with the
+   * type IDs instead of the class names.
    */
   @Override
   public final int getNumEnocdeBytes() {
+    if (WritableRegistry
+      .getTypeID(this.getClass()) >= 0) {
+      return 3 + getNumWriteBytes();
+    }
     return 1
       + this.getClass().getName().length() * 2 + 4
       + getNumWriteBytes();
@@ -45,18 +51,30 @@ public abstract class Writable extends Simple {
   @Override
   public final void encode(DataOutput out)
     throws IOException {
-    out.writeByte(DataType.WRITABLE);
-    out.writeUTF(this.getClass().getName());
+    int typeID =
+      WritableRegistry.getTypeID(this.getClass());
+    if (typeID >= 0) {
+      out.writeByte(DataType.REGISTERED_WRITABLE);
+      out.writeShort(typeID);
+    } else {
+      out.writeByte(DataType.WRITABLE);
+      out.writeUTF(this.getClass().getName());
+    }
     this.write(out);
   }
 
   /**
-   * Get a new instance of the class
+   * Get a new instance of the class, created by
+   * the factory if the class is registered
    * 
    * @return new instance
    */
   public final static <W extends Writable> W
     newInstance(Class<W> clazz) {
+    W obj = WritableRegistry.newInstance(clazz);
+    if (obj != null) {
+      return obj;
+    }
     try {
       Constructor<W> constructor =
         clazz.getConstructor();
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import org.apache.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*******************************************************
+ * The registry assigning compact type IDs to the
+ * Writable classes. A registered Writable is
+ * encoded with its type ID instead of its class
+ * name, and is created by its factory instead of
+ * reflection. The IDs are given in the order of
+ * registration, the workers agree on them by
+ * taking the class names of the master. The
+ * registry is sealed after the agreement, new
+ * classes registered later are rejected.
+ ******************************************************/
+public class WritableRegistry {
+
+  private static final Logger LOG =
+    Logger.getLogger(WritableRegistry.class);
+
+  /** The type ID of unregistered classes */
+  public static final int UNREGISTERED = -1;
+  /** The IDs are written as shorts */
+  private static final int MAX_NUM_TYPES =
+    Short.MAX_VALUE + 1;
+
+  /**
+   * The registered types. The snapshot is
+   * replaced on registration, so encoding and
+   * decoding read it without locking.
+   */
+  private static class Types {
+    private final Class<?>[] classes;
+    private final Supplier<?>[] factories;
+    private final IdentityHashMap<Class<?>, Integer> ids;
+
+    private Types(Class<?>[] classes,
+      Supplier<?>[] factories) {
+      this.classes = classes;
+      this.factories = factories;
+      this.ids = new IdentityHashMap<>();
+      for (int i = 0; i < classes.length; i++) {
+        ids.put(classes[i], i);
+      }
+    }
+  }
+
+  private static volatile Types types =
+    new Types(new Class<?>[0], new Supplier<?>[0]);
+  private static volatile boolean isSealed =
+    false;
+
+  /**
+   * Register a Writable class created by its
+   * public no-argument constructor
+   *
+   * @param clazz the Writable class
+   * @return the type ID, UNREGISTERED if failed
+   */
+  public static <W extends Writable> int
+    register(Class<W> clazz) {
+    Supplier<W> factory = getConstructor(clazz);
+    if (factory == null) {
+      return UNREGISTERED;
+    }
+    return register(clazz, factory);
+  }
+
+  /**
+   * Register a Writable class with its factory.
+   * Registering a class again replaces the
+   * factory and keeps the type ID. New classes
+   * are rejected once the registry is sealed.
+   *
+   * @param clazz   the Writable class
+   * @param factory create a new object of the
+   *                class
+   * @return the type ID, UNREGISTERED if failed
+   */
+  public static synchronized <W extends Writable> int
+    register(Class<W> clazz, Supplier<W> factory) {
+    if (clazz == null || factory == null) {
+      return UNREGISTERED;
+    }
+    Types cur = types;
+    Integer id = cur.ids.get(clazz);
+    if (id != null) {
+      Supplier<?>[] factories =
+        cur.factories.clone();
+      factories[id] = factory;
+      types = new Types(cur.classes, factories);
+      return id;
+    }
+    if (isSealed) {
+      LOG.error("The Writable types are sealed, "
+        + clazz.getName() + " is not registered.");
+      return UNREGISTERED;
+    }
+    int numTypes = cur.classes.length;
+    if (numTypes == MAX_NUM_TYPES) {
+      LOG.error("Too many Writable types, "
+        + clazz.getName() + " is not registered.");
+      return UNREGISTERED;
+    }
+    Class<?>[] classes = new Class<?>[numTypes + 1];
+    Supplier<?>[] factories =
+      new Supplier<?>[numTypes + 1];
+    System.arraycopy(cur.classes, 0, classes, 0,
+      numTypes);
+    System.arraycopy(cur.factories, 0, factories,
+      0, numTypes);
+    classes[numTypes] = clazz;
+    factories[numTypes] = factory;
+    types = new Types(classes, factories);
+    return numTypes;
+  }
+
+  /**
+   * Get the type ID of the class
+   *
+   * @param clazz the class
+   * @return the type ID, UNREGISTERED if the
+   *         class is not registered
+   */
+  public static int getTypeID(Class<?> clazz) {
+    Integer id = types.ids.get(clazz);
+    return id != null ? id : UNREGISTERED;
+  }
+
+  /**
+   * Get the class of the type ID
+   *
+   * @param typeID the type ID
+   * @return the class, null if not registered
+   */
+  @SuppressWarnings("unchecked")
+  public static <W extends Writable> Class<W>
+    getClass(int typeID) {
+    Class<?>[] classes = types.classes;
+    if (typeID < 0 || typeID >= classes.length) {
+      return null;
+    }
+    return (Class<W>) classes[typeID];
+  }
+
+  /**
+   * Create a new object with the factory of the
+   * class
+   *
+   * @param clazz the class
+   * @return the new object, null if the class is
+   *         not registered
+   */
+  @SuppressWarnings("unchecked")
+  static <W extends Writable> W
+    newInstance(Class<W> clazz) {
+    Types cur = types;
+    Integer id = cur.ids.get(clazz);
+    if (id == null) {
+      return null;
+    }
+    return (W) cur.factories[id].get();
+  }
+
+  /**
+   * Get the names of the registered classes in
+   * the order of the type IDs
+   *
+   * @return the class names
+   */
+  public static List<String> getClassNames() {
+    Class<?>[] classes = types.classes;
+    List<String> names =
+      new ArrayList<>(classes.length);
+    for (Class<?> clazz : classes) {
+      names.add(clazz.getName());
+    }
+    return names;
+  }
+
+  /**
+   * Reassign the type IDs in the order of the
+   * class names, usually received from the
+   * master. The registered classes not in the
+   * names are unregistered, the factories of the
+   * others are kept.
+   *
+   * @param classNames the class names
+   * @return true if all the classes are found,
+   *         false if failed or sealed
+   */
+  @SuppressWarnings("unchecked")
+  public static synchronized boolean
+    setClassNames(List<String> classNames) {
+    if (isSealed) {
+      LOG.error("The Writable types are sealed.");
+      return false;
+    }
+    if (classNames.size() > MAX_NUM_TYPES) {
+      LOG.error("Too many Writable types.");
+      return false;
+    }
+    Types cur = types;
+    Class<?>[] classes =
+      new Class<?>[classNames.size()];
+    Supplier<?>[] factories =
+      new Supplier<?>[classNames.size()];
+    int i = 0;
+    for (String className : classNames) {
+      Class<Writable> clazz =
+        Writable.forClass(className);
+      if (clazz == null
+        || !Writable.class.isAssignableFrom(clazz)) {
+        LOG.error("Cannot find Writable class "
+          + className);
+        return false;
+      }
+      Integer id = cur.ids.get(clazz);
+      Supplier<?> factory = id != null
+        ? cur.factories[id] : getConstructor(clazz);
+      if (factory == null) {
+        return false;
+      }
+      classes[i] = clazz;
+      factories[i] = factory;
+      i++;
+    }
+    types = new Types(classes, factories);
+    return true;
+  }
+
+  /**
+   * Seal the registry after the workers agree on
+   * the type IDs. The IDs of the registered
+   * classes are fixed, new classes are rejected.
+   */
+  public static synchronized void seal() {
+    isSealed = true;
+  }
+
+  /**
+   * Check if the registry is sealed
+   *
+   * @return true if sealed
+   */
+  public static boolean isSealed() {
+    return isSealed;
+  }
+
+  /**
+   * Unregister all the classes and unseal the
+   * registry
+   */
+  public static synchronized void clear() {
+    types =
+      new Types(new Class<?>[0], new Supplier<?>[0]);
+    isSealed = false;
+  }
+
+  /**
+   * Get the factory calling the public
+   * no-argument constructor through a
+   * MethodHandle
+   *
+   * @param clazz the class
+   * @return the factory, null if there is no
+   *         such constructor
+   */
+  private static <W extends Writable> Supplier<W>
+    getConstructor(final Class<W> clazz) {
+    final MethodHandle constructor;
+    try {
+      constructor = MethodHandles.publicLookup()
+        .findConstructor(clazz,
+          MethodType.methodType(void.class));
+    } catch (NoSuchMethodException
+      | IllegalAccessException e) {
+      LOG.error("No public constructor without"
+        + " arguments in " + clazz.getName(), e);
+      return null;
+    }
+    return () -> {
+      try {
+        return clazz.cast(constructor.invoke());
+      } catch (Throwable t) {
+        LOG.error("Fail to create "
+          + clazz.getName(), t);
+        return null;
+      }
+    };
+  }
+}
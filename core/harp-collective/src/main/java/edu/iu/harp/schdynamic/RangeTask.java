@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.schdynamic;
+
+/*******************************************************
+ * The body of a parallel loop, invoked on a range
+ * of indices with the task object owned by the
+ * thread
+ ******************************************************/
+public interface RangeTask<T> {
+
+  /**
+   * Process the indices in [start, end)
+   *
+   * @param task
+   *          the task object of the thread
+   * @param start
+   *          the first index, inclusive
+   * @param end
+   *          the last index, exclusive
+   * @throws Exception
+   */
+  public void run(T task, int start, int end)
+    throws Exception;
+}
@@ -16,6 +16,7 @@
 
 package edu.iu.harp.schdynamic;
 
+import edu.iu.harp.trace.Tracer;
 import org.apache.log4j.Logger;
 
 import java.util.concurrent.BlockingDeque;
@@ -34,6 +35,8 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
   private final BlockingDeque<Input<I>> inputQueue;
   private final BlockingQueue<Output<O>> outputQueue;
   private final T taskObject;
+  /** The name of the task in the trace */
+  private final String taskName;
   private final Semaphore barrier1;
   private final Semaphore barrier2;
 
@@ -43,6 +46,7 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
     inputQueue = inQueue;
     outputQueue = outQueue;
     taskObject = task;
+    taskName = task.getClass().getSimpleName();
     this.barrier1 = barrier1;
     this.barrier2 = new Semaphore(0);
   }
@@ -72,6 +76,7 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
           } else {
             O output = null;
             boolean isFailed = false;
+            long startTime = Tracer.begin();
             try {
               output =
                 taskObject.run(input.getInput());
@@ -81,6 +86,8 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
               LOG.error(
                 "Error when processing input", e);
             }
+            Tracer.end(Tracer.COMPUTE, taskName,
+              null, startTime);
             if (isFailed) {
               outputQueue
                 .add(new Output<>(null, true));
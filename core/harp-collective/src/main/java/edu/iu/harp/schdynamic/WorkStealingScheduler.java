@@ -0,0 +1,682 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.schdynamic;
+
+import edu.iu.harp.trace.Tracer;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*******************************************************
+ * The work-stealing scheduler. Each thread owns a
+ * deque, takes inputs from its head and steals
+ * from the tails of the other deques when its own
+ * is empty. Inputs are queued without wrappers,
+ * bulk submissions are split into chunks and
+ * outputs are collected without locking.
+ *
+ * It has the interface and the pause/resume
+ * semantics of DynamicScheduler. The methods
+ * other than parallelFor are expected to be
+ * invoked from one controlling thread, as
+ * dymoro.Scheduler does.
+ ******************************************************/
+public class WorkStealingScheduler<I, O, T extends Task<I, O>> {
+
+  protected static final Logger LOG =
+    Logger.getLogger(WorkStealingScheduler.class);
+
+  /** The number of chunks per thread in submitAll */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private static final int RUNNING = 0;
+  /** Pause after the queued inputs are done */
+  private static final int PAUSE = 1;
+  /** Pause after the current input is done */
+  private static final int PAUSE_NOW = 2;
+  /** Stop after the queued inputs are done */
+  private static final int STOP = 3;
+
+  /** Stands for a null output in the queue */
+  private static final Object NULL_OUTPUT =
+    new Object();
+  /** Stands for a failed input in the queue */
+  private static final Object ERROR_OUTPUT =
+    new Object();
+
+  private final List<T> tasks;
+  private final List<Worker> workers;
+  private final int numWorkers;
+  private final ConcurrentLinkedQueue<Object> outputQueue;
+  private final Semaphore barrier1;
+  private final Semaphore barrier2;
+  private volatile int control;
+  /** The thread waiting in waitForOutput */
+  private volatile Thread outputWaiter;
+
+  private Thread[] threads;
+  private int nextWorker;
+  private long inputCount;
+  private long outputCount;
+  private int errorCount;
+  private boolean isRunning;
+  private boolean isPausing;
+
+  /**
+   * Create a worker for each task, each worker
+   * runs its task on its own thread
+   *
+   * @param tasks
+   *          the tasks
+   */
+  public WorkStealingScheduler(List<T> tasks) {
+    this.tasks = tasks;
+    numWorkers = tasks.size();
+    workers = new ObjectArrayList<>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      workers.add(new Worker(i, tasks.get(i)));
+    }
+    outputQueue = new ConcurrentLinkedQueue<>();
+    barrier1 = new Semaphore(0);
+    barrier2 = new Semaphore(0);
+    control = RUNNING;
+    outputWaiter = null;
+    threads = null;
+    nextWorker = 0;
+    inputCount = 0L;
+    outputCount = 0L;
+    errorCount = 0;
+    isRunning = false;
+    isPausing = false;
+  }
+
+  /**
+   * Get the list of tasks
+   *
+   * @return the list of tasks
+   */
+  public List<T> getTasks() {
+    return tasks;
+  }
+
+  /**
+   * Submit the input. It goes to an idle thread
+   * if there is one.
+   *
+   * @param input
+   *          the input
+   */
+  public void submit(I input) {
+    if (input != null) {
+      Worker worker = null;
+      for (int i = 0; i < numWorkers; i++) {
+        Worker w = workers
+          .get((nextWorker + i) % numWorkers);
+        if (w.isIdle) {
+          worker = w;
+          break;
+        }
+      }
+      if (worker == null) {
+        worker = workers.get(nextWorker);
+      }
+      nextWorker = (worker.id + 1) % numWorkers;
+      worker.deque.addLast(input);
+      if (!worker.wake()) {
+        // A thread may have gone idle after the
+        // scan, let it steal the input
+        wakeOne();
+      }
+      if (isRunning) {
+        inputCount++;
+      }
+    }
+  }
+
+  /**
+   * Submit a collection of inputs
+   *
+   * @param inputs
+   *          a collection of inputs
+   */
+  public void submitAll(Collection<I> inputs) {
+    submitChunks(inputs.toArray());
+  }
+
+  /**
+   * Submit an array of inputs
+   *
+   * @param inputs
+   *          an aray of inputs
+   */
+  public void submitAll(I[] inputs) {
+    submitChunks(inputs.clone());
+  }
+
+  /**
+   * Split the inputs into chunks and deal them
+   * to the deques. Null inputs are skipped.
+   *
+   * @param inputs
+   *          the inputs, owned by the scheduler
+   */
+  private void submitChunks(Object[] inputs) {
+    int numInputs = 0;
+    for (int i = 0; i < inputs.length; i++) {
+      if (inputs[i] != null) {
+        inputs[numInputs++] = inputs[i];
+      }
+    }
+    if (numInputs == 0) {
+      return;
+    }
+    int chunkSize = Math.max(1, numInputs
+      / (numWorkers * CHUNKS_PER_THREAD));
+    for (int start =
+      0; start < numInputs; start += chunkSize) {
+      Worker worker = workers.get(nextWorker);
+      nextWorker = (nextWorker + 1) % numWorkers;
+      worker.deque.addLast(new Chunk(inputs, start,
+        Math.min(start + chunkSize, numInputs)));
+    }
+    wakeAll();
+    if (isRunning) {
+      inputCount += numInputs;
+    }
+  }
+
+  /**
+   * Start scheduling
+   */
+  public synchronized void start() {
+    if (!isRunning) {
+      isRunning = true;
+      inputCount += getNumQueuedInputs();
+      control = RUNNING;
+      if (isPausing) {
+        isPausing = false;
+        barrier2.release(numWorkers);
+      } else {
+        threads = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+          threads[i] = new Thread(workers.get(i));
+          workers.get(i).thread = threads[i];
+          threads[i].start();
+        }
+      }
+    }
+  }
+
+  /**
+   * Pause the task after the queued inputs are
+   * processed
+   */
+  public synchronized void pause() {
+    pause(PAUSE);
+  }
+
+  /**
+   * Pause the task immediately, the queued inputs
+   * are kept
+   */
+  public synchronized void pauseNow() {
+    pause(PAUSE_NOW);
+  }
+
+  /**
+   * Set the control and wait until all the
+   * threads pause
+   *
+   * @param pauseControl
+   *          PAUSE or PAUSE_NOW
+   */
+  private void pause(int pauseControl) {
+    if (isRunning && !isPausing) {
+      isRunning = false;
+      isPausing = true;
+      control = pauseControl;
+      wakeAll();
+      ComputeUtil.acquire(barrier1, numWorkers);
+      inputCount -= getNumQueuedInputs();
+    }
+  }
+
+  /**
+   * Clean the input queue
+   */
+  public synchronized void cleanInputQueue() {
+    if (isPausing || !isRunning) {
+      for (Worker worker : workers) {
+        worker.deque.clear();
+      }
+    }
+  }
+
+  /**
+   * Stop the threads after the queued inputs are
+   * processed
+   */
+  public synchronized void stop() {
+    if (isPausing) {
+      start();
+    }
+    if (isRunning) {
+      isRunning = false;
+      control = STOP;
+      wakeAll();
+      for (int i = 0; i < numWorkers; i++) {
+        ComputeUtil.joinThread(threads[i]);
+        workers.get(i).thread = null;
+      }
+      threads = null;
+    }
+  }
+
+  /**
+   * Blocked and wait for outputs Invoke as
+   * while(hasOutput()) { waitForOutput(); }
+   *
+   * @return the output
+   */
+  @SuppressWarnings("unchecked")
+  public O waitForOutput() {
+    if (!hasNext()) {
+      return null;
+    }
+    Object output = outputQueue.poll();
+    if (output == null) {
+      outputWaiter = Thread.currentThread();
+      while ((output = outputQueue.poll()) == null) {
+        LockSupport.park(this);
+      }
+      outputWaiter = null;
+    }
+    outputCount++;
+    if (output == ERROR_OUTPUT) {
+      errorCount++;
+      return null;
+    } else if (output == NULL_OUTPUT) {
+      return null;
+    } else {
+      return (O) output;
+    }
+  }
+
+  /**
+   * Check if has a new output
+   *
+   * @return true if has a new output, false
+   *         otherwise
+   */
+  public boolean hasOutput() {
+    return hasNext();
+  }
+
+  /**
+   * Check if has next output
+   *
+   * @return true if has next output, false
+   *         otherwise
+   */
+  private boolean hasNext() {
+    return inputCount > outputCount;
+  }
+
+  /**
+   * Check if has errors or not
+   *
+   * @return true if has errors, false otherwise
+   */
+  public boolean hasError() {
+    int count = errorCount;
+    errorCount = 0;
+    return count > 0;
+  }
+
+  /**
+   * Run the body on [start, end) with the threads
+   * of the scheduler and wait until it is done.
+   * Ranges larger than the grain are split in
+   * halves, and idle threads steal the halves.
+   * The body does not produce outputs.
+   *
+   * @param start
+   *          the first index, inclusive
+   * @param end
+   *          the last index, exclusive
+   * @param grain
+   *          the largest range given to the body
+   * @param body
+   *          the loop body
+   * @return true if succeeded, false otherwise
+   */
+  public boolean parallelFor(int start, int end,
+    int grain, RangeTask<T> body) {
+    if (start >= end) {
+      return true;
+    }
+    if (!isRunning) {
+      LOG.error("The scheduler is not running");
+      return false;
+    }
+    RangeJob<T> job = new RangeJob<>(body,
+      Math.max(1, grain), end - start);
+    long size = (long) end - start;
+    int numRanges = (int) Math.min(numWorkers,
+      (size + job.grain - 1) / job.grain);
+    for (int i = 0; i < numRanges; i++) {
+      workers.get(i).deque.addLast(new Range<>(job,
+        (int) (start + size * i / numRanges),
+        (int) (start + size * (i + 1) / numRanges)));
+    }
+    wakeAll();
+    while (job.remaining.get() > 0L) {
+      LockSupport.park(this);
+    }
+    return !job.isFailed;
+  }
+
+  /**
+   * Count the inputs in the deques, only valid
+   * when the threads are not running
+   *
+   * @return the number of queued inputs
+   */
+  private long getNumQueuedInputs() {
+    long count = 0L;
+    for (Worker worker : workers) {
+      for (Object item : worker.deque) {
+        if (item instanceof Chunk) {
+          Chunk chunk = (Chunk) item;
+          count += chunk.end - chunk.start;
+        } else if (!(item instanceof Range)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Wake up all the idle threads
+   */
+  private void wakeAll() {
+    for (Worker worker : workers) {
+      worker.wake();
+    }
+  }
+
+  /**
+   * Wake up one idle thread
+   */
+  private void wakeOne() {
+    for (Worker worker : workers) {
+      if (worker.wake()) {
+        return;
+      }
+    }
+  }
+
+  /*******************************************************
+   * A slice of a bulk submission
+   ******************************************************/
+  private static final class Chunk {
+    private final Object[] inputs;
+    private int start;
+    private final int end;
+
+    private Chunk(Object[] inputs, int start,
+      int end) {
+      this.inputs = inputs;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /*******************************************************
+   * The shared state of a parallelFor
+   ******************************************************/
+  private static final class RangeJob<T> {
+    private final RangeTask<T> body;
+    private final int grain;
+    /** The number of indices not processed */
+    private final AtomicLong remaining;
+    private final Thread waiter;
+    private volatile boolean isFailed;
+
+    private RangeJob(RangeTask<T> body, int grain,
+      long size) {
+      this.body = body;
+      this.grain = grain;
+      this.remaining = new AtomicLong(size);
+      this.waiter = Thread.currentThread();
+      this.isFailed = false;
+    }
+  }
+
+  /*******************************************************
+   * A range of indices in a parallelFor
+   ******************************************************/
+  private static final class Range<T> {
+    private final RangeJob<T> job;
+    private final int start;
+    private final int end;
+
+    private Range(RangeJob<T> job, int start,
+      int end) {
+      this.job = job;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /*******************************************************
+   * A thread with its own deque and task object
+   ******************************************************/
+  private class Worker implements Runnable {
+
+    private final int id;
+    private final T taskObject;
+    /** The name of the task in the trace */
+    private final String taskName;
+    private final ConcurrentLinkedDeque<Object> deque;
+    /** Set before parking, cleared after waking */
+    private volatile boolean isIdle;
+    private volatile Thread thread;
+
+    private Worker(int id, T task) {
+      this.id = id;
+      this.taskObject = task;
+      this.taskName = task.getClass().getSimpleName();
+      this.deque = new ConcurrentLinkedDeque<>();
+      this.isIdle = false;
+      this.thread = null;
+    }
+
+    /**
+     * Unpark the thread if it is idle
+     *
+     * @return true if the thread was idle, false
+     *         otherwise
+     */
+    private boolean wake() {
+      Thread t = thread;
+      if (isIdle && t != null) {
+        LockSupport.unpark(t);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        int ctl = control;
+        if (ctl == PAUSE_NOW) {
+          await();
+          continue;
+        }
+        Object item = take();
+        if (item != null) {
+          process(item);
+        } else if (ctl == PAUSE) {
+          await();
+        } else if (ctl == STOP) {
+          break;
+        } else {
+          idle(ctl);
+        }
+      }
+    }
+
+    /**
+     * Take an item from the head of the own deque
+     * or from the tail of another deque
+     *
+     * @return the item, null if all the deques are
+     *         empty
+     */
+    private Object take() {
+      Object item = deque.pollFirst();
+      for (int i = 1; item == null
+        && i < numWorkers; i++) {
+        item = workers.get((id + i) % numWorkers)
+          .deque.pollLast();
+      }
+      return item;
+    }
+
+    /**
+     * Check if any deque has items
+     *
+     * @return true if there are items, false
+     *         otherwise
+     */
+    private boolean hasItems() {
+      for (Worker worker : workers) {
+        if (!worker.deque.isEmpty()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Park until new items or a new control. The
+     * thread is marked idle before the deques and
+     * the control are checked again, and the
+     * submitters update them before checking the
+     * mark, so either the thread sees the change
+     * or it is unparked.
+     *
+     * @param ctl
+     *          the control seen before parking
+     */
+    private void idle(int ctl) {
+      isIdle = true;
+      if (control == ctl && !hasItems()) {
+        LockSupport.park(this);
+      }
+      isIdle = false;
+    }
+
+    /**
+     * Wait at the barrier until start
+     */
+    private void await() {
+      barrier1.release();
+      ComputeUtil.acquire(barrier2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(Object item) {
+      if (item instanceof Chunk) {
+        Chunk chunk = (Chunk) item;
+        for (int i = chunk.start; i < chunk.end; i++) {
+          if (control == PAUSE_NOW) {
+            // Keep the rest for the next start
+            chunk.start = i;
+            deque.addFirst(chunk);
+            return;
+          }
+          runInput((I) chunk.inputs[i]);
+        }
+      } else if (item instanceof Range) {
+        runRange((Range<T>) item);
+      } else {
+        runInput((I) item);
+      }
+    }
+
+    private void runInput(I input) {
+      Object output = null;
+      long startTime = Tracer.begin();
+      try {
+        output = taskObject.run(input);
+        if (output == null) {
+          output = NULL_OUTPUT;
+        }
+      } catch (Exception e) {
+        output = ERROR_OUTPUT;
+        LOG.error("Error when processing input", e);
+      }
+      Tracer.end(Tracer.COMPUTE, taskName, null,
+        startTime);
+      outputQueue.offer(output);
+      Thread waiter = outputWaiter;
+      if (waiter != null) {
+        LockSupport.unpark(waiter);
+      }
+    }
+
+    private void runRange(Range<T> range) {
+      RangeJob<T> job = range.job;
+      int start = range.start;
+      int end = range.end;
+      // Leave the upper halves for the thieves
+      while (end - start > job.grain) {
+        int mid = (start + end) >>> 1;
+        deque.addFirst(new Range<>(job, mid, end));
+        wakeOne();
+        end = mid;
+      }
+      long startTime = Tracer.begin();
+      try {
+        job.body.run(taskObject, start, end);
+      } catch (Throwable t) {
+        job.isFailed = true;
+        LOG.error("Error when processing range", t);
+      } finally {
+        Tracer.end(Tracer.COMPUTE, taskName, null,
+          startTime);
+        // Always count the range as done, or the
+        // caller of parallelFor never returns
+        if (job.remaining
+          .addAndGet(start - end) == 0L) {
+          LockSupport.unpark(job.waiter);
+        }
+      }
+    }
+  }
+}
@@ -19,6 +19,7 @@ package edu.iu.harp.schstatic;
 import edu.iu.harp.schdynamic.ComputeUtil;
 import edu.iu.harp.schdynamic.Input;
 import edu.iu.harp.schdynamic.Output;
+import edu.iu.harp.trace.Tracer;
 import org.apache.log4j.Logger;
 
 import java.util.concurrent.BlockingQueue;
@@ -34,6 +35,8 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
     Logger.getLogger(TaskMonitor.class);
   /** the task object */
   private final T taskObject;
+  /** the name of the task in the trace */
+  private final String taskName;
   /** the input queue */
   private final BlockingQueue<Input<I>> inputQueue;
   /** the output queue */
@@ -49,6 +52,7 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
     Submitter<I> submitter, int numTasks,
     Semaphore barrier1) {
     this.taskObject = task;
+    this.taskName = task.getClass().getSimpleName();
     this.taskObject.setTaskID(taskID);
     this.taskObject.setNumTasks(numTasks);
     this.taskObject.setSubmitter(submitter);
@@ -193,6 +197,7 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
           } else {
             O output = null;
             boolean isFailed = false;
+            long startTime = Tracer.begin();
             try {
               output =
                 taskObject.run(input.getInput());
@@ -202,6 +207,8 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
               LOG.error(
                 "Error when processing input", e);
             }
+            Tracer.end(Tracer.COMPUTE, taskName,
+              null, startTime);
             if (isFailed) {
               outputQueue
                 .add(new Output<>(null, true));
@@ -25,6 +25,8 @@ import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /*******************************************************
  * The Acceptor for handling the messages received
@@ -78,6 +80,20 @@ public class Acceptor implements Runnable {
       do {
         if (commandType == Constant.CONNECTION_END) {
           break;
+        } else if (commandType == Constant.MUX_CHANNEL) {
+          // The channel is read here until closed,
+          // the streams are served by the pool
+          ExecutorService executor =
+            Executors.newCachedThreadPool();
+          MuxDemux demux = new MuxDemux(eventQueue,
+            dataMap, workers, executor);
+          try {
+            demux.readFrames(in);
+          } finally {
+            demux.close();
+            executor.shutdown();
+          }
+          break;
         } else if (commandType == Constant.SEND) {
           DataReceiver receiver =
             new DataReceiver(selfID, conn,
@@ -89,6 +105,24 @@ public class Acceptor implements Runnable {
               eventQueue, dataMap,
               Constant.SEND_DECODE);
           receiver.run();
+        } else if (commandType == Constant.SEND_RAW) {
+          DataReceiver receiver =
+            new DataReceiver(selfID, conn,
+              eventQueue, dataMap,
+              Constant.SEND_RAW);
+          receiver.run();
+        } else if (commandType == Constant.SEND_STREAM) {
+          DataReceiver receiver =
+            new DataReceiver(selfID, conn,
+              eventQueue, dataMap,
+              Constant.SEND_STREAM);
+          receiver.run();
+        } else if (commandType == Constant.SEND_SHM) {
+          DataReceiver receiver =
+            new DataReceiver(selfID, conn,
+              eventQueue, dataMap,
+              Constant.SEND_SHM);
+          receiver.run();
         } else if (commandType == Constant.CHAIN_BCAST) {
           Receiver receiver =
             new DataChainBcastReceiver(selfID,
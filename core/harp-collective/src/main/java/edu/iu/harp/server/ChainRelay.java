@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.Connection;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.worker.WorkerInfo;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/*******************************************************
+ * Forward the data of chain broadcasting to the
+ * next worker for the NioServer. The body is
+ * forwarded piece by piece as it arrives, the
+ * writes are chained so that they reach the next
+ * worker in order without blocking the event
+ * loop.
+ ******************************************************/
+class ChainRelay {
+
+  private static final Logger LOG =
+    Logger.getLogger(ChainRelay.class);
+
+  private final Executor executor;
+  private Connection conn;
+  private OutputStream out;
+  /** The last write in the chain */
+  private CompletableFuture<Void> tail;
+
+  /**
+   * Connect to the next worker and forward the
+   * command, the op bytes and the head bytes
+   *
+   * @param executor
+   *          the executor doing the writes
+   * @param commandType
+   *          the command to forward
+   * @param opArray
+   *          the op bytes
+   * @param headArray
+   *          the head bytes
+   * @param next
+   *          the next worker
+   */
+  ChainRelay(Executor executor,
+    final byte commandType,
+    final ByteArray opArray,
+    final ByteArray headArray,
+    final WorkerInfo next) {
+    this.executor = executor;
+    this.tail = CompletableFuture.runAsync(() -> {
+      conn = Connection.create(next.getNode(),
+        next.getPort(), true);
+      if (conn == null) {
+        throw new UncheckedIOException(
+          new IOException(
+            "Cannot create the next connection."));
+      }
+      out = conn.getOutputStream();
+      try {
+        out.write(commandType);
+        IOUtil.sendBytes(out, opArray.get(),
+          opArray.start(), opArray.size());
+        IOUtil.sendBytes(out, headArray.get(),
+          headArray.start(), headArray.size());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Forward a piece of the body received
+   *
+   * @param bytes
+   *          the body bytes
+   * @param start
+   *          the start of the piece
+   * @param size
+   *          the size of the piece
+   */
+  void forward(final byte[] bytes,
+    final int start, final int size) {
+    tail = tail.thenRunAsync(() -> {
+      try {
+        IOUtil.sendBytes(out, bytes, start, size);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Release the connection after all the pieces
+   * are forwarded, then run the callback.
+   *
+   * @param callback
+   *          invoked when forwarding is done
+   */
+  void finish(final Runnable callback) {
+    tail.whenCompleteAsync((v, t) -> {
+      if (t != null) {
+        LOG.error("Fail to forward the data.", t);
+        if (conn != null) {
+          conn.free();
+        }
+      } else {
+        conn.release();
+      }
+      callback.run();
+    }, executor);
+  }
+
+  /**
+   * Give up forwarding, the connection is closed
+   * since the message is incomplete.
+   *
+   * @param callback
+   *          invoked when the pending writes are
+   *          done
+   */
+  void abort(final Runnable callback) {
+    tail.whenCompleteAsync((v, t) -> {
+      if (conn != null) {
+        conn.free();
+      }
+      callback.run();
+    }, executor);
+  }
+}
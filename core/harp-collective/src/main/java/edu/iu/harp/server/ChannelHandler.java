@@ -0,0 +1,612 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.EventType;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.Deserializer;
+import edu.iu.harp.io.RawBodyReader;
+import edu.iu.harp.io.SharedMemory;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.worker.WorkerInfo;
+import org.apache.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/*******************************************************
+ * The state machine reading one connection of
+ * the NioServer. The framing is the same as the
+ * blocking receivers: 1. command 2. op bytes
+ * (head size, and source ID or MST range for
+ * broadcasting) 3. head array 4. body array.
+ * The body sent as raw arrays is read to the
+ * shared direct buffer and copied to the arrays
+ * as it arrives. The body sent through the
+ * shared memory is read from the file on the
+ * relay executor. The streamed body is read
+ * chunk by chunk and decoded on the relay
+ * executor at the same time. A multiplexed
+ * channel is split into streams, each served by
+ * an Acceptor on the relay executor.
+ ******************************************************/
+class ChannelHandler {
+
+  private static final Logger LOG =
+    Logger.getLogger(ChannelHandler.class);
+
+  private static final int READ_COMMAND = 0;
+  private static final int READ_OP = 1;
+  private static final int READ_HEAD = 2;
+  private static final int READ_BODY = 3;
+  private static final int READ_RAW_BODY = 4;
+  private static final int READ_PATH = 5;
+  private static final int READ_STREAM_CHUNK = 6;
+  private static final int READ_FRAME_HEAD = 7;
+  private static final int READ_FRAME = 8;
+
+  private final NioServer server;
+  private final SocketChannel channel;
+  private final SelectionKey key;
+  private final ByteBuffer commandBuffer;
+  private final ByteBuffer rawBuffer;
+
+  private int state;
+  private byte commandType;
+  /** The buffer wrapping the array in reading */
+  private ByteBuffer buffer;
+  private int end;
+  private ByteArray opArray;
+  private ByteArray headArray;
+  private ByteArray bodyArray;
+  private Data data;
+  private int sourceID;
+  private int left;
+  private int right;
+  private ChainRelay relay;
+  private RawBodyReader rawReader;
+  private byte shmCommand;
+  private ByteArray pathArray;
+  private StreamDecoder streamDecoder;
+  private ByteArray streamChunk;
+  /** The bytes of the stream not read yet */
+  private int streamLeft;
+  private MuxDemux muxDemux;
+  private ByteArray frameHead;
+  private ByteArray frameArray;
+  private int frameStreamID;
+
+  ChannelHandler(NioServer server,
+    SocketChannel channel, SelectionKey key,
+    ByteBuffer rawBuffer) {
+    this.server = server;
+    this.channel = channel;
+    this.key = key;
+    this.commandBuffer = ByteBuffer.allocate(1);
+    this.rawBuffer = rawBuffer;
+    this.state = READ_COMMAND;
+  }
+
+  /**
+   * Read the bytes available on the channel and
+   * move the state forward.
+   *
+   * @throws IOException
+   */
+  void handleRead() throws IOException {
+    while (channel.isOpen()) {
+      if (state == READ_COMMAND) {
+        int len = channel.read(commandBuffer);
+        if (len < 0) {
+          // The client closes the connection
+          close();
+          return;
+        } else if (len == 0) {
+          return;
+        }
+        commandBuffer.flip();
+        byte command = commandBuffer.get();
+        commandBuffer.clear();
+        handleCommand(command);
+      } else if (state == READ_RAW_BODY) {
+        rawBuffer.clear();
+        rawBuffer.limit(Math.min(
+          rawBuffer.capacity(), rawReader.remaining()));
+        int len = channel.read(rawBuffer);
+        if (len < 0) {
+          throw new EOFException(
+            "Connection closed in receiving.");
+        } else if (len == 0) {
+          return;
+        }
+        rawBuffer.flip();
+        rawReader.read(rawBuffer);
+        if (rawReader.isDone()) {
+          data.setRawBody(rawReader.getBody());
+          rawReader = null;
+          handleBodyArray();
+        }
+      } else {
+        // Read at most PIPELINE_SIZE every time,
+        // which also bounds the temporary direct
+        // buffer used by the channel.
+        int pos = buffer.position();
+        buffer.limit(Math.min(end,
+          pos + Constant.PIPELINE_SIZE));
+        int len = channel.read(buffer);
+        if (len < 0) {
+          if (state == READ_FRAME_HEAD
+            && pos == frameHead.start()) {
+            // The client closes the channel
+            close();
+            return;
+          }
+          throw new EOFException(
+            "Connection closed in receiving.");
+        } else if (len == 0) {
+          return;
+        }
+        if (state == READ_BODY && relay != null) {
+          relay.forward(bodyArray.get(), pos, len);
+        }
+        if (buffer.position() == end) {
+          if (state == READ_OP) {
+            handleOpArray();
+          } else if (state == READ_HEAD) {
+            handleHeadArray();
+          } else if (state == READ_PATH) {
+            handlePathArray();
+          } else if (state == READ_FRAME_HEAD) {
+            handleFrameHead();
+          } else if (state == READ_FRAME) {
+            MuxInputStream full = muxDemux.receive(
+              frameStreamID, frameArray);
+            frameArray = null;
+            expect(frameHead, READ_FRAME_HEAD);
+            if (full != null) {
+              // Stop reading until the stream has
+              // room
+              key.interestOps(0);
+              full.onRoom(this::resumeRead);
+              return;
+            }
+          } else if (state == READ_STREAM_CHUNK) {
+            if (handleStreamChunk()) {
+              // Wait for the decoder
+              return;
+            }
+          } else {
+            handleBodyArray();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the channel again after a full stream
+   * has room
+   */
+  private void resumeRead() {
+    if (key.isValid()) {
+      key.interestOps(SelectionKey.OP_READ);
+      key.selector().wakeup();
+    }
+  }
+
+  /**
+   * Prepare to read the array
+   *
+   * @param array
+   *          the array to read
+   * @param nextState
+   *          the state of reading the array
+   */
+  private void expect(ByteArray array,
+    int nextState) {
+    buffer = ByteBuffer.wrap(array.get(),
+      array.start(), array.size());
+    end = array.start() + array.size();
+    state = nextState;
+  }
+
+  /**
+   * Handle the command received
+   *
+   * @param command
+   *          the command
+   * @throws IOException
+   */
+  private void handleCommand(byte command)
+    throws IOException {
+    commandType = command;
+    int opArrSize = 0;
+    if (command == Constant.CONNECTION_END) {
+      close();
+      return;
+    } else if (command == Constant.SERVER_QUIT) {
+      server.stopAccepting();
+      close();
+      return;
+    } else if (command == Constant.SEND
+      || command == Constant.SEND_DECODE
+      || command == Constant.SEND_RAW
+      || command == Constant.SEND_STREAM) {
+      opArrSize = 4;
+    } else if (command == Constant.CHAIN_BCAST
+      || command == Constant.CHAIN_BCAST_DECODE) {
+      opArrSize = 8;
+    } else if (command == Constant.MST_BCAST
+      || command == Constant.MST_BCAST_DECODE) {
+      opArrSize = 12;
+    } else if (command == Constant.SEND_SHM) {
+      opArrSize = 12;
+    } else if (command == Constant.MUX_CHANNEL) {
+      muxDemux = new MuxDemux(server.getEventQueue(),
+        server.getDataMap(), server.getWorkers(),
+        server.getRelayExecutor());
+      frameHead = ByteArray.create(8, true);
+      if (frameHead == null) {
+        throw new IOException(
+          "Cannot get frame head array.");
+      }
+      expect(frameHead, READ_FRAME_HEAD);
+      return;
+    } else {
+      LOG.info("Unknown command: " + command);
+      close();
+      return;
+    }
+    opArray = ByteArray.create(opArrSize, true);
+    if (opArray == null) {
+      throw new IOException(
+        "Cannot get op array.");
+    }
+    expect(opArray, READ_OP);
+  }
+
+  /**
+   * Read the stream ID and the payload size of a
+   * frame on the multiplexed channel
+   *
+   * @throws IOException
+   */
+  private void handleFrameHead()
+    throws IOException {
+    frameStreamID = MuxDemux.getInt(
+      frameHead.get(), frameHead.start());
+    int size = MuxDemux.getInt(frameHead.get(),
+      frameHead.start() + 4);
+    if (size == 0) {
+      muxDemux.receive(frameStreamID, null);
+      expect(frameHead, READ_FRAME_HEAD);
+    } else {
+      frameArray = ByteArray.create(size, true);
+      if (frameArray == null) {
+        throw new IOException(
+          "Cannot get frame array.");
+      }
+      expect(frameArray, READ_FRAME);
+    }
+  }
+
+  /**
+   * Read the head size and the forwarding
+   * information from the op bytes
+   *
+   * @throws IOException
+   */
+  private void handleOpArray()
+    throws IOException {
+    Deserializer deserializer =
+      new Deserializer(opArray);
+    int headArrSize = deserializer.readInt();
+    if (isChainBcast()) {
+      sourceID = deserializer.readInt();
+    } else if (isMSTBcast()) {
+      left = deserializer.readInt();
+      right = deserializer.readInt();
+    } else {
+      if (commandType == Constant.SEND_SHM) {
+        shmCommand = (byte) deserializer.readInt();
+        pathArray = ByteArray
+          .create(deserializer.readInt(), true);
+        if (pathArray == null) {
+          throw new IOException("Null path array.");
+        }
+      }
+      opArray.release();
+      opArray = null;
+    }
+    headArray =
+      ByteArray.create(headArrSize, true);
+    if (headArray == null) {
+      throw new IOException("Null head array.");
+    }
+    expect(headArray, READ_HEAD);
+  }
+
+  /**
+   * Decode the head and prepare the body array.
+   * Start forwarding if this is a chain
+   * broadcasting not ending here.
+   *
+   * @throws IOException
+   */
+  private void handleHeadArray()
+    throws IOException {
+    data = new Data(headArray);
+    if (commandType == Constant.SEND_SHM) {
+      expect(pathArray, READ_PATH);
+      return;
+    }
+    if (commandType == Constant.SEND_RAW) {
+      if (data.decodeHeadArrayOnly()
+        != DataStatus.ENCODED_ARRAY_DECODED) {
+        throw new IOException(
+          "Fail to decode head array.");
+      }
+      rawReader = new RawBodyReader(
+        data.getBodyType(), data.getBodySize());
+      state = READ_RAW_BODY;
+      return;
+    }
+    if (commandType == Constant.SEND_STREAM) {
+      if (data.decodeHeadArrayOnly()
+        != DataStatus.ENCODED_ARRAY_DECODED) {
+        throw new IOException(
+          "Fail to decode head array.");
+      }
+      streamLeft = data.getBodySize();
+      streamDecoder =
+        new StreamDecoder(server, key, data);
+      server.getRelayExecutor().execute(streamDecoder);
+      expectStreamChunk();
+      return;
+    }
+    data.decodeHeadArray();
+    bodyArray = data.getBodyArray();
+    if (isChainBcast()) {
+      WorkerInfo next =
+        server.getWorkers().getNextInfo();
+      if (sourceID != next.getID()) {
+        relay = new ChainRelay(
+          server.getRelayExecutor(), commandType,
+          opArray, headArray, next);
+      }
+    }
+    if (bodyArray == null) {
+      handleBodyArray();
+    } else {
+      expect(bodyArray, READ_BODY);
+    }
+  }
+
+  /**
+   * Prepare to read the next chunk of the stream
+   *
+   * @throws IOException
+   */
+  private void expectStreamChunk()
+    throws IOException {
+    streamChunk = ByteArray.create(Math.min(
+      streamLeft, Constant.STREAM_CHUNK_SIZE), true);
+    if (streamChunk == null) {
+      throw new IOException("Null chunk array.");
+    }
+    expect(streamChunk, READ_STREAM_CHUNK);
+  }
+
+  /**
+   * Hand over the chunk to the decoder. Then read
+   * the next chunk, or wait for the next command
+   * at the end of the stream.
+   *
+   * @return true if the connection is paused
+   * @throws IOException
+   */
+  private boolean handleStreamChunk()
+    throws IOException {
+    StreamDecoder decoder = streamDecoder;
+    streamLeft -= streamChunk.size();
+    boolean paused = decoder.offer(streamChunk);
+    streamChunk = null;
+    if (streamLeft == 0) {
+      // The decoder delivers the data
+      resetState();
+    } else {
+      expectStreamChunk();
+    }
+    return paused;
+  }
+
+  /**
+   * Read the body from the file in the shared
+   * memory and deliver the data on the relay
+   * executor. Then wait for the next command.
+   */
+  private void handlePathArray() {
+    final Data recvData = data;
+    final byte recvCommand = shmCommand;
+    final String path = new String(pathArray.get(),
+      pathArray.start(), pathArray.size(),
+      StandardCharsets.UTF_8);
+    pathArray.release();
+    resetState();
+    server.getRelayExecutor().execute(() -> {
+      try {
+        SharedMemory.read(path, recvData,
+          recvCommand == Constant.SEND_RAW);
+        server.deliver(recvData, recvCommand,
+          EventType.MESSAGE_EVENT);
+      } catch (IOException e) {
+        LOG.error("Fail to read the shared memory.",
+          e);
+      }
+    });
+  }
+
+  /**
+   * The data is received. Deliver it after
+   * forwarding if it is broadcasted. Then wait
+   * for the next command.
+   */
+  private void handleBodyArray() {
+    final Data recvData = data;
+    final byte recvCommand = commandType;
+    final ByteArray recvOpArray = opArray;
+    final ChainRelay recvRelay = relay;
+    final int recvLeft = left;
+    final int recvRight = right;
+    resetState();
+    if (isChainBcast(recvCommand)) {
+      if (recvRelay != null) {
+        recvRelay.finish(() -> {
+          recvOpArray.release();
+          server.deliver(recvData, recvCommand,
+            EventType.COLLECTIVE_EVENT);
+        });
+      } else {
+        recvOpArray.release();
+        server.deliver(recvData, recvCommand,
+          EventType.COLLECTIVE_EVENT);
+      }
+    } else if (isMSTBcast(recvCommand)) {
+      if (recvLeft < recvRight
+        && recvData.getBodyArray() != null) {
+        server.getRelayExecutor().execute(() -> {
+          ByteArray head = recvData.getHeadArray();
+          ByteArray body = recvData.getBodyArray();
+          try {
+            DataMSTBcastReceiver.sendDataInMST(
+              server.getSelfID(),
+              server.getWorkers(), recvCommand,
+              recvOpArray.get(), recvOpArray.size(),
+              head.get(), head.size(), body.get(),
+              body.size(), recvLeft, recvRight);
+          } catch (Exception e) {
+            LOG.error("Fail to forward the data.",
+              e);
+          } finally {
+            recvOpArray.release();
+          }
+          server.deliver(recvData, recvCommand,
+            EventType.COLLECTIVE_EVENT);
+        });
+      } else {
+        recvOpArray.release();
+        server.deliver(recvData, recvCommand,
+          EventType.COLLECTIVE_EVENT);
+      }
+    } else {
+      server.deliver(recvData, recvCommand,
+        EventType.MESSAGE_EVENT);
+    }
+  }
+
+  /**
+   * Get ready for the next command
+   */
+  private void resetState() {
+    state = READ_COMMAND;
+    buffer = null;
+    end = 0;
+    opArray = null;
+    headArray = null;
+    bodyArray = null;
+    data = null;
+    relay = null;
+    rawReader = null;
+    pathArray = null;
+    streamDecoder = null;
+    streamChunk = null;
+    streamLeft = 0;
+  }
+
+  private boolean isChainBcast() {
+    return isChainBcast(commandType);
+  }
+
+  private boolean isMSTBcast() {
+    return isMSTBcast(commandType);
+  }
+
+  private static boolean
+    isChainBcast(byte command) {
+    return command == Constant.CHAIN_BCAST
+      || command == Constant.CHAIN_BCAST_DECODE;
+  }
+
+  private static boolean isMSTBcast(byte command) {
+    return command == Constant.MST_BCAST
+      || command == Constant.MST_BCAST_DECODE;
+  }
+
+  /**
+   * Close the connection, release the arrays of
+   * the incomplete data.
+   */
+  void close() {
+    if (muxDemux != null) {
+      muxDemux.close();
+      muxDemux = null;
+      frameHead.release();
+      if (frameArray != null) {
+        frameArray.release();
+        frameArray = null;
+      }
+    }
+    if (state != READ_COMMAND) {
+      final ByteArray[] arrays =
+        {opArray, headArray, bodyArray, pathArray,
+          streamChunk};
+      Runnable releaser = () -> {
+        for (ByteArray array : arrays) {
+          if (array != null) {
+            array.release();
+          }
+        }
+      };
+      if (rawReader != null) {
+        rawReader.release();
+      }
+      if (streamDecoder != null) {
+        // The decoder releases the data
+        streamDecoder.abort();
+        arrays[1] = null;
+      }
+      // The relay may be still sending the arrays
+      if (relay != null) {
+        relay.abort(releaser);
+      } else {
+        releaser.run();
+      }
+      resetState();
+    }
+    key.cancel();
+    try {
+      channel.close();
+    } catch (IOException e) {
+    }
+  }
+}
@@ -161,7 +161,8 @@ public class DataMSTBcastReceiver
       // Try to send out,
       // Be careful about the exceptions
       try {
-        sendDataInMST(opArray.get(),
+        sendDataInMST(selfID, workers,
+          getCommandType(), opArray.get(),
           opArray.size(), headArray.get(),
           headArray.size(), bodyArray.get(),
           bodyArray.size(), left, right);
@@ -178,8 +179,16 @@ public class DataMSTBcastReceiver
   }
 
   /**
-   * Send the data in MST method
-   * 
+   * Send the data in MST method. It is shared
+   * with the NioServer, which forwards the
+   * received data outside its event loops.
+   *
+   * @param selfID
+   *          the ID of the current worker
+   * @param workers
+   *          the Workers
+   * @param commandType
+   *          the command to forward
    * @param opBytes
    *          the operation array
    * @param opArrSize
@@ -198,8 +207,10 @@ public class DataMSTBcastReceiver
    *          the right worker
    * @throws IOException
    */
-  private void sendDataInMST(byte[] opBytes,
-    int opArrSize, byte[] headBytes,
+  static void sendDataInMST(int selfID,
+    Workers workers, byte commandType,
+    byte[] opBytes, int opArrSize,
+    byte[] headBytes,
     int headArrSize, byte[] bodyBytes,
     int bodyArrSize, int left, int right)
     throws IOException {
@@ -247,7 +258,7 @@ public class DataMSTBcastReceiver
           // Send head and body array
           if (out != null) {
             try {
-              out.write(getCommandType());
+              out.write(commandType);
               IOUtil.sendBytes(out, opBytes, 0,
                 opArrSize);
               if (headArrSize > 0) {
@@ -20,15 +20,21 @@ import edu.iu.harp.client.EventType;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataStatus;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.Deserializer;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.RawBodyReader;
+import edu.iu.harp.io.SharedMemory;
+import edu.iu.harp.io.StreamBodyReader;
 import edu.iu.harp.resource.ByteArray;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /*******************************************************
  * The actual receiver for receiving the data.
@@ -39,6 +45,11 @@ public class DataReceiver extends Receiver {
     Logger.getLogger(DataReceiver.class);
 
   private final int selfID;
+  /**
+   * The command of the data sent through the
+   * shared memory
+   */
+  private byte shmCommand;
 
   public DataReceiver(int selfID, ServerConn conn,
     EventQueue queue, DataMap map,
@@ -55,9 +66,15 @@ public class DataReceiver extends Receiver {
     throws Exception {
     InputStream in = conn.getInputDtream();
     // Receive data
-    Data data = receiveData(in);
-    if (this
-      .getCommandType() == Constant.SEND_DECODE) {
+    Data data;
+    byte command = this.getCommandType();
+    if (command == Constant.SEND_SHM) {
+      data = receiveSharedMemory(in);
+      command = shmCommand;
+    } else {
+      data = receiveData(in);
+    }
+    if (command == Constant.SEND_DECODE) {
       (new Decoder(data, selfID,
         EventType.MESSAGE_EVENT,
         this.getEventQueue(), this.getDataMap()))
@@ -114,9 +131,18 @@ public class DataReceiver extends Receiver {
     } else {
       throw new Exception("Null head array");
     }
+    Data data = new Data(headArray);
+    if (this
+      .getCommandType() == Constant.SEND_RAW) {
+      receiveRawBody(in, data);
+      return data;
+    } else if (this
+      .getCommandType() == Constant.SEND_STREAM) {
+      receiveStreamBody(in, data);
+      return data;
+    }
     // Prepare bytes from resource pool
     // Sending or receiving null array is allowed
-    Data data = new Data(headArray);
     data.decodeHeadArray();
     ByteArray bodyArray = data.getBodyArray();
     if (bodyArray != null) {
@@ -133,4 +159,134 @@ public class DataReceiver extends Receiver {
     }
     return data;
   }
+
+  /**
+   * Receive the head and the path of the file
+   * storing the body, then read the body from the
+   * shared memory
+   *
+   * @param in
+   *          the InputStream
+   * @return the Data received
+   * @throws Exception
+   */
+  private Data receiveSharedMemory(
+    final InputStream in) throws Exception {
+    int headArrSize = -1;
+    int pathSize = -1;
+    ByteArray opArray = ByteArray.create(12, true);
+    try {
+      IOUtil.receiveBytes(in, opArray.get(),
+        opArray.start(), opArray.size());
+      Deserializer deserializer =
+        new Deserializer(opArray);
+      headArrSize = deserializer.readInt();
+      shmCommand = (byte) deserializer.readInt();
+      pathSize = deserializer.readInt();
+    } catch (IOException e) {
+      LOG.error("Fail to receive op array", e);
+      throw e;
+    } finally {
+      opArray.release();
+    }
+    ByteArray headArray =
+      ByteArray.create(headArrSize, true);
+    if (headArray == null) {
+      throw new Exception("Null head array");
+    }
+    byte[] pathBytes = new byte[pathSize];
+    try {
+      IOUtil.receiveBytes(in, headArray.get(),
+        headArray.start(), headArrSize);
+      IOUtil.receiveBytes(in, pathBytes, 0,
+        pathSize);
+    } catch (Exception e) {
+      LOG.error("Fail to receive head and path",
+        e);
+      headArray.release();
+      throw e;
+    }
+    Data data = new Data(headArray);
+    SharedMemory.read(
+      new String(pathBytes, StandardCharsets.UTF_8),
+      data, shmCommand == Constant.SEND_RAW);
+    return data;
+  }
+
+  /**
+   * Receive the body sent in chunks, the objects
+   * are decoded as the chunks arrive
+   *
+   * @param in
+   *          the InputStream
+   * @param data
+   *          the Data with the head array
+   * @throws Exception
+   */
+  private void receiveStreamBody(
+    final InputStream in, final Data data)
+    throws Exception {
+    if (data.decodeHeadArrayOnly()
+      != DataStatus.ENCODED_ARRAY_DECODED) {
+      data.release();
+      throw new Exception(
+        "Fail to decode head array");
+    }
+    try {
+      data.setRawBody(StreamBodyReader.read(in,
+        data.getBodyType(), data.getBodySize()));
+    } catch (Exception e) {
+      LOG.error("Fail to receive stream body", e);
+      data.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Receive the body sent as raw arrays, the
+   * arrays are filled piece by piece
+   *
+   * @param in
+   *          the InputStream
+   * @param data
+   *          the Data with the head array
+   * @throws Exception
+   */
+  private void receiveRawBody(
+    final InputStream in, final Data data)
+    throws Exception {
+    data.decodeHeadArrayOnly();
+    ByteArray piece = null;
+    RawBodyReader reader = null;
+    try {
+      reader = new RawBodyReader(
+        data.getBodyType(), data.getBodySize());
+      piece = ByteArray.create(Math.min(
+        data.getBodySize(), Constant.PIPELINE_SIZE),
+        true);
+      if (piece == null) {
+        throw new Exception("Null piece array");
+      }
+      while (!reader.isDone()) {
+        int len = Math.min(reader.remaining(),
+          piece.size());
+        IOUtil.receiveBytes(in, piece.get(), 0,
+          len);
+        reader.read(
+          ByteBuffer.wrap(piece.get(), 0, len));
+      }
+      data.setRawBody(reader.getBody());
+    } catch (Exception e) {
+      LOG.error("Fail to receive raw body", e);
+      if (reader != null) {
+        reader.release();
+      }
+      data.release();
+      throw e;
+    } finally {
+      if (piece != null) {
+        piece.release();
+      }
+    }
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.Constant;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*******************************************************
+ * An event loop of the NioServer. It reads the
+ * connections registered to its Selector and
+ * drives the ChannelHandler of each connection.
+ ******************************************************/
+class EventLoop implements Runnable {
+
+  private static final Logger LOG =
+    Logger.getLogger(EventLoop.class);
+
+  private final NioServer server;
+  private final Selector selector;
+  /** Channels accepted but not registered yet */
+  private final Queue<SocketChannel> pendingChannels;
+  /**
+   * The buffer shared by the connections for
+   * reading raw arrays
+   */
+  private final ByteBuffer rawBuffer;
+  private volatile boolean stopped;
+  private volatile boolean forceStopped;
+
+  EventLoop(NioServer server) throws IOException {
+    this.server = server;
+    this.selector = Selector.open();
+    this.pendingChannels =
+      new ConcurrentLinkedQueue<>();
+    this.rawBuffer = ByteBuffer
+      .allocateDirect(Constant.PIPELINE_SIZE);
+  }
+
+  /**
+   * Register a connection to this event loop
+   *
+   * @param channel
+   *          the non-blocking channel
+   */
+  void register(SocketChannel channel) {
+    pendingChannels.add(channel);
+    selector.wakeup();
+  }
+
+  /**
+   * Stop the event loop. If not forced, the loop
+   * exits when all the connections are closed by
+   * the clients.
+   *
+   * @param force
+   *          close the connections directly
+   */
+  void stop(boolean force) {
+    forceStopped = force;
+    stopped = true;
+    selector.wakeup();
+  }
+
+  /**
+   * Register the pending channels to the selector
+   */
+  private void registerPendingChannels() {
+    SocketChannel channel = null;
+    while ((channel =
+      pendingChannels.poll()) != null) {
+      try {
+        SelectionKey key = channel
+          .register(selector, SelectionKey.OP_READ);
+        key.attach(
+          new ChannelHandler(server, channel, key,
+            rawBuffer));
+      } catch (IOException e) {
+        LOG.error("Fail to register the channel.",
+          e);
+        try {
+          channel.close();
+        } catch (IOException e1) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Check if any registered connection is still
+   * open
+   *
+   * @return true if there are open connections
+   */
+  private boolean hasOpenChannels() {
+    for (SelectionKey key : selector.keys()) {
+      if (key.isValid()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The overridden run function for reading the
+   * registered connections
+   */
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        registerPendingChannels();
+        if (stopped
+          && (forceStopped || !hasOpenChannels())) {
+          break;
+        }
+        selector.select();
+        Iterator<SelectionKey> iterator =
+          selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+          SelectionKey key = iterator.next();
+          iterator.remove();
+          ChannelHandler handler =
+            (ChannelHandler) key.attachment();
+          if (!key.isValid() || handler == null) {
+            continue;
+          }
+          try {
+            if (key.isReadable()) {
+              handler.handleRead();
+            }
+          } catch (Exception e) {
+            LOG.error("Exception on event loop.",
+              e);
+            handler.close();
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Fail to select.", e);
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        ChannelHandler handler =
+          (ChannelHandler) key.attachment();
+        if (handler != null) {
+          handler.close();
+        }
+      }
+      SocketChannel channel = null;
+      while ((channel =
+        pendingChannels.poll()) != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+        }
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+}
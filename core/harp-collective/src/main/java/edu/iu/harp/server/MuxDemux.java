@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.apache.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
+/*******************************************************
+ * Splits the frames of a multiplexed channel
+ * into streams. Every stream is served by an
+ * Acceptor on the executor as if it were a
+ * connection of its own. The frames are only
+ * added by the thread reading the channel.
+ ******************************************************/
+class MuxDemux {
+
+  private static final Logger LOG =
+    Logger.getLogger(MuxDemux.class);
+
+  private final EventQueue eventQueue;
+  private final DataMap dataMap;
+  private final Workers workers;
+  private final Executor executor;
+  private final Int2ObjectOpenHashMap<MuxInputStream> streams;
+
+  MuxDemux(EventQueue queue, DataMap map,
+    Workers workers, Executor executor) {
+    this.eventQueue = queue;
+    this.dataMap = map;
+    this.workers = workers;
+    this.executor = executor;
+    this.streams = new Int2ObjectOpenHashMap<>();
+  }
+
+  /**
+   * Handle a frame received
+   *
+   * @param streamID
+   *          the ID of the stream
+   * @param payload
+   *          the payload, null if the stream ends
+   * @return the stream if it is full, the channel
+   *         should not be read until it has room,
+   *         null otherwise
+   */
+  MuxInputStream receive(int streamID,
+    ByteArray payload) {
+    if (payload == null) {
+      MuxInputStream stream =
+        streams.remove(streamID);
+      if (stream != null) {
+        stream.end();
+      }
+      return null;
+    }
+    MuxInputStream stream = streams.get(streamID);
+    if (stream == null) {
+      stream = new MuxInputStream();
+      streams.put(streamID, stream);
+      accept(stream);
+    }
+    return stream.offer(payload) ? stream : null;
+  }
+
+  /**
+   * Run an Acceptor for the new stream
+   *
+   * @param stream
+   *          the stream
+   */
+  private void accept(final MuxInputStream stream) {
+    executor.execute(() -> {
+      ServerConn conn = new ServerConn(stream, null);
+      int command = -1;
+      try {
+        command = stream.read();
+      } catch (IOException e) {
+        LOG.error("Fail to read the command.", e);
+      }
+      if (command < 0) {
+        conn.close();
+        return;
+      }
+      new Acceptor(conn, eventQueue, dataMap,
+        workers, (byte) command).run();
+    });
+  }
+
+  /**
+   * Read the frames from the channel until it is
+   * closed
+   *
+   * @param in
+   *          the InputStream of the channel
+   * @throws IOException
+   */
+  void readFrames(InputStream in)
+    throws IOException {
+    byte[] head = new byte[8];
+    while (readFully(in, head, 0, head.length)) {
+      int streamID = getInt(head, 0);
+      int size = getInt(head, 4);
+      if (size == 0) {
+        receive(streamID, null);
+      } else {
+        ByteArray payload =
+          ByteArray.create(size, true);
+        if (payload == null) {
+          throw new IOException(
+            "Cannot get the frame array.");
+        }
+        if (!readFully(in, payload.get(), 0, size)) {
+          payload.release();
+          throw new EOFException(
+            "Connection closed in receiving.");
+        }
+        MuxInputStream full =
+          receive(streamID, payload);
+        if (full != null) {
+          // Hold back the sender until the stream
+          // is read
+          full.awaitRoom();
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the bytes
+   *
+   * @return false if the channel is closed
+   *         before any byte is read
+   * @throws IOException
+   */
+  private static boolean readFully(InputStream in,
+    byte[] bytes, int start, int size)
+    throws IOException {
+    int read = 0;
+    while (read < size) {
+      int len =
+        in.read(bytes, start + read, size - read);
+      if (len < 0) {
+        if (read == 0) {
+          return false;
+        }
+        throw new EOFException(
+          "Connection closed in receiving.");
+      }
+      read += len;
+    }
+    return true;
+  }
+
+  static int getInt(byte[] bytes, int pos) {
+    return ((bytes[pos] & 0xff) << 24)
+      | ((bytes[pos + 1] & 0xff) << 16)
+      | ((bytes[pos + 2] & 0xff) << 8)
+      | (bytes[pos + 3] & 0xff);
+  }
+
+  /**
+   * The channel is closed, abort the streams not
+   * ended
+   */
+  void close() {
+    for (MuxInputStream stream : streams.values()) {
+      stream.abort();
+    }
+    streams.clear();
+  }
+}
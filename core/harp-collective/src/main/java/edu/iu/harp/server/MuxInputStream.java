@@ -0,0 +1,240 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.resource.ByteArray;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/*******************************************************
+ * The bytes of one stream on a multiplexed
+ * channel. The frames are queued by the channel
+ * reader and read by the Acceptor of the stream.
+ * When MUX_MAX_PENDING_FRAMES frames are waiting,
+ * the channel reader stops until the Acceptor
+ * catches up, which keeps the backpressure of the
+ * connection.
+ ******************************************************/
+class MuxInputStream extends InputStream {
+
+  private final ArrayDeque<ByteArray> frames;
+  private ByteArray frame;
+  private int pos;
+  /** No more frames come */
+  private boolean isEnded;
+  /** The channel is closed before the end */
+  private boolean isAborted;
+  private volatile boolean isClosed;
+  /** Run when the stream has room again */
+  private Runnable resumer;
+
+  MuxInputStream() {
+    frames = new ArrayDeque<>();
+    frame = null;
+    pos = 0;
+    isEnded = false;
+    isAborted = false;
+    isClosed = false;
+    resumer = null;
+  }
+
+  /**
+   * Add the payload of a frame
+   *
+   * @param payload the payload
+   * @return true if the stream is full
+   */
+  synchronized boolean offer(ByteArray payload) {
+    if (isClosed) {
+      payload.release();
+      return false;
+    }
+    frames.add(payload);
+    notifyAll();
+    return isFull();
+  }
+
+  private boolean isFull() {
+    return !isClosed && frames
+      .size() >= Constant.MUX_MAX_PENDING_FRAMES;
+  }
+
+  /**
+   * Wait until the stream has room, for the
+   * thread reading a blocking channel
+   *
+   * @throws IOException
+   */
+  synchronized void awaitRoom()
+    throws IOException {
+    while (isFull()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        throw new IOException(
+          "Interrupted in receiving.", e);
+      }
+    }
+  }
+
+  /**
+   * Run the action when the stream has room, for
+   * the NioServer which cannot wait
+   *
+   * @param action the action
+   */
+  void onRoom(Runnable action) {
+    synchronized (this) {
+      if (isFull()) {
+        resumer = action;
+        return;
+      }
+    }
+    action.run();
+  }
+
+  /**
+   * No more frames come
+   */
+  synchronized void end() {
+    isEnded = true;
+    notifyAll();
+  }
+
+  /**
+   * The channel is closed before the end
+   */
+  synchronized void abort() {
+    isAborted = true;
+    notifyAll();
+  }
+
+  /**
+   * Take the next frame, wait if no frame is
+   * queued
+   *
+   * @return the frame, null if the stream ends
+   * @throws IOException
+   */
+  private ByteArray take() throws IOException {
+    Runnable action = null;
+    ByteArray next = null;
+    synchronized (this) {
+      while (frames.isEmpty() && !isEnded
+        && !isAborted) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new IOException(
+            "Interrupted in receiving.", e);
+        }
+      }
+      next = frames.poll();
+      if (next == null && isAborted) {
+        throw new IOException(
+          "The channel is closed in receiving.");
+      }
+      if (!isFull()) {
+        notifyAll();
+        action = resumer;
+        resumer = null;
+      }
+    }
+    if (action != null) {
+      action.run();
+    }
+    return next;
+  }
+
+  /**
+   * Get the frame to read
+   *
+   * @return false if the stream ends
+   * @throws IOException
+   */
+  private boolean nextFrame() throws IOException {
+    if (isClosed) {
+      return false;
+    }
+    while (frame == null || pos == frame.size()) {
+      if (frame != null) {
+        frame.release();
+        frame = null;
+      }
+      frame = take();
+      pos = 0;
+      if (frame == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!nextFrame()) {
+      return -1;
+    }
+    return frame.get()[frame.start() + pos++]
+      & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len)
+    throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!nextFrame()) {
+      return -1;
+    }
+    int n = Math.min(len, frame.size() - pos);
+    System.arraycopy(frame.get(),
+      frame.start() + pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  /**
+   * Release the frames not read, the channel
+   * reader is not held back any more
+   */
+  @Override
+  public void close() {
+    Runnable action = null;
+    synchronized (this) {
+      isClosed = true;
+      if (frame != null) {
+        frame.release();
+        frame = null;
+      }
+      for (ByteArray payload : frames) {
+        payload.release();
+      }
+      frames.clear();
+      notifyAll();
+      action = resumer;
+      resumer = null;
+    }
+    if (action != null) {
+      action.run();
+    }
+  }
+}
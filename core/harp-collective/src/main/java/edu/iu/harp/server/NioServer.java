@@ -0,0 +1,331 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.EventType;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.schdynamic.ComputeUtil;
+import edu.iu.harp.worker.Workers;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * The non-blocking server for communication. One
+ * thread accepts the connections and hands them
+ * to a small fixed pool of event loops, each
+ * multiplexing its connections with a Selector.
+ * It understands the same framing as Server and
+ * delivers the data to the same EventQueue and
+ * DataMap.
+ ******************************************************/
+public class NioServer implements Runnable, Service {
+
+  private static final Logger LOG =
+    Logger.getLogger(NioServer.class);
+
+  /** Data queue shared with the event machine */
+  private final EventQueue eventQueue;
+  /**
+   * Data map for collective communication
+   * operations
+   */
+  private final DataMap dataMap;
+  private final Workers workers;
+  private final int selfID;
+  private final Thread server;
+  private final EventLoop[] eventLoops;
+  private final Thread[] eventLoopThreads;
+  /**
+   * Broadcast forwarding may block on the
+   * sockets to other workers, it is done outside
+   * the event loops.
+   */
+  private final ExecutorService relayExecutor;
+  private volatile boolean stopped;
+
+  private final String node;
+  private final int port;
+  private final ServerSocketChannel serverChannel;
+
+  /**
+   * Initialization with the default number of
+   * event loops
+   *
+   * @param node
+   *          the host
+   * @param port
+   *          the port
+   * @param queue
+   *          the EventQueue
+   * @param map
+   *          the DataMap
+   * @param workers
+   *          the Workers
+   * @throws Exception
+   */
+  public NioServer(String node, int port,
+    EventQueue queue, DataMap map,
+    Workers workers) throws Exception {
+    this(node, port, queue, map, workers,
+      Constant.NUM_EVENT_LOOPS);
+  }
+
+  /**
+   * Initialization
+   *
+   * @param node
+   *          the host
+   * @param port
+   *          the port
+   * @param queue
+   *          the EventQueue
+   * @param map
+   *          the DataMap
+   * @param workers
+   *          the Workers
+   * @param numEventLoops
+   *          the number of event loop threads
+   * @throws Exception
+   */
+  public NioServer(String node, int port,
+    EventQueue queue, DataMap map,
+    Workers workers, int numEventLoops)
+    throws Exception {
+    this.eventQueue = queue;
+    this.dataMap = map;
+    this.workers = workers;
+    this.selfID = workers.getSelfID();
+    this.node = node;
+    this.port = port;
+    if (numEventLoops <= 0) {
+      numEventLoops = 1;
+    }
+    try {
+      serverChannel = ServerSocketChannel.open();
+      IOUtil.setServerSocketOptions(
+        serverChannel.socket());
+      serverChannel
+        .bind(new InetSocketAddress(node, port));
+    } catch (Exception e) {
+      LOG.error("Error in starting receiver.", e);
+      throw new Exception(e);
+    }
+    eventLoops = new EventLoop[numEventLoops];
+    eventLoopThreads = new Thread[numEventLoops];
+    for (int i = 0; i < numEventLoops; i++) {
+      eventLoops[i] = new EventLoop(this);
+      eventLoopThreads[i] =
+        new Thread(eventLoops[i]);
+      eventLoopThreads[i]
+        .setName("harp-event-loop-" + i);
+    }
+    final AtomicInteger relayCount =
+      new AtomicInteger();
+    relayExecutor =
+      Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setName("harp-relay-"
+          + relayCount.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    server = new Thread(this);
+    server.setName("Harp-Server");
+    LOG.info("NIO server on " + this.node + " "
+      + this.port + " starts with "
+      + numEventLoops + " event loops.");
+  }
+
+  /**
+   * Start the event loops and the server
+   */
+  @Override
+  public void start() {
+    for (Thread thread : eventLoopThreads) {
+      thread.start();
+    }
+    server.start();
+  }
+
+  /**
+   * Stop the server. Wait until the connections
+   * are closed by the clients.
+   */
+  @Override
+  public void stop() {
+    this.stop(false);
+  }
+
+  /**
+   * Stop the server
+   *
+   * @param force
+   *          close the connections without
+   *          waiting for the clients
+   */
+  @Override
+  public void stop(boolean force) {
+    stopAccepting();
+    ComputeUtil.joinThread(server);
+    for (EventLoop eventLoop : eventLoops) {
+      eventLoop.stop(force);
+    }
+    for (Thread thread : eventLoopThreads) {
+      ComputeUtil.joinThread(thread);
+    }
+    relayExecutor.shutdown();
+    if (!force) {
+      try {
+        relayExecutor.awaitTermination(
+          Constant.TERMINATION_TIMEOUT,
+          TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        LOG.error("Fail to wait for the relays.",
+          e);
+      }
+    }
+    LOG.info("NIO server on " + this.node + " "
+      + this.port + " is stopped.");
+  }
+
+  /**
+   * Close the server channel, the clients can no
+   * longer connect.
+   */
+  void stopAccepting() {
+    stopped = true;
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      LOG.error("Fail to stop the server.", e);
+    }
+  }
+
+  /**
+   * The overridden run function for accepting
+   * connections from clients
+   */
+  @Override
+  public void run() {
+    int next = 0;
+    while (!stopped) {
+      SocketChannel channel = null;
+      try {
+        channel = serverChannel.accept();
+        IOUtil.setSocketOptions(channel.socket());
+        channel.configureBlocking(false);
+      } catch (ClosedChannelException e) {
+        break;
+      } catch (Exception e) {
+        LOG.error("Exception on Server", e);
+        if (channel != null) {
+          try {
+            channel.close();
+          } catch (IOException e1) {
+          }
+        }
+        continue;
+      }
+      eventLoops[next].register(channel);
+      next = (next + 1) % eventLoops.length;
+    }
+  }
+
+  /**
+   * Get the Workers
+   *
+   * @return the Workers
+   */
+  Workers getWorkers() {
+    return workers;
+  }
+
+  /**
+   * Get the EventQueue
+   *
+   * @return the EventQueue
+   */
+  EventQueue getEventQueue() {
+    return eventQueue;
+  }
+
+  /**
+   * Get the DataMap
+   *
+   * @return the DataMap
+   */
+  DataMap getDataMap() {
+    return dataMap;
+  }
+
+  /**
+   * Get the ID of the current worker
+   *
+   * @return the ID of the current worker
+   */
+  int getSelfID() {
+    return selfID;
+  }
+
+  /**
+   * Get the executor for forwarding the
+   * broadcast data
+   *
+   * @return the executor
+   */
+  ExecutorService getRelayExecutor() {
+    return relayExecutor;
+  }
+
+  /**
+   * Deliver the received data in the same way as
+   * the blocking receivers do.
+   *
+   * @param data
+   *          the Data received
+   * @param commandType
+   *          the command of the data
+   * @param eventType
+   *          the type of the event
+   */
+  void deliver(Data data, byte commandType,
+    EventType eventType) {
+    if (commandType == Constant.SEND_DECODE
+      || commandType == Constant.CHAIN_BCAST_DECODE
+      || commandType == Constant.MST_BCAST_DECODE) {
+      (new Decoder(data, selfID, eventType,
+        eventQueue, dataMap)).fork();
+    } else {
+      DataUtil.addDataToQueueOrMap(selfID,
+        eventQueue, eventType, dataMap, data);
+    }
+  }
+}
@@ -37,7 +37,7 @@ import java.util.List;
 /*******************************************************
  * The server for communication
  ******************************************************/
-public class Server implements Runnable {
+public class Server implements Runnable, Service {
 
   private static final Logger LOG =
           Logger.getLogger(Server.class);
@@ -111,6 +111,7 @@ public class Server implements Runnable {
   /**
    * Start the server
    */
+  @Override
   public void start() {
     server.start();
   }
@@ -119,10 +120,12 @@ public class Server implements Runnable {
    * Stop the server. Close acceptorThreads and the
    * server
    */
+  @Override
   public void stop() {
     this.stop(false);
   }
 
+  @Override
   public void stop(boolean force){
     if(!force) {
       closeServer(this.node, this.port);
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+/*******************************************************
+ * The common interface of the servers receiving
+ * data for a worker. Both the blocking Server and
+ * the selector-based NioServer deliver the
+ * received data to the same EventQueue and
+ * DataMap.
+ ******************************************************/
+public interface Service {
+
+  /**
+   * Start the server
+   */
+  void start();
+
+  /**
+   * Stop the server
+   */
+  void stop();
+
+  /**
+   * Stop the server
+   *
+   * @param force
+   *          close the connections without
+   *          waiting for the receivers
+   */
+  void stop(boolean force);
+}
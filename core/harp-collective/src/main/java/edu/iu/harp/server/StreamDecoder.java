@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.EventType;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.StreamBodyReader;
+import edu.iu.harp.resource.ByteArray;
+import org.apache.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * Decode a streamed body on the relay executor of
+ * the NioServer. The ChannelHandler hands over
+ * the chunks as they are read. When too many
+ * chunks are waiting, the handler stops reading
+ * the connection until the decoder catches up,
+ * which bounds the memory of a stream.
+ ******************************************************/
+class StreamDecoder extends InputStream
+  implements Runnable {
+
+  private static final Logger LOG =
+    Logger.getLogger(StreamDecoder.class);
+
+  /** The mark of an aborted stream */
+  private static final ByteArray ABORTED =
+    new ByteArray(new byte[0], 0, 0);
+
+  private final NioServer server;
+  private final SelectionKey key;
+  private final Data data;
+  private final BlockingQueue<ByteArray> chunks;
+  private final AtomicInteger numPendingChunks;
+  /** The bytes not read by the decoder */
+  private int remaining;
+  private ByteArray chunk;
+  private int pos;
+  private boolean paused;
+
+  StreamDecoder(NioServer server,
+    SelectionKey key, Data data) {
+    this.server = server;
+    this.key = key;
+    this.data = data;
+    this.chunks = new LinkedBlockingQueue<>();
+    this.numPendingChunks = new AtomicInteger(0);
+    this.remaining = data.getBodySize();
+    this.chunk = null;
+    this.pos = 0;
+    this.paused = false;
+  }
+
+  /**
+   * Hand over a chunk read from the connection
+   *
+   * @param array
+   *          the chunk
+   * @return true if the connection is paused
+   */
+  boolean offer(ByteArray array) {
+    numPendingChunks.incrementAndGet();
+    chunks.add(array);
+    return pauseIfFull();
+  }
+
+  /**
+   * Stop decoding, the connection is closed
+   */
+  void abort() {
+    chunks.add(ABORTED);
+  }
+
+  /**
+   * Stop reading the connection if too many
+   * chunks are waiting
+   *
+   * @return true if the connection is paused
+   */
+  private synchronized boolean pauseIfFull() {
+    if (numPendingChunks
+      .get() >= Constant.STREAM_MAX_PENDING_CHUNKS
+      && key.isValid()) {
+      key.interestOps(0);
+      paused = true;
+    }
+    return paused;
+  }
+
+  /**
+   * Read the connection again if the chunks
+   * waiting are decoded
+   */
+  private synchronized void resumeIfPaused() {
+    if (paused && numPendingChunks
+      .get() < Constant.STREAM_MAX_PENDING_CHUNKS) {
+      paused = false;
+      if (key.isValid()) {
+        key.interestOps(SelectionKey.OP_READ);
+        key.selector().wakeup();
+      }
+    }
+  }
+
+  /**
+   * Decode the body and deliver the data
+   */
+  @Override
+  public void run() {
+    try {
+      data.setRawBody(StreamBodyReader.decode(this,
+        data.getBodyType()));
+      server.deliver(data, Constant.SEND_STREAM,
+        EventType.MESSAGE_EVENT);
+    } catch (IOException e) {
+      LOG.error("Fail to decode the stream.", e);
+      data.release();
+    } finally {
+      if (chunk != null) {
+        chunk.release();
+        chunk = null;
+      }
+      ByteArray array = null;
+      while ((array = chunks.poll()) != null) {
+        if (array != ABORTED) {
+          array.release();
+        }
+      }
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!next()) {
+      return -1;
+    }
+    remaining--;
+    return chunk.get()[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len)
+    throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!next()) {
+      return -1;
+    }
+    int n = Math.min(len, chunk.size() - pos);
+    System.arraycopy(chunk.get(), pos, b, off, n);
+    pos += n;
+    remaining -= n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0L;
+    while (skipped < n && next()) {
+      int len = (int) Math.min(n - skipped,
+        chunk.size() - pos);
+      pos += len;
+      remaining -= len;
+      skipped += len;
+    }
+    return skipped;
+  }
+
+  /**
+   * Move to the next chunk if the current one is
+   * read
+   *
+   * @return false if the body is read
+   * @throws IOException
+   */
+  private boolean next() throws IOException {
+    if (chunk != null && pos < chunk.size()) {
+      return true;
+    }
+    if (chunk != null) {
+      chunk.release();
+      chunk = null;
+    }
+    if (remaining == 0) {
+      return false;
+    }
+    ByteArray array = null;
+    try {
+      array = chunks.take();
+    } catch (InterruptedException e) {
+      throw new IOException(
+        "Interrupted in decoding.", e);
+    }
+    if (array == ABORTED) {
+      throw new EOFException(
+        "Connection closed in receiving.");
+    }
+    numPendingChunks.decrementAndGet();
+    resumeIfPaused();
+    chunk = array;
+    pos = 0;
+    return true;
+  }
+}
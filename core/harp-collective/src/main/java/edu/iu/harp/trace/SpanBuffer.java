@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.trace;
+
+/*******************************************************
+ * The ring buffer of the spans of one thread.
+ * Only the owner thread adds spans, the oldest
+ * spans are overwritten when the buffer is full.
+ ******************************************************/
+class SpanBuffer {
+
+  private final long threadID;
+  private final String threadName;
+  private final String[] categories;
+  private final String[] names;
+  private final String[] details;
+  private final long[] startTimes;
+  private final long[] durations;
+  /** The number of spans ever added */
+  private volatile long count;
+
+  /**
+   * @param capacity
+   *          the maximum number of spans kept
+   */
+  SpanBuffer(int capacity) {
+    Thread thread = Thread.currentThread();
+    threadID = thread.getId();
+    threadName = thread.getName();
+    categories = new String[capacity];
+    names = new String[capacity];
+    details = new String[capacity];
+    startTimes = new long[capacity];
+    durations = new long[capacity];
+    count = 0L;
+  }
+
+  /**
+   * Add a span, called by the owner thread
+   *
+   * @param category
+   *          the category of the span
+   * @param name
+   *          the name of the span
+   * @param detail
+   *          the detail of the span, may be null
+   * @param startTime
+   *          the start time in nanoseconds
+   * @param duration
+   *          the duration in nanoseconds
+   */
+  void add(String category, String name,
+    String detail, long startTime,
+    long duration) {
+    long n = count;
+    int index = (int) (n % startTimes.length);
+    categories[index] = category;
+    names[index] = name;
+    details[index] = detail;
+    startTimes[index] = startTime;
+    durations[index] = duration;
+    count = n + 1;
+  }
+
+  long getThreadID() {
+    return threadID;
+  }
+
+  String getThreadName() {
+    return threadName;
+  }
+
+  /**
+   * Get the index of the oldest span kept
+   *
+   * @return the index of the oldest span
+   */
+  long getFirst() {
+    return Math.max(0L,
+      count - startTimes.length);
+  }
+
+  /**
+   * Get the number of spans ever added
+   *
+   * @return the number of spans
+   */
+  long getCount() {
+    return count;
+  }
+
+  String getCategory(long i) {
+    return categories[(int) (i % categories.length)];
+  }
+
+  String getName(long i) {
+    return names[(int) (i % names.length)];
+  }
+
+  String getDetail(long i) {
+    return details[(int) (i % details.length)];
+  }
+
+  long getStartTime(long i) {
+    return startTimes[(int) (i % startTimes.length)];
+  }
+
+  long getDuration(long i) {
+    return durations[(int) (i % durations.length)];
+  }
+
+  /**
+   * Drop all the spans
+   */
+  void clear() {
+    count = 0L;
+  }
+}
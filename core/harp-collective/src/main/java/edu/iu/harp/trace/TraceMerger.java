@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.trace;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*******************************************************
+ * Merge the traces written by the workers into
+ * one Chrome trace. The clock of each worker is
+ * aligned so that the start barrier is at time
+ * zero on all the workers.
+ *
+ * Usage: TraceMerger output input...
+ ******************************************************/
+public class TraceMerger {
+
+  private static final Logger LOG =
+    Logger.getLogger(TraceMerger.class);
+
+  private static final Pattern SYNC_TS =
+    Pattern.compile("\"syncTs\":(-?[0-9.]+)");
+  private static final Pattern TS =
+    Pattern.compile("\"ts\":(-?[0-9.]+)");
+
+  /**
+   * Merge the traces of the workers
+   *
+   * @param inputs
+   *          the traces of the workers
+   * @param out
+   *          the merged trace
+   * @return the number of events merged, -1 if
+   *         an input is not a worker trace
+   * @throws IOException
+   */
+  public static long merge(List<String> inputs,
+    Writer out) throws IOException {
+    out.write("{\"traceEvents\":[");
+    long numEvents = 0L;
+    for (String input : inputs) {
+      List<String> lines = Files.readAllLines(
+        Paths.get(input), StandardCharsets.UTF_8);
+      double syncTs = Double.NaN;
+      for (String line : lines) {
+        Matcher matcher = SYNC_TS.matcher(line);
+        if (line.startsWith("],")
+          && matcher.find()) {
+          syncTs =
+            Double.parseDouble(matcher.group(1));
+        }
+      }
+      if (Double.isNaN(syncTs)) {
+        LOG.error("No start barrier time in "
+          + input);
+        return -1L;
+      }
+      for (String line : lines) {
+        if (!line.startsWith("{\"name\"")) {
+          continue;
+        }
+        if (line.endsWith(",")) {
+          line = line.substring(0,
+            line.length() - 1);
+        }
+        Matcher matcher = TS.matcher(line);
+        if (matcher.find()) {
+          double ts = Double
+            .parseDouble(matcher.group(1)) - syncTs;
+          line = line.substring(0, matcher.start(1))
+            + String.format(Locale.ROOT, "%.1f", ts)
+            + line.substring(matcher.end(1));
+        }
+        out.write(numEvents == 0L ? "\n" : ",\n");
+        out.write(line);
+        numEvents++;
+      }
+    }
+    out.write("\n]}\n");
+    out.flush();
+    return numEvents;
+  }
+
+  /**
+   * Merge the trace files of the workers
+   *
+   * @param args
+   *          the output file, then the input
+   *          files
+   * @throws IOException
+   *           if the files cannot be read or
+   *           written
+   */
+  public static void main(String[] args)
+    throws IOException {
+    if (args.length < 2) {
+      System.err.println(
+        "Usage: TraceMerger output input...");
+      System.exit(1);
+    }
+    List<String> inputs = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      inputs.add(args[i]);
+    }
+    try (BufferedWriter out =
+      Files.newBufferedWriter(Paths.get(args[0]),
+        StandardCharsets.UTF_8)) {
+      long numEvents = merge(inputs, out);
+      if (numEvents < 0L) {
+        System.exit(1);
+      }
+      LOG.info("Merged " + numEvents
+        + " events from " + inputs.size()
+        + " workers");
+    }
+  }
+}
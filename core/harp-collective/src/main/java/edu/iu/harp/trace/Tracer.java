@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*******************************************************
+ * A timeline tracer of the worker. Each thread
+ * records its spans in its own ring buffer, the
+ * spans are written in the Chrome trace format.
+ * The time of the start barrier is marked so the
+ * traces of the workers can be aligned by
+ * TraceMerger. Nothing is recorded unless the
+ * tracer is enabled.
+ *
+ * A span is recorded as:
+ *
+ * long startTime = Tracer.begin();
+ * ...
+ * Tracer.end(Tracer.USER, "name", null,
+ * startTime);
+ ******************************************************/
+public class Tracer {
+
+  /** The category of the collective operations */
+  public static final String COLLECTIVE =
+    "collective";
+  /** The category of the communication phases */
+  public static final String COMM = "comm";
+  /** The category of the scheduler tasks */
+  public static final String COMPUTE = "compute";
+  /** The category of the mapper regions */
+  public static final String USER = "user";
+
+  /** The default number of spans of a thread */
+  public static final int DEFAULT_BUFFER_SIZE =
+    65536;
+
+  /** All the times are relative to it */
+  private static final long EPOCH =
+    System.nanoTime();
+
+  private static volatile boolean enabled = false;
+  private static volatile int bufferSize =
+    DEFAULT_BUFFER_SIZE;
+  /** The time of the start barrier */
+  private static volatile long syncTime = EPOCH;
+  private static final Queue<SpanBuffer> buffers =
+    new ConcurrentLinkedQueue<>();
+  private static final ThreadLocal<SpanBuffer> buffer =
+    ThreadLocal.withInitial(() -> {
+      SpanBuffer spans =
+        new SpanBuffer(bufferSize);
+      buffers.add(spans);
+      return spans;
+    });
+
+  /**
+   * Enable or disable recording the spans
+   *
+   * @param isEnabled
+   *          true to enable
+   */
+  public static void setEnabled(boolean isEnabled) {
+    enabled = isEnabled;
+  }
+
+  /**
+   * Check if the spans are recorded
+   *
+   * @return true if enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set the number of spans kept by each thread,
+   * applied to the threads recording later
+   *
+   * @param size
+   *          the number of spans
+   */
+  public static void setBufferSize(int size) {
+    bufferSize = Math.max(1, size);
+  }
+
+  /**
+   * Begin a span
+   *
+   * @return the start time, 0 if the tracer is
+   *         disabled
+   */
+  public static long begin() {
+    if (!enabled) {
+      return 0L;
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * End a span and record it
+   *
+   * @param category
+   *          the category of the span
+   * @param name
+   *          the name of the span
+   * @param detail
+   *          the detail of the span, may be null
+   * @param startTime
+   *          the start time returned by begin
+   */
+  public static void end(String category,
+    String name, String detail, long startTime) {
+    if (startTime == 0L || !enabled) {
+      return;
+    }
+    long endTime = System.nanoTime();
+    buffer.get().add(category, name, detail,
+      startTime, endTime - startTime);
+  }
+
+  /**
+   * Mark the time when the start barrier is
+   * passed
+   */
+  public static void markSync() {
+    syncTime = System.nanoTime();
+  }
+
+  /**
+   * Drop all the spans recorded
+   */
+  public static void clear() {
+    for (SpanBuffer spans : buffers) {
+      spans.clear();
+    }
+  }
+
+  /**
+   * Write the spans in the Chrome trace format,
+   * one event each line. The time of the start
+   * barrier is written as "syncTs" in
+   * "otherData".
+   *
+   * @param out
+   *          the output
+   * @param workerID
+   *          the ID of this worker, used as the
+   *          process ID
+   * @throws IOException
+   */
+  public static void write(Writer out,
+    int workerID) throws IOException {
+    out.write("{\"traceEvents\":[\n");
+    out.write("{\"name\":\"process_name\","
+      + "\"ph\":\"M\",\"pid\":" + workerID
+      + ",\"tid\":0,\"args\":{\"name\":\"worker "
+      + workerID + "\"}}");
+    for (SpanBuffer spans : buffers) {
+      long count = spans.getCount();
+      long first = spans.getFirst();
+      if (first == count) {
+        continue;
+      }
+      out.write(",\n{\"name\":\"thread_name\","
+        + "\"ph\":\"M\",\"pid\":" + workerID
+        + ",\"tid\":" + spans.getThreadID()
+        + ",\"args\":{\"name\":\""
+        + escape(spans.getThreadName()) + "\"}}");
+      for (long i = first; i < count; i++) {
+        out.write(",\n{\"name\":\""
+          + escape(spans.getName(i))
+          + "\",\"cat\":\""
+          + escape(spans.getCategory(i))
+          + "\",\"ph\":\"X\",\"ts\":"
+          + toMicros(spans.getStartTime(i) - EPOCH)
+          + ",\"dur\":"
+          + toMicros(spans.getDuration(i))
+          + ",\"pid\":" + workerID + ",\"tid\":"
+          + spans.getThreadID());
+        String detail = spans.getDetail(i);
+        if (detail != null) {
+          out.write(",\"args\":{\"detail\":\""
+            + escape(detail) + "\"}");
+        }
+        out.write("}");
+      }
+    }
+    out.write("\n],\"otherData\":{\"worker\":"
+      + workerID + ",\"syncTs\":"
+      + toMicros(syncTime - EPOCH) + "}}\n");
+    out.flush();
+  }
+
+  private static String toMicros(long nanos) {
+    return Long.toString(nanos / 1000) + "."
+      + (nanos % 1000 + 1000) % 1000 / 100;
+  }
+
+  static String escape(String s) {
+    if (s == null) {
+      return "";
+    }
+    StringBuilder builder = null;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\' || c < 0x20) {
+        if (builder == null) {
+          builder = new StringBuilder(s.length() + 8);
+          builder.append(s, 0, i);
+        }
+        if (c == '"' || c == '\\') {
+          builder.append('\\').append(c);
+        } else {
+          builder.append(String.format("\\u%04x",
+            (int) c));
+        }
+      } else if (builder != null) {
+        builder.append(c);
+      }
+    }
+    return builder == null ? s : builder.toString();
+  }
+}
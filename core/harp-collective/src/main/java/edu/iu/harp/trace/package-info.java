@@ -0,0 +1,5 @@
+/**
+ * Timeline tracing of the compute and the
+ * communication in the Chrome trace format
+ */
+package edu.iu.harp.trace;
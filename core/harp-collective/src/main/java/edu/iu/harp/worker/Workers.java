@@ -19,10 +19,12 @@ package edu.iu.harp.worker;
 import edu.iu.harp.io.Constant;
 
 import java.io.BufferedReader;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /*******************************************************
@@ -104,6 +106,48 @@ public class Workers extends Nodes {
        this.setInitParams(nodes,nodeRackIDs,selfID);
   }
 
+  /**
+   * Create the view of a group of the workers.
+   * The members are given new IDs from 0 in the
+   * order of the member list and keep their
+   * nodes and ports.
+   *
+   * @param workers   the workers
+   * @param memberIDs the IDs of the members
+   */
+  private Workers(Workers workers, int[] memberIDs) {
+    super(workers.getNodes(),
+        (LinkedList<Integer>) workers.getRackList(),
+        workers.getNumPhysicalNodes());
+    this.workerInfos =
+        new ConcurrentHashMap<>(initCapacity);
+    this.rackWorkers =
+        new ConcurrentHashMap<>(initCapacity);
+    this.selfID = Constant.UNKNOWN_WORKER_ID;
+    for (int i = 0; i < memberIDs.length; i++) {
+      WorkerInfo info =
+          workers.getWorkerInfo(memberIDs[i]);
+      workerInfos.put(i, new WorkerInfo(i,
+          info.getNode(), info.getPort(),
+          info.getRack()));
+      rackWorkers.computeIfAbsent(info.getRack(),
+          k -> new LinkedList<>()).add(i);
+      if (memberIDs[i] == workers.getSelfID()) {
+        this.selfID = i;
+      }
+    }
+    this.masterID = 0;
+    this.masterInfo = workerInfos.get(masterID);
+    this.minID = 0;
+    this.maxID = memberIDs.length - 1;
+    this.middleID = maxID / 2;
+    if (selfID >= 0 && selfID < maxID) {
+      this.nextID = selfID + 1;
+    } else {
+      this.nextID = 0;
+    }
+  }
+
   /**
    * Initialization the workers. Assign IDs to
    * workers; Master is the worker with ID 0;
@@ -300,6 +344,129 @@ public class Workers extends Nodes {
     return workerInfos.get(workerID);
   }
 
+  /**
+   * Check if the worker is on the same node as
+   * this worker
+   *
+   * @param workerID the worker
+   * @return true if the worker is on the same
+   * node, false otherwise
+   */
+  public boolean isOnSameNode(int workerID) {
+    WorkerInfo selfInfo = getSelfInfo();
+    WorkerInfo info = workerInfos.get(workerID);
+    return selfInfo != null && info != null
+        && selfInfo.getNode().equals(info.getNode());
+  }
+
+  /**
+   * Get the IDs of the workers on the node of
+   * this worker, including this worker
+   *
+   * @return the sorted IDs of the workers on
+   * this node
+   */
+  public int[] getNodeWorkerIDs() {
+    List<Integer> ids = new LinkedList<>();
+    for (int i = minID; i <= maxID; i++) {
+      if (isOnSameNode(i)) {
+        ids.add(i);
+      }
+    }
+    return toArray(ids);
+  }
+
+  /**
+   * Get the leader of each node, the worker with
+   * the smallest ID on the node
+   *
+   * @return the sorted IDs of the node leaders
+   */
+  public int[] getNodeLeaderIDs() {
+    List<Integer> ids = new LinkedList<>();
+    Set<String> nodes = new HashSet<>();
+    for (int i = minID; i <= maxID; i++) {
+      WorkerInfo info = workerInfos.get(i);
+      if (info != null && nodes.add(info.getNode())) {
+        ids.add(i);
+      }
+    }
+    return toArray(ids);
+  }
+
+  /**
+   * Check if the worker is on the same rack as
+   * this worker
+   *
+   * @param workerID the worker
+   * @return true if the worker is on the same
+   * rack, false otherwise
+   */
+  public boolean isOnSameRack(int workerID) {
+    WorkerInfo selfInfo = getSelfInfo();
+    WorkerInfo info = workerInfos.get(workerID);
+    return selfInfo != null && info != null
+        && selfInfo.getRack() == info.getRack();
+  }
+
+  /**
+   * Get the leaders of the nodes on the rack of
+   * this worker
+   *
+   * @return the sorted IDs of the node leaders
+   * on this rack
+   */
+  public int[] getRackNodeLeaderIDs() {
+    List<Integer> ids = new LinkedList<>();
+    for (int id : getNodeLeaderIDs()) {
+      if (isOnSameRack(id)) {
+        ids.add(id);
+      }
+    }
+    return toArray(ids);
+  }
+
+  /**
+   * Get the leader of each rack, the worker with
+   * the smallest ID on the rack. A rack leader is
+   * also the leader of its node.
+   *
+   * @return the sorted IDs of the rack leaders
+   */
+  public int[] getRackLeaderIDs() {
+    List<Integer> ids = new LinkedList<>();
+    Set<Integer> racks = new HashSet<>();
+    for (int i = minID; i <= maxID; i++) {
+      WorkerInfo info = workerInfos.get(i);
+      if (info != null && racks.add(info.getRack())) {
+        ids.add(i);
+      }
+    }
+    return toArray(ids);
+  }
+
+  /**
+   * Create the view of a group of the workers.
+   * The members get new IDs from 0 in the order
+   * of the member list. This worker is not in the
+   * group if it is not a member.
+   *
+   * @param memberIDs the IDs of the members
+   * @return the workers of the group
+   */
+  public Workers createGroup(int[] memberIDs) {
+    return new Workers(this, memberIDs);
+  }
+
+  private static int[] toArray(List<Integer> ids) {
+    int[] array = new int[ids.size()];
+    int i = 0;
+    for (int id : ids) {
+      array[i++] = id;
+    }
+    return array;
+  }
+
   /**
    * Get the iterable class of the WorkerInfos
    *
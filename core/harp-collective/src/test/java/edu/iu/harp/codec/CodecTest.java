@@ -0,0 +1,208 @@
+package edu.iu.harp.codec;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.Serializer;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.Transferable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+public class CodecTest {
+
+  private byte[] encodeBody(List<Transferable> objs) throws Exception {
+    int size = DataUtil.getNumTransListBytes(objs);
+    ByteArray array = ByteArray.create(size, true);
+    DataUtil.encodeTransList(objs, size,
+        new Serializer(array));
+    byte[] bytes = new byte[size];
+    System.arraycopy(array.get(), 0, bytes, 0, size);
+    array.release();
+    return bytes;
+  }
+
+  private void checkRoundTrip(Codec codec, byte bodyType, byte[] body)
+      throws IOException {
+    byte[] encoded = new byte[codec.getMaxEncodedSize(body.length) + 3];
+    int size = codec.encode(bodyType, body, 0, body.length, encoded, 3);
+    Assert.assertTrue(size >= 0);
+    Assert.assertTrue(size <= codec.getMaxEncodedSize(body.length));
+    byte[] decoded = new byte[body.length + 2];
+    codec.decode(bodyType, encoded, 3, size, decoded, 2, body.length);
+    for (int i = 0; i < body.length; i++) {
+      Assert.assertEquals(body[i], decoded[i + 2]);
+    }
+  }
+
+  private byte[] createSparseBytes(int size) {
+    byte[] bytes = new byte[size];
+    Random random = new Random(7);
+    for (int i = 0; i < size; i += 1 + random.nextInt(20)) {
+      bytes[i] = (byte) random.nextInt();
+    }
+    return bytes;
+  }
+
+  @Test
+  public void testLZ() throws Exception {
+    Codec codec = Codecs.get(Codecs.LZ);
+    Random random = new Random(11);
+    byte[] random100K = new byte[100000];
+    random.nextBytes(random100K);
+    byte[] repeated = new byte[200000];
+    for (int i = 0; i < repeated.length; i++) {
+      repeated[i] = (byte) (i % 97 < 50 ? i % 7 : i % 13);
+    }
+    byte[][] inputs = {new byte[0], new byte[]{1, 2, 3},
+        new byte[70000], random100K, repeated, createSparseBytes(50000)};
+    for (byte[] input : inputs) {
+      checkRoundTrip(codec, DataType.SIMPLE_LIST, input);
+    }
+    byte[] encoded = new byte[codec.getMaxEncodedSize(repeated.length)];
+    Assert.assertTrue(codec.encode(DataType.SIMPLE_LIST, repeated, 0,
+        repeated.length, encoded, 0) < repeated.length / 10);
+  }
+
+  @Test
+  public void testZeroRun() throws Exception {
+    Codec codec = Codecs.get(Codecs.ZERO_RUN);
+    byte[] sparse = createSparseBytes(100000);
+    byte[] random = new byte[10000];
+    new Random(3).nextBytes(random);
+    byte[][] inputs = {new byte[0], new byte[]{0, 0, 1, 0},
+        new byte[5000], random, sparse};
+    for (byte[] input : inputs) {
+      checkRoundTrip(codec, DataType.SIMPLE_LIST, input);
+    }
+    // Decoding must clear the zero runs in pooled arrays
+    byte[] encoded = new byte[codec.getMaxEncodedSize(100)];
+    int size = codec.encode(DataType.SIMPLE_LIST, new byte[100], 0, 100,
+        encoded, 0);
+    byte[] decoded = new byte[100];
+    Arrays.fill(decoded, (byte) 1);
+    codec.decode(DataType.SIMPLE_LIST, encoded, 0, size, decoded, 0, 100);
+    Assert.assertArrayEquals(new byte[100], decoded);
+  }
+
+  @Test
+  public void testDeltaVarInt() throws Exception {
+    Codec codec = Codecs.get(Codecs.DELTA_VARINT);
+    List<Transferable> objs = new LinkedList<>();
+    IntArray ints = IntArray.create(10000, false);
+    LongArray longs = LongArray.create(10000, false);
+    for (int i = 0; i < 10000; i++) {
+      ints.get()[i] = i * 3 - 5000;
+      longs.get()[i] = (1L << 40) + i * 7L;
+    }
+    // Unsorted and extreme values
+    ints.get()[17] = Integer.MIN_VALUE;
+    longs.get()[17] = Long.MAX_VALUE;
+    objs.add(ints);
+    objs.add(longs);
+    byte[] body = encodeBody(objs);
+    checkRoundTrip(codec, DataType.SIMPLE_LIST, body);
+    Assert.assertTrue(DeltaVarIntCodec.isSorted(DataType.SIMPLE_LIST, body,
+        0, body.length));
+    byte[] encoded = new byte[codec.getMaxEncodedSize(body.length)];
+    Assert.assertTrue(codec.encode(DataType.SIMPLE_LIST, body, 0,
+        body.length, encoded, 0) < body.length / 3);
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<>(3, ints));
+    partitions.add(new Partition<>(-8, longs));
+    body = encodeBody(partitions);
+    checkRoundTrip(codec, DataType.PARTITION_LIST, body);
+    // Other arrays are not encoded
+    objs.add(DoubleArray.create(10, false));
+    body = encodeBody(objs);
+    Assert.assertEquals(-1, codec.encode(DataType.SIMPLE_LIST, body, 0,
+        body.length, new byte[codec.getMaxEncodedSize(body.length)], 0));
+    Assert.assertFalse(DeltaVarIntCodec.isSorted(DataType.SIMPLE_LIST,
+        body, 0, body.length));
+    ints.release();
+    longs.release();
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorrupted() throws Exception {
+    Codec codec = Codecs.get(Codecs.LZ);
+    byte[] body = createSparseBytes(10000);
+    byte[] encoded = new byte[codec.getMaxEncodedSize(body.length)];
+    int size = codec.encode(DataType.SIMPLE_LIST, body, 0, body.length,
+        encoded, 0);
+    codec.decode(DataType.SIMPLE_LIST, encoded, 0, size / 2,
+        new byte[body.length], 0, body.length);
+  }
+
+  @Test
+  public void testChoose() {
+    ByteArray small = ByteArray.create(100, false);
+    ByteArray random = ByteArray.create(100000, false);
+    new Random(5).nextBytes(random.get());
+    ByteArray sparse = new ByteArray(createSparseBytes(100000), 0, 100000);
+    Codecs.setEnabled(true);
+    try {
+      Assert.assertNull(Codecs.choose(DataType.SIMPLE_LIST, small));
+      Assert.assertNull(Codecs.choose(DataType.SIMPLE_LIST, random));
+      Assert.assertEquals(Codecs.ZERO_RUN,
+          Codecs.choose(DataType.SIMPLE_LIST, sparse).getID());
+    } finally {
+      Codecs.setEnabled(false);
+    }
+    Assert.assertNull(Codecs.choose(DataType.SIMPLE_LIST, sparse));
+    small.release();
+    random.release();
+  }
+
+  @Test
+  public void testData() {
+    int size = Constant.COMPRESS_THRESHOLD;
+    DoubleArray array = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = i % 16 == 0 ? i : 0.0;
+    }
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(array);
+    Data data = new Data(DataType.SIMPLE_LIST, "test", 0, objs,
+        DataUtil.getNumTransListBytes(objs), "compress");
+    Codecs.setEnabled(true);
+    try {
+      data.encodeHead();
+      Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+          data.encodeBody());
+    } finally {
+      Codecs.setEnabled(false);
+    }
+    Assert.assertNotEquals(Codecs.NONE, data.getCodecID());
+    Assert.assertTrue(data.getBodyArray().size() < data.getBodySize());
+    Data newData = new Data(data.getHeadArray(), data.getBodyArray());
+    Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+        newData.decodeHeadArray());
+    Assert.assertEquals(DataType.SIMPLE_LIST, newData.getBodyType());
+    Assert.assertEquals(data.getCodecID(), newData.getCodecID());
+    Assert.assertEquals(data.getBodySize(), newData.getBodySize());
+    Assert.assertEquals(data.getBodyArray().size(),
+        newData.getEncodedBodySize());
+    Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+        newData.decodeBodyArray());
+    DoubleArray decoded = (DoubleArray) newData.getBody().get(0);
+    Assert.assertEquals(size, decoded.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(array.get()[i], decoded.get()[i], 0);
+    }
+    newData.release();
+    array.release();
+  }
+}
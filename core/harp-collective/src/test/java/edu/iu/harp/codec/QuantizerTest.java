@@ -0,0 +1,162 @@
+package edu.iu.harp.codec;
+
+import edu.iu.harp.combiner.QuantizedArrCombiner;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantizerTest {
+
+  private DoubleArray createArray(int size) {
+    DoubleArray array = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = Math.sin(i) * (1 + i % 7);
+    }
+    return array;
+  }
+
+  @Test
+  public void testHalf() {
+    Assert.assertEquals(0x3C00, Quantizer.toHalf(1.0f));
+    Assert.assertEquals(0xC000, Quantizer.toHalf(-2.0f));
+    Assert.assertEquals(0x7BFF, Quantizer.toHalf(65504.0f));
+    Assert.assertEquals(0x7C00, Quantizer.toHalf(65520.0f));
+    Assert.assertEquals(0x0001, Quantizer.toHalf(
+        Math.scalb(1.0f, -24)));
+    Assert.assertEquals(0x0000, Quantizer.toHalf(
+        Math.scalb(1.0f, -25)));
+    Assert.assertEquals(0x0400, Quantizer.toHalf(
+        Math.scalb(1.0f, -14)));
+    Assert.assertTrue(Float.isNaN(Quantizer.fromHalf(
+        Quantizer.toHalf(Float.NaN))));
+    for (int h = 0; h < 0x7C00; h++) {
+      Assert.assertEquals(h, Quantizer.toHalf(Quantizer.fromHalf(h)));
+      Assert.assertEquals(h | 0x8000,
+          Quantizer.toHalf(Quantizer.fromHalf(h | 0x8000)));
+    }
+    // Ties round to the even
+    Assert.assertEquals(0x3C00, Quantizer.toHalf(1.0f + 0x1p-11f));
+    Assert.assertEquals(0x3C02,
+        Quantizer.toHalf(1.0f + 3 * 0x1p-11f));
+  }
+
+  @Test
+  public void testBFloat16() {
+    Assert.assertEquals(0x3F80, Quantizer.toBFloat16(1.0f));
+    Assert.assertEquals(0x3F80, Quantizer.toBFloat16(1.0f + 0x1p-8f));
+    Assert.assertEquals(0x3F82,
+        Quantizer.toBFloat16(1.0f + 3 * 0x1p-8f));
+    Assert.assertEquals(256.0f, Quantizer.fromBFloat16(
+        Quantizer.toBFloat16(256.0f)), 0);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    int size = Constant.QUANTIZE_BLOCK_SIZE * 3 + 5;
+    DoubleArray array = createArray(size);
+    double[] tolerances = {1.0 / 128, 1.0 / 1024, 2.0 / 127};
+    for (Precision precision : Precision.values()) {
+      Quantizer quantizer = new Quantizer(precision, false);
+      ByteArray bytes = quantizer.quantize(0, array);
+      Assert.assertEquals(Quantizer.getNumBytes(precision, size),
+          bytes.size());
+      DoubleArray decoded =
+          (DoubleArray) Quantizer.dequantize(bytes, null);
+      Assert.assertEquals(size, decoded.size());
+      for (int i = 0; i < size; i++) {
+        double value = array.get()[i];
+        double tolerance = precision == Precision.INT8
+            ? 7 * tolerances[precision.ordinal()]
+            : Math.abs(value) * tolerances[precision.ordinal()];
+        Assert.assertEquals(value, decoded.get()[i], tolerance);
+      }
+      // Decode to the array of the same size
+      Assert.assertSame(decoded,
+          Quantizer.dequantize(bytes, decoded));
+      decoded.release();
+      bytes.release();
+    }
+    FloatArray floats = FloatArray.create(10, false);
+    for (int i = 0; i < 10; i++) {
+      floats.get()[i] = i;
+    }
+    ByteArray bytes =
+        new Quantizer(Precision.FP16, false).quantize(0, floats);
+    FloatArray decoded = (FloatArray) Quantizer.dequantize(bytes, null);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(i, decoded.get()[i], 0);
+    }
+    Assert.assertNull(new Quantizer(Precision.FP16, false).quantize(0,
+        ByteArray.create(10, false)));
+    array.release();
+    floats.release();
+    decoded.release();
+    bytes.release();
+  }
+
+  @Test
+  public void testErrorFeedback() {
+    int size = 100;
+    DoubleArray array = createArray(size);
+    int rounds = 200;
+    for (boolean useErrorFeedback : new boolean[]{false, true}) {
+      Quantizer quantizer = new Quantizer(Precision.BF16,
+          useErrorFeedback);
+      double[] sums = new double[size];
+      for (int r = 0; r < rounds; r++) {
+        ByteArray bytes = quantizer.quantize(0, array);
+        DoubleArray decoded =
+            (DoubleArray) Quantizer.dequantize(bytes, null);
+        for (int i = 0; i < size; i++) {
+          sums[i] += decoded.get()[i];
+        }
+        decoded.release();
+        bytes.release();
+      }
+      double maxError = 0.0;
+      for (int i = 0; i < size; i++) {
+        maxError = Math.max(maxError,
+            Math.abs(sums[i] / rounds - array.get()[i]));
+      }
+      if (useErrorFeedback) {
+        // The accumulated error is bounded by one
+        // rounding step, not one per round
+        Assert.assertTrue(maxError < 0.05 / rounds);
+      } else {
+        Assert.assertTrue(maxError > 0.001);
+      }
+    }
+    array.release();
+  }
+
+  @Test
+  public void testCombiner() {
+    int size = 1000;
+    Quantizer quantizer = new Quantizer(Precision.INT8, false);
+    DoubleArray a = DoubleArray.create(size, false);
+    DoubleArray b = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      a.get()[i] = 127;
+      b.get()[i] = -254;
+    }
+    ByteArray qa = quantizer.quantize(0, a);
+    ByteArray qb = quantizer.quantize(0, b);
+    QuantizedArrCombiner combiner =
+        new QuantizedArrCombiner(new DoubleArrPlus());
+    Assert.assertEquals(PartitionStatus.COMBINED,
+        combiner.combine(qa, qb));
+    DoubleArray sum = (DoubleArray) Quantizer.dequantize(qa, a);
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(-127, sum.get()[i], 1e-4);
+    }
+    a.release();
+    b.release();
+    qa.release();
+    qb.release();
+  }
+}
@@ -0,0 +1,264 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.combiner.OffHeapDoubleArrCombiner;
+import edu.iu.harp.combiner.Operation;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.DenseTable;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AllreduceCollectiveTest {
+  private static final int NUM_WORKERS = 3;
+  private static final int LARGE_SIZE = 20000;
+  private static final int SMALL_SIZE = 10;
+
+  private Workers[] workers;
+  private DataMap[] dataMaps;
+  private Server[] servers;
+  private boolean useDenseTable = false;
+
+  @Before
+  public void setUp() throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    workers = new Workers[NUM_WORKERS];
+    dataMaps = new DataMap[NUM_WORKERS];
+    servers = new Server[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i]);
+      servers[i].start();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+
+  private DoubleArray createArray(int size, double value) {
+    DoubleArray array = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = value + i;
+    }
+    return array;
+  }
+
+  /**
+   * A large partition split by the ring, small
+   * partitions moved as a whole, and a partition
+   * only on the last worker.
+   */
+  private Table<DoubleArray> createTable(int workerID) {
+    Table<DoubleArray> table = useDenseTable
+        ? new DenseTable<>(0, new DoubleArrPlus())
+        : new Table<>(0, new DoubleArrPlus());
+    table.addPartition(new Partition<>(0,
+        createArray(LARGE_SIZE, workerID)));
+    for (int i = 1; i < 5; i++) {
+      table.addPartition(new Partition<>(i,
+          createArray(SMALL_SIZE, i)));
+    }
+    if (workerID == NUM_WORKERS - 1) {
+      table.addPartition(new Partition<>(9,
+          createArray(SMALL_SIZE, 5)));
+    }
+    return table;
+  }
+
+  private void checkTable(Table<DoubleArray> table) {
+    Assert.assertEquals(6, table.getNumPartitions());
+    double[] large = table.getPartition(0).get().get();
+    for (int i = 0; i < LARGE_SIZE; i++) {
+      Assert.assertEquals(3 + 3 * i, large[i], 0);
+    }
+    for (int i = 1; i < 5; i++) {
+      DoubleArray small = table.getPartition(i).get();
+      Assert.assertEquals(SMALL_SIZE, small.size());
+      for (int j = 0; j < SMALL_SIZE; j++) {
+        Assert.assertEquals(NUM_WORKERS * (i + j),
+            small.get()[j], 0);
+      }
+    }
+    double[] extra = table.getPartition(9).get().get();
+    for (int j = 0; j < SMALL_SIZE; j++) {
+      Assert.assertEquals(5 + j, extra[j], 0);
+    }
+  }
+
+  private void runAllreduce(final AllreduceAlgorithm algorithm)
+      throws Exception {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<Table<DoubleArray>>> results = new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      results.add(executor.submit(() -> {
+        Table<DoubleArray> table = createTable(workerID);
+        Assert.assertTrue(AllreduceCollective.allreduce("test",
+            "allreduce", table, dataMaps[workerID],
+            workers[workerID], algorithm));
+        return table;
+      }));
+    }
+    for (Future<Table<DoubleArray>> result : results) {
+      Table<DoubleArray> table = result.get();
+      checkTable(table);
+      table.release();
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testRing() throws Exception {
+    runAllreduce(AllreduceAlgorithm.RING);
+  }
+
+  @Test
+  public void testRecursiveHalving() throws Exception {
+    runAllreduce(AllreduceAlgorithm.RECURSIVE_HALVING);
+  }
+
+  @Test
+  public void testDenseTable() throws Exception {
+    useDenseTable = true;
+    runAllreduce(AllreduceAlgorithm.RING);
+    runAllreduce(AllreduceAlgorithm.RECURSIVE_HALVING);
+  }
+
+  @Test
+  public void testMux() throws Exception {
+    // The sends between the workers share the
+    // multiplexed channels
+    ConnPool.get().setNumMuxChannels(2);
+    try {
+      runAllreduce(AllreduceAlgorithm.RING);
+      runAllreduce(AllreduceAlgorithm.RECURSIVE_HALVING);
+      Assert.assertTrue(ConnPool.get().getNumOpenMuxChannels() > 0);
+    } finally {
+      ConnPool.get().setNumMuxChannels(Constant.NUM_MUX_CHANNELS);
+    }
+  }
+
+  @Test
+  public void testOffHeap() throws Exception {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<Table<OffHeapDoubleArray>>> results =
+        new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      results.add(executor.submit(() -> {
+        Table<OffHeapDoubleArray> table = new Table<>(0,
+            new OffHeapDoubleArrCombiner(Operation.SUM));
+        for (int j = 0; j < 4; j++) {
+          OffHeapDoubleArray array =
+              OffHeapDoubleArray.create(LARGE_SIZE);
+          for (int k = 0; k < LARGE_SIZE; k++) {
+            array.set(k, workerID + k);
+          }
+          table.addPartition(new Partition<>(j, array));
+        }
+        Assert.assertTrue(AllreduceCollective.allreduce("test",
+            "offheap", table, dataMaps[workerID],
+            workers[workerID]));
+        return table;
+      }));
+    }
+    for (Future<Table<OffHeapDoubleArray>> result : results) {
+      Table<OffHeapDoubleArray> table = result.get();
+      Assert.assertEquals(4, table.getNumPartitions());
+      for (int j = 0; j < 4; j++) {
+        OffHeapDoubleArray array = table.getPartition(j).get();
+        for (int k = 0; k < LARGE_SIZE; k++) {
+          Assert.assertEquals(3 + 3 * k, array.get(k), 0);
+        }
+      }
+      table.release();
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testChooseAlgorithm() {
+    Assert.assertEquals(AllreduceAlgorithm.RECURSIVE_HALVING,
+        AllreduceCollective.chooseAlgorithm(SMALL_SIZE * 8L,
+            NUM_WORKERS));
+    Assert.assertEquals(AllreduceAlgorithm.RING,
+        AllreduceCollective.chooseAlgorithm(
+            Constant.RING_ALLREDUCE_THRESHOLD, NUM_WORKERS));
+    Assert.assertEquals(AllreduceAlgorithm.RECURSIVE_HALVING,
+        AllreduceCollective.chooseAlgorithm(
+            Constant.RING_ALLREDUCE_THRESHOLD, 2));
+  }
+
+  @Test
+  public void testAutoWithUnevenTables() throws Exception {
+    // Only the first worker holds a partition over
+    // the threshold, all the workers must still
+    // choose the same algorithm
+    final int hugeSize = Constant.RING_ALLREDUCE_THRESHOLD / 8;
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<Table<DoubleArray>>> results = new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      results.add(executor.submit(() -> {
+        Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+        if (workerID == 0) {
+          table.addPartition(new Partition<>(0,
+              createArray(hugeSize, 0)));
+        }
+        table.addPartition(new Partition<>(1,
+            createArray(SMALL_SIZE, 1)));
+        Assert.assertTrue(AllreduceCollective.allreduce("test",
+            "auto", table, dataMaps[workerID], workers[workerID],
+            AllreduceAlgorithm.AUTO));
+        return table;
+      }));
+    }
+    for (Future<Table<DoubleArray>> result : results) {
+      Table<DoubleArray> table = result.get(60, TimeUnit.SECONDS);
+      double[] huge = table.getPartition(0).get().get();
+      for (int j = 0; j < hugeSize; j++) {
+        Assert.assertEquals(j, huge[j], 0);
+      }
+      DoubleArray small = table.getPartition(1).get();
+      for (int j = 0; j < SMALL_SIZE; j++) {
+        Assert.assertEquals(NUM_WORKERS * (1 + j), small.get()[j], 0);
+      }
+      table.release();
+    }
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,118 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncCollectiveTest {
+  private static final int NUM_WORKERS = 3;
+  private static final int NUM_OPS = 3;
+  private static final int SIZE = 1000;
+
+  private Workers[] workers;
+  private Server[] servers;
+  private AsyncCollective[] collectives;
+
+  @Before
+  public void setUp() throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    workers = new Workers[NUM_WORKERS];
+    servers = new Server[NUM_WORKERS];
+    collectives = new AsyncCollective[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+      DataMap dataMap = new DataMap();
+      servers[i] = new Server("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMap, workers[i]);
+      servers[i].start();
+      collectives[i] = new AsyncCollective(dataMap, workers[i], 2);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (AsyncCollective collective : collectives) {
+      collective.stop();
+    }
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+
+  private Table<DoubleArray> createTable(double value) {
+    Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+    DoubleArray array = DoubleArray.create(SIZE, false);
+    for (int i = 0; i < SIZE; i++) {
+      array.get()[i] = value + i;
+    }
+    table.addPartition(new Partition<>(0, array));
+    return table;
+  }
+
+  @Test
+  public void testAllreduceInFlight() throws Exception {
+    List<Table<DoubleArray>> tables = new ArrayList<>();
+    List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+    // Several operations of each worker in flight
+    for (int op = 0; op < NUM_OPS; op++) {
+      for (int i = 0; i < NUM_WORKERS; i++) {
+        Table<DoubleArray> table = createTable(op);
+        tables.add(table);
+        futures.add(collectives[i].allreduce("test",
+            "allreduce-" + op, table));
+      }
+    }
+    for (CompletableFuture<Boolean> future : futures) {
+      Assert.assertTrue(future.get(60, TimeUnit.SECONDS));
+    }
+    for (int j = 0; j < tables.size(); j++) {
+      int op = j / NUM_WORKERS;
+      double[] array = tables.get(j).getPartition(0).get().get();
+      for (int i = 0; i < SIZE; i++) {
+        Assert.assertEquals(NUM_WORKERS * (op + i), array[i], 0);
+      }
+      tables.get(j).release();
+    }
+    Assert.assertEquals(0, collectives[0].getNumInFlight());
+  }
+
+  @Test
+  public void testSameOperationInFlight() throws Exception {
+    CompletableFuture<Boolean> first =
+        collectives[0].submit("test", "same", () -> {
+          try {
+            Thread.sleep(200);
+          } catch (InterruptedException e) {
+            return false;
+          }
+          return true;
+        });
+    CompletableFuture<Boolean> second =
+        collectives[0].submit("test", "same", () -> true);
+    Assert.assertFalse(second.get());
+    Assert.assertTrue(first.get());
+  }
+}
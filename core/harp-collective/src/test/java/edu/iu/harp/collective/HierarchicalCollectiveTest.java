@@ -0,0 +1,192 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class HierarchicalCollectiveTest {
+  // Two nodes with two workers on each on rack 0,
+  // one node with two workers on rack 1
+  private static final String[] NODES =
+      {"127.0.0.1", "localhost", "127.0.0.1", "localhost",
+          "127.0.0.2", "127.0.0.2"};
+  private static final int[] RACKS = {0, 0, 0, 0, 1, 1};
+  private static final int NUM_WORKERS = NODES.length;
+  // Larger than the shared memory threshold
+  private static final int LARGE_SIZE = 200000;
+
+  private Workers[] workers;
+  private DataMap[] dataMaps;
+  private Server[] servers;
+
+  private interface Operation {
+    boolean run(int workerID, Table<DoubleArray> table);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    DataSender.setUseSharedMemory(true);
+    StringBuilder nodes = new StringBuilder();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      if (i == 0 || RACKS[i] != RACKS[i - 1]) {
+        nodes.append("#").append(RACKS[i]).append("\n");
+      }
+      nodes.append(NODES[i]).append("\n");
+    }
+    workers = new Workers[NUM_WORKERS];
+    dataMaps = new DataMap[NUM_WORKERS];
+    servers = new Server[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server(workers[i].getSelfInfo().getNode(),
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i]);
+      servers[i].start();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    DataSender.setUseSharedMemory(false);
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+
+  private DoubleArray createArray(int size, double value) {
+    DoubleArray array = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = value + i;
+    }
+    return array;
+  }
+
+  private List<Table<DoubleArray>> run(final Operation operation)
+      throws Exception {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<Table<DoubleArray>>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      futures.add(executor.submit(() -> {
+        Table<DoubleArray> table =
+            new Table<>(0, new DoubleArrPlus());
+        table.addPartition(new Partition<>(0,
+            createArray(LARGE_SIZE, workerID)));
+        table.addPartition(new Partition<>(workerID + 1,
+            createArray(10, workerID)));
+        Assert.assertTrue(operation.run(workerID, table));
+        return table;
+      }));
+    }
+    List<Table<DoubleArray>> tables = new ArrayList<>();
+    for (Future<Table<DoubleArray>> future : futures) {
+      tables.add(future.get());
+    }
+    executor.shutdown();
+    return tables;
+  }
+
+  private void checkArray(DoubleArray array, int size,
+      double value, double scale) {
+    Assert.assertEquals(size, array.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(value + scale * i, array.get()[i], 0);
+    }
+  }
+
+  @Test
+  public void testAllreduce() throws Exception {
+    List<Table<DoubleArray>> tables = run((workerID, table) ->
+        HierarchicalCollective.allreduce("test", "allreduce",
+            table, dataMaps[workerID], workers[workerID]));
+    for (Table<DoubleArray> table : tables) {
+      Assert.assertEquals(NUM_WORKERS + 1, table.getNumPartitions());
+      checkArray(table.getPartition(0).get(), LARGE_SIZE, 15,
+          NUM_WORKERS);
+      for (int i = 0; i < NUM_WORKERS; i++) {
+        checkArray(table.getPartition(i + 1).get(), 10, i, 1);
+      }
+      table.release();
+    }
+  }
+
+  @Test
+  public void testBroadcast() throws Exception {
+    // Worker 3 is not the leader of its node
+    List<Table<DoubleArray>> tables = run((workerID, table) -> {
+      if (workerID != 3) {
+        table.release();
+      }
+      return HierarchicalCollective.broadcast("test", "bcast",
+          table, 3, dataMaps[workerID], workers[workerID]);
+    });
+    for (Table<DoubleArray> table : tables) {
+      Assert.assertEquals(2, table.getNumPartitions());
+      checkArray(table.getPartition(0).get(), LARGE_SIZE, 3, 1);
+      checkArray(table.getPartition(4).get(), 10, 3, 1);
+      table.release();
+    }
+  }
+
+  @Test
+  public void testReduce() throws Exception {
+    // Worker 5 is not the leader of its node or
+    // its rack
+    List<Table<DoubleArray>> tables = run((workerID, table) ->
+        HierarchicalCollective.reduce("test", "reduce", table, 5,
+            dataMaps[workerID], workers[workerID]));
+    for (int w = 0; w < NUM_WORKERS; w++) {
+      Table<DoubleArray> table = tables.get(w);
+      if (w != 5) {
+        Assert.assertTrue(table.isEmpty());
+        continue;
+      }
+      Assert.assertEquals(NUM_WORKERS + 1, table.getNumPartitions());
+      checkArray(table.getPartition(0).get(), LARGE_SIZE, 15,
+          NUM_WORKERS);
+      for (int i = 0; i < NUM_WORKERS; i++) {
+        checkArray(table.getPartition(i + 1).get(), 10, i, 1);
+      }
+      table.release();
+    }
+  }
+
+  @Test
+  public void testAllgather() throws Exception {
+    List<Table<DoubleArray>> tables = run((workerID, table) -> {
+      table.removePartition(0).release();
+      return HierarchicalCollective.allgather("test", "allgather",
+          table, dataMaps[workerID], workers[workerID]);
+    });
+    for (Table<DoubleArray> table : tables) {
+      Assert.assertEquals(NUM_WORKERS, table.getNumPartitions());
+      for (int i = 0; i < NUM_WORKERS; i++) {
+        checkArray(table.getPartition(i + 1).get(), 10, i, 1);
+      }
+      table.release();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.codec.Precision;
+import edu.iu.harp.codec.Quantizer;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class QuantizedCollectiveTest {
+  private static final int NUM_WORKERS = 3;
+  private static final int SIZE = 1000;
+
+  private Workers[] workers;
+  private DataMap[] dataMaps;
+  private Server[] servers;
+
+  @Before
+  public void setUp() throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    workers = new Workers[NUM_WORKERS];
+    dataMaps = new DataMap[NUM_WORKERS];
+    servers = new Server[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i]);
+      servers[i].start();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+
+  /**
+   * Small integers are exact in bf16
+   */
+  private Table<DoubleArray> createTable(int workerID) {
+    Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      DoubleArray array = DoubleArray.create(SIZE, false);
+      for (int j = 0; j < SIZE; j++) {
+        array.get()[j] = workerID + j % 50;
+      }
+      table.addPartition(new Partition<>(i, array));
+    }
+    return table;
+  }
+
+  private <T> List<T> runOnAll(WorkerOp<T> op) throws Exception {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<T>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      futures.add(executor.submit((Callable<T>) () -> op.run(workerID)));
+    }
+    List<T> results = new ArrayList<>();
+    for (Future<T> future : futures) {
+      results.add(future.get());
+    }
+    executor.shutdown();
+    return results;
+  }
+
+  private interface WorkerOp<T> {
+    T run(int workerID) throws Exception;
+  }
+
+  @Test
+  public void testAllreduce() throws Exception {
+    List<Table<DoubleArray>> tables = runOnAll(workerID -> {
+      Table<DoubleArray> table = createTable(workerID);
+      double[] array = table.getPartition(0).get().get();
+      Assert.assertTrue(QuantizedCollective.allreduce("test",
+          "allreduce", table, new Quantizer(Precision.BF16, true),
+          dataMaps[workerID], workers[workerID]));
+      // The arrays are reused
+      Assert.assertSame(array, table.getPartition(0).get().get());
+      return table;
+    });
+    for (Table<DoubleArray> table : tables) {
+      Assert.assertEquals(NUM_WORKERS, table.getNumPartitions());
+      for (Partition<DoubleArray> partition : table.getPartitions()) {
+        for (int j = 0; j < SIZE; j++) {
+          Assert.assertEquals(3 + 3 * (j % 50),
+              partition.get().get()[j], 0);
+        }
+      }
+      table.release();
+    }
+  }
+
+  @Test
+  public void testRotate() throws Exception {
+    List<Table<DoubleArray>> tables = runOnAll(workerID -> {
+      Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+      DoubleArray array = DoubleArray.create(SIZE, false);
+      for (int j = 0; j < SIZE; j++) {
+        array.get()[j] = workerID + j * 0.001;
+      }
+      table.addPartition(new Partition<>(workerID, array));
+      Assert.assertTrue(QuantizedCollective.rotate("test", "rotate",
+          table, null, new Quantizer(Precision.FP16, false),
+          dataMaps[workerID], workers[workerID]));
+      return table;
+    });
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      Table<DoubleArray> table = tables.get(i);
+      int source = (i + NUM_WORKERS - 1) % NUM_WORKERS;
+      Assert.assertEquals(1, table.getNumPartitions());
+      double[] array = table.getPartition(source).get().get();
+      for (int j = 0; j < SIZE; j++) {
+        double value = source + j * 0.001;
+        Assert.assertEquals(value, array[j], value / 1024 + 1e-7);
+      }
+      table.release();
+    }
+  }
+
+  @Test
+  public void testPush() throws Exception {
+    List<Table<DoubleArray>> tables = runOnAll(workerID -> {
+      Table<DoubleArray> localTable = createTable(workerID);
+      Table<DoubleArray> globalTable =
+          new Table<>(0, new DoubleArrPlus());
+      DoubleArray array = DoubleArray.create(SIZE, false);
+      for (int j = 0; j < SIZE; j++) {
+        // Not exact in bf16, the global table keeps
+        // the full precision
+        array.get()[j] = 0.1;
+      }
+      globalTable.addPartition(new Partition<>(workerID, array));
+      Assert.assertTrue(QuantizedCollective.push("test", "push",
+          localTable, globalTable, new Partitioner(NUM_WORKERS),
+          new Quantizer(Precision.BF16, false),
+          dataMaps[workerID], workers[workerID]));
+      Assert.assertEquals(NUM_WORKERS, localTable.getNumPartitions());
+      Assert.assertEquals(workerID,
+          localTable.getPartition(0).get().get()[0], 0);
+      localTable.release();
+      return globalTable;
+    });
+    for (Table<DoubleArray> table : tables) {
+      Assert.assertEquals(1, table.getNumPartitions());
+      double[] array = table.getPartitions().iterator().next().get().get();
+      for (int j = 0; j < SIZE; j++) {
+        Assert.assertEquals(0.1 + 3 + 3 * (j % 50), array[j], 1e-12);
+      }
+      table.release();
+    }
+  }
+
+  @Test
+  public void testPushToMissingPartition() throws Exception {
+    // No global table holds the partition, the
+    // pushes of all the workers are summed on the
+    // worker of the partitioner
+    final int partitionID = NUM_WORKERS;
+    List<Table<DoubleArray>> tables = runOnAll(workerID -> {
+      Table<DoubleArray> localTable =
+          new Table<>(0, new DoubleArrPlus());
+      DoubleArray array = DoubleArray.create(SIZE, false);
+      for (int j = 0; j < SIZE; j++) {
+        array.get()[j] = workerID + j % 50;
+      }
+      localTable.addPartition(new Partition<>(partitionID, array));
+      Table<DoubleArray> globalTable =
+          new Table<>(0, new DoubleArrPlus());
+      Assert.assertTrue(QuantizedCollective.push("test", "push",
+          localTable, globalTable, new Partitioner(NUM_WORKERS),
+          new Quantizer(Precision.BF16, false),
+          dataMaps[workerID], workers[workerID]));
+      localTable.release();
+      return globalTable;
+    });
+    int owner = partitionID % NUM_WORKERS;
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      Table<DoubleArray> table = tables.get(i);
+      if (i != owner) {
+        Assert.assertEquals(0, table.getNumPartitions());
+        continue;
+      }
+      Assert.assertEquals(1, table.getNumPartitions());
+      double[] array = table.getPartition(partitionID).get().get();
+      for (int j = 0; j < SIZE; j++) {
+        Assert.assertEquals(3 + 3 * (j % 50), array[j], 0);
+      }
+      table.release();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.LPTPartitioner;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RegroupCollectiveTest {
+  private static final int NUM_WORKERS = 3;
+  private static final int NUM_PARTITIONS = 7;
+  private static final int LARGE_SIZE = 10000;
+  private static final int SMALL_SIZE = 10;
+
+  private Workers[] workers;
+  private DataMap[] dataMaps;
+  private Server[] servers;
+
+  @Before
+  public void setUp() throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    workers = new Workers[NUM_WORKERS];
+    dataMaps = new DataMap[NUM_WORKERS];
+    servers = new Server[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i]);
+      servers[i].start();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+
+  /**
+   * Partition 3 is much larger than the others
+   */
+  private Table<DoubleArray> createTable() {
+    Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      int size = i == 3 ? LARGE_SIZE : SMALL_SIZE;
+      DoubleArray array = DoubleArray.create(size, false);
+      for (int j = 0; j < size; j++) {
+        array.get()[j] = i;
+      }
+      table.addPartition(new Partition<>(i, array));
+    }
+    return table;
+  }
+
+  @Test
+  public void testRegroupLPT() throws Exception {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<Table<DoubleArray>>> results = new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      results.add(executor.submit(() -> {
+        Table<DoubleArray> table = createTable();
+        Assert.assertTrue(RegroupCollective.regroupCombine("test",
+            "regroup", table, new LPTPartitioner(NUM_WORKERS),
+            dataMaps[workerID], workers[workerID]));
+        return table;
+      }));
+    }
+    int numPartitions = 0;
+    for (Future<Table<DoubleArray>> result : results) {
+      Table<DoubleArray> table = result.get();
+      numPartitions += table.getNumPartitions();
+      for (Partition<DoubleArray> partition : table.getPartitions()) {
+        Assert.assertEquals(NUM_WORKERS * partition.id(),
+            partition.get().get()[0], 0);
+      }
+      // The large partition is placed alone
+      if (table.getPartition(3) != null) {
+        Assert.assertEquals(1, table.getNumPartitions());
+      }
+      table.release();
+    }
+    Assert.assertEquals(NUM_PARTITIONS, numPartitions);
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,140 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.keyval.Int2IntKVTable;
+import edu.iu.harp.keyval.Long2DoubleKVTable;
+import edu.iu.harp.keyval.TypeDoubleCombiner;
+import edu.iu.harp.keyval.TypeIntCombiner;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SparseAllreduceCollectiveTest {
+  private static final int NUM_WORKERS = 3;
+  private static final int DENSE_SIZE = 3000;
+
+  private Workers[] workers;
+  private DataMap[] dataMaps;
+  private Server[] servers;
+
+  @Before
+  public void setUp() throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    workers = new Workers[NUM_WORKERS];
+    dataMaps = new DataMap[NUM_WORKERS];
+    servers = new Server[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i]);
+      servers[i].start();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+
+  private <T> List<T> runOnAll(WorkerOp<T> op) throws Exception {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(NUM_WORKERS);
+    List<Future<T>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      final int workerID = i;
+      futures.add(executor.submit((Callable<T>) () -> op.run(workerID)));
+    }
+    List<T> results = new ArrayList<>();
+    for (Future<T> future : futures) {
+      results.add(future.get());
+    }
+    executor.shutdown();
+    return results;
+  }
+
+  private interface WorkerOp<T> {
+    T run(int workerID) throws Exception;
+  }
+
+  @Test
+  public void testInt2IntAllreduce() throws Exception {
+    List<Int2IntKVTable> tables = runOnAll(workerID -> {
+      Int2IntKVTable table =
+          new Int2IntKVTable(0, new TypeIntCombiner());
+      // Dense keys on all the workers
+      for (int i = 0; i < DENSE_SIZE; i++) {
+        table.addKeyVal(i, 1);
+      }
+      // Sparse keys on one worker
+      for (int i = 0; i < 50; i++) {
+        table.addKeyVal(100000 * (workerID + 1) + i * 37, workerID + 1);
+      }
+      table.addKeyVal(-5, workerID);
+      Assert.assertTrue(SparseAllreduceCollective.allreduce("test",
+          "sparse", table, dataMaps[workerID], workers[workerID]));
+      return table;
+    });
+    for (Int2IntKVTable table : tables) {
+      Assert.assertEquals(DENSE_SIZE + NUM_WORKERS * 50 + 1,
+          table.getNumPartitions());
+      for (int i = 0; i < DENSE_SIZE; i++) {
+        Assert.assertEquals(NUM_WORKERS, table.getVal(i));
+      }
+      for (int w = 0; w < NUM_WORKERS; w++) {
+        for (int i = 0; i < 50; i++) {
+          Assert.assertEquals(w + 1,
+              table.getVal(100000 * (w + 1) + i * 37));
+        }
+      }
+      Assert.assertEquals(3, table.getVal(-5));
+      table.release();
+    }
+  }
+
+  @Test
+  public void testLong2DoubleAllreduce() throws Exception {
+    List<Long2DoubleKVTable> tables = runOnAll(workerID -> {
+      Long2DoubleKVTable table =
+          new Long2DoubleKVTable(0, new TypeDoubleCombiner());
+      // The last worker has no keys
+      if (workerID < NUM_WORKERS - 1) {
+        table.addKeyVal(1L << 40, 0.5);
+        table.addKeyVal(workerID, -1.5);
+      }
+      Assert.assertTrue(SparseAllreduceCollective.allreduce("test",
+          "sparse", table, dataMaps[workerID], workers[workerID]));
+      return table;
+    });
+    for (Long2DoubleKVTable table : tables) {
+      // The partition ID is the lower 32 bits of the key
+      Assert.assertEquals(2, table.getNumPartitions());
+      Assert.assertEquals(1.0, table.getVal(1L << 40), 0);
+      Assert.assertEquals(-1.5, table.getVal(0), 0);
+      Assert.assertEquals(-1.5, table.getVal(1), 0);
+      table.release();
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package edu.iu.harp.io;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.OffHeapDoubleArray;
+import edu.iu.harp.resource.OffHeapIntArray;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.resource.Writable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.LinkedList;
+import java.util.List;
+
+public class RawBodyTest {
+
+  /** Collect the bytes written */
+  private static class BytesChannel
+      implements GatheringByteChannel {
+    private final ByteArrayOutputStream out =
+        new ByteArrayOutputStream();
+
+    @Override
+    public int write(ByteBuffer src) {
+      int len = src.remaining();
+      while (src.hasRemaining()) {
+        out.write(src.get());
+      }
+      return len;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset,
+        int length) {
+      long len = 0;
+      for (int i = offset; i < offset + length; i++) {
+        len += write(srcs[i]);
+      }
+      return len;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+      return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  public static class TestWritable extends Writable {
+    @Override
+    public int getNumWriteBytes() {
+      return 0;
+    }
+
+    @Override
+    public void write(DataOutput out) {
+    }
+
+    @Override
+    public void read(DataInput in) {
+    }
+
+    @Override
+    public void clear() {
+    }
+  }
+
+  private Data createPartitionData(int size) {
+    List<Transferable> partitions = new LinkedList<>();
+    DoubleArray doubles = DoubleArray.create(size, false);
+    IntArray ints = IntArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      doubles.get()[i] = i * 0.5;
+      ints.get()[i] = -i;
+    }
+    partitions.add(new Partition<Simple>(3, doubles));
+    partitions.add(new Partition<Simple>(7, ints));
+    return new Data(DataType.PARTITION_LIST, "test", 0,
+        partitions, DataUtil.getNumTransListBytes(partitions),
+        "raw");
+  }
+
+  @Test
+  public void testRawEncodable() {
+    Data data = createPartitionData(10);
+    Assert.assertTrue(RawBodyWriter.isRawEncodable(data));
+    data.release();
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(new TestWritable());
+    data = new Data(DataType.SIMPLE_LIST, "test", 0,
+        objs, DataUtil.getNumTransListBytes(objs));
+    Assert.assertFalse(RawBodyWriter.isRawEncodable(data));
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    int size = Constant.PIPELINE_SIZE / 8 + 3;
+    Data data = createPartitionData(size);
+    BytesChannel channel = new BytesChannel();
+    ByteBuffer prefix = ByteBuffer.wrap(new byte[] {1, 2});
+    RawBodyWriter.write(channel, prefix, data);
+    byte[] bytes = channel.out.toByteArray();
+    Assert.assertEquals(2 + data.getBodySize(), bytes.length);
+    Assert.assertEquals(1, bytes[0]);
+    Assert.assertEquals(2, bytes[1]);
+    // Give the bytes in pieces splitting the elements
+    RawBodyReader reader = new RawBodyReader(
+        DataType.PARTITION_LIST, data.getBodySize());
+    int pos = 2;
+    int piece = 3;
+    while (pos < bytes.length) {
+      int len = Math.min(piece, bytes.length - pos);
+      reader.read(ByteBuffer.wrap(bytes, pos, len));
+      pos += len;
+      piece = piece * 2 + 1;
+    }
+    Assert.assertTrue(reader.isDone());
+    List<Transferable> body = reader.getBody();
+    Assert.assertEquals(2, body.size());
+    Partition<?> first = (Partition<?>) body.get(0);
+    Partition<?> second = (Partition<?>) body.get(1);
+    Assert.assertEquals(3, first.id());
+    Assert.assertEquals(7, second.id());
+    DoubleArray doubles = (DoubleArray) first.get();
+    IntArray ints = (IntArray) second.get();
+    Assert.assertEquals(size, doubles.size());
+    Assert.assertEquals(size, ints.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(i * 0.5, doubles.get()[i], 0);
+      Assert.assertEquals(-i, ints.get()[i]);
+    }
+    reader.release();
+    data.release();
+  }
+
+  @Test
+  public void testOffHeap() throws Exception {
+    int size = Constant.PIPELINE_SIZE / 8 + 3;
+    OffHeapDoubleArray doubles = OffHeapDoubleArray.create(size);
+    OffHeapIntArray ints = OffHeapIntArray.create(size);
+    for (int i = 0; i < size; i++) {
+      doubles.set(i, i * 0.5);
+      ints.set(i, -i);
+    }
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(doubles);
+    objs.add(ints);
+    Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+        objs, DataUtil.getNumTransListBytes(objs));
+    Assert.assertTrue(RawBodyWriter.isRawEncodable(data));
+    Assert.assertTrue(RawBodyWriter.hasOffHeapArrays(data));
+    BytesChannel channel = new BytesChannel();
+    RawBodyWriter.write(channel, ByteBuffer.allocate(0), data);
+    byte[] bytes = channel.out.toByteArray();
+    Assert.assertEquals(data.getBodySize(), bytes.length);
+    RawBodyReader reader = new RawBodyReader(
+        DataType.SIMPLE_LIST, data.getBodySize());
+    int pos = 0;
+    int piece = 7;
+    while (pos < bytes.length) {
+      int len = Math.min(piece, bytes.length - pos);
+      reader.read(ByteBuffer.wrap(bytes, pos, len));
+      pos += len;
+      piece = piece * 2 + 1;
+    }
+    Assert.assertTrue(reader.isDone());
+    List<Transferable> body = reader.getBody();
+    OffHeapDoubleArray doubles2 = (OffHeapDoubleArray) body.get(0);
+    OffHeapIntArray ints2 = (OffHeapIntArray) body.get(1);
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(i * 0.5, doubles2.get(i), 0);
+      Assert.assertEquals(-i, ints2.get(i));
+    }
+    reader.release();
+    data.release();
+  }
+}
@@ -0,0 +1,80 @@
+package edu.iu.harp.io;
+
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.Transferable;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
+
+public class SharedMemoryTest {
+  private static final int SIZE =
+      Constant.PIPELINE_SIZE / 4 + 3;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue(SharedMemory.isAvailable());
+  }
+
+  private Data createData() {
+    DoubleArray array = DoubleArray.create(SIZE, false);
+    for (int i = 0; i < SIZE; i++) {
+      array.get()[i] = i * 0.25;
+    }
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(array);
+    Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+        objs, DataUtil.getNumTransListBytes(objs), "shm");
+    data.encodeHead();
+    return data;
+  }
+
+  private void checkData(Data data) {
+    Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+        data.getHeadStatus());
+    Assert.assertEquals("shm", data.getOperationName());
+    DoubleArray array = (DoubleArray) data.getBody().get(0);
+    Assert.assertEquals(SIZE, array.size());
+    for (int i = 0; i < SIZE; i++) {
+      Assert.assertEquals(i * 0.25, array.get()[i], 0);
+    }
+    data.release();
+  }
+
+  private void writeAndRead(boolean isRaw) throws Exception {
+    Data data = createData();
+    if (!isRaw) {
+      data.encodeBody();
+    }
+    File file = SharedMemory.write(data, isRaw);
+    Assert.assertEquals(data.getBodySize(), file.length());
+    // Copy the head array as it is received
+    ByteArray head = data.getHeadArray();
+    ByteArray recvHead = ByteArray.create(head.size(), true);
+    System.arraycopy(head.get(), head.start(), recvHead.get(),
+        recvHead.start(), head.size());
+    data.release();
+    Data recvData = new Data(recvHead);
+    SharedMemory.read(file.getPath(), recvData, isRaw);
+    if (!isRaw) {
+      recvData.decodeBodyArray();
+    }
+    Assert.assertFalse(file.exists());
+    checkData(recvData);
+  }
+
+  @Test
+  public void testRaw() throws Exception {
+    writeAndRead(true);
+  }
+
+  @Test
+  public void testEncoded() throws Exception {
+    writeAndRead(false);
+  }
+}
@@ -0,0 +1,204 @@
+package edu.iu.harp.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class TextReaderTest {
+
+  private TextReader createReader(String text,
+    String separators, int bufferSize) {
+    return new TextReader(new ByteArrayInputStream(
+      text.getBytes(StandardCharsets.UTF_8)),
+      separators, bufferSize);
+  }
+
+  @Test
+  public void testWhitespace() throws Exception {
+    TextReader reader = createReader(
+      "  1\t2  3.5\r\n\n\t \n-4 5 -0.25e1", "", 16);
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(1, reader.readInt());
+    Assert.assertEquals(2L, reader.readLong());
+    Assert.assertEquals(3.5, reader.readDouble(), 0);
+    Assert.assertFalse(reader.hasNext());
+    // The blank lines are skipped
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(-4, reader.readInt());
+    Assert.assertEquals(5, reader.readInt());
+    Assert.assertEquals(-2.5, reader.readDouble(), 0);
+    Assert.assertFalse(reader.hasNext());
+    Assert.assertFalse(reader.nextLine());
+  }
+
+  @Test
+  public void testCSVAndLibSVM() throws Exception {
+    TextReader reader =
+      createReader("1.5,2,3\n4,5,6\n", ",", 16);
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(1.5, reader.readDouble(), 0);
+    // The rest of the line is skipped
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(4, reader.readInt());
+    Assert.assertFalse(reader.nextLine());
+    reader = createReader(
+      "+1 3:0.5 10:-2\n-1 7:1e-3\n", ":", 16);
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(1.0, reader.readDouble(), 0);
+    Assert.assertEquals(3, reader.readInt());
+    Assert.assertEquals(0.5, reader.readDouble(), 0);
+    Assert.assertEquals(10, reader.readInt());
+    Assert.assertEquals(-2.0, reader.readDouble(), 0);
+    Assert.assertFalse(reader.hasNext());
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals("-1", reader.readString());
+    Assert.assertEquals(7, reader.readInt());
+    Assert.assertEquals(1e-3, reader.readDouble(), 0);
+    Assert.assertFalse(reader.nextLine());
+  }
+
+  @Test
+  public void testAnyLine() throws Exception {
+    TextReader reader =
+      createReader("a 1 2\n\n \r\nb\n", "", 16);
+    Assert.assertTrue(reader.nextAnyLine());
+    Assert.assertEquals("a", reader.readString());
+    // The empty and the blank lines are kept
+    Assert.assertTrue(reader.nextAnyLine());
+    Assert.assertFalse(reader.hasNext());
+    Assert.assertTrue(reader.nextAnyLine());
+    Assert.assertFalse(reader.hasNext());
+    Assert.assertTrue(reader.nextAnyLine());
+    Assert.assertEquals("b", reader.readString());
+    Assert.assertFalse(reader.nextAnyLine());
+  }
+
+  @Test
+  public void testEmptyFields() throws Exception {
+    String text = "1, 2 ,3,\n4,,6\n,7\n";
+    TextReader reader = new TextReader(new ByteArrayInputStream(
+      text.getBytes(StandardCharsets.UTF_8)), ",", true, 16);
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(1, reader.readInt());
+    Assert.assertEquals(2, reader.readInt());
+    Assert.assertEquals(3, reader.readInt());
+    Assert.assertFalse(reader.hasNext());
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(4, reader.readInt());
+    try {
+      reader.readInt();
+      Assert.fail("The empty field is read");
+    } catch (NumberFormatException e) {
+    }
+    Assert.assertTrue(reader.nextLine());
+    try {
+      reader.readDouble();
+      Assert.fail("The empty field is read");
+    } catch (NumberFormatException e) {
+    }
+    Assert.assertFalse(reader.nextLine());
+    // Collapsed by default
+    reader = createReader(text, ",", 16);
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(4, reader.readInt());
+    Assert.assertEquals(6, reader.readInt());
+  }
+
+  @Test
+  public void testDoubles() throws Exception {
+    Random random = new Random(7);
+    StringBuilder text = new StringBuilder();
+    double[] values = new double[2000];
+    for (int i = 0; i < values.length; i++) {
+      switch (i % 4) {
+        case 0:
+          values[i] = random.nextDouble();
+          break;
+        case 1:
+          values[i] = (random.nextInt(2000000) - 1000000) / 1000.0;
+          break;
+        case 2:
+          values[i] = random.nextGaussian() * 1e30;
+          break;
+        default:
+          values[i] = random.nextInt(10) * 1e-5;
+      }
+      text.append(values[i]).append(i % 10 == 9 ? "\n" : " ");
+    }
+    text.append("NaN -Infinity 0.1 0.30000000000000004 "
+      + "123456789012345678901234567890 -0.0 1e-400\n");
+    // Tokens cross the end of the small buffer
+    TextReader reader = createReader(text.toString(), "", 7);
+    int i = 0;
+    while (reader.nextLine() && i < values.length) {
+      while (reader.hasNext()) {
+        Assert.assertEquals(values[i],
+          reader.readDouble(), 0);
+        i++;
+      }
+    }
+    Assert.assertEquals(values.length, i);
+    Assert.assertTrue(Double.isNaN(reader.readDouble()));
+    Assert.assertEquals(Double.NEGATIVE_INFINITY,
+      reader.readDouble(), 0);
+    Assert.assertEquals(0.1, reader.readDouble(), 0);
+    Assert.assertEquals(0.30000000000000004,
+      reader.readDouble(), 0);
+    Assert.assertEquals(1.2345678901234568E29,
+      reader.readDouble(), 0);
+    Assert.assertEquals(Double.doubleToLongBits(-0.0),
+      Double.doubleToLongBits(reader.readDouble()));
+    Assert.assertEquals(0.0, reader.readDouble(), 0);
+    Assert.assertFalse(reader.nextLine());
+  }
+
+  @Test
+  public void testLongs() throws Exception {
+    TextReader reader = createReader(
+      "9223372036854775807 -9223372036854775808 "
+        + "2147483648 9223372036854775808 1x 7", "",
+      16);
+    Assert.assertTrue(reader.nextLine());
+    Assert.assertEquals(Long.MAX_VALUE, reader.readLong());
+    Assert.assertEquals(Long.MIN_VALUE, reader.readLong());
+    try {
+      reader.readInt();
+      Assert.fail();
+    } catch (NumberFormatException e) {
+    }
+    // The invalid token is not consumed
+    Assert.assertEquals("2147483648", reader.readString());
+    try {
+      reader.readLong();
+      Assert.fail();
+    } catch (NumberFormatException e) {
+    }
+    reader.readString();
+    try {
+      reader.readInt();
+      Assert.fail();
+    } catch (NumberFormatException e) {
+    }
+    reader.readString();
+    Assert.assertEquals(7, reader.readInt());
+    try {
+      reader.readInt();
+      Assert.fail();
+    } catch (IOException e) {
+    }
+  }
+
+  @Test
+  public void testSeparatorsOf() {
+    Assert.assertEquals("", TextReader.separatorsOf("\\s+"));
+    Assert.assertEquals(",", TextReader.separatorsOf(","));
+    Assert.assertEquals("\t", TextReader.separatorsOf("\\t"));
+    Assert.assertEquals(",;|",
+      TextReader.separatorsOf("[,;]\\|"));
+  }
+}
@@ -0,0 +1,96 @@
+package edu.iu.harp.kernel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class DistanceKernelTest {
+
+  private double distance(double[] points, int p, double[] centroids,
+      int c, int dimension) {
+    double distance = 0.0;
+    for (int l = 0; l < dimension; l++) {
+      double diff = points[p + l] - centroids[c + l];
+      distance += diff * diff;
+    }
+    return distance;
+  }
+
+  private void checkAssign(int dimension, int numPoints, int numCentroids,
+      long seed) {
+    Random random = new Random(seed);
+    // Points with a slot ahead as in the KMeans arrays
+    int stride = dimension + 1;
+    double[] points = new double[numPoints * stride];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = random.nextDouble() * 10;
+    }
+    double[] centroids = new double[numCentroids * dimension];
+    for (int i = 0; i < centroids.length; i++) {
+      centroids[i] = random.nextDouble() * 10;
+    }
+    DistanceKernel kernel = new DistanceKernel(dimension);
+    kernel.setNumCentroids(numCentroids);
+    for (int j = 0; j < numCentroids; j++) {
+      kernel.setCentroid(j, centroids, j * dimension);
+    }
+    double[] minDistances = new double[numPoints];
+    Arrays.fill(minDistances, Double.MAX_VALUE);
+    int[] cenIDs = new int[numPoints];
+    kernel.assign(points, 1, stride, numPoints, minDistances, cenIDs);
+    for (int i = 0; i < numPoints; i++) {
+      double minDistance = Double.MAX_VALUE;
+      int minCenID = 0;
+      for (int j = 0; j < numCentroids; j++) {
+        double distance = distance(points, i * stride + 1, centroids,
+            j * dimension, dimension);
+        if (distance < minDistance) {
+          minDistance = distance;
+          minCenID = j;
+        }
+      }
+      Assert.assertEquals(minDistance, minDistances[i],
+          1e-9 * (1 + minDistance));
+      // Random points have no near ties
+      Assert.assertEquals(minCenID, cenIDs[i]);
+    }
+  }
+
+  @Test
+  public void testAssign() {
+    // Tails of point pairs and centroid quads
+    checkAssign(3, 7, 5, 0);
+    checkAssign(64, 101, 67, 1);
+    // More than one tile of each
+    checkAssign(100, 301, 333, 2);
+  }
+
+  @Test
+  public void testCurrentCentroid() {
+    DistanceKernel kernel = new DistanceKernel(2);
+    kernel.setNumCentroids(3);
+    kernel.setCentroid(0, new double[] {0, 0}, 0);
+    kernel.setCentroid(1, new double[] {9, 3, 4}, 1);
+    kernel.setCentroid(2, new double[] {3, 4}, 0);
+    Assert.assertEquals(3, kernel.getNumCentroids());
+    double[] points = {3, 4, 10, 10};
+    // Equal is not nearer, the first point keeps its centroid
+    double[] minDistances = {0.0, Double.MAX_VALUE};
+    int[] cenIDs = {-1, -1};
+    kernel.assign(points, 0, 2, 2, minDistances, cenIDs);
+    Assert.assertEquals(-1, cenIDs[0]);
+    Assert.assertEquals(0.0, minDistances[0], 0.0);
+    // Ties go to the lower index
+    Assert.assertEquals(1, cenIDs[1]);
+    Assert.assertEquals(85.0, minDistances[1], 0.0);
+    // Fewer centroids reuse the arrays
+    kernel.setNumCentroids(1);
+    minDistances = new double[] {Double.MAX_VALUE};
+    cenIDs = new int[] {-1};
+    kernel.assign(points, 2, 2, 1, minDistances, cenIDs);
+    Assert.assertEquals(0, cenIDs[0]);
+    Assert.assertEquals(200.0, minDistances[0], 0.0);
+  }
+}
@@ -0,0 +1,82 @@
+package edu.iu.harp.keyval;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+public class SparseKVBlockTest {
+
+  private SparseKVBlock writeAndRead(SparseKVBlock block)
+      throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    block.write(new DataOutputStream(bytes));
+    Assert.assertEquals(block.getNumWriteBytes(), bytes.size());
+    SparseKVBlock result = new SparseKVBlock();
+    result.read(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+    return result;
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    SparseKVBlock block = new SparseKVBlock();
+    block.initialize(SparseKVBlock.LONG_VALUE);
+    // A dense range, sparse keys and negative keys
+    for (int i = 3000; i >= 0; i--) {
+      block.add(i, -i);
+    }
+    block.add(Long.MAX_VALUE, 1L);
+    block.add(Long.MIN_VALUE, 2L);
+    block.add(-7, Long.MIN_VALUE);
+    block.add(1L << 40, 3L);
+    SparseKVBlock result = writeAndRead(block);
+    Assert.assertEquals(SparseKVBlock.LONG_VALUE, result.getValueType());
+    Assert.assertEquals(block.size(), result.size());
+    for (int i = 0; i < block.size(); i++) {
+      Assert.assertEquals(block.getKey(i), result.getKey(i));
+      Assert.assertEquals(block.getVal(i), result.getVal(i));
+    }
+    Assert.assertEquals(Long.MIN_VALUE, result.getKey(0));
+    Assert.assertEquals(-7, result.getKey(1));
+    Assert.assertEquals(Long.MAX_VALUE, result.getKey(result.size() - 1));
+  }
+
+  @Test
+  public void testDenseKeys() throws Exception {
+    SparseKVBlock block = new SparseKVBlock();
+    block.initialize(SparseKVBlock.DOUBLE_VALUE);
+    for (int i = 0; i < 4096; i++) {
+      block.add(i, Double.doubleToRawLongBits(i / 2.0));
+    }
+    // One bit per key
+    Assert.assertTrue(block.getNumWriteBytes() < 4096 * 8 + 4096 / 4);
+    SparseKVBlock result = writeAndRead(block);
+    for (int i = 0; i < 4096; i++) {
+      Assert.assertEquals(i, result.getKey(i));
+      Assert.assertEquals(i / 2.0,
+          Double.longBitsToDouble(result.getVal(i)), 0);
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    SparseKVBlock block = new SparseKVBlock();
+    block.initialize(SparseKVBlock.INT_VALUE);
+    block.add(5, 1);
+    block.add(1, 1);
+    SparseKVBlock other = new SparseKVBlock();
+    other.initialize(SparseKVBlock.INT_VALUE);
+    other.add(9, 2);
+    other.add(5, 2);
+    block.merge(other, (v1, v2) -> v1 + v2);
+    Assert.assertEquals(3, block.size());
+    Assert.assertEquals(1, block.getKey(0));
+    Assert.assertEquals(5, block.getKey(1));
+    Assert.assertEquals(3, block.getVal(1));
+    Assert.assertEquals(9, block.getKey(2));
+  }
+}
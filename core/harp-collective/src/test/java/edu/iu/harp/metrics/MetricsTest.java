@@ -0,0 +1,113 @@
+package edu.iu.harp.metrics;
+
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.ResourcePool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+public class MetricsTest {
+
+  @Before
+  public void setUp() {
+    Metrics.reset();
+    Metrics.setEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    Metrics.setEnabled(false);
+    Metrics.reset();
+  }
+
+  @Test
+  public void testOperationPrefix() {
+    Assert.assertEquals("allreduce",
+        Metrics.getOperationPrefix("allreduce-12"));
+    Assert.assertEquals("regroup",
+        Metrics.getOperationPrefix("regroup_3"));
+    Assert.assertEquals("iter",
+        Metrics.getOperationPrefix("iter7"));
+    Assert.assertEquals("handshake",
+        Metrics.getOperationPrefix("handshake"));
+    Assert.assertEquals("42", Metrics.getOperationPrefix("42"));
+  }
+
+  @Test
+  public void testRecord() {
+    Metrics.recordCall("kmeans", "allreduce-0", 2000000L);
+    Metrics.recordCall("kmeans", "allreduce-1", 4000000L);
+    Metrics.recordBytesSent("kmeans", "allreduce-1", 100L);
+    Metrics.recordBytesReceived("kmeans", "allreduce-1", 60L);
+    Metrics.recordWait("kmeans", "allreduce-1", 1000000L);
+    Metrics.recordCall("kmeans", null, 1L);
+    OperationMetrics m =
+        Metrics.getOperations().get("kmeans/allreduce");
+    Assert.assertEquals(1, Metrics.getOperations().size());
+    Assert.assertEquals(2L, m.getCalls());
+    Assert.assertEquals(6L, m.getWallTimeMillis());
+    Assert.assertEquals(4L, m.getMaxWallTimeMillis());
+    Assert.assertEquals(100L, m.getBytesSent());
+    Assert.assertEquals(60L, m.getBytesReceived());
+    Assert.assertEquals(1L, m.getWaitTimeMillis());
+    Metrics.setEnabled(false);
+    Metrics.recordCall("kmeans", "allreduce-2", 1L);
+    Assert.assertEquals(2L, m.getCalls());
+  }
+
+  @Test
+  public void testPool() {
+    PoolMetrics pool = new PoolMetrics("test", 8);
+    pool.get(1000, false);
+    pool.get(1024, true);
+    pool.get(10, true);
+    Assert.assertEquals(2L, pool.getHits());
+    Assert.assertEquals(1L, pool.getMisses());
+    Assert.assertEquals(2.0 / 3.0, pool.getHitRate(), 1e-9);
+    Assert.assertEquals(3L, pool.getLiveArrays());
+    Assert.assertEquals(2L,
+        (long) pool.getLiveArraysBySizeClass().get("1024"));
+    Assert.assertEquals(10L * 8,
+        (long) pool.getLiveBytesBySizeClass().get("16"));
+    pool.release(1000);
+    pool.release(10);
+    Assert.assertEquals(1L, pool.getLiveArrays());
+    Assert.assertEquals(1024L * 8, pool.getLiveBytes());
+  }
+
+  @Test
+  public void testArrayPool() {
+    // The pools register their metrics when created
+    ResourcePool.get();
+    PoolMetrics pool = Metrics.getPools().get("DoublesPool");
+    Assert.assertNotNull(pool);
+    long live = pool.getLiveArrays();
+    DoubleArray array = DoubleArray.create(100, false);
+    Assert.assertEquals(live + 1, pool.getLiveArrays());
+    array.release();
+    Assert.assertEquals(live, pool.getLiveArrays());
+  }
+
+  @Test
+  public void testWriteText() throws Exception {
+    Metrics.recordCall("ctx", "bcast-1", 1000000000L);
+    Metrics.recordBytesSent("ctx", "bcast-1", 42L);
+    Metrics.registerPool(new PoolMetrics("text", 1));
+    Metrics.getPools().get("text").get(8, false);
+    StringWriter writer = new StringWriter();
+    Metrics.writeText(writer);
+    String text = writer.toString();
+    Assert.assertTrue(text.contains(
+        "harp_operation_calls_total{operation=\"ctx/bcast\"} 1\n"));
+    Assert.assertTrue(text.contains(
+        "harp_operation_wall_seconds_total{operation=\"ctx/bcast\"} 1.0\n"));
+    Assert.assertTrue(text.contains(
+        "harp_operation_sent_bytes_total{operation=\"ctx/bcast\"} 42\n"));
+    Assert.assertTrue(text.contains(
+        "harp_pool_live_bytes{pool=\"text\",size_class=\"8\"} 8\n"));
+    Assert.assertTrue(text.contains("# TYPE harp_connections gauge"));
+  }
+}
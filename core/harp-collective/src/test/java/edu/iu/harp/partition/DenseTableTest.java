@@ -0,0 +1,92 @@
+package edu.iu.harp.partition;
+
+import edu.iu.harp.combiner.IntArrCombiner;
+import edu.iu.harp.combiner.Operation;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.Transferable;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class DenseTableTest {
+
+  private Partition<IntArray> createPartition(int id, int value) {
+    int[] array = new int[4];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = value;
+    }
+    return new Partition<>(id, new IntArray(array, 0, array.length));
+  }
+
+  @Test
+  public void testAddAndGet() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM), 2);
+    Assert.assertTrue(table.isEmpty());
+    Assert.assertEquals(PartitionStatus.ADDED,
+        table.addPartition(createPartition(5, 1)));
+    Assert.assertEquals(PartitionStatus.ADDED,
+        table.addPartition(createPartition(2, 1)));
+    Assert.assertEquals(PartitionStatus.COMBINED,
+        table.addPartition(createPartition(5, 2)));
+    Assert.assertEquals(2, table.getNumPartitions());
+    Assert.assertEquals(6, table.getIDBound());
+    Assert.assertEquals(3, table.get(5).get()[0]);
+    Assert.assertNull(table.get(3));
+    Assert.assertNull(table.getPartition(100));
+    Assert.assertNull(table.getPartition(-1));
+    Assert.assertEquals(5, table.removePartition(5).id());
+    Assert.assertEquals(3, table.getIDBound());
+    Assert.assertEquals(1, table.getNumPartitions());
+  }
+
+  @Test
+  public void testOrderedIteration() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM));
+    int[] ids = {7, 0, 3, 20, 1};
+    for (int id : ids) {
+      table.addPartition(createPartition(id, id));
+    }
+    int[] sorted = {0, 1, 3, 7, 20};
+    int i = 0;
+    for (int id : table.getPartitionIDs()) {
+      Assert.assertEquals(sorted[i++], id);
+    }
+    i = 0;
+    for (Partition<IntArray> partition : table.getPartitions()) {
+      Assert.assertEquals(sorted[i], partition.id());
+      Assert.assertEquals(sorted[i++], partition.get().get()[0]);
+    }
+    Assert.assertTrue(table.getPartitionIDs().contains(20));
+    IntIterator iterator = table.getPartitionIDs().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.nextInt() % 2 == 1) {
+        iterator.remove();
+      }
+    }
+    Assert.assertEquals(2, table.getNumPartitions());
+    Assert.assertEquals(21, table.getIDBound());
+    table.release();
+    Assert.assertTrue(table.isEmpty());
+    Assert.assertEquals(0, table.getIDBound());
+  }
+
+  @Test
+  public void testAddPartitionsToTable() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM));
+    table.addPartition(createPartition(0, 1));
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(createPartition(0, 2));
+    partitions.add(createPartition(1, 3));
+    partitions.add(createPartition(1, 4));
+    PartitionUtil.addPartitionsToTable(partitions, table);
+    Assert.assertEquals(2, table.getNumPartitions());
+    Assert.assertEquals(3, table.get(0).get()[0]);
+    Assert.assertEquals(7, table.get(1).get()[0]);
+  }
+}
@@ -1,5 +1,6 @@
 package edu.iu.harp.partition;
 
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -12,4 +13,60 @@ public class PartitionerTest {
     Assert.assertEquals(0, partitioner.getWorkerID(1000));
     Assert.assertEquals(9, partitioner.getWorkerID(1009));
   }
+
+  @Test
+  public void testLPT() {
+    LPTPartitioner partitioner = new LPTPartitioner(3);
+    Int2LongOpenHashMap bytes = new Int2LongOpenHashMap();
+    long[] sizes = {7, 6, 5, 4, 3, 3, 2};
+    for (int i = 0; i < sizes.length; i++) {
+      bytes.put(i, sizes[i]);
+    }
+    partitioner.assign(bytes);
+    // 7+3, 6+3+2, 5+4
+    long[] workerBytes = partitioner.getWorkerBytes();
+    Assert.assertArrayEquals(new long[]{10, 11, 9}, workerBytes);
+    Assert.assertEquals(0, partitioner.getWorkerID(0));
+    Assert.assertEquals(1, partitioner.getWorkerID(1));
+    Assert.assertEquals(2, partitioner.getWorkerID(2));
+    // Not assigned, the default is used
+    Assert.assertEquals(1, partitioner.getWorkerID(100));
+  }
+
+  @Test
+  public void testConsistentHash() {
+    int numWorkers = 8;
+    ConsistentHashPartitioner partitioner =
+        new ConsistentHashPartitioner(numWorkers);
+    ConsistentHashPartitioner other =
+        new ConsistentHashPartitioner(numWorkers);
+    int[] counts = new int[numWorkers];
+    for (int i = 0; i < 8000; i++) {
+      int workerID = partitioner.getWorkerID(i);
+      Assert.assertEquals(workerID, other.getWorkerID(i));
+      counts[workerID]++;
+    }
+    for (int count : counts) {
+      Assert.assertTrue(count > 500 && count < 1500);
+    }
+    // Skewed sizes are bounded by the balance factor
+    Int2LongOpenHashMap bytes = new Int2LongOpenHashMap();
+    for (int i = 0; i < 1000; i++) {
+      bytes.put(i, i % 100 == 0 ? 1000 : 10);
+    }
+    partitioner.assign(bytes);
+    long total = 10 * 1000 + 990 * 10;
+    long capacity = (long) Math.ceil(
+        ConsistentHashPartitioner.DEFAULT_BALANCE_FACTOR * total
+            / numWorkers);
+    for (long workerBytes : partitioner.getWorkerBytes()) {
+      Assert.assertTrue(workerBytes < capacity + 1000);
+    }
+    // The same sizes give the same assignment
+    other.assign(bytes);
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(partitioner.getWorkerID(i),
+          other.getWorkerID(i));
+    }
+  }
 }
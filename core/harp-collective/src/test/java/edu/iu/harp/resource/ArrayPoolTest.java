@@ -0,0 +1,125 @@
+package edu.iu.harp.resource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ArrayPoolTest {
+  // Larger than the magazine limit
+  private static final int LARGE_SIZE = (1 << 20) / 8 * 2;
+
+  @Test
+  public void testDepot() {
+    DoublesPool pool = new DoublesPool();
+    double[] array = pool.getArray(LARGE_SIZE, true);
+    Assert.assertTrue(pool.releaseArray(array));
+    Assert.assertSame(array, pool.getArray(LARGE_SIZE, true));
+    // Not a power of two
+    double[] other = pool.getArray(LARGE_SIZE + 1, false);
+    Assert.assertTrue(pool.releaseArray(other));
+    Assert.assertSame(other, pool.getArray(LARGE_SIZE + 1, false));
+  }
+
+  @Test
+  public void testMaxRetainedBytes() {
+    DoublesPool pool = new DoublesPool();
+    pool.setMaxRetainedBytes(LARGE_SIZE * 8L);
+    double[] first = pool.getArray(LARGE_SIZE, true);
+    double[] second = pool.getArray(LARGE_SIZE, true);
+    Assert.assertTrue(pool.releaseArray(first));
+    // Over the limit, not retained
+    Assert.assertTrue(pool.releaseArray(second));
+    Assert.assertSame(first, pool.getArray(LARGE_SIZE, true));
+    Assert.assertNotSame(second, pool.getArray(LARGE_SIZE, true));
+  }
+
+  @Test
+  public void testMagazineBytes() {
+    DoublesPool pool = new DoublesPool();
+    pool.setMaxRetainedBytes(100 * 8L * 2);
+    double[] first = pool.getArray(100, false);
+    double[] second = pool.getArray(100, false);
+    double[] third = pool.getArray(100, false);
+    Assert.assertTrue(pool.releaseArray(first));
+    Assert.assertTrue(pool.releaseArray(second));
+    // The magazine counts toward the limit
+    Assert.assertTrue(pool.releaseArray(third));
+    Assert.assertSame(second, pool.getArray(100, false));
+    Assert.assertSame(first, pool.getArray(100, false));
+    double[] other = pool.getArray(100, false);
+    Assert.assertNotSame(third, other);
+    // The cleaning drops the counted bytes
+    Assert.assertTrue(pool.releaseArray(other));
+    Assert.assertTrue(pool.releaseArray(first));
+    pool.clean();
+    Assert.assertTrue(pool.releaseArray(second));
+    Assert.assertTrue(pool.releaseArray(third));
+    Assert.assertSame(third, pool.getArray(100, false));
+    Assert.assertSame(second, pool.getArray(100, false));
+  }
+
+  @Test
+  public void testClean() {
+    DoublesPool pool = new DoublesPool();
+    double[] small = pool.getArray(100, false);
+    double[] large = pool.getArray(LARGE_SIZE, true);
+    pool.releaseArray(small);
+    pool.releaseArray(large);
+    pool.clean();
+    Assert.assertNotSame(small, pool.getArray(100, false));
+    Assert.assertNotSame(large, pool.getArray(LARGE_SIZE, true));
+  }
+
+  @Test
+  public void testLeakTracking() {
+    DoublesPool pool = new DoublesPool();
+    pool.setLeakTracking(true);
+    double[] array = pool.getArray(100, false);
+    Assert.assertTrue(pool.releaseArray(array));
+    // Release twice
+    Assert.assertFalse(pool.releaseArray(array));
+    // Not from the pool
+    Assert.assertFalse(pool.releaseArray(new double[100]));
+    pool.setLeakTracking(false);
+    Assert.assertTrue(pool.releaseArray(new double[100]));
+  }
+
+  @Test
+  public void testReleaseOnOtherThreads() throws Exception {
+    final DoublesPool pool = new DoublesPool();
+    final ConcurrentLinkedQueue<double[]> queue =
+        new ConcurrentLinkedQueue<>();
+    final int numArrays = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final boolean isProducer = i % 2 == 0;
+      futures.add(executor.submit(() -> {
+        for (int j = 0; j < numArrays; j++) {
+          if (isProducer) {
+            double[] array = pool.getArray(64, false);
+            Assert.assertEquals(64, array.length);
+            queue.add(array);
+          } else {
+            double[] array = null;
+            while ((array = queue.poll()) == null) {
+              Thread.yield();
+            }
+            Assert.assertTrue(pool.releaseArray(array));
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    Assert.assertTrue(queue.isEmpty());
+  }
+}
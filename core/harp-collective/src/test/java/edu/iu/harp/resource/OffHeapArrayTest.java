@@ -0,0 +1,81 @@
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.partition.Partition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+
+public class OffHeapArrayTest {
+
+  @Test
+  public void testGetAndSet() {
+    OffHeapDoubleArray doubles = OffHeapDoubleArray.create(100);
+    OffHeapIntArray ints = OffHeapIntArray.create(100);
+    for (int i = 0; i < 100; i++) {
+      doubles.set(i, i * 0.5);
+      ints.set(i, -i);
+    }
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(i * 0.5, doubles.get(i), 0);
+      Assert.assertEquals(i * 0.5, doubles.asDoubleBuffer().get(i), 0);
+      Assert.assertEquals(-i, ints.get(i));
+    }
+    Assert.assertEquals(100, doubles.asDoubleBuffer().remaining());
+    Assert.assertEquals(805, doubles.getNumEnocdeBytes());
+    Assert.assertEquals(405, ints.getNumEnocdeBytes());
+    doubles.release();
+    ints.release();
+  }
+
+  @Test
+  public void testReuse() {
+    // Cut from the slab and allocated alone
+    int[] sizes = {10, (1 << 20) / 4 + 1, (1 << 24) / 8 + 3};
+    for (int size : sizes) {
+      OffHeapDoubleArray array = OffHeapDoubleArray.create(size);
+      ByteBuffer block = array.get();
+      array.release();
+      array = OffHeapDoubleArray.create(size);
+      Assert.assertSame(block, array.get());
+      array.release();
+    }
+    Assert.assertNull(OffHeapIntArray.create(0));
+  }
+
+  @Test
+  public void testEncodeAndDecode() {
+    // Larger than the copy chunk
+    int size = 5000;
+    OffHeapDoubleArray doubles = OffHeapDoubleArray.create(size);
+    OffHeapIntArray ints = OffHeapIntArray.create(size);
+    for (int i = 0; i < size; i++) {
+      doubles.set(i, i + 0.25);
+      ints.set(i, i * 3);
+    }
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<Simple>(1, doubles));
+    partitions.add(new Partition<Simple>(2, ints));
+    ByteArray bytes = DataUtil.encodeTransList(partitions);
+    Assert.assertNotNull(bytes);
+    Assert.assertEquals(DataType.OFF_HEAP_DOUBLE_ARRAY, bytes.get()[0]);
+    List<Transferable> decoded = DataUtil.decodePartitionList(bytes);
+    Assert.assertEquals(2, decoded.size());
+    OffHeapDoubleArray doubles2 = (OffHeapDoubleArray)
+        ((Partition<?>) decoded.get(0)).get();
+    OffHeapIntArray ints2 = (OffHeapIntArray)
+        ((Partition<?>) decoded.get(1)).get();
+    Assert.assertEquals(size, doubles2.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(i + 0.25, doubles2.get(i), 0);
+      Assert.assertEquals(i * 3, ints2.get(i));
+    }
+    DataUtil.releaseTransList(decoded);
+    DataUtil.releaseTransList(partitions);
+    bytes.release();
+  }
+}
@@ -0,0 +1,130 @@
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.keyval.Long2DoubleKVPartition;
+import edu.iu.harp.keyval.TypeDoubleCombiner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+public class WritableRegistryTest {
+
+  @After
+  public void tearDown() {
+    WritableRegistry.clear();
+  }
+
+  private Long2DoubleKVPartition createPartition() {
+    Long2DoubleKVPartition partition = new Long2DoubleKVPartition();
+    partition.initialize();
+    partition.putKeyVal(7L, 1.5, new TypeDoubleCombiner());
+    return partition;
+  }
+
+  private byte[] encode(Writable obj) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    obj.encode(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testEncodeWithTypeID() throws Exception {
+    Long2DoubleKVPartition partition = createPartition();
+    int nameSize = partition.getNumEnocdeBytes();
+    Assert.assertEquals(DataType.WRITABLE, encode(partition)[0]);
+    Assert.assertEquals(0,
+        WritableRegistry.register(Long2DoubleKVPartition.class));
+    byte[] bytes = encode(partition);
+    Assert.assertEquals(DataType.REGISTERED_WRITABLE, bytes[0]);
+    Assert.assertEquals(partition.getNumEnocdeBytes(), bytes.length);
+    Assert.assertTrue(bytes.length < nameSize);
+    List<Transferable> objs = DataUtil.decodeTransList(
+        new DataInputStream(new ByteArrayInputStream(bytes)),
+        DataType.SIMPLE_LIST);
+    Assert.assertNotNull(objs);
+    Assert.assertEquals(1, objs.size());
+    Long2DoubleKVPartition result =
+        (Long2DoubleKVPartition) objs.get(0);
+    Assert.assertEquals(1.5, result.getVal(7L), 0);
+    result.release();
+  }
+
+  @Test
+  public void testFactory() {
+    List<Writable> created = new LinkedList<>();
+    WritableRegistry.register(Long2DoubleKVPartition.class, () -> {
+      Long2DoubleKVPartition obj = new Long2DoubleKVPartition();
+      created.add(obj);
+      return obj;
+    });
+    Writable obj = Writable.newInstance(Long2DoubleKVPartition.class);
+    Assert.assertEquals(1, created.size());
+    Assert.assertSame(created.get(0), obj);
+  }
+
+  @Test
+  public void testSetClassNames() {
+    WritableRegistry.register(Long2DoubleKVPartition.class);
+    WritableRegistry.register(RegisteredWritable.class);
+    // The IDs of the master
+    Assert.assertTrue(WritableRegistry.setClassNames(Arrays.asList(
+        RegisteredWritable.class.getName(),
+        Long2DoubleKVPartition.class.getName())));
+    Assert.assertEquals(0,
+        WritableRegistry.getTypeID(RegisteredWritable.class));
+    Assert.assertEquals(1,
+        WritableRegistry.getTypeID(Long2DoubleKVPartition.class));
+    Assert.assertSame(Long2DoubleKVPartition.class,
+        WritableRegistry.getClass(1));
+    Assert.assertFalse(WritableRegistry.setClassNames(
+        Arrays.asList("edu.iu.harp.NoSuchWritable")));
+  }
+
+  @Test
+  public void testSeal() {
+    WritableRegistry.register(Long2DoubleKVPartition.class);
+    WritableRegistry.seal();
+    Assert.assertTrue(WritableRegistry.isSealed());
+    // Registered classes keep their IDs
+    Assert.assertEquals(0,
+        WritableRegistry.register(Long2DoubleKVPartition.class));
+    Assert.assertEquals(WritableRegistry.UNREGISTERED,
+        WritableRegistry.register(RegisteredWritable.class));
+    Assert.assertFalse(WritableRegistry.setClassNames(
+        Arrays.asList(RegisteredWritable.class.getName())));
+    Assert.assertEquals(WritableRegistry.UNREGISTERED,
+        WritableRegistry.getTypeID(RegisteredWritable.class));
+    WritableRegistry.clear();
+    Assert.assertFalse(WritableRegistry.isSealed());
+    Assert.assertEquals(0,
+        WritableRegistry.register(RegisteredWritable.class));
+  }
+
+  public static class RegisteredWritable extends Writable {
+    @Override
+    public int getNumWriteBytes() {
+      return 0;
+    }
+
+    @Override
+    public void write(java.io.DataOutput out) {
+    }
+
+    @Override
+    public void read(java.io.DataInput in) {
+    }
+
+    @Override
+    public void clear() {
+    }
+  }
+}
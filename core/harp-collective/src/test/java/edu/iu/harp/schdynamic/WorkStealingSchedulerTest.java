@@ -0,0 +1,183 @@
+package edu.iu.harp.schdynamic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class WorkStealingSchedulerTest {
+  private static final int NUM_THREADS = 4;
+
+  private static class SquareTask implements Task<Integer, Integer> {
+    @Override
+    public Integer run(Integer input) throws Exception {
+      if (input < 0) {
+        throw new Exception("Negative input");
+      }
+      return input * input;
+    }
+  }
+
+  private WorkStealingScheduler<Integer, Integer, SquareTask>
+      createScheduler() {
+    List<SquareTask> tasks = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      tasks.add(new SquareTask());
+    }
+    return new WorkStealingScheduler<>(tasks);
+  }
+
+  private long drain(
+      WorkStealingScheduler<Integer, Integer, SquareTask> scheduler) {
+    long sum = 0;
+    while (scheduler.hasOutput()) {
+      Integer output = scheduler.waitForOutput();
+      if (output != null) {
+        sum += output;
+      }
+    }
+    return sum;
+  }
+
+  private long sumOfSquares(int n) {
+    long sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += (long) i * i;
+    }
+    return sum;
+  }
+
+  @Test
+  public void testSubmit() {
+    WorkStealingScheduler<Integer, Integer, SquareTask> scheduler =
+        createScheduler();
+    // Submitted before start
+    scheduler.submit(3);
+    scheduler.start();
+    for (int i = 0; i < 100; i++) {
+      scheduler.submit(i);
+    }
+    Assert.assertEquals(sumOfSquares(100) + 9, drain(scheduler));
+    Assert.assertFalse(scheduler.hasOutput());
+    Assert.assertNull(scheduler.waitForOutput());
+    scheduler.stop();
+  }
+
+  @Test
+  public void testSubmitAll() {
+    WorkStealingScheduler<Integer, Integer, SquareTask> scheduler =
+        createScheduler();
+    scheduler.start();
+    Integer[] inputs = new Integer[1001];
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      inputs[i] = i;
+      list.add(i);
+    }
+    scheduler.submitAll(inputs);
+    scheduler.submitAll(list);
+    Assert.assertEquals(sumOfSquares(1000) * 2, drain(scheduler));
+    scheduler.stop();
+  }
+
+  @Test
+  public void testError() {
+    WorkStealingScheduler<Integer, Integer, SquareTask> scheduler =
+        createScheduler();
+    scheduler.start();
+    scheduler.submit(-1);
+    scheduler.submit(2);
+    Assert.assertEquals(4, drain(scheduler));
+    Assert.assertTrue(scheduler.hasError());
+    Assert.assertFalse(scheduler.hasError());
+    scheduler.stop();
+  }
+
+  @Test
+  public void testPauseNow() {
+    WorkStealingScheduler<Integer, Integer, SquareTask> scheduler =
+        createScheduler();
+    Integer[] inputs = new Integer[10000];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = i;
+    }
+    scheduler.start();
+    scheduler.submitAll(inputs);
+    scheduler.pauseNow();
+    // Only the processed inputs are waited for
+    long sum = drain(scheduler);
+    scheduler.start();
+    sum += drain(scheduler);
+    Assert.assertEquals(sumOfSquares(inputs.length), sum);
+    // The queued inputs are dropped after cleaning
+    scheduler.pauseNow();
+    scheduler.submitAll(inputs);
+    scheduler.cleanInputQueue();
+    scheduler.start();
+    Assert.assertFalse(scheduler.hasOutput());
+    scheduler.stop();
+  }
+
+  @Test
+  public void testPauseAndStop() {
+    WorkStealingScheduler<Integer, Integer, SquareTask> scheduler =
+        createScheduler();
+    scheduler.start();
+    for (int i = 0; i < 1000; i++) {
+      scheduler.submit(i);
+    }
+    // All the queued inputs are processed
+    scheduler.pause();
+    scheduler.submit(10);
+    Assert.assertEquals(sumOfSquares(1000), drain(scheduler));
+    scheduler.stop();
+    Assert.assertEquals(100, drain(scheduler));
+    // Restart after stop
+    scheduler.start();
+    scheduler.submit(5);
+    Assert.assertEquals(25, drain(scheduler));
+    scheduler.stop();
+  }
+
+  @Test
+  public void testParallelFor() {
+    WorkStealingScheduler<Integer, Integer, SquareTask> scheduler =
+        createScheduler();
+    Assert.assertFalse(scheduler.parallelFor(0, 10, 1,
+        (task, start, end) -> {
+        }));
+    scheduler.start();
+    final int n = 100000;
+    final AtomicLongArray counts = new AtomicLongArray(n);
+    Assert.assertTrue(scheduler.parallelFor(0, n, 100,
+        (task, start, end) -> {
+          Assert.assertTrue(end - start <= 100);
+          for (int i = start; i < end; i++) {
+            counts.incrementAndGet(i);
+          }
+        }));
+    for (int i = 0; i < n; i++) {
+      Assert.assertEquals(1, counts.get(i));
+    }
+    Assert.assertFalse(scheduler.parallelFor(0, n, 1000,
+        (task, start, end) -> {
+          if (start == 0) {
+            throw new Exception("Failed range");
+          }
+        }));
+    // An error must not leave the range uncounted
+    Assert.assertFalse(scheduler.parallelFor(0, n, 1000,
+        (task, start, end) -> {
+          if (start == 0) {
+            throw new AssertionError("Failed range");
+          }
+        }));
+    Assert.assertTrue(scheduler.parallelFor(0, 10, 1,
+        (task, start, end) -> {
+        }));
+    Assert.assertFalse(scheduler.hasOutput());
+    scheduler.stop();
+  }
+}
@@ -0,0 +1,100 @@
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.resource.ByteArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MuxInputStreamTest {
+
+  private ByteArray createFrame(int value) {
+    ByteArray array = ByteArray.create(4, true);
+    for (int i = 0; i < 4; i++) {
+      array.get()[array.start() + i] = (byte) value;
+    }
+    return array;
+  }
+
+  private void fill(MuxInputStream stream) {
+    for (int i = 0; i < Constant.MUX_MAX_PENDING_FRAMES; i++) {
+      boolean isFull = stream.offer(createFrame(i));
+      Assert.assertEquals(
+          i == Constant.MUX_MAX_PENDING_FRAMES - 1, isFull);
+    }
+  }
+
+  @Test
+  public void testAwaitRoom() throws Exception {
+    MuxInputStream stream = new MuxInputStream();
+    fill(stream);
+    CountDownLatch resumed = new CountDownLatch(1);
+    Thread reader = new Thread(() -> {
+      try {
+        stream.awaitRoom();
+        resumed.countDown();
+      } catch (IOException e) {
+      }
+    });
+    reader.start();
+    // The channel reader waits while the stream is full
+    Assert.assertFalse(resumed.await(100, TimeUnit.MILLISECONDS));
+    byte[] bytes = new byte[4];
+    Assert.assertEquals(4, stream.read(bytes, 0, 4));
+    Assert.assertEquals(0, bytes[0]);
+    // The first frame is released on the next read
+    Assert.assertEquals(1, stream.read());
+    Assert.assertTrue(resumed.await(10, TimeUnit.SECONDS));
+    reader.join();
+    stream.close();
+    Assert.assertEquals(-1, stream.read());
+  }
+
+  @Test
+  public void testOnRoom() throws Exception {
+    MuxInputStream stream = new MuxInputStream();
+    fill(stream);
+    AtomicInteger numResumes = new AtomicInteger(0);
+    stream.onRoom(numResumes::incrementAndGet);
+    Assert.assertEquals(0, numResumes.get());
+    stream.end();
+    byte[] bytes = new byte[4];
+    int numBytes = 0;
+    int len = 0;
+    while ((len = stream.read(bytes, 0, bytes.length)) > 0) {
+      numBytes += len;
+    }
+    Assert.assertEquals(4 * Constant.MUX_MAX_PENDING_FRAMES, numBytes);
+    Assert.assertEquals(1, numResumes.get());
+    // Not full, the action runs at once
+    stream.onRoom(numResumes::incrementAndGet);
+    Assert.assertEquals(2, numResumes.get());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    MuxInputStream stream = new MuxInputStream();
+    fill(stream);
+    AtomicInteger numResumes = new AtomicInteger(0);
+    stream.onRoom(numResumes::incrementAndGet);
+    // Closing frees the channel reader
+    stream.close();
+    Assert.assertEquals(1, numResumes.get());
+    stream.awaitRoom();
+    Assert.assertFalse(stream.offer(createFrame(0)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testAbort() throws Exception {
+    MuxInputStream stream = new MuxInputStream();
+    stream.offer(createFrame(1));
+    stream.abort();
+    Assert.assertEquals(1, stream.read());
+    stream.read(new byte[8], 0, 8);
+    stream.read();
+  }
+}
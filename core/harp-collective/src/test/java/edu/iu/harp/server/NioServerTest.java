@@ -0,0 +1,290 @@
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.codec.Codecs;
+import edu.iu.harp.collective.Communication;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.worker.Workers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class NioServerTest {
+  private static final int NUM_WORKERS = 3;
+
+  private Workers[] createWorkers() throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    Workers[] workers = new Workers[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      workers[i] = new Workers(new BufferedReader(
+          new StringReader(nodes.toString())), i);
+    }
+    return workers;
+  }
+
+  private List<Transferable> createDoubles(int size) {
+    DoubleArray array = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = i;
+    }
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(array);
+    return objs;
+  }
+
+  private void checkDoubles(Data data, int size) {
+    Assert.assertNotNull(data);
+    Assert.assertEquals(1, data.getBody().size());
+    DoubleArray array = (DoubleArray) data.getBody().get(0);
+    Assert.assertEquals(size, array.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(i, array.get()[i], 0);
+    }
+    data.release();
+  }
+
+  @Test
+  public void testStart() throws Exception {
+    Workers workers = createWorkers()[0];
+    NioServer s = new NioServer("localhost", 10093,
+        new EventQueue(), new DataMap(), workers, 2);
+    s.start();
+    s.stop();
+  }
+
+  @Test
+  public void testSend() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap dataMap = new DataMap();
+    NioServer s = new NioServer("127.0.0.1",
+        workers[1].getSelfInfo().getPort(),
+        new EventQueue(), dataMap, workers[1], 2);
+    s.start();
+    // Larger than the pipeline size
+    int size = Constant.PIPELINE_SIZE / 2 + 17;
+    for (int i = 0; i < 3; i++) {
+      List<Transferable> objs = createDoubles(size);
+      Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+          objs, DataUtil.getNumTransListBytes(objs), "send");
+      Assert.assertTrue(new DataSender(data, 1, workers[0],
+          Constant.SEND_DECODE).execute());
+      data.release();
+      checkDoubles(dataMap.waitAndGetData("test", "send", 10), size);
+    }
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testSendRaw() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap dataMap = new DataMap();
+    NioServer s = new NioServer("127.0.0.1",
+        workers[1].getSelfInfo().getPort(),
+        new EventQueue(), dataMap, workers[1], 2);
+    s.start();
+    int size = Constant.PIPELINE_SIZE / 2 + 17;
+    for (int i = 0; i < 3; i++) {
+      List<Transferable> objs = createDoubles(size);
+      Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+          objs, DataUtil.getNumTransListBytes(objs), "raw");
+      Assert.assertTrue(new DataSender(data, 1, workers[0],
+          Constant.SEND_RAW).execute());
+      data.release();
+      checkDoubles(dataMap.waitAndGetData("test", "raw", 10), size);
+    }
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testSendSharedMemory() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap dataMap = new DataMap();
+    NioServer s = new NioServer("127.0.0.1",
+        workers[1].getSelfInfo().getPort(),
+        new EventQueue(), dataMap, workers[1], 2);
+    s.start();
+    DataSender.setUseSharedMemory(true);
+    // Larger than the shared memory threshold
+    int size = Constant.SHM_THRESHOLD / 8 + 17;
+    byte[] commands = {Constant.SEND_DECODE, Constant.SEND_RAW};
+    try {
+      for (byte command : commands) {
+        List<Transferable> objs = createDoubles(size);
+        Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+            objs, DataUtil.getNumTransListBytes(objs), "shm");
+        Assert.assertTrue(new DataSender(data, 1, workers[0],
+            command).execute());
+        data.release();
+        checkDoubles(dataMap.waitAndGetData("test", "shm", 10),
+            size);
+      }
+    } finally {
+      DataSender.setUseSharedMemory(false);
+      ConnPool.get().clean();
+      s.stop();
+    }
+  }
+
+  @Test
+  public void testSendStream() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap dataMap = new DataMap();
+    NioServer s = new NioServer("127.0.0.1",
+        workers[1].getSelfInfo().getPort(),
+        new EventQueue(), dataMap, workers[1], 2);
+    s.start();
+    DataSender.setUseStreaming(true);
+    // More chunks than the decoder keeps waiting
+    int size = Constant.STREAM_CHUNK_SIZE / 8
+        * (Constant.STREAM_MAX_PENDING_CHUNKS + 2) + 17;
+    try {
+      for (int i = 0; i < 2; i++) {
+        List<Transferable> objs = createDoubles(size);
+        Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+            objs, DataUtil.getNumTransListBytes(objs), "stream");
+        Assert.assertTrue(new DataSender(data, 1, workers[0],
+            Constant.SEND_DECODE).execute());
+        data.release();
+        checkDoubles(dataMap.waitAndGetData("test", "stream", 10),
+            size);
+      }
+    } finally {
+      DataSender.setUseStreaming(false);
+      ConnPool.get().clean();
+      s.stop();
+    }
+  }
+
+  @Test
+  public void testBcast() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap[] dataMaps = new DataMap[NUM_WORKERS];
+    NioServer[] servers = new NioServer[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      dataMaps[i] = new DataMap();
+      servers[i] = new NioServer("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i], 1);
+      servers[i].start();
+    }
+    int size = Constant.PIPELINE_SIZE + 5;
+    // Worker 1 relays the data to worker 2
+    Assert.assertTrue(Communication.chainBcast("test", 0, "chain",
+        createDoubles(size), workers[0]));
+    for (int i = 1; i < NUM_WORKERS; i++) {
+      checkDoubles(dataMaps[i].waitAndGetData("test", "chain", 10),
+          size);
+    }
+    Assert.assertTrue(Communication.mstBcast("test", 0, "mst",
+        createDoubles(size), workers[0]));
+    for (int i = 1; i < NUM_WORKERS; i++) {
+      checkDoubles(dataMaps[i].waitAndGetData("test", "mst", 10),
+          size);
+    }
+    ConnPool.get().clean();
+    for (NioServer server : servers) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testSendCompressed() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap[] dataMaps = new DataMap[NUM_WORKERS];
+    NioServer[] servers = new NioServer[NUM_WORKERS];
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      dataMaps[i] = new DataMap();
+      servers[i] = new NioServer("127.0.0.1",
+          workers[i].getSelfInfo().getPort(),
+          new EventQueue(), dataMaps[i], workers[i], 1);
+      servers[i].start();
+    }
+    Codecs.setEnabled(true);
+    try {
+      int size = Constant.PIPELINE_SIZE + 5;
+      List<Transferable> objs = createDoubles(size);
+      Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+          objs, DataUtil.getNumTransListBytes(objs), "send");
+      Assert.assertTrue(new DataSender(data, 1, workers[0],
+          Constant.SEND_DECODE).execute());
+      Assert.assertNotEquals(Codecs.NONE, data.getCodecID());
+      data.release();
+      checkDoubles(dataMaps[1].waitAndGetData("test", "send", 10), size);
+      // The compressed body is relayed as it is
+      Assert.assertTrue(Communication.mstBcast("test", 0, "mst",
+          createDoubles(size), workers[0]));
+      for (int i = 1; i < NUM_WORKERS; i++) {
+        checkDoubles(dataMaps[i].waitAndGetData("test", "mst", 10),
+            size);
+      }
+    } finally {
+      Codecs.setEnabled(false);
+      ConnPool.get().clean();
+      for (NioServer server : servers) {
+        server.stop();
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentSends() throws Exception {
+    Workers[] workers = createWorkers();
+    DataMap dataMap = new DataMap();
+    NioServer s = new NioServer("127.0.0.1",
+        workers[1].getSelfInfo().getPort(),
+        new EventQueue(), dataMap, workers[1], 2);
+    s.start();
+    ConnPool.get().setNumMuxChannels(1);
+    // The frames of the sends are interleaved on one channel
+    final int numSends = 8;
+    final int size = Constant.MUX_FRAME_SIZE / 8 * 3 + 5;
+    try {
+      ExecutorService executor = Executors.newFixedThreadPool(numSends);
+      List<Future<Boolean>> results = new LinkedList<>();
+      for (int i = 0; i < numSends; i++) {
+        final int id = i;
+        results.add(executor.submit(() -> {
+          List<Transferable> objs = createDoubles(size);
+          Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+              objs, DataUtil.getNumTransListBytes(objs), "mux-" + id);
+          boolean isSuccess = new DataSender(data, 1, workers[0],
+              id % 2 == 0 ? Constant.SEND_DECODE : Constant.SEND_RAW)
+              .execute();
+          data.release();
+          return isSuccess;
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        Assert.assertTrue(result.get());
+      }
+      executor.shutdown();
+      for (int i = 0; i < numSends; i++) {
+        checkDoubles(dataMap.waitAndGetData("test", "mux-" + i, 10), size);
+      }
+    } finally {
+      ConnPool.get().setNumMuxChannels(Constant.NUM_MUX_CHANNELS);
+      ConnPool.get().clean();
+      s.stop();
+    }
+  }
+}
@@ -1,15 +1,33 @@
 package edu.iu.harp.server;
 
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.util.Ack;
 import edu.iu.harp.worker.Workers;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ServerTest {
   private String fileName;
@@ -29,4 +47,163 @@ public class ServerTest {
     s.start();
     s.stop();
   }
+
+  @Test
+  public void testSendRaw() throws Exception {
+    Workers sender = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    Workers receiver = new Workers(new BufferedReader(new FileReader(fileName)), 1);
+    DataMap dataMap = new DataMap();
+    Server s = new Server("127.0.0.1", receiver.getSelfInfo().getPort(),
+        new EventQueue(), dataMap, receiver);
+    s.start();
+    int size = Constant.PIPELINE_SIZE / 4 + 3;
+    IntArray array = IntArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = i;
+    }
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(array);
+    Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+        objs, DataUtil.getNumTransListBytes(objs), "raw");
+    Assert.assertTrue(new DataSender(data, 1, sender,
+        Constant.SEND_RAW).execute());
+    data.release();
+    Data recvData = dataMap.waitAndGetData("test", "raw", 10);
+    Assert.assertNotNull(recvData);
+    IntArray recvArray = (IntArray) recvData.getBody().get(0);
+    Assert.assertEquals(size, recvArray.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(i, recvArray.get()[i]);
+    }
+    recvData.release();
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testSendStream() throws Exception {
+    Workers sender = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    Workers receiver = new Workers(new BufferedReader(new FileReader(fileName)), 1);
+    DataMap dataMap = new DataMap();
+    Server s = new Server("127.0.0.1", receiver.getSelfInfo().getPort(),
+        new EventQueue(), dataMap, receiver);
+    s.start();
+    // Larger than a chunk
+    int size = Constant.STREAM_CHUNK_SIZE / 8 + 3;
+    DoubleArray array = DoubleArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      array.get()[i] = i;
+    }
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<Simple>(4, array));
+    partitions.add(new Partition<Simple>(5, new Ack()));
+    Data data = new Data(DataType.PARTITION_LIST, "test", 0,
+        partitions, DataUtil.getNumTransListBytes(partitions), "stream");
+    Assert.assertTrue(new DataSender(data, 1, sender,
+        Constant.SEND_STREAM).execute());
+    data.release();
+    Data recvData = dataMap.waitAndGetData("test", "stream", 10);
+    Assert.assertNotNull(recvData);
+    Assert.assertEquals(2, recvData.getBody().size());
+    Partition<?> first = (Partition<?>) recvData.getBody().get(0);
+    Partition<?> second = (Partition<?>) recvData.getBody().get(1);
+    Assert.assertEquals(4, first.id());
+    Assert.assertEquals(5, second.id());
+    Assert.assertTrue(second.get() instanceof Ack);
+    DoubleArray recvArray = (DoubleArray) first.get();
+    Assert.assertEquals(size, recvArray.size());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(i, recvArray.get()[i], 0);
+    }
+    recvData.release();
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testConcurrentSends() throws Exception {
+    Workers sender = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    Workers receiver = new Workers(new BufferedReader(new FileReader(fileName)), 1);
+    DataMap dataMap = new DataMap();
+    Server s = new Server("127.0.0.1", receiver.getSelfInfo().getPort(),
+        new EventQueue(), dataMap, receiver);
+    s.start();
+    ConnPool.get().setNumMuxChannels(1);
+    // The frames of the sends are interleaved on one channel
+    final int numSends = 8;
+    final int size = Constant.MUX_FRAME_SIZE / 8 * 3 + 5;
+    ExecutorService executor = Executors.newFixedThreadPool(numSends);
+    try {
+      List<Future<Boolean>> results = new LinkedList<>();
+      for (int i = 0; i < numSends; i++) {
+        final int id = i;
+        results.add(executor.submit(() -> {
+          DoubleArray array = DoubleArray.create(size, false);
+          for (int j = 0; j < size; j++) {
+            array.get()[j] = id + j;
+          }
+          List<Transferable> objs = new LinkedList<>();
+          objs.add(array);
+          Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+              objs, DataUtil.getNumTransListBytes(objs), "mux-" + id);
+          boolean isSuccess = new DataSender(data, 1, sender,
+              id % 2 == 0 ? Constant.SEND_DECODE : Constant.SEND_RAW)
+              .execute();
+          data.release();
+          return isSuccess;
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        Assert.assertTrue(result.get());
+      }
+      executor.shutdown();
+      for (int i = 0; i < numSends; i++) {
+        Data recvData = dataMap.waitAndGetData("test", "mux-" + i, 10);
+        Assert.assertNotNull(recvData);
+        DoubleArray recvArray = (DoubleArray) recvData.getBody().get(0);
+        Assert.assertEquals(size, recvArray.size());
+        for (int j = 0; j < size; j++) {
+          Assert.assertEquals(i + j, recvArray.get()[j], 0);
+        }
+        recvData.release();
+      }
+    } finally {
+      ConnPool.get().setNumMuxChannels(Constant.NUM_MUX_CHANNELS);
+      ConnPool.get().clean();
+      s.stop();
+    }
+  }
+
+  @Test
+  public void testSendWithoutMux() throws Exception {
+    Workers sender = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    Workers receiver = new Workers(new BufferedReader(new FileReader(fileName)), 1);
+    DataMap dataMap = new DataMap();
+    Server s = new Server("127.0.0.1", receiver.getSelfInfo().getPort(),
+        new EventQueue(), dataMap, receiver);
+    s.start();
+    ConnPool.get().setNumMuxChannels(0);
+    try {
+      IntArray array = IntArray.create(10, false);
+      for (int i = 0; i < 10; i++) {
+        array.get()[i] = i;
+      }
+      List<Transferable> objs = new LinkedList<>();
+      objs.add(array);
+      Data data = new Data(DataType.SIMPLE_LIST, "test", 0,
+          objs, DataUtil.getNumTransListBytes(objs), "conn");
+      Assert.assertTrue(new DataSender(data, 1, sender,
+          Constant.SEND_DECODE).execute());
+      data.release();
+      Data recvData = dataMap.waitAndGetData("test", "conn", 10);
+      Assert.assertNotNull(recvData);
+      Assert.assertEquals(9,
+          ((IntArray) recvData.getBody().get(0)).get()[9]);
+      recvData.release();
+    } finally {
+      ConnPool.get().setNumMuxChannels(Constant.NUM_MUX_CHANNELS);
+      ConnPool.get().clean();
+      s.stop();
+    }
+  }
 }
@@ -0,0 +1,82 @@
+package edu.iu.harp.trace;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class TracerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    Tracer.setEnabled(false);
+    Tracer.setBufferSize(Tracer.DEFAULT_BUFFER_SIZE);
+    Tracer.clear();
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Tracer.clear();
+    Assert.assertEquals(0L, Tracer.begin());
+    Tracer.end(Tracer.USER, "region", null, 0L);
+    StringWriter writer = new StringWriter();
+    Tracer.write(writer, 0);
+    Assert.assertFalse(writer.toString().contains("\"region\""));
+  }
+
+  @Test
+  public void testRingBuffer() {
+    SpanBuffer spans = new SpanBuffer(4);
+    for (int i = 0; i < 6; i++) {
+      spans.add(Tracer.COMPUTE, "task" + i, null, i, 1L);
+    }
+    Assert.assertEquals(2L, spans.getFirst());
+    Assert.assertEquals(6L, spans.getCount());
+    Assert.assertEquals("task2", spans.getName(spans.getFirst()));
+    Assert.assertEquals(5L, spans.getStartTime(5L));
+  }
+
+  @Test
+  public void testWriteAndMerge() throws Exception {
+    Tracer.clear();
+    Tracer.setEnabled(true);
+    Tracer.markSync();
+    long startTime = Tracer.begin();
+    Tracer.end(Tracer.USER, "region \"a\"", "ctx", startTime);
+    File[] files = new File[2];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = folder.newFile("worker-" + i + ".json");
+      try (Writer writer = Files.newBufferedWriter(files[i].toPath(),
+          StandardCharsets.UTF_8)) {
+        Tracer.write(writer, i);
+      }
+    }
+    String trace = new String(Files.readAllBytes(files[1].toPath()),
+        StandardCharsets.UTF_8);
+    Assert.assertTrue(trace.contains("\"name\":\"region \\\"a\\\"\""));
+    Assert.assertTrue(trace.contains("\"args\":{\"detail\":\"ctx\"}"));
+    Assert.assertTrue(trace.contains("\"syncTs\":"));
+    StringWriter merged = new StringWriter();
+    long numEvents = TraceMerger.merge(Arrays.asList(
+        files[0].getPath(), files[1].getPath()), merged);
+    // process name, thread name and the span of each worker
+    Assert.assertEquals(6L, numEvents);
+    String text = merged.toString();
+    Assert.assertTrue(text.startsWith("{\"traceEvents\":["));
+    Assert.assertTrue(text.endsWith("]}\n"));
+    Assert.assertTrue(text.contains("\"pid\":1"));
+    // The span starts after the start barrier
+    Assert.assertFalse(text.contains("\"ts\":-"));
+  }
+}
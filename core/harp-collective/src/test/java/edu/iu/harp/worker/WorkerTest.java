@@ -7,6 +7,7 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.StringReader;
 
 public class WorkerTest {
   private String fileName;
@@ -25,4 +26,42 @@ public class WorkerTest {
     Assert.assertEquals(workers.getMaxID(), 1);
     Assert.assertEquals(workers.getMiddleID(), 0);
   }
+
+  @Test
+  public void testGroup() throws Exception {
+    String nodes = "#0\nhostA\nhostA\nhostB\nhostB\n";
+    Workers workers = new Workers(
+        new BufferedReader(new StringReader(nodes)), 3);
+    Assert.assertTrue(workers.isOnSameNode(2));
+    Assert.assertFalse(workers.isOnSameNode(1));
+    Assert.assertArrayEquals(new int[] {2, 3},
+        workers.getNodeWorkerIDs());
+    Assert.assertArrayEquals(new int[] {0, 2},
+        workers.getNodeLeaderIDs());
+    Workers group =
+        workers.createGroup(workers.getNodeWorkerIDs());
+    Assert.assertEquals(2, group.getNumWorkers());
+    Assert.assertEquals(1, group.getSelfID());
+    Assert.assertEquals(0, group.getNextID());
+    Assert.assertEquals(12803,
+        group.getSelfInfo().getPort());
+    Workers leaders =
+        workers.createGroup(workers.getNodeLeaderIDs());
+    Assert.assertFalse(leaders.isSelfInWorker());
+    Assert.assertEquals("hostB",
+        leaders.getWorkerInfo(1).getNode());
+  }
+
+  @Test
+  public void testRackGroup() throws Exception {
+    String nodes = "#0\nhostA\nhostA\nhostB\n#1\nhostC\nhostD\n";
+    Workers workers = new Workers(
+        new BufferedReader(new StringReader(nodes)), 4);
+    Assert.assertTrue(workers.isOnSameRack(3));
+    Assert.assertFalse(workers.isOnSameRack(2));
+    Assert.assertArrayEquals(new int[] {3, 4},
+        workers.getRackNodeLeaderIDs());
+    Assert.assertArrayEquals(new int[] {0, 3},
+        workers.getRackLeaderIDs());
+  }
 }
@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import edu.iu.dymoro.*;
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Partitioner;
 import edu.iu.harp.partition.Table;
@@ -236,6 +237,7 @@ public class HarpDAALDataSource {
     List<double[]> points = new LinkedList<double[]>();
 
     FSDataInputStream in = null;
+    TextReader reader = null;
 
     //loop over all the files in the list
     ListIterator<String> file_itr = inputFileList.listIterator();
@@ -255,17 +257,18 @@ public class HarpDAALDataSource {
         return null;
       }
 
-      //read file content
+      //read file content, reusing the buffer of the reader
+      if (reader == null) {
+        reader = new TextReader(in, TextReader.separatorsOf(sep), true);
+      } else {
+        reader.reset(in);
+      }
       try {
-        while (true) {
-          String line = in.readLine();
-          if (line == null) break;
-
-          String[] lineData = line.split(sep);
+        while (reader.nextLine()) {
           double[] cell = new double[nFeatures];
 
           for (int t = 0; t < nFeatures; t++)
-            cell[t] = Double.parseDouble(lineData[t]);
+            cell[t] = reader.readDouble();
 
           points.add(cell);
         }
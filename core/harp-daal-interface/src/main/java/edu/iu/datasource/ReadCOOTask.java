@@ -29,6 +29,7 @@ import org.apache.hadoop.fs.Path;
 import java.util.LinkedList;
 import java.util.List;
 
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.schdynamic.Task;
 
 public class ReadCOOTask implements
@@ -37,12 +38,14 @@ public class ReadCOOTask implements
   protected static final Log LOG = LogFactory
       .getLog(ReadCOOTask.class);
 
-  private String regex;
+  private String separators;
   private Configuration conf;
   private long threadId;
+  // reused by the files of the task
+  private TextReader reader;
 
   public ReadCOOTask(String regex, Configuration conf) {
-    this.regex = regex;
+    this.separators = TextReader.separatorsOf(regex);
     this.conf = conf;
     this.threadId = 0;
   }
@@ -90,14 +93,17 @@ public class ReadCOOTask implements
     FileSystem fs = pointFilePath.getFileSystem(conf);
     FSDataInputStream in = fs.open(pointFilePath);
 
-    String readline = null;
+    if (reader == null) {
+      reader = new TextReader(in, separators, true);
+    } else {
+      reader.reset(in);
+    }
     try {
 
-      while ((readline = in.readLine()) != null) {
-        String[] line = readline.split(this.regex);
-        long rowId = Long.parseLong(line[0]);
-        long colId = Long.parseLong(line[1]);
-        double val = Double.parseDouble(line[2]);
+      while (reader.nextLine()) {
+        long rowId = reader.readLong();
+        long colId = reader.readLong();
+        double val = reader.readDouble();
         points.add(new COO(rowId, colId, val));
       }
 
@@ -29,6 +29,7 @@ import org.apache.hadoop.fs.Path;
 import java.util.LinkedList;
 import java.util.List;
 
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.schdynamic.Task;
 
 public class ReadDenseCSVShardingTask implements
@@ -40,13 +41,15 @@ public class ReadDenseCSVShardingTask implements
   private int valperline;
   private Configuration conf;
   private long threadId;
-  private String sep;
+  private String separators;
   private int shardsize;
+  // reused by the files of the task
+  private TextReader reader;
 
   public ReadDenseCSVShardingTask(int valperline, int shardsize, String sep, Configuration conf) {
     this.valperline = valperline;
     this.shardsize = shardsize;
-    this.sep = sep;
+    this.separators = TextReader.separatorsOf(sep);
     this.conf = conf;
     this.threadId = 0;
   }
@@ -102,15 +105,18 @@ public class ReadDenseCSVShardingTask implements
     FileSystem fs =
         pointFilePath.getFileSystem(conf);
     FSDataInputStream in = fs.open(pointFilePath);
-    String readline = null;
+    if (reader == null) {
+      reader = new TextReader(in, separators, true);
+    } else {
+      reader.reset(in);
+    }
 
     try {
 
-      while ((readline = in.readLine()) != null) {
-        String[] line = readline.split(this.sep);
+      while (reader.nextLine()) {
         double[] trainpoint = new double[valperline];
         for (int j = 0; j < valperline; j++)
-          trainpoint[j] = Double.parseDouble(line[j]);
+          trainpoint[j] = reader.readDouble();
 
         points[shadptr++] = trainpoint;
 
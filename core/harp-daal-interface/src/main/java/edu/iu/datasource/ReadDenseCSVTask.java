@@ -29,6 +29,7 @@ import org.apache.hadoop.fs.Path;
 import java.util.LinkedList;
 import java.util.List;
 
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.schdynamic.Task;
 
 public class ReadDenseCSVTask implements
@@ -40,11 +41,13 @@ public class ReadDenseCSVTask implements
   private int valperline;
   private Configuration conf;
   private long threadId;
-  private String sep;
+  private String separators;
+  // reused by the files of the task
+  private TextReader reader;
 
   public ReadDenseCSVTask(int valperline, String sep, Configuration conf) {
     this.valperline = valperline;
-    this.sep = sep;
+    this.separators = TextReader.separatorsOf(sep);
     this.conf = conf;
     this.threadId = 0;
   }
@@ -96,15 +99,17 @@ public class ReadDenseCSVTask implements
         pointFilePath.getFileSystem(conf);
     FSDataInputStream in = fs.open(pointFilePath);
 
-    String readline = null;
-    int k = 0;
+    if (reader == null) {
+      reader = new TextReader(in, separators, true);
+    } else {
+      reader.reset(in);
+    }
     try {
 
-      while ((readline = in.readLine()) != null) {
-        String[] line = readline.split(this.sep);
+      while (reader.nextLine()) {
         double[] cell = new double[valperline];
         for (int j = 0; j < valperline; j++)
-          cell[j] = Double.parseDouble(line[j]);
+          cell[j] = reader.readDouble();
 
         points.add(cell);
 
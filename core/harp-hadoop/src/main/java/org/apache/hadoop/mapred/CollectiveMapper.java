@@ -16,41 +16,79 @@
 
 package org.apache.hadoop.mapred;
 
+import edu.iu.harp.client.DataSender;
 import edu.iu.harp.client.Event;
 import edu.iu.harp.client.EventType;
 import edu.iu.harp.client.SyncClient;
+import edu.iu.harp.codec.Codec;
+import edu.iu.harp.codec.Codecs;
+import edu.iu.harp.codec.Quantizer;
 import edu.iu.harp.collective.AllgatherCollective;
+import edu.iu.harp.collective.AllreduceAlgorithm;
 import edu.iu.harp.collective.AllreduceCollective;
+import edu.iu.harp.collective.AsyncCollective;
 import edu.iu.harp.collective.BcastCollective;
 import edu.iu.harp.collective.Communication;
+import edu.iu.harp.collective.HierarchicalCollective;
 import edu.iu.harp.collective.LocalGlobalSyncCollective;
+import edu.iu.harp.collective.QuantizedCollective;
 import edu.iu.harp.collective.ReduceCollective;
 import edu.iu.harp.collective.RegroupCollective;
+import edu.iu.harp.collective.SparseAllreduceCollective;
+import edu.iu.harp.combiner.ByteArrCombiner;
+import edu.iu.harp.combiner.Operation;
 import edu.iu.harp.io.ConnPool;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.keyval.Int2IntKVTable;
+import edu.iu.harp.keyval.Int2LongKVTable;
+import edu.iu.harp.keyval.Long2DoubleKVTable;
+import edu.iu.harp.keyval.Long2IntKVTable;
+import edu.iu.harp.metrics.Metrics;
+import edu.iu.harp.metrics.MetricsHttpServer;
+import edu.iu.harp.partition.ConsistentHashPartitioner;
+import edu.iu.harp.partition.LPTPartitioner;
+import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Partitioner;
 import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.resource.ResourcePool;
 import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Writable;
+import edu.iu.harp.resource.WritableRegistry;
+import edu.iu.harp.server.NioServer;
 import edu.iu.harp.server.Server;
+import edu.iu.harp.server.Service;
+import edu.iu.harp.trace.Tracer;
 import edu.iu.harp.worker.Workers;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.util.ReflectionUtils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
@@ -74,12 +112,107 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   protected static final Log LOG =
     LogFactory.getLog(CollectiveMapper.class);
 
+  /**
+   * Use the selector-based server instead of one
+   * receiver thread per connection
+   */
+  public static final String MAP_COLLECTIVE_NIO_SERVER =
+    "mapreduce.map.collective.server.nio";
+  /** The number of event loops of the NIO server */
+  public static final String MAP_COLLECTIVE_NIO_THREADS =
+    "mapreduce.map.collective.server.nio.threads";
+  /**
+   * Send the tables of primitive arrays as raw
+   * little-endian blocks
+   */
+  public static final String MAP_COLLECTIVE_SEND_RAW =
+    "mapreduce.map.collective.send.raw";
+  /**
+   * Send large data through the shared memory
+   * to the workers on the same node
+   */
+  public static final String MAP_COLLECTIVE_SEND_SHM =
+    "mapreduce.map.collective.send.shm";
+  /**
+   * Encode and send large data in chunks, decoded
+   * as the chunks arrive
+   */
+  public static final String MAP_COLLECTIVE_SEND_STREAM =
+    "mapreduce.map.collective.send.stream";
+  /**
+   * The maximum bytes of the free arrays kept for
+   * each size in the resource pool
+   */
+  public static final String MAP_COLLECTIVE_POOL_MAX_RETAINED_BYTES =
+    "mapreduce.map.collective.pool.max.retained.bytes";
+  /** Track the in-use arrays of the resource pool */
+  public static final String MAP_COLLECTIVE_POOL_LEAK_TRACKING =
+    "mapreduce.map.collective.pool.leak.tracking";
+  /** The threads running the asynchronous collectives */
+  public static final String MAP_COLLECTIVE_ASYNC_THREADS =
+    "mapreduce.map.collective.async.threads";
+  /**
+   * The multiplexed channels to each worker, 0
+   * (the default) opens a connection for every
+   * send
+   */
+  public static final String MAP_COLLECTIVE_MUX_CHANNELS =
+    "mapreduce.map.collective.mux.channels";
+  /** Compress the encoded bodies on sending */
+  public static final String MAP_COLLECTIVE_COMPRESS =
+    "mapreduce.map.collective.compress";
+  /**
+   * The class of a codec registered and used for
+   * all the compressed bodies
+   */
+  public static final String MAP_COLLECTIVE_COMPRESS_CODEC =
+    "mapreduce.map.collective.compress.codec";
+  /**
+   * The Writable classes encoded with the type
+   * IDs instead of the class names. The type IDs
+   * are only used when this is set, all the
+   * workers then take the IDs of the master.
+   */
+  public static final String MAP_COLLECTIVE_WRITABLE_CLASSES =
+    "mapreduce.map.collective.writable.classes";
+  /**
+   * Record the metrics of the collectives and
+   * the pools, and export them as JMX MBeans
+   */
+  public static final String MAP_COLLECTIVE_METRICS =
+    "mapreduce.map.collective.metrics";
+  /**
+   * The base port serving the metrics as text,
+   * each worker adds its worker ID, 0 to disable
+   */
+  public static final String MAP_COLLECTIVE_METRICS_PORT =
+    "mapreduce.map.collective.metrics.port";
+  /**
+   * The directory to write the timeline trace of
+   * each worker, tracing is disabled if not set
+   */
+  public static final String MAP_COLLECTIVE_TRACE_DIR =
+    "mapreduce.map.collective.trace.dir";
+  /** The number of spans kept by each thread */
+  public static final String MAP_COLLECTIVE_TRACE_BUFFER_SIZE =
+    "mapreduce.map.collective.trace.buffer.size";
+  /**
+   * The partitioner returned by
+   * getRegroupPartitioner: "mod" (default),
+   * "lpt" or "consistent-hash"
+   */
+  public static final String MAP_COLLECTIVE_REGROUP_PARTITIONER =
+    "mapreduce.map.collective.regroup.partitioner";
+
   private int workerID;
   private Workers workers;
   private EventQueue eventQueue;
   private DataMap dataMap;
-  private Server server;
+  private Service server;
   private SyncClient client;
+  private AsyncCollective asyncCollective;
+  private MetricsHttpServer metricsServer;
+  private String regroupPartitioner;
 
   /*******************************************************
    * A Key-Value reader to read key-value inputs
@@ -289,12 +422,102 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     eventQueue = new EventQueue();
     dataMap = new DataMap();
     client = new SyncClient(workers);
+    asyncCollective = new AsyncCollective(dataMap,
+      workers, context.getConfiguration().getInt(
+        MAP_COLLECTIVE_ASYNC_THREADS,
+        Constant.ASYNC_COLLECTIVE_THREADS));
+    DataSender.setUseRawBody(context
+      .getConfiguration()
+      .getBoolean(MAP_COLLECTIVE_SEND_RAW, false));
+    DataSender.setUseSharedMemory(context
+      .getConfiguration()
+      .getBoolean(MAP_COLLECTIVE_SEND_SHM, false));
+    DataSender.setUseStreaming(context
+      .getConfiguration()
+      .getBoolean(MAP_COLLECTIVE_SEND_STREAM, false));
+    ConnPool.get().setNumMuxChannels(context
+      .getConfiguration()
+      .getInt(MAP_COLLECTIVE_MUX_CHANNELS,
+        Constant.NUM_MUX_CHANNELS));
+    Codecs.setEnabled(context.getConfiguration()
+      .getBoolean(MAP_COLLECTIVE_COMPRESS, false));
+    Class<? extends Codec> codecClass =
+      context.getConfiguration().getClass(
+        MAP_COLLECTIVE_COMPRESS_CODEC, null,
+        Codec.class);
+    if (codecClass != null) {
+      Codec codec = ReflectionUtils
+        .newInstance(codecClass, null);
+      if (!Codecs.register(codec)) {
+        throw new IOException(
+          "Cannot register codec " + codecClass);
+      }
+      Codecs.setPreferredCodec(codec.getID());
+    }
+    // Unseal the registry left by a previous task
+    // in a reused JVM
+    WritableRegistry.clear();
+    for (Class<?> writableClass : context
+      .getConfiguration()
+      .getClasses(MAP_COLLECTIVE_WRITABLE_CLASSES)) {
+      if (WritableRegistry.register(writableClass
+        .asSubclass(Writable.class)) < 0) {
+        throw new IOException(
+          "Cannot register Writable "
+            + writableClass);
+      }
+    }
+    ResourcePool.get().setMaxRetainedBytes(context
+      .getConfiguration()
+      .getLong(MAP_COLLECTIVE_POOL_MAX_RETAINED_BYTES,
+        Constant.POOL_MAX_RETAINED_BYTES));
+    ResourcePool.get().setLeakTracking(context
+      .getConfiguration()
+      .getBoolean(MAP_COLLECTIVE_POOL_LEAK_TRACKING,
+        false));
+    if (context.getConfiguration()
+      .get(MAP_COLLECTIVE_TRACE_DIR) != null) {
+      Tracer.setBufferSize(context
+        .getConfiguration()
+        .getInt(MAP_COLLECTIVE_TRACE_BUFFER_SIZE,
+          Tracer.DEFAULT_BUFFER_SIZE));
+      Tracer.setEnabled(true);
+    }
+    regroupPartitioner = context.getConfiguration()
+      .get(MAP_COLLECTIVE_REGROUP_PARTITIONER, "mod");
+    if (context.getConfiguration()
+      .getBoolean(MAP_COLLECTIVE_METRICS, false)) {
+      Metrics.setEnabled(true);
+      Metrics.registerMBeans(workerID);
+      int metricsPort = context.getConfiguration()
+        .getInt(MAP_COLLECTIVE_METRICS_PORT, 0);
+      if (metricsPort > 0) {
+        try {
+          metricsServer = new MetricsHttpServer(
+            workers.getSelfInfo().getNode(),
+            metricsPort + workerID);
+          metricsServer.start();
+        } catch (IOException e) {
+          LOG.error("Cannot start metrics server.",
+            e);
+        }
+      }
+    }
     // Initialize receiver
     String host = workers.getSelfInfo().getNode();
     int port = workers.getSelfInfo().getPort();
     try {
-      server = new Server(host, port, eventQueue,
-        dataMap, workers);
+      if (context.getConfiguration().getBoolean(
+        MAP_COLLECTIVE_NIO_SERVER, false)) {
+        server = new NioServer(host, port,
+          eventQueue, dataMap, workers,
+          context.getConfiguration().getInt(
+            MAP_COLLECTIVE_NIO_THREADS,
+            Constant.NUM_EVENT_LOOPS));
+      } else {
+        server = new Server(host, port,
+          eventQueue, dataMap, workers);
+      }
     } catch (Exception e) {
       LOG.error("Cannot initialize receivers.",
         e);
@@ -306,6 +529,140 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     isSuccess =
       barrier("start-worker", "handshake");
     LOG.info("Barrier: " + isSuccess);
+    // The traces of the workers are aligned at
+    // the start barrier
+    Tracer.markSync();
+    // All the workers read the same configuration,
+    // so they join the broadcast together. Without
+    // it, the classes registered in the code may
+    // differ between the workers, they fall back
+    // to the class names.
+    if (context.getConfiguration()
+      .get(MAP_COLLECTIVE_WRITABLE_CLASSES) != null) {
+      isSuccess = isSuccess && syncWritableTypes();
+    } else if (!WritableRegistry.getClassNames()
+      .isEmpty()) {
+      LOG.warn("Writable types are registered without "
+        + MAP_COLLECTIVE_WRITABLE_CLASSES
+        + ", encode them with the class names.");
+      WritableRegistry.clear();
+    }
+    // The type IDs are fixed after the handshake
+    WritableRegistry.seal();
+    return isSuccess;
+  }
+
+  /**
+   * Record the metrics and the trace span of a
+   * collective operation
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param startTime
+   *          the start time in nanoseconds
+   */
+  private static void endCollective(
+    String contextName, String operationName,
+    long startTime) {
+    Metrics.recordCall(contextName, operationName,
+      System.nanoTime() - startTime);
+    Tracer.end(Tracer.COLLECTIVE, operationName,
+      contextName, startTime);
+  }
+
+  /**
+   * Write the trace of this worker to the trace
+   * directory
+   *
+   * @param context
+   *          the context
+   */
+  private void writeTrace(Context context) {
+    String traceDir = context.getConfiguration()
+      .get(MAP_COLLECTIVE_TRACE_DIR);
+    if (traceDir == null) {
+      return;
+    }
+    Path tracePath = new Path(traceDir,
+      "worker-" + workerID + ".json");
+    try {
+      FileSystem fs = FileSystem
+        .get(context.getConfiguration());
+      try (FSDataOutputStream out =
+        fs.create(tracePath, true)) {
+        Writer writer = new OutputStreamWriter(out,
+          StandardCharsets.UTF_8);
+        Tracer.write(writer, workerID);
+      }
+      LOG.info("Write trace to " + tracePath);
+    } catch (IOException e) {
+      LOG.error("Fail to write trace to "
+        + tracePath, e);
+    }
+  }
+
+  /**
+   * Broadcast the Writable classes registered on
+   * the master, then all the workers use the
+   * type IDs of the master
+   *
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  private boolean syncWritableTypes() {
+    Table<ByteArray> table =
+      new Table<>(0, new ByteArrCombiner(
+        Operation.SUM));
+    if (workers.isMaster()) {
+      ByteArrayOutputStream bytes =
+        new ByteArrayOutputStream();
+      try (DataOutputStream out =
+        new DataOutputStream(bytes)) {
+        List<String> classNames =
+          WritableRegistry.getClassNames();
+        out.writeInt(classNames.size());
+        for (String className : classNames) {
+          out.writeUTF(className);
+        }
+      } catch (IOException e) {
+        LOG.error("Fail to write Writable types.",
+          e);
+        return false;
+      }
+      ByteArray array =
+        ByteArray.create(bytes.size(), false);
+      System.arraycopy(bytes.toByteArray(), 0,
+        array.get(), 0, bytes.size());
+      table.addPartition(new Partition<>(0, array));
+    }
+    boolean isSuccess = broadcast("start-worker",
+      "writable-types", table,
+      workers.getMasterID(), false);
+    if (isSuccess && !workers.isMaster()) {
+      ByteArray array =
+        table.getPartition(0).get();
+      List<String> classNames = new LinkedList<>();
+      try (DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(
+          array.get(), array.start(),
+          array.size()))) {
+        int numClasses = in.readInt();
+        for (int i = 0; i < numClasses; i++) {
+          classNames.add(in.readUTF());
+        }
+      } catch (IOException e) {
+        LOG.error("Fail to read Writable types.",
+          e);
+        isSuccess = false;
+      }
+      isSuccess = isSuccess
+        && WritableRegistry.setClassNames(classNames);
+    }
+    table.release();
+    LOG.info("Writable types: "
+      + WritableRegistry.getClassNames());
     return isSuccess;
   }
 
@@ -373,9 +730,12 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
    */
   public boolean barrier(String contextName,
     String operationName) {
+    long startTime = System.nanoTime();
     boolean isSuccess =
       Communication.barrier(contextName,
         operationName, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
@@ -404,10 +764,13 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     String contextName, String operationName,
     Table<P> table, int bcastWorkerID,
     boolean useMSTBcast) {
+    long startTime = System.nanoTime();
     boolean isSucess =
       BcastCollective.broadcast(contextName,
         operationName, table, bcastWorkerID,
         useMSTBcast, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSucess;
@@ -431,9 +794,12 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   public <P extends Simple> boolean reduce(
     String contextName, String operationName,
     Table<P> table, int reduceWorkerID) {
+    long startTime = System.nanoTime();
     boolean isSuccess = ReduceCollective.reduce(
       contextName, operationName, table,
       reduceWorkerID, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
@@ -455,9 +821,12 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   public <P extends Simple> boolean allgather(
     String contextName, String operationName,
     Table<P> table) {
+    long startTime = System.nanoTime();
     boolean isSuccess =
       AllgatherCollective.allgather(contextName,
         operationName, table, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
@@ -479,17 +848,355 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   public <P extends Simple> boolean allreduce(
     String contextName, String operationName,
     Table<P> table) {
+    long startTime = System.nanoTime();
     boolean isSuccess =
       AllreduceCollective.allreduce(contextName,
         operationName, table, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce partitions of the tables to all the
+   * local tables with the given algorithm. RING
+   * expects the same partitions of the same sizes
+   * on all the workers. AUTO agrees on the
+   * algorithm by the largest table.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param algorithm
+   *          the allreduce algorithm
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean allreduce(
+    String contextName, String operationName,
+    Table<P> table, AllreduceAlgorithm algorithm) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      AllreduceCollective.allreduce(contextName,
+        operationName, table, dataMap, workers,
+        algorithm);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the DoubleArray or FloatArray
+   * partitions of the tables in lower precision.
+   * All the partitions are rounded to the
+   * precision of the quantizer.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param quantizer
+   *          the quantizer of the table
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean allreduce(
+    String contextName, String operationName,
+    Table<P> table, Quantizer quantizer) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      QuantizedCollective.allreduce(contextName,
+        operationName, table, quantizer, dataMap,
+        workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the key-value pairs of the Int2IntKVTable
+   * to all the workers. Only the existing keys
+   * are sent.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the key-value pairs
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public boolean sparseAllreduce(
+    String contextName, String operationName,
+    Int2IntKVTable table) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      SparseAllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the key-value pairs of the Int2LongKVTable
+   * to all the workers. Only the existing keys
+   * are sent.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the key-value pairs
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public boolean sparseAllreduce(
+    String contextName, String operationName,
+    Int2LongKVTable table) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      SparseAllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the key-value pairs of the Long2DoubleKVTable
+   * to all the workers. Only the existing keys
+   * are sent.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the key-value pairs
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public boolean sparseAllreduce(
+    String contextName, String operationName,
+    Long2DoubleKVTable table) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      SparseAllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the key-value pairs of the Long2IntKVTable
+   * to all the workers. Only the existing keys
+   * are sent.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the key-value pairs
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public boolean sparseAllreduce(
+    String contextName, String operationName,
+    Long2IntKVTable table) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      SparseAllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce partitions of the tables to all the
+   * local tables. The partitions are combined
+   * inside each node and each rack first, then
+   * only one worker on each rack communicates
+   * across the racks.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean
+    hierarchicalAllreduce(String contextName,
+      String operationName, Table<P> table) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      HierarchicalCollective.allreduce(contextName,
+        operationName, table, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
   }
 
+  /**
+   * Allgather partitions of the tables to all the
+   * local tables. The partitions are gathered
+   * inside each node and each rack first, then
+   * only one worker on each rack communicates
+   * across the racks.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean
+    hierarchicalAllgather(String contextName,
+      String operationName, Table<P> table) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      HierarchicalCollective.allgather(contextName,
+        operationName, table, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Broadcast the partitions of the table on a
+   * worker to one worker on each rack, then to
+   * one worker on each node, then inside each
+   * node.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table used to hold the
+   *          partitions
+   * @param bcastWorkerID
+   *          the worker ID of broadcasting data
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean
+    hierarchicalBroadcast(String contextName,
+      String operationName, Table<P> table,
+      int bcastWorkerID) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      HierarchicalCollective.broadcast(contextName,
+        operationName, table, bcastWorkerID,
+        dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Reduce the partitions of the tables to a
+   * worker. The partitions are reduced inside
+   * each node and each rack first, then only one
+   * worker on each rack communicates across the
+   * racks.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param reduceWorkerID
+   *          the worker ID to receive the reduced
+   *          data
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean
+    hierarchicalReduce(String contextName,
+      String operationName, Table<P> table,
+      int reduceWorkerID) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      HierarchicalCollective.reduce(contextName,
+        operationName, table, reduceWorkerID,
+        dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Create the partitioner configured by
+   * MAP_COLLECTIVE_REGROUP_PARTITIONER. The
+   * size-aware partitioners balance the bytes
+   * received by the workers in regroup and push.
+   *
+   * @return the partitioner
+   */
+  public Partitioner getRegroupPartitioner() {
+    int numWorkers = workers.getNumWorkers();
+    if ("lpt".equals(regroupPartitioner)) {
+      return new LPTPartitioner(numWorkers);
+    } else if ("consistent-hash"
+      .equals(regroupPartitioner)) {
+      return new ConsistentHashPartitioner(
+        numWorkers);
+    } else {
+      return new Partitioner(numWorkers);
+    }
+  }
+
   /**
    * Regroup the partitions of the tables based on
-   * a partitioner.
+   * a partitioner. With a SizeAwarePartitioner,
+   * such as LPTPartitioner or
+   * ConsistentHashPartitioner, the partitions are
+   * assigned by their sizes summed over the
+   * workers.
    *
    * @param contextName
    *          the name of the operation context
@@ -498,17 +1205,52 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
    * @param table
    *          the table to hold the partitions
    * @param partitioner
-   *          a boolean tells if the operations
-   *          succeeds
-   * @return
+   *          the partitioner
+   * @return a boolean tells if the operation
+   *         succeeds
    */
   public <P extends Simple, PT extends Partitioner>
     boolean regroup(String contextName,
       String operationName, Table<P> table,
       PT partitioner) {
+    long startTime = System.nanoTime();
     boolean isSucess = RegroupCollective
       .regroupCombine(contextName, operationName,
         table, partitioner, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSucess;
+  }
+
+  /**
+   * Regroup the DoubleArray or FloatArray
+   * partitions of the tables in lower precision.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param partitioner
+   *          the partitioner
+   * @param quantizer
+   *          the quantizer of the table
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple, PT extends Partitioner>
+    boolean regroup(String contextName,
+      String operationName, Table<P> table,
+      PT partitioner, Quantizer quantizer) {
+    long startTime = System.nanoTime();
+    boolean isSucess = QuantizedCollective
+      .regroup(contextName, operationName, table,
+        partitioner, quantizer, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSucess;
@@ -539,10 +1281,13 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     String contextName, String operationName,
     Table<P> localTable, Table<P> globalTable,
     boolean useBcast) {
+    long startTime = System.nanoTime();
     boolean isSuccess =
       LocalGlobalSyncCollective.pull(contextName,
         operationName, localTable, globalTable,
         useBcast, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
@@ -574,10 +1319,51 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     boolean push(String contextName,
       String operationName, Table<P> localTable,
       Table<P> globalTable, PT partitioner) {
+    long startTime = System.nanoTime();
     boolean isSuccess =
       LocalGlobalSyncCollective.push(contextName,
         operationName, localTable, globalTable,
         partitioner, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Push the DoubleArray or FloatArray partitions
+   * of the local tables to the global tables in
+   * lower precision. The local tables are not
+   * changed.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param localTable
+   *          the local table
+   * @param globalTable
+   *          the global table
+   * @param partitioner
+   *          the partitioner
+   * @param quantizer
+   *          the quantizer of the local table
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple, PT extends Partitioner>
+    boolean push(String contextName,
+      String operationName, Table<P> localTable,
+      Table<P> globalTable, PT partitioner,
+      Quantizer quantizer) {
+    long startTime = System.nanoTime();
+    boolean isSuccess =
+      QuantizedCollective.push(contextName,
+        operationName, localTable, globalTable,
+        partitioner, quantizer, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
@@ -606,14 +1392,172 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   public <P extends Simple> boolean rotate(
     String contextName, String operationName,
     Table<P> globalTable, Int2IntMap rotateMap) {
+    long startTime = System.nanoTime();
     boolean isSuccess = LocalGlobalSyncCollective
       .rotate(contextName, operationName,
         globalTable, rotateMap, dataMap, workers);
+    endCollective(contextName, operationName,
+      startTime);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
   }
 
+  /**
+   * Rotate the DoubleArray or FloatArray
+   * partitions in lower precision
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of operation
+   * @param globalTable
+   *          the global table
+   * @param rotateMap
+   *          the map from worker to worker
+   * @param quantizer
+   *          the quantizer of the table
+   * @return true if succeeded, false if not
+   */
+  public <P extends Simple> boolean rotate(
+    String contextName, String operationName,
+    Table<P> globalTable, Int2IntMap rotateMap,
+    Quantizer quantizer) {
+    long startTime = System.nanoTime();
+    boolean isSuccess = QuantizedCollective
+      .rotate(contextName, operationName,
+        globalTable, rotateMap, quantizer, dataMap,
+        workers);
+    endCollective(contextName, operationName,
+      startTime);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce partitions of the tables to all the
+   * local tables without blocking. The table must
+   * not be used until the future is completed.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation, unique
+   *          among the operations in flight
+   * @param table
+   *          the table to hold the partitions
+   * @return the future of the result
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    allreduceAsync(String contextName,
+      String operationName, Table<P> table) {
+    return asyncCollective.allreduce(contextName,
+      operationName, table);
+  }
+
+  /**
+   * Regroup the partitions of the tables based on
+   * a partitioner without blocking.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation, unique
+   *          among the operations in flight
+   * @param table
+   *          the table to hold the partitions
+   * @param partitioner
+   *          the partitioner
+   * @return the future of the result
+   */
+  public <P extends Simple, PT extends Partitioner>
+    CompletableFuture<Boolean> regroupAsync(
+      String contextName, String operationName,
+      Table<P> table, PT partitioner) {
+    return asyncCollective.regroup(contextName,
+      operationName, table, partitioner);
+  }
+
+  /**
+   * Pull partitions in the global table to the
+   * local tables without blocking.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation, unique
+   *          among the operations in flight
+   * @param localTable
+   *          the local tables
+   * @param globalTable
+   *          the global table
+   * @param useBcast
+   *          if using broadcast in scattering the
+   *          partitions
+   * @return the future of the result
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    pullAsync(String contextName,
+      String operationName, Table<P> localTable,
+      Table<P> globalTable, boolean useBcast) {
+    return asyncCollective.pull(contextName,
+      operationName, localTable, globalTable,
+      useBcast);
+  }
+
+  /**
+   * Push the partitions of local tables to the
+   * global table without blocking.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation, unique
+   *          among the operations in flight
+   * @param localTable
+   *          the local tables
+   * @param globalTable
+   *          the global table
+   * @param partitioner
+   *          the partitioner
+   * @return the future of the result
+   */
+  public <P extends Simple, PT extends Partitioner>
+    CompletableFuture<Boolean> pushAsync(
+      String contextName, String operationName,
+      Table<P> localTable, Table<P> globalTable,
+      PT partitioner) {
+    return asyncCollective.push(contextName,
+      operationName, localTable, globalTable,
+      partitioner);
+  }
+
+  /**
+   * Rotate the partitions without blocking, so
+   * the computation on the other partitions can
+   * overlap with the rotation.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation, unique
+   *          among the operations in flight
+   * @param globalTable
+   *          the global table
+   * @param rotateMap
+   *          the map from worker to worker,
+   *          defines how to rotate the data
+   * @return the future of the result
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    rotateAsync(String contextName,
+      String operationName, Table<P> globalTable,
+      Int2IntMap rotateMap) {
+    return asyncCollective.rotate(contextName,
+      operationName, globalTable, rotateMap);
+  }
+
   /**
    * Get an event from the event queue.
    *
@@ -761,10 +1705,16 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
       if (client != null) {
         client.stop();
       }
+      if (asyncCollective != null) {
+        asyncCollective.stop();
+      }
       // Stop the server
       if (server != null) {
         server.stop();
       }
+      if (metricsServer != null) {
+        metricsServer.stop();
+      }
       throw new IOException(
         "Fail to do master barrier.");
     }
@@ -775,14 +1725,22 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
       mapCollective(reader, context);
       ResourcePool.get().log();
       ConnPool.get().log();
+      if (Metrics.isEnabled()) {
+        Metrics.log();
+      }
     } catch (Throwable t) {
       LOG.error("Fail to do map-collective.", t);
       throw new IOException(t);
     } finally {
       cleanup(context);
+      writeTrace(context);
+      asyncCollective.stop();
       ConnPool.get().clean();
       client.stop();
       server.stop();
+      if (metricsServer != null) {
+        metricsServer.stop();
+      }
       ForkJoinPool.commonPool().awaitQuiescence(
         Constant.TERMINATION_TIMEOUT,
         TimeUnit.SECONDS);
@@ -18,20 +18,51 @@ package edu.iu.benchmark;
 
 import edu.iu.harp.example.DoubleArrPlus;
 import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Partitioner;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapred.CollectiveMapper;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 public class BenchmarkMapper extends
   CollectiveMapper<String, String, Object, Object> {
 
-  private String cmd;
-  private int bytesPerPartition;
-  private int numPartitions;
+  /** All the commands run by "all" */
+  public static final String[] ALL_CMDS =
+    {"allreduce", "allgather", "bcast", "bcast-mst",
+      "reduce", "regroup", "push", "pull",
+      "rotate"};
+
+  /**
+   * A command with one message size
+   */
+  private static class BenchmarkCase {
+    private final String cmd;
+    private final int bytesPerPartition;
+    private final int numPartitions;
+
+    private BenchmarkCase(String cmd,
+      int bytesPerPartition, int numPartitions) {
+      this.cmd = cmd;
+      this.bytesPerPartition = bytesPerPartition;
+      this.numPartitions = numPartitions;
+    }
+
+    private double getNumBytes() {
+      return (double) bytesPerPartition
+        * numPartitions;
+    }
+  }
+
+  private String[] cmds;
+  private int[] bytesPerPartitions;
+  private int[] numPartitionsList;
   private int numMappers;
   private int numIterations;
 
@@ -43,24 +74,43 @@ public class BenchmarkMapper extends
     throws IOException, InterruptedException {
     Configuration configuration =
       context.getConfiguration();
-    cmd = configuration
+    String cmd = configuration
       .get(Constants.BENCHMARK_CMD, "bcast");
+    if (cmd.equals("all")) {
+      cmds = ALL_CMDS;
+    } else {
+      cmds = cmd.split(",");
+    }
     numMappers = configuration
       .getInt(Constants.NUM_MAPPERS, 1);
-    numPartitions = configuration
-      .getInt(Constants.NUM_PARTITIONS, 1);
-    bytesPerPartition = configuration
-      .getInt(Constants.BYTES_PER_PARTITION, 1);
+    numPartitionsList = getInts(configuration,
+      Constants.NUM_PARTITIONS);
+    bytesPerPartitions = getInts(configuration,
+      Constants.BYTES_PER_PARTITION);
     numIterations = configuration
       .getInt(Constants.NUM_ITERATIONS, 1);
     LOG.info("Benchmark CMD " + cmd);
     LOG.info("Num Mappers " + numMappers);
-    LOG.info("Num Partitions " + numPartitions);
-    LOG.info(
-      "Bytes per Partition " + bytesPerPartition);
+    LOG.info("Num Partitions "
+      + Arrays.toString(numPartitionsList));
+    LOG.info("Bytes per Partition "
+      + Arrays.toString(bytesPerPartitions));
     LOG.info("Num Iterations " + numIterations);
   }
 
+  /**
+   * Read a comma separated list of ints, 1 if
+   * the list is not set
+   */
+  private static int[] getInts(
+    Configuration configuration, String name) {
+    int[] values = configuration.getInts(name);
+    if (values.length == 0) {
+      return new int[]{1};
+    }
+    return values;
+  }
+
   protected void mapCollective(
     KeyValReader reader, Context context)
     throws IOException, InterruptedException {
@@ -71,62 +121,251 @@ public class BenchmarkMapper extends
       LOG.info(
         "Key: " + key + ", Value: " + value);
     }
+    Random rand = new Random(this.getSelfID());
+    // Sweep commands, message sizes and
+    // partition counts, latencies of all the
+    // cases are kept in one array
+    List<BenchmarkCase> cases = new ArrayList<>();
+    double[] latencies = new double[cmds.length
+      * bytesPerPartitions.length
+      * numPartitionsList.length * numIterations];
+    for (String cmd : cmds) {
+      for (int bytesPerPartition : bytesPerPartitions) {
+        for (int numPartitions : numPartitionsList) {
+          runCase(cases.size(), cmd,
+            bytesPerPartition, numPartitions, rand,
+            latencies, cases.size() * numIterations);
+          cases.add(new BenchmarkCase(cmd,
+            bytesPerPartition, numPartitions));
+        }
+      }
+    }
+    reportResults(cases, latencies);
+  }
+
+  /**
+   * Run one command with one size for all the
+   * iterations and record the latency in ns of
+   * each iteration
+   */
+  private void runCase(int caseID, String cmd,
+    int bytesPerPartition, int numPartitions,
+    Random rand, double[] latencies, int offset) {
+    int size = bytesPerPartition / 8;
+    for (int i = 0; i < numIterations; i++) {
+      String opName = cmd + "-" + caseID + "-" + i;
+      Table<DoubleArray> localTable =
+        createLocalTable(cmd, size, numPartitions,
+          rand);
+      Table<DoubleArray> globalTable =
+        createGlobalTable(cmd, size, numPartitions,
+          rand);
+      // Start all the workers together
+      barrier("main", "barrier-" + opName);
+      long startTime = System.nanoTime();
+      boolean isSuccess = runCmd(cmd, opName,
+        localTable, globalTable);
+      latencies[offset + i] =
+        System.nanoTime() - startTime;
+      if (!isSuccess) {
+        LOG.error("Fail to run " + opName);
+      }
+      localTable.release();
+      globalTable.release();
+    }
+  }
+
+  private boolean runCmd(String cmd,
+    String opName, Table<DoubleArray> localTable,
+    Table<DoubleArray> globalTable) {
+    if (cmd.equals("allreduce")) {
+      return allreduce("main", opName, localTable);
+    } else if (cmd.equals("allgather")) {
+      return allgather("main", opName, globalTable);
+    } else if (cmd.equals("bcast")) {
+      return broadcast("main", opName, localTable,
+        this.getMasterID(), false);
+    } else if (cmd.equals("bcast-mst")) {
+      return broadcast("main", opName, localTable,
+        this.getMasterID(), true);
+    } else if (cmd.equals("reduce")) {
+      return reduce("main", opName, localTable,
+        this.getMasterID());
+    } else if (cmd.equals("regroup")) {
+      return regroup("main", opName, localTable,
+        new Partitioner(this.getNumWorkers()));
+    } else if (cmd.equals("push")) {
+      return push("main", opName, localTable,
+        globalTable,
+        new Partitioner(this.getNumWorkers()));
+    } else if (cmd.equals("pull")) {
+      return pull("main", opName, localTable,
+        globalTable, false);
+    } else if (cmd.equals("rotate")) {
+      return rotate("main", opName, globalTable,
+        null);
+    } else {
+      LOG.error("Unknown command " + cmd);
+      return false;
+    }
+  }
+
+  /**
+   * The local table holds partitions 0 to
+   * numPartitions - 1 on every worker. For
+   * broadcast, only the master holds them.
+   */
+  private Table<DoubleArray> createLocalTable(
+    String cmd, int size, int numPartitions,
+    Random rand) {
+    Table<DoubleArray> table =
+      new Table<>(0, new DoubleArrPlus());
+    if (cmd.startsWith("bcast")
+      && !this.isMaster()) {
+      return table;
+    }
+    for (int j = 0; j < numPartitions; j++) {
+      table.addPartition(
+        new Partition<>(j, createArray(size, rand)));
+    }
+    return table;
+  }
+
+  /**
+   * The global table holds the partitions owned
+   * by this worker: the ones assigned by the
+   * partitioner for push and pull, otherwise
+   * numPartitions partitions unique to the
+   * worker.
+   */
+  private Table<DoubleArray> createGlobalTable(
+    String cmd, int size, int numPartitions,
+    Random rand) {
     int workerID = this.getSelfID();
     int numWorkers = this.getNumWorkers();
-    Random rand = new Random(workerID);
-    if (cmd.equals("allreduce")) {
-      long totalTime = 0;
-      for (int i = 0; i < numIterations; i++) {
-        Table<DoubleArray> arrTable =
-          new Table<>(i, new DoubleArrPlus());
-        // Create DoubleArray
-        int size = bytesPerPartition / 8;
-        for (int j = 0; j < numPartitions; j++) {
-          DoubleArray array =
-            DoubleArray.create(size, false);
-          for (int k = 0; k < array.size(); k++) {
-            array.get()[k] = rand.nextDouble();
-          }
-          arrTable.addPartition(
-            new Partition<>(j, array));
+    Table<DoubleArray> table =
+      new Table<>(0, new DoubleArrPlus());
+    if (cmd.equals("push")) {
+      return table;
+    } else if (cmd.equals("pull")) {
+      Partitioner partitioner =
+        new Partitioner(numWorkers);
+      for (int j = 0; j < numPartitions; j++) {
+        if (partitioner.getWorkerID(j) == workerID) {
+          table.addPartition(new Partition<>(j,
+            createArray(size, rand)));
         }
-        long startTime = System.nanoTime();
-        allreduce("main", "allreduce-" + i,
-          arrTable);
-        totalTime+=(System.nanoTime() - startTime);
-        arrTable.release();
       }
-      LOG.info("Total allreduce time: "
-        + (totalTime)
-        + "ns number of iterations: "
-        + numIterations);
+    } else if (cmd.equals("allgather")
+      || cmd.equals("rotate")) {
+      for (int j = 0; j < numPartitions; j++) {
+        table.addPartition(
+          new Partition<>(workerID + numWorkers * j,
+            createArray(size, rand)));
+      }
+    }
+    return table;
+  }
+
+  private DoubleArray createArray(int size,
+    Random rand) {
+    DoubleArray array =
+      DoubleArray.create(size, false);
+    for (int k = 0; k < array.size(); k++) {
+      array.get()[k] = rand.nextDouble();
+    }
+    return array;
+  }
+
+  /**
+   * The bus bandwidth factor of each command,
+   * the fraction of the message each worker
+   * moves through its links compared to a
+   * single point-to-point transfer
+   */
+  private double getBusFactor(String cmd) {
+    double numWorkers = this.getNumWorkers();
+    if (cmd.equals("allreduce")) {
+      return 2 * (numWorkers - 1) / numWorkers;
     } else if (cmd.equals("allgather")) {
-      long totalTime = 0;
-      for (int i = 0; i < numIterations; i++) {
-        Table<DoubleArray> arrTable =
-          new Table<>(i, new DoubleArrPlus());
-        int size = bytesPerPartition / 8;
-        // Generate data
-        for (int j = 0; j < numPartitions; j++) {
-          int partitionID =
-            workerID + numWorkers * j;
-          DoubleArray array =
-            DoubleArray.create(size, false);
-          for (int k = 0; k < array.size(); k++) {
-            array.get()[k] = rand.nextDouble();
+      // The output is numWorkers times the input
+      return numWorkers - 1;
+    } else if (cmd.equals("regroup")
+      || cmd.equals("push")
+      || cmd.equals("pull")) {
+      return (numWorkers - 1) / numWorkers;
+    } else {
+      return 1;
+    }
+  }
+
+  /**
+   * Gather the latencies of all the workers to
+   * every worker. An iteration ends when the
+   * slowest worker finishes, so percentiles are
+   * taken over the per-iteration maximum.
+   */
+  private void reportResults(
+    List<BenchmarkCase> cases, double[] latencies) {
+    Table<DoubleArray> resultTable =
+      new Table<>(0, new DoubleArrPlus());
+    DoubleArray array =
+      DoubleArray.create(latencies.length, false);
+    System.arraycopy(latencies, 0, array.get(), 0,
+      latencies.length);
+    resultTable.addPartition(
+      new Partition<>(this.getSelfID(), array));
+    if (!allgather("main", "benchmark-results",
+      resultTable)) {
+      LOG.error("Fail to gather the results");
+      resultTable.release();
+      return;
+    }
+    if (this.isMaster()) {
+      LOG.info(String.format(
+        "%-10s %12s %6s %12s %12s %12s %10s", "cmd",
+        "bytes/par", "pars", "p50(us)", "p95(us)",
+        "p99(us)", "busbw(GB/s)"));
+      double[] maxLatencies =
+        new double[numIterations];
+      for (int c = 0; c < cases.size(); c++) {
+        BenchmarkCase benchmarkCase = cases.get(c);
+        Arrays.fill(maxLatencies, 0);
+        for (Partition<DoubleArray> partition : resultTable
+          .getPartitions()) {
+          double[] workerLatencies =
+            partition.get().get();
+          for (int i = 0; i < numIterations; i++) {
+            maxLatencies[i] = Math.max(maxLatencies[i],
+              workerLatencies[c * numIterations + i]);
           }
-          arrTable.addPartition(
-            new Partition<DoubleArray>(
-              partitionID, array));
         }
-        long startTime = System.nanoTime();
-        allgather("main", "allgather-" + i,
-          arrTable);
-        totalTime+=(System.nanoTime() - startTime);
-        arrTable.release();
+        Arrays.sort(maxLatencies);
+        double p50 = percentile(maxLatencies, 50);
+        // Bytes per ns is GB/s
+        double busBandwidth =
+          benchmarkCase.getNumBytes()
+            * getBusFactor(benchmarkCase.cmd) / p50;
+        LOG.info(String.format(
+          "%-10s %12d %6d %12.1f %12.1f %12.1f %10.3f",
+          benchmarkCase.cmd,
+          benchmarkCase.bytesPerPartition,
+          benchmarkCase.numPartitions, p50 / 1000,
+          percentile(maxLatencies, 95) / 1000,
+          percentile(maxLatencies, 99) / 1000,
+          busBandwidth));
       }
-      LOG.info("Total allgather time: "
-        + (totalTime) + "ns");
     }
+    resultTable.release();
+  }
+
+  /**
+   * Nearest-rank percentile of a sorted array
+   */
+  private static double percentile(
+    double[] sorted, double p) {
+    int rank =
+      (int) Math.ceil(p / 100 * sorted.length);
+    return sorted[Math.max(rank - 1, 0)];
   }
 }
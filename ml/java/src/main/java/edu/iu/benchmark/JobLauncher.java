@@ -46,19 +46,20 @@ public class JobLauncher extends Configured
   public int run(String[] args) throws Exception {
     if (args.length < 5) {
       System.err.println(
-        "Usage: edu.iu.benchmark.JobLauncher <command>"
-          + "<number of bytes per partition>"
-          + "<number of partitions>"
-          + "<number of mappers>"
-          + "<number of iterations>");
+        "Usage: edu.iu.benchmark.JobLauncher"
+          + " <command[,command...] or all>"
+          + " <number of bytes per partition[,...]>"
+          + " <number of partitions[,...]>"
+          + " <number of mappers>"
+          + " <number of iterations>");
       ToolRunner
         .printGenericCommandUsage(System.err);
       return -1;
     }
     String cmd = args[0];
-    int bytesPerPartition =
-      Integer.parseInt(args[1]);
-    int numPartitions = Integer.parseInt(args[2]);
+    // Comma separated lists are swept in one job
+    String bytesPerPartition = args[1];
+    String numPartitions = args[2];
     int numMappers = Integer.parseInt(args[3]);
     int numIterations = Integer.parseInt(args[4]);
     boolean regenerateData = true;
@@ -70,7 +71,7 @@ public class JobLauncher extends Configured
   }
 
   private void launch(String cmd,
-    int bytesPerPartition, int numPartitions,
+    String bytesPerPartition, String numPartitions,
     int numMappers, int numIterations,
     boolean generateData, String workDirName)
     throws IOException, URISyntaxException,
@@ -97,7 +98,7 @@ public class JobLauncher extends Configured
   }
 
   private void doBenchmark(String cmd,
-    int bytesPerPartition, int numPartitions,
+    String bytesPerPartition, String numPartitions,
     int numMappers, int numIterations,
     Path inputDirPath, Path outputDirPath) {
     try {
@@ -114,7 +115,7 @@ public class JobLauncher extends Configured
   }
 
   private Job configureBenchmarkJob(String cmd,
-    int bytesPerPartition, int numPartitions,
+    String bytesPerPartition, String numPartitions,
     int numMappers, int numIterations,
     Path inputDirPath, Path outputDirPath)
     throws IOException, URISyntaxException {
@@ -135,9 +136,9 @@ public class JobLauncher extends Configured
     jobConf.setNumMapTasks(numMappers);
     job.setNumReduceTasks(0);
     jobConf.set(Constants.BENCHMARK_CMD, cmd);
-    jobConf.setInt(Constants.BYTES_PER_PARTITION,
+    jobConf.set(Constants.BYTES_PER_PARTITION,
       bytesPerPartition);
-    jobConf.setInt(Constants.NUM_PARTITIONS,
+    jobConf.set(Constants.NUM_PARTITIONS,
       numPartitions);
     jobConf.setInt(Constants.NUM_MAPPERS,
       numMappers);
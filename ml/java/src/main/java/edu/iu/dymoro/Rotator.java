@@ -20,6 +20,7 @@ import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.schstatic.StaticScheduler;
+import edu.iu.harp.trace.Tracer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.mapred.CollectiveMapper;
@@ -54,7 +55,10 @@ public class Rotator<P extends Simple> {
     getSplitMap(int taskID) {
     List<Partition<P>>[] splitMap = null;
     if (rotation.hasOutput(taskID)) {
+      long startTime = Tracer.begin();
       splitMap = rotation.waitForOutput(taskID);
+      Tracer.end(Tracer.COMM, "rotate-wait", null,
+        startTime);
     } else {
       splitMap =
         rotation.getTask(taskID).getSplitMap();
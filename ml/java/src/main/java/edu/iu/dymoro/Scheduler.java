@@ -18,7 +18,7 @@ package edu.iu.dymoro;
 
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.resource.Simple;
-import edu.iu.harp.schdynamic.DynamicScheduler;
+import edu.iu.harp.schdynamic.WorkStealingScheduler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -49,7 +49,7 @@ public class Scheduler<D, S extends Simple, T extends MPTask<D, S>> {
   private Timer timer;
   private final Random random;
   private final AtomicBoolean isRunning;
-  private final DynamicScheduler<RowColSplit<D, S>, RowColSplit<D, S>, T> compute;
+  private final WorkStealingScheduler<RowColSplit<D, S>, RowColSplit<D, S>, T> compute;
 
   public Scheduler(int numRowSplits,
     int numColSplits, D[] vWHMap, long time,
@@ -83,7 +83,7 @@ public class Scheduler<D, S extends Simple, T extends MPTask<D, S>> {
     random =
       new Random(System.currentTimeMillis());
     isRunning = new AtomicBoolean(true);
-    compute = new DynamicScheduler<>(tasks);
+    compute = new WorkStealingScheduler<>(tasks);
     compute.start();
     compute.pauseNow();
   }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.minibatch;
+
+import edu.iu.harp.schdynamic.Task;
+import edu.iu.kmeans.regroupallgather.CenKernel;
+
+import java.util.Arrays;
+
+/**
+ * Find the nearest centroid of each point in a
+ * block. The kernel is shared by the tasks and
+ * updated by the mapper between the batches.
+ */
+public class AssignTask
+  implements Task<PointBlock, Object> {
+
+  private final CenKernel cenKernel;
+
+  public AssignTask(CenKernel cenKernel) {
+    this.cenKernel = cenKernel;
+  }
+
+  @Override
+  public Object run(PointBlock block)
+    throws Exception {
+    Arrays.fill(block.getMinDistances(),
+      Double.MAX_VALUE);
+    Arrays.fill(block.getCenIDs(), 0);
+    cenKernel.assign(block.getPoints(),
+      block.getMinDistances(), block.getCenIDs());
+    return null;
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.minibatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sample the batches of points from the point
+ * files. A batch is made of runs of consecutive
+ * points starting at random positions of random
+ * files, each run is read after one seek. The
+ * next batch is read in the background while the
+ * current one is processed, so the memory used is
+ * two batches whatever the size of the files.
+ */
+public class BatchReader implements Closeable {
+
+  protected static final Log LOG =
+    LogFactory.getLog(BatchReader.class);
+
+  /**
+   * The number of points read after each seek
+   */
+  public static final int RUN_SIZE = 64;
+  /**
+   * The number of points in a block, a block is
+   * the unit of the parallel assignment
+   */
+  public static final int BLOCK_SIZE = 1024;
+
+  private final String[] fileNames;
+  private final int pointsPerFile;
+  private final int cenVecSize;
+  private final FileSystem fs;
+  private final Random random;
+  private final FSDataInputStream[] ins;
+  private final byte[] bytes;
+  private final PointBlock[][] batches;
+  private final ExecutorService executor;
+  private Future<PointBlock[]> nextBatch;
+  private int current;
+
+  /**
+   * Start to read the first batch
+   *
+   * @param fileNames
+   *          the point files of the worker
+   * @param pointsPerFile
+   *          the number of points in a file
+   * @param cenVecSize
+   *          the size of a point in the batch,
+   *          one more than the vector size
+   * @param batchSize
+   *          the number of points in a batch
+   * @param conf
+   *          the configuration
+   * @param seed
+   *          the seed of the sampling
+   * @throws IOException
+   */
+  public BatchReader(List<String> fileNames,
+    int pointsPerFile, int cenVecSize,
+    int batchSize, Configuration conf, long seed)
+    throws IOException {
+    this.fileNames =
+      fileNames.toArray(new String[0]);
+    this.pointsPerFile = pointsPerFile;
+    this.cenVecSize = cenVecSize;
+    this.fs = FileSystem.get(conf);
+    this.random = new Random(seed);
+    this.ins =
+      new FSDataInputStream[this.fileNames.length];
+    if (this.fileNames.length == 0
+      || pointsPerFile == 0) {
+      // Nothing to sample
+      batchSize = 0;
+    }
+    this.bytes = new byte[Math.min(RUN_SIZE,
+      Math.max(pointsPerFile, 1))
+      * (cenVecSize - 1) * Double.BYTES];
+    this.batches = new PointBlock[2][];
+    for (int i = 0; i < batches.length; i++) {
+      batches[i] = createBlocks(batchSize);
+    }
+    this.executor =
+      Executors.newSingleThreadExecutor();
+    this.current = 0;
+    PointBlock[] blocks = batches[current];
+    this.nextBatch =
+      executor.submit(() -> load(blocks));
+  }
+
+  private PointBlock[] createBlocks(
+    int batchSize) {
+    int numBlocks =
+      (batchSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    PointBlock[] blocks = new PointBlock[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      blocks[i] = new PointBlock(Math.min(
+        BLOCK_SIZE, batchSize - i * BLOCK_SIZE),
+        cenVecSize);
+    }
+    return blocks;
+  }
+
+  /**
+   * Wait for the batch read in the background and
+   * start to read the next one. The returned
+   * blocks are valid until the next call.
+   *
+   * @return the blocks of the batch
+   * @throws IOException
+   */
+  public PointBlock[] next() throws IOException {
+    PointBlock[] batch = null;
+    try {
+      batch = nextBatch.get();
+    } catch (InterruptedException
+      | ExecutionException e) {
+      throw new IOException(
+        "Fail to read the batch", e);
+    }
+    current = 1 - current;
+    PointBlock[] blocks = batches[current];
+    nextBatch = executor.submit(() -> load(blocks));
+    return batch;
+  }
+
+  private PointBlock[] load(PointBlock[] blocks)
+    throws IOException {
+    int maxRunSize =
+      Math.min(RUN_SIZE, pointsPerFile);
+    for (PointBlock block : blocks) {
+      int numPoints = block.getNumPoints();
+      for (int i = 0; i < numPoints;) {
+        int runSize =
+          Math.min(maxRunSize, numPoints - i);
+        int fileID = random.nextInt(ins.length);
+        int start = random
+          .nextInt(pointsPerFile - runSize + 1);
+        readRun(fileID, start, runSize,
+          block.getPoints(), i * cenVecSize);
+        i += runSize;
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Read consecutive points of a file, the files
+   * are written by DataOutputStream without a
+   * header
+   */
+  private void readRun(int fileID, int start,
+    int runSize, double[] points, int pos)
+    throws IOException {
+    if (ins[fileID] == null) {
+      ins[fileID] =
+        fs.open(new Path(fileNames[fileID]));
+    }
+    int vectorSize = cenVecSize - 1;
+    int len = runSize * vectorSize * Double.BYTES;
+    ins[fileID].seek(
+      (long) start * vectorSize * Double.BYTES);
+    ins[fileID].readFully(bytes, 0, len);
+    DoubleBuffer buffer =
+      ByteBuffer.wrap(bytes, 0, len).asDoubleBuffer();
+    for (int i = 0; i < runSize; i++) {
+      points[pos] = Double.MAX_VALUE;
+      buffer.get(points, pos + 1, vectorSize);
+      pos += cenVecSize;
+    }
+  }
+
+  /**
+   * Wait for the batch in reading and close the
+   * files
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      nextBatch.get();
+    } catch (InterruptedException
+      | ExecutionException e) {
+      LOG.error("Fail to read the batch", e);
+    }
+    executor.shutdown();
+    for (FSDataInputStream in : ins) {
+      if (in != null) {
+        in.close();
+      }
+    }
+  }
+}
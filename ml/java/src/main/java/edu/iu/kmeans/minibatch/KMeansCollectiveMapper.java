@@ -0,0 +1,323 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.minibatch;
+
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.schdynamic.WorkStealingScheduler;
+import edu.iu.kmeans.regroupallgather.CenKernel;
+import edu.iu.kmeans.regroupallgather.Constants;
+import edu.iu.kmeans.regroupallgather.KMUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.CollectiveMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Mini-batch KMeans. In each iteration, every
+ * worker samples a batch of points from its files
+ * and finds the nearest centroids of the batch.
+ * The sums of the points of each centroid are
+ * allreduced, one partition per centroid in the
+ * batches, and each centroid moves to the mean of
+ * its new points with the learning rate of the
+ * centroid, the inverse of the number of points
+ * assigned to it so far. The points are never
+ * loaded as a whole.
+ */
+public class KMeansCollectiveMapper extends
+  CollectiveMapper<String, String, Object, Object> {
+
+  private int pointsPerFile;
+  private int numCentroids;
+  private int vectorSize;
+  private int numCenPars;
+  private int cenVecSize;
+  private int numMappers;
+  private int numThreads;
+  private int numIterations;
+  private int batchSize;
+  private String cenDir;
+
+  /**
+   * Mapper configuration.
+   */
+  @Override
+  protected void setup(Context context)
+    throws IOException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    Configuration configuration =
+      context.getConfiguration();
+    pointsPerFile = configuration
+      .getInt(Constants.POINTS_PER_FILE, 20);
+    numCentroids = configuration
+      .getInt(Constants.NUM_CENTROIDS, 20);
+    vectorSize = configuration
+      .getInt(Constants.VECTOR_SIZE, 20);
+    numMappers = configuration
+      .getInt(Constants.NUM_MAPPERS, 10);
+    numCenPars = numMappers;
+    cenVecSize = vectorSize + 1;
+    numThreads = configuration
+      .getInt(Constants.NUM_THREADS, 10);
+    numIterations = configuration
+      .getInt(Constants.NUM_ITERATIONS, 10);
+    batchSize = configuration
+      .getInt(Constants.BATCH_SIZE, 10000);
+    cenDir = configuration.get(Constants.CEN_DIR);
+    LOG.info("Points Per File " + pointsPerFile);
+    LOG.info("Num Centroids " + numCentroids);
+    LOG.info("Vector Size " + vectorSize);
+    LOG.info("Num Mappers " + numMappers);
+    LOG.info("Num Threads " + numThreads);
+    LOG.info("Num Iterations " + numIterations);
+    LOG.info("Batch Size " + batchSize);
+    LOG.info("Cen Dir " + cenDir);
+    long endTime = System.currentTimeMillis();
+    LOG.info(
+      "config (ms) :" + (endTime - startTime));
+  }
+
+  protected void mapCollective(
+    KeyValReader reader, Context context)
+    throws IOException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    List<String> pointFiles =
+      new LinkedList<String>();
+    while (reader.nextKeyValue()) {
+      String key = reader.getCurrentKey();
+      String value = reader.getCurrentValue();
+      LOG.info(
+        "Key: " + key + ", Value: " + value);
+      pointFiles.add(value);
+    }
+    Configuration conf =
+      context.getConfiguration();
+    runKmeans(pointFiles, conf, context);
+    LOG.info("Total iterations in master view: "
+      + (System.currentTimeMillis() - startTime));
+  }
+
+  private void runKmeans(List<String> fileNames,
+    Configuration conf, Context context)
+    throws IOException {
+    // Load centroids
+    Table<DoubleArray> cenTable =
+      new Table<>(0, new DoubleArrPlus());
+    if (this.isMaster()) {
+      KMUtil.createCenTable(cenTable,
+        numCentroids, numCenPars, cenVecSize);
+      KMUtil.loadCentroids(cenTable, cenVecSize,
+        cenDir + File.separator
+          + Constants.CENTROID_FILE_NAME,
+        conf);
+    }
+    // Bcast centroids
+    bcastCentroids(cenTable, this.getMasterID());
+    // The first element of each centroid counts
+    // the points assigned to it so far
+    for (Partition<DoubleArray> partition : cenTable
+      .getPartitions()) {
+      DoubleArray array = partition.get();
+      for (int i = 0; i < array.size(); i +=
+        cenVecSize) {
+        array.get()[array.start() + i] = 0;
+      }
+    }
+    CenKernel cenKernel = new CenKernel(cenVecSize);
+    cenKernel.update(cenTable);
+    List<AssignTask> tasks = new LinkedList<>();
+    for (int i = 0; i < numThreads; i++) {
+      tasks.add(new AssignTask(cenKernel));
+    }
+    WorkStealingScheduler<PointBlock, Object, AssignTask> compute =
+      new WorkStealingScheduler<>(tasks);
+    compute.start();
+    BatchReader batchReader = new BatchReader(
+      fileNames, pointsPerFile, cenVecSize,
+      batchSize, conf,
+      System.nanoTime() + this.getSelfID());
+    try {
+      // --------------------------------------------------
+      // For iterations
+      for (int i = 0; i < numIterations; i++) {
+        LOG.info("Iteration: " + i);
+        // Wait for the batch read in the background
+        long t1 = System.currentTimeMillis();
+        PointBlock[] batch = batchReader.next();
+        // Find the nearest centroids
+        long t2 = System.currentTimeMillis();
+        if (!compute.parallelFor(0, batch.length, 1,
+          (task, start, end) -> {
+            for (int j = start; j < end; j++) {
+              task.run(batch[j]);
+            }
+          })) {
+          throw new IOException(
+            "Fail to assign the batch");
+        }
+        Table<DoubleArray> sumTable =
+          sumPoints(batch);
+        // Allreduce
+        long t3 = System.currentTimeMillis();
+        if (!allreduce("main", "allreduce-" + i,
+          sumTable)) {
+          sumTable.release();
+          throw new IOException("Fail to allreduce");
+        }
+        long t4 = System.currentTimeMillis();
+        updateCentroids(cenTable, sumTable,
+          cenKernel);
+        sumTable.release();
+        cenKernel.update(cenTable);
+        long t5 = System.currentTimeMillis();
+        LOG.info("Read: " + (t2 - t1)
+          + ", Compute: " + (t3 - t2)
+          + ", Aggregate: " + (t4 - t3)
+          + ", Update: " + (t5 - t4));
+        logMemUsage();
+        logGCTime();
+        context.progress();
+      }
+    } finally {
+      batchReader.close();
+      compute.stop();
+    }
+    // Write out centroids
+    if (this.isMaster()) {
+      LOG.info("Start to write out centroids.");
+      long startTime = System.currentTimeMillis();
+      KMUtil.storeCentroids(conf, cenDir,
+        cenTable, cenVecSize, "output");
+      long endTime = System.currentTimeMillis();
+      LOG.info("Store centroids time (ms): "
+        + (endTime - startTime));
+    }
+    cenTable.release();
+  }
+
+  /**
+   * Sum the points of each centroid in the batch,
+   * the partition ID is the centroid ID and the
+   * first element is the number of points
+   *
+   * @param batch
+   *          the assigned batch
+   * @return the table of the sums
+   */
+  private Table<DoubleArray> sumPoints(
+    PointBlock[] batch) {
+    Table<DoubleArray> sumTable =
+      new Table<>(1, new DoubleArrPlus());
+    for (PointBlock block : batch) {
+      double[] points = block.getPoints();
+      int[] cenIDs = block.getCenIDs();
+      for (int i = 0; i < block
+        .getNumPoints(); i++) {
+        Partition<DoubleArray> partition =
+          sumTable.getPartition(cenIDs[i]);
+        if (partition == null) {
+          DoubleArray array =
+            DoubleArray.create(cenVecSize, false);
+          Arrays.fill(array.get(), 0, cenVecSize,
+            0.0);
+          partition =
+            new Partition<>(cenIDs[i], array);
+          sumTable.addPartition(partition);
+        }
+        double[] sums = partition.get().get();
+        sums[0]++;
+        int offset = i * cenVecSize;
+        for (int k = 1; k < cenVecSize; k++) {
+          sums[k] += points[offset + k];
+        }
+      }
+    }
+    return sumTable;
+  }
+
+  /**
+   * Move each centroid in the sums towards the
+   * mean of its new points. With m new points and
+   * n points in total, the centroid c becomes c +
+   * (m / n) * (mean - c), which is c + (sum - m *
+   * c) / n. Every worker has the same sums and
+   * does the same update.
+   *
+   * @param cenTable
+   *          the centroids table
+   * @param sumTable
+   *          the allreduced sums
+   * @param cenKernel
+   *          the kernel mapping the centroid IDs
+   */
+  private void updateCentroids(
+    Table<DoubleArray> cenTable,
+    Table<DoubleArray> sumTable,
+    CenKernel cenKernel) {
+    for (Partition<DoubleArray> partition : sumTable
+      .getPartitions()) {
+      int cenID = partition.id();
+      double[] sums = partition.get().get();
+      DoubleArray array = cenTable
+        .getPartition(cenKernel.getParID(cenID))
+        .get();
+      double[] centroid = array.get();
+      int offset =
+        array.start() + cenKernel.getOffset(cenID);
+      centroid[offset] += sums[0];
+      double rate = 1.0 / centroid[offset];
+      for (int k = 1; k < cenVecSize; k++) {
+        centroid[offset + k] += rate * (sums[k]
+          - sums[0] * centroid[offset + k]);
+      }
+    }
+  }
+
+  /**
+   * Broadcast centroids data in partitions
+   *
+   * @param table
+   * @param bcastID
+   * @throws IOException
+   */
+  private void bcastCentroids(
+    Table<DoubleArray> table, int bcastID)
+    throws IOException {
+    long startTime = System.currentTimeMillis();
+    boolean isSuccess = false;
+    try {
+      isSuccess = this.broadcast("main",
+        "broadcast-centroids", table, bcastID,
+        false);
+    } catch (Exception e) {
+      LOG.error("Fail to bcast.", e);
+    }
+    long endTime = System.currentTimeMillis();
+    LOG.info("Bcast centroids (ms): "
+      + (endTime - startTime));
+    if (!isSuccess) {
+      throw new IOException("Fail to bcast");
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.minibatch;
+
+/**
+ * A block of sampled points in the layout of the
+ * KMeans arrays, with the squared distance to the
+ * nearest centroid and the ID of the nearest
+ * centroid of each point. The blocks are reused
+ * by the batches.
+ */
+public class PointBlock {
+
+  private final int numPoints;
+  private final double[] points;
+  private final double[] minDistances;
+  private final int[] cenIDs;
+
+  public PointBlock(int numPoints,
+    int cenVecSize) {
+    this.numPoints = numPoints;
+    this.points = new double[numPoints * cenVecSize];
+    this.minDistances = new double[numPoints];
+    this.cenIDs = new int[numPoints];
+  }
+
+  public int getNumPoints() {
+    return numPoints;
+  }
+
+  public double[] getPoints() {
+    return points;
+  }
+
+  public double[] getMinDistances() {
+    return minDistances;
+  }
+
+  public int[] getCenIDs() {
+    return cenIDs;
+  }
+}
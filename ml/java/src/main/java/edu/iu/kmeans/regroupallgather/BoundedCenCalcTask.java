@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.regroupallgather;
+
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CenCalcTask accelerated by the triangle
+ * inequality. Each point keeps its centroid, an
+ * upper bound of the distance to it and lower
+ * bounds of the distances to the others: one for
+ * all the others in Hamerly's algorithm, one for
+ * each centroid in Elkan's. The bounds follow the
+ * centroid drifts in CenGeometry, and a distance
+ * is only computed when the bounds can't rule the
+ * centroid out. The assignments are the same as
+ * the ones of CenCalcTask.
+ */
+public class BoundedCenCalcTask
+  extends CenCalcTask {
+
+  /**
+   * The bounds of the points in one array. An
+   * array is processed by one task at a time.
+   */
+  static class PointBounds {
+    private final int[] cenIDs;
+    private final double[] upper;
+    private final double[] lower;
+    private boolean isInitialized;
+
+    private PointBounds(int numPoints,
+      int numLowerPerPoint) {
+      cenIDs = new int[numPoints];
+      upper = new double[numPoints];
+      lower = new double[numPoints
+        * numLowerPerPoint];
+      isInitialized = false;
+    }
+  }
+
+  private final CenGeometry geometry;
+  private final Map<double[], PointBounds> boundsMap;
+  private final boolean isElkan;
+  private final int cenVecSize;
+
+  /**
+   * @param cenTable
+   *          the centroids table
+   * @param cenVecSize
+   *          the size of a centroid, the count
+   *          included
+   * @param geometry
+   *          the geometry shared by the tasks
+   * @param boundsMap
+   *          the bounds of each point array,
+   *          shared by the tasks
+   * @param isElkan
+   *          use Elkan's algorithm or Hamerly's
+   */
+  public BoundedCenCalcTask(
+    Table<DoubleArray> cenTable, int cenVecSize,
+    CenGeometry geometry,
+    Map<double[], PointBounds> boundsMap,
+    boolean isElkan) {
+    super(cenTable, cenVecSize);
+    this.geometry = geometry;
+    this.boundsMap = boundsMap;
+    this.isElkan = isElkan;
+    this.cenVecSize = cenVecSize;
+  }
+
+  /**
+   * Create the bounds of the point arrays. The map
+   * is not modified later, so the tasks can read
+   * it concurrently.
+   *
+   * @param pointArrays
+   *          the point arrays
+   * @param cenVecSize
+   *          the size of a centroid
+   * @param numCentroids
+   *          the number of centroids
+   * @param isElkan
+   *          use Elkan's algorithm or Hamerly's
+   * @return the bounds of each point array
+   */
+  public static Map<double[], PointBounds>
+    createBounds(List<double[]> pointArrays,
+      int cenVecSize, int numCentroids,
+      boolean isElkan) {
+    Map<double[], PointBounds> boundsMap =
+      new IdentityHashMap<>();
+    for (double[] points : pointArrays) {
+      boundsMap.put(points,
+        new PointBounds(points.length / cenVecSize,
+          isElkan ? numCentroids : 1));
+    }
+    return boundsMap;
+  }
+
+  @Override
+  public Object run(double[] points)
+    throws Exception {
+    PointBounds bounds = boundsMap.get(points);
+    if (bounds == null) {
+      return super.run(points);
+    }
+    boolean isBounded =
+      bounds.isInitialized && geometry.hasDrifts();
+    double[][] local = getLocal();
+    int numPoints = points.length / cenVecSize;
+    for (int i = 0; i < numPoints; i++) {
+      int pStart = i * cenVecSize;
+      int cenID;
+      if (isElkan) {
+        cenID = isBounded
+          ? assignElkan(points, pStart, bounds, i)
+          : scanElkan(points, pStart, bounds, i);
+      } else {
+        cenID = isBounded
+          ? assignHamerly(points, pStart, bounds, i)
+          : scanHamerly(points, pStart, bounds, i);
+      }
+      double[] cenLocal =
+        local[geometry.getParID(cenID)];
+      int offset = geometry.getOffset(cenID);
+      // Count + 1
+      cenLocal[offset++]++;
+      // Add the point
+      for (int j = 1; j < cenVecSize; j++) {
+        cenLocal[offset++] += points[pStart + j];
+      }
+    }
+    bounds.isInitialized = true;
+    return null;
+  }
+
+  /**
+   * The key of the squared distance from the
+   * point to the centroid
+   */
+  private double key(double[] points, int pStart,
+    int cenID) {
+    return CenGeometry.key(CenGeometry.distance(
+      points, pStart + 1,
+      geometry.getCentroids()[geometry
+        .getParID(cenID)],
+      geometry.getOffset(cenID) + 1, cenVecSize));
+  }
+
+  /**
+   * Compare with all the centroids and reset the
+   * bounds of Hamerly's algorithm
+   */
+  private int scanHamerly(double[] points,
+    int pStart, PointBounds bounds, int i) {
+    double minKey = Double.POSITIVE_INFINITY;
+    double secondKey = Double.POSITIVE_INFINITY;
+    int minCenID = 0;
+    int numCentroids = geometry.getNumCentroids();
+    for (int j = 0; j < numCentroids; j++) {
+      double key = key(points, pStart, j);
+      if (key < minKey) {
+        secondKey = minKey;
+        minKey = key;
+        minCenID = j;
+      } else if (key < secondKey) {
+        secondKey = key;
+      }
+    }
+    bounds.cenIDs[i] = minCenID;
+    bounds.upper[i] =
+      CenGeometry.up(Math.sqrt(minKey));
+    bounds.lower[i] =
+      CenGeometry.down(Math.sqrt(secondKey));
+    return minCenID;
+  }
+
+  private int assignHamerly(double[] points,
+    int pStart, PointBounds bounds, int i) {
+    int cenID = bounds.cenIDs[i];
+    double upper = CenGeometry.up(
+      bounds.upper[i] + geometry.getDrift(cenID));
+    double lower =
+      CenGeometry.down(bounds.lower[i]
+        - geometry.getMaxOtherDrift(cenID));
+    double bound = Math.max(lower,
+      geometry.getHalfMinDist(cenID));
+    if (!(upper < bound)) {
+      // Tighten the upper bound
+      upper = CenGeometry.up(
+        Math.sqrt(key(points, pStart, cenID)));
+      if (!(upper < bound)) {
+        return scanHamerly(points, pStart, bounds,
+          i);
+      }
+    }
+    bounds.upper[i] = upper;
+    bounds.lower[i] = lower;
+    return cenID;
+  }
+
+  /**
+   * Compare with all the centroids and reset the
+   * bounds of Elkan's algorithm
+   */
+  private int scanElkan(double[] points,
+    int pStart, PointBounds bounds, int i) {
+    double minKey = Double.POSITIVE_INFINITY;
+    int minCenID = 0;
+    int numCentroids = geometry.getNumCentroids();
+    int lowerStart = i * numCentroids;
+    for (int j = 0; j < numCentroids; j++) {
+      double key = key(points, pStart, j);
+      bounds.lower[lowerStart + j] =
+        CenGeometry.down(Math.sqrt(key));
+      if (key < minKey) {
+        minKey = key;
+        minCenID = j;
+      }
+    }
+    bounds.cenIDs[i] = minCenID;
+    bounds.upper[i] =
+      CenGeometry.up(Math.sqrt(minKey));
+    return minCenID;
+  }
+
+  private int assignElkan(double[] points,
+    int pStart, PointBounds bounds, int i) {
+    int numCentroids = geometry.getNumCentroids();
+    int lowerStart = i * numCentroids;
+    double[] lower = bounds.lower;
+    for (int j = 0; j < numCentroids; j++) {
+      lower[lowerStart + j] =
+        CenGeometry.down(lower[lowerStart + j]
+          - geometry.getDrift(j));
+    }
+    int cenID = bounds.cenIDs[i];
+    double upper = CenGeometry.up(
+      bounds.upper[i] + geometry.getDrift(cenID));
+    if (!(upper < geometry.getHalfMinDist(cenID))) {
+      boolean isTight = false;
+      double cenKey = Double.POSITIVE_INFINITY;
+      for (int j = 0; j < numCentroids; j++) {
+        if (j == cenID
+          || upper < lower[lowerStart + j]
+          || upper < geometry.getHalfDist(cenID,
+            j)) {
+          continue;
+        }
+        if (!isTight) {
+          cenKey = key(points, pStart, cenID);
+          upper =
+            CenGeometry.up(Math.sqrt(cenKey));
+          lower[lowerStart + cenID] =
+            CenGeometry.down(Math.sqrt(cenKey));
+          isTight = true;
+          if (upper < lower[lowerStart + j]
+            || upper < geometry
+              .getHalfDist(cenID, j)) {
+            continue;
+          }
+        }
+        double key = key(points, pStart, j);
+        lower[lowerStart + j] =
+          CenGeometry.down(Math.sqrt(key));
+        // Ties go to the lower ID as in a scan
+        if (key < cenKey
+          || (key == cenKey && j < cenID)) {
+          cenID = j;
+          cenKey = key;
+          upper = CenGeometry.up(Math.sqrt(key));
+        }
+      }
+    }
+    bounds.cenIDs[i] = cenID;
+    bounds.upper[i] = upper;
+    return cenID;
+  }
+}
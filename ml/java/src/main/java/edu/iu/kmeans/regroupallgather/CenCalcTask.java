@@ -23,6 +23,8 @@ import edu.iu.harp.schdynamic.Task;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Arrays;
+
 public class CenCalcTask
   implements Task<double[], Object> {
 
@@ -32,9 +34,18 @@ public class CenCalcTask
   private double[][] centroids;
   private double[][] local;
   private final int cenVecSize;
+  /** Blocked distances, null to use the loop */
+  private final CenKernel kernel;
+  private double[] minDistances;
+  private int[] cenIDs;
 
   public CenCalcTask(Table<DoubleArray> cenTable,
     int cenVecSize) {
+    this(cenTable, cenVecSize, null);
+  }
+
+  public CenCalcTask(Table<DoubleArray> cenTable,
+    int cenVecSize, CenKernel kernel) {
     centroids =
       new double[cenTable.getNumPartitions()][];
     local = new double[centroids.length][];
@@ -47,6 +58,9 @@ public class CenCalcTask
         new double[array.size()];
     }
     this.cenVecSize = cenVecSize;
+    this.kernel = kernel;
+    this.minDistances = null;
+    this.cenIDs = null;
   }
 
   public void
@@ -66,6 +80,9 @@ public class CenCalcTask
   @Override
   public Object run(double[] points)
     throws Exception {
+    if (kernel != null) {
+      return runBlocked(points);
+    }
     for (int i = 0; i < points.length;) {
       i++;
       double minDistance = Double.MAX_VALUE;
@@ -98,4 +115,30 @@ public class CenCalcTask
     }
     return null;
   }
+
+  private Object runBlocked(double[] points) {
+    int numPoints = points.length / cenVecSize;
+    if (cenIDs == null
+      || cenIDs.length < numPoints) {
+      minDistances = new double[numPoints];
+      cenIDs = new int[numPoints];
+    }
+    Arrays.fill(minDistances, 0, numPoints,
+      Double.MAX_VALUE);
+    Arrays.fill(cenIDs, 0, numPoints, 0);
+    kernel.assign(points, minDistances, cenIDs);
+    for (int i = 0; i < numPoints; i++) {
+      double[] cenLocal =
+        local[kernel.getParID(cenIDs[i])];
+      int offset = kernel.getOffset(cenIDs[i]);
+      int pStart = i * cenVecSize;
+      // Count + 1
+      cenLocal[offset++]++;
+      // Add the point
+      for (int j = 1; j < cenVecSize; j++) {
+        cenLocal[offset++] += points[pStart + j];
+      }
+    }
+    return null;
+  }
 }
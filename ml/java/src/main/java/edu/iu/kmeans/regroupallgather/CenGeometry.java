@@ -0,0 +1,298 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.regroupallgather;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+
+/**
+ * The centroids of the current iteration indexed
+ * as one list, the drift of each centroid since
+ * the last iteration and the distances between
+ * centroids. Each worker updates it locally after
+ * the allgather, the tasks only read it.
+ *
+ * All the bounds derived from it are loosened by
+ * a relative EPS, so that a centroid is only
+ * pruned when it is farther than the nearest one
+ * by more than the rounding error of the
+ * distance.
+ */
+public class CenGeometry {
+
+  /** The relative slack of the bounds */
+  static final double EPS = 1e-9;
+
+  private final int cenVecSize;
+  private final boolean withHalfDists;
+  private final int numCentroids;
+  private final double[][] centroids;
+  private final int[] parIDs;
+  private final int[] offsets;
+  /** The centroids of the last update, packed */
+  private final double[] lastCentroids;
+  private final double[] drifts;
+  private double maxDrift;
+  private int maxDriftID;
+  private double secondMaxDrift;
+  /** Half of the distance to the nearest other centroid */
+  private final double[] halfMinDists;
+  /** Half of the distances between centroids */
+  private final double[] halfDists;
+  private boolean hasDrifts;
+
+  /**
+   * @param cenTable
+   *          the centroids table
+   * @param cenVecSize
+   *          the size of a centroid, the count
+   *          included
+   * @param withHalfDists
+   *          keep the distances between all the
+   *          centroids, as Elkan does
+   */
+  public CenGeometry(Table<DoubleArray> cenTable,
+    int cenVecSize, boolean withHalfDists) {
+    this.cenVecSize = cenVecSize;
+    this.withHalfDists = withHalfDists;
+    int numPartitions = 0;
+    int count = 0;
+    for (Partition<DoubleArray> partition : cenTable
+      .getPartitions()) {
+      numPartitions =
+        Math.max(numPartitions, partition.id() + 1);
+      count += partition.get().size() / cenVecSize;
+    }
+    numCentroids = count;
+    centroids = new double[numPartitions][];
+    parIDs = new int[numCentroids];
+    offsets = new int[numCentroids];
+    lastCentroids =
+      new double[numCentroids * cenVecSize];
+    drifts = new double[numCentroids];
+    halfMinDists = new double[numCentroids];
+    halfDists = withHalfDists
+      ? new double[numCentroids * numCentroids]
+      : null;
+    setCentroids(cenTable);
+    int id = 0;
+    for (int i = 0; i < centroids.length; i++) {
+      if (centroids[i] != null) {
+        int size = cenTable.getPartition(i).get()
+          .size();
+        for (int j = 0; j < size; j +=
+          cenVecSize) {
+          parIDs[id] = i;
+          offsets[id] = j;
+          id++;
+        }
+      }
+    }
+    packCentroids();
+    hasDrifts = false;
+  }
+
+  /**
+   * Update with the centroids after the allgather,
+   * the drifts are the distances to the
+   * centroids of the last update.
+   *
+   * @param cenTable
+   *          the centroids table
+   */
+  public void update(Table<DoubleArray> cenTable) {
+    setCentroids(cenTable);
+    maxDrift = 0.0;
+    maxDriftID = -1;
+    secondMaxDrift = 0.0;
+    boolean isFinite = true;
+    for (int i = 0; i < numCentroids; i++) {
+      double drift = up(Math.sqrt(distance(
+        lastCentroids, i * cenVecSize + 1,
+        centroids[parIDs[i]], offsets[i] + 1,
+        cenVecSize)));
+      drifts[i] = drift;
+      if (drift > maxDrift) {
+        secondMaxDrift = maxDrift;
+        maxDrift = drift;
+        maxDriftID = i;
+      } else if (drift > secondMaxDrift) {
+        secondMaxDrift = drift;
+      }
+      isFinite &= drift < Double.POSITIVE_INFINITY;
+    }
+    packCentroids();
+    // Distances between centroids
+    for (int i = 0; i < numCentroids; i++) {
+      halfMinDists[i] = Double.POSITIVE_INFINITY;
+    }
+    for (int i = 0; i < numCentroids; i++) {
+      for (int j = i + 1; j < numCentroids; j++) {
+        double halfDist = down(0.5 * Math.sqrt(
+          distance(lastCentroids,
+            i * cenVecSize + 1, lastCentroids,
+            j * cenVecSize + 1, cenVecSize)));
+        if (!(halfDist >= 0.0)) {
+          // NaN or rounded below zero
+          halfDist = 0.0;
+        }
+        if (halfDist < halfMinDists[i]) {
+          halfMinDists[i] = halfDist;
+        }
+        if (halfDist < halfMinDists[j]) {
+          halfMinDists[j] = halfDist;
+        }
+        if (withHalfDists) {
+          halfDists[i * numCentroids + j] =
+            halfDist;
+          halfDists[j * numCentroids + i] =
+            halfDist;
+        }
+      }
+    }
+    hasDrifts = isFinite;
+  }
+
+  private void
+    setCentroids(Table<DoubleArray> cenTable) {
+    for (Partition<DoubleArray> partition : cenTable
+      .getPartitions()) {
+      centroids[partition.id()] =
+        partition.get().get();
+    }
+  }
+
+  private void packCentroids() {
+    for (int i = 0; i < numCentroids; i++) {
+      System.arraycopy(centroids[parIDs[i]],
+        offsets[i], lastCentroids, i * cenVecSize,
+        cenVecSize);
+    }
+  }
+
+  /**
+   * Check if the drifts since the last update are
+   * known. If not, the bounds can't be used.
+   *
+   * @return true if the drifts are known, false
+   *         otherwise
+   */
+  public boolean hasDrifts() {
+    return hasDrifts;
+  }
+
+  public int getNumCentroids() {
+    return numCentroids;
+  }
+
+  public double[][] getCentroids() {
+    return centroids;
+  }
+
+  public int getParID(int cenID) {
+    return parIDs[cenID];
+  }
+
+  public int getOffset(int cenID) {
+    return offsets[cenID];
+  }
+
+  public double getDrift(int cenID) {
+    return drifts[cenID];
+  }
+
+  /**
+   * Get the largest drift of the centroids other
+   * than the given one
+   *
+   * @param cenID
+   *          the centroid excluded
+   * @return the largest drift
+   */
+  public double getMaxOtherDrift(int cenID) {
+    return cenID == maxDriftID ? secondMaxDrift
+      : maxDrift;
+  }
+
+  public double getHalfMinDist(int cenID) {
+    return halfMinDists[cenID];
+  }
+
+  public double getHalfDist(int cenID1,
+    int cenID2) {
+    return halfDists[cenID1 * numCentroids
+      + cenID2];
+  }
+
+  /**
+   * The squared distance between a point and a
+   * centroid, in the same order of operations as
+   * CenCalcTask
+   *
+   * @param points
+   *          the array of the point
+   * @param pStart
+   *          the first coordinate of the point
+   * @param centroid
+   *          the array of the centroid
+   * @param cStart
+   *          the first coordinate of the centroid
+   * @param cenVecSize
+   *          the size of a centroid
+   * @return the squared distance
+   */
+  public static double distance(double[] points,
+    int pStart, double[] centroid, int cStart,
+    int cenVecSize) {
+    double distance = 0.0;
+    for (int l = 1; l < cenVecSize; l++) {
+      double diff =
+        (points[pStart++] - centroid[cStart++]);
+      distance += diff * diff;
+    }
+    return distance;
+  }
+
+  /**
+   * Map a squared distance to the key compared in
+   * the assignment. CenCalcTask never picks a
+   * distance which is NaN or not below
+   * Double.MAX_VALUE, so they are the same as
+   * infinity.
+   *
+   * @param distance
+   *          the squared distance
+   * @return the key
+   */
+  static double key(double distance) {
+    return distance < Double.MAX_VALUE ? distance
+      : Double.POSITIVE_INFINITY;
+  }
+
+  /** Loosen an upper bound */
+  static double up(double bound) {
+    return bound + Math.abs(bound) * EPS
+      + Double.MIN_NORMAL;
+  }
+
+  /** Loosen a lower bound */
+  static double down(double bound) {
+    return bound - Math.abs(bound) * EPS
+      - Double.MIN_NORMAL;
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.kmeans.regroupallgather;
+
+import edu.iu.harp.kernel.DistanceKernel;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+/**
+ * The centroids of a table in a DistanceKernel,
+ * with the partition and the offset of each
+ * centroid. The points and the centroids have the
+ * layout of the KMeans arrays: cenVecSize doubles
+ * each, the first one not being a coordinate.
+ * Shared by the tasks, updated by the mapper
+ * between the computations.
+ */
+public class CenKernel {
+
+  private final int cenVecSize;
+  private final DistanceKernel kernel;
+  private int[] parIDs;
+  private int[] offsets;
+
+  /**
+   * @param cenVecSize
+   *          the size of a centroid, one more
+   *          than the dimension
+   */
+  public CenKernel(int cenVecSize) {
+    this.cenVecSize = cenVecSize;
+    this.kernel = new DistanceKernel(cenVecSize - 1);
+    this.parIDs = new int[0];
+    this.offsets = new int[0];
+  }
+
+  /**
+   * Copy the centroids of the table, in the order
+   * of the partition IDs
+   *
+   * @param cenTable
+   *          the centroids table
+   */
+  public void update(Table<DoubleArray> cenTable) {
+    int[] ids =
+      cenTable.getPartitionIDs().toIntArray();
+    IntArrays.quickSort(ids);
+    int numCentroids = 0;
+    for (int id : ids) {
+      numCentroids += cenTable.getPartition(id)
+        .get().size() / cenVecSize;
+    }
+    if (numCentroids > parIDs.length) {
+      parIDs = new int[numCentroids];
+      offsets = new int[numCentroids];
+    }
+    kernel.setNumCentroids(numCentroids);
+    int cenID = 0;
+    for (int id : ids) {
+      DoubleArray array =
+        cenTable.getPartition(id).get();
+      for (int i = 0; i < array.size(); i +=
+        cenVecSize) {
+        kernel.setCentroid(cenID, array.get(),
+          array.start() + i + 1);
+        parIDs[cenID] = id;
+        offsets[cenID] = i;
+        cenID++;
+      }
+    }
+  }
+
+  /**
+   * Find the nearest centroid of each point, see
+   * DistanceKernel
+   *
+   * @param points
+   *          the point array
+   * @param minDistances
+   *          the squared distance of each point to
+   *          its current centroid, updated
+   * @param cenIDs
+   *          the current centroid of each point,
+   *          updated
+   */
+  public void assign(double[] points,
+    double[] minDistances, int[] cenIDs) {
+    kernel.assign(points, 1, cenVecSize,
+      points.length / cenVecSize, minDistances,
+      cenIDs);
+  }
+
+  /**
+   * Get the partition of the centroid
+   *
+   * @param cenID
+   *          the index of the centroid
+   * @return the partition ID
+   */
+  public int getParID(int cenID) {
+    return parIDs[cenID];
+  }
+
+  /**
+   * Get the start of the centroid in its
+   * partition
+   *
+   * @param cenID
+   *          the index of the centroid
+   * @return the offset in the partition
+   */
+  public int getOffset(int cenID) {
+    return offsets[cenID];
+  }
+}
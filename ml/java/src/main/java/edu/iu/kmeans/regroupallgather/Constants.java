@@ -35,4 +35,38 @@ public class Constants {
     "num_iterations";
   public static final String WORK_DIR =
     "work_dir";
+
+  /**
+   * Skip distances with the triangle inequality:
+   * none, hamerly, elkan or auto
+   */
+  public static final String ACCELERATION =
+    "acceleration";
+  public static final String ACCELERATION_NONE =
+    "none";
+  public static final String ACCELERATION_HAMERLY =
+    "hamerly";
+  public static final String ACCELERATION_ELKAN =
+    "elkan";
+  public static final String ACCELERATION_AUTO =
+    "auto";
+  /**
+   * Elkan's algorithm keeps a bound per point per
+   * centroid, auto picks it up to this number of
+   * centroids and Hamerly's beyond
+   */
+  public static final int ELKAN_MAX_CENTROIDS =
+    128;
+  /**
+   * Compute the distances in tiles with
+   * DistanceKernel, true or false
+   */
+  public static final String BLOCKED_DISTANCE =
+    "blocked_distance";
+  /**
+   * The number of points a worker samples in each
+   * iteration of the mini-batch KMeans
+   */
+  public static final String BATCH_SIZE =
+    "batch_size";
 }
\ No newline at end of file
@@ -24,13 +24,16 @@ import it.unimi.dsi.fastutil.ints.IntArrays;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.LinkedList;
 import java.util.List;
@@ -56,7 +59,7 @@ public class KMUtil {
    * @param fs
    * @throws IOException
    */
-  static void generateCentroids(int numCentroids,
+  public static void generateCentroids(int numCentroids,
     int vectorSize, Configuration configuration,
     Path cenDir, FileSystem fs)
     throws IOException {
@@ -210,6 +213,90 @@ public class KMUtil {
     return arrays;
   }
 
+  /**
+   * Split the centroids to partitions, the first
+   * partitions get one more centroid
+   *
+   * @param cenTable
+   * @param numCentroids
+   * @param numCenPartitions
+   * @param cenVecSize
+   */
+  public static void createCenTable(
+    Table<DoubleArray> cenTable, int numCentroids,
+    int numCenPartitions, int cenVecSize) {
+    int cenParSize =
+      numCentroids / numCenPartitions;
+    int cenRest = numCentroids % numCenPartitions;
+    for (int i = 0; i < numCenPartitions; i++) {
+      if (cenRest > 0) {
+        int size = (cenParSize + 1) * cenVecSize;
+        DoubleArray array =
+          DoubleArray.create(size, false);
+        cenTable.addPartition(
+          new Partition<>(i, array));
+        cenRest--;
+      } else if (cenParSize > 0) {
+        int size = cenParSize * cenVecSize;
+        DoubleArray array =
+          DoubleArray.create(size, false);
+        cenTable.addPartition(
+          new Partition<>(i, array));
+      } else {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Fill data from centroid file to cenTable
+   *
+   * @param cenTable
+   * @param cenVecSize
+   * @param cFileName
+   * @param configuration
+   * @throws IOException
+   */
+  public static void loadCentroids(
+    Table<DoubleArray> cenTable, int cenVecSize,
+    String cFileName, Configuration configuration)
+    throws IOException {
+    long startTime = System.currentTimeMillis();
+    Path cPath = new Path(cFileName);
+    FileSystem fs = FileSystem.get(configuration);
+    FSDataInputStream in = fs.open(cPath);
+    BufferedReader br = new BufferedReader(
+      new InputStreamReader(in));
+    String[] curLine = null;
+    int curPos = 0;
+    for (Partition<DoubleArray> partition : cenTable
+      .getPartitions()) {
+      DoubleArray array = partition.get();
+      double[] cData = array.get();
+      int start = array.start();
+      int size = array.size();
+      for (int i =
+        start; i < (start + size); i++) {
+        // Don't set the first element in each row
+        if (i % cenVecSize != 0) {
+          // cData[i] = in.readDouble();
+          if (curLine == null
+            || curPos == curLine.length) {
+            curLine = br.readLine().split(" ");
+            curPos = 0;
+          }
+          cData[i] =
+            Double.parseDouble(curLine[curPos]);
+          curPos++;
+        }
+      }
+    }
+    br.close();
+    long endTime = System.currentTimeMillis();
+    LOG.info("Load centroids (ms): "
+      + (endTime - startTime));
+  }
+
   public static void storeCentroids(
     Configuration configuration, String cenDir,
     Table<DoubleArray> cenTable, int cenVecSize,
@@ -23,17 +23,13 @@ import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.harp.schdynamic.DynamicScheduler;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.CollectiveMapper;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class KMeansCollectiveMapper extends
   CollectiveMapper<String, String, Object, Object> {
@@ -47,6 +43,8 @@ public class KMeansCollectiveMapper extends
   private int numThreads;
   private int numIterations;
   private String cenDir;
+  private String acceleration;
+  private boolean isBlocked;
 
   /**
    * Mapper configuration.
@@ -72,6 +70,11 @@ public class KMeansCollectiveMapper extends
     numIterations = configuration
       .getInt(Constants.NUM_ITERATIONS, 10);
     cenDir = configuration.get(Constants.CEN_DIR);
+    acceleration =
+      configuration.get(Constants.ACCELERATION,
+        Constants.ACCELERATION_NONE);
+    isBlocked = configuration
+      .getBoolean(Constants.BLOCKED_DISTANCE, false);
     LOG.info("Points Per File " + pointsPerFile);
     LOG.info("Num Centroids " + numCentroids);
     LOG.info("Vector Size " + vectorSize);
@@ -79,6 +82,8 @@ public class KMeansCollectiveMapper extends
     LOG.info("Num Threads " + numThreads);
     LOG.info("Num Iterations " + numIterations);
     LOG.info("Cen Dir " + cenDir);
+    LOG.info("Acceleration " + acceleration);
+    LOG.info("Blocked Distance " + isBlocked);
     long endTime = System.currentTimeMillis();
     LOG.info(
       "config (ms) :" + (endTime - startTime));
@@ -111,9 +116,9 @@ public class KMeansCollectiveMapper extends
     Table<DoubleArray> cenTable =
       new Table<>(0, new DoubleArrPlus());
     if (this.isMaster()) {
-      createCenTable(cenTable, numCentroids,
+      KMUtil.createCenTable(cenTable, numCentroids,
         numCenPars, cenVecSize);
-      loadCentroids(cenTable, cenVecSize,
+      KMUtil.loadCentroids(cenTable, cenVecSize,
         cenDir + File.separator
           + Constants.CENTROID_FILE_NAME,
         conf);
@@ -125,11 +130,41 @@ public class KMeansCollectiveMapper extends
       KMUtil.loadPoints(fileNames, pointsPerFile,
         cenVecSize, conf, numThreads);
     // Initialize tasks
+    boolean isElkan = acceleration
+      .equals(Constants.ACCELERATION_ELKAN)
+      || (acceleration
+        .equals(Constants.ACCELERATION_AUTO)
+        && numCentroids <= Constants.ELKAN_MAX_CENTROIDS);
+    CenGeometry geometry = null;
+    Map<double[], BoundedCenCalcTask.PointBounds> boundsMap =
+      null;
+    if (!acceleration
+      .equals(Constants.ACCELERATION_NONE)) {
+      geometry =
+        new CenGeometry(cenTable, cenVecSize, isElkan);
+      boundsMap = BoundedCenCalcTask.createBounds(
+        pointArrays, cenVecSize,
+        geometry.getNumCentroids(), isElkan);
+      LOG.info("Bounded by "
+        + (isElkan ? "Elkan" : "Hamerly"));
+    }
+    // The bounds compute single distances
+    CenKernel cenKernel = null;
+    if (isBlocked && geometry == null) {
+      cenKernel = new CenKernel(cenVecSize);
+      cenKernel.update(cenTable);
+    }
     List<CenCalcTask> cenCalcTasks =
       new LinkedList<>();
     for (int i = 0; i < numThreads; i++) {
-      cenCalcTasks.add(
-        new CenCalcTask(cenTable, cenVecSize));
+      if (geometry == null) {
+        cenCalcTasks.add(new CenCalcTask(cenTable,
+          cenVecSize, cenKernel));
+      } else {
+        cenCalcTasks.add(new BoundedCenCalcTask(
+          cenTable, cenVecSize, geometry,
+          boundsMap, isElkan));
+      }
     }
     DynamicScheduler<double[], Object, CenCalcTask> calcCompute =
       new DynamicScheduler<>(cenCalcTasks);
@@ -187,6 +222,13 @@ public class KMeansCollectiveMapper extends
         .getTasks()) {
         task.update(cenTable);
       }
+      if (geometry != null) {
+        // Drifts of the new centroids
+        geometry.update(cenTable);
+      }
+      if (cenKernel != null) {
+        cenKernel.update(cenTable);
+      }
       long t4 = System.currentTimeMillis();
       LOG.info("Compute: " + (t2 - t1)
         + ", Merge: " + (t3 - t2)
@@ -210,81 +252,6 @@ public class KMeansCollectiveMapper extends
     cenTable.release();
   }
 
-  private void createCenTable(
-    Table<DoubleArray> cenTable, int numCentroids,
-    int numCenPartitions, int cenVecSize) {
-    int cenParSize =
-      numCentroids / numCenPartitions;
-    int cenRest = numCentroids % numCenPartitions;
-    for (int i = 0; i < numCenPartitions; i++) {
-      if (cenRest > 0) {
-        int size = (cenParSize + 1) * cenVecSize;
-        DoubleArray array =
-          DoubleArray.create(size, false);
-        cenTable.addPartition(
-          new Partition<>(i, array));
-        cenRest--;
-      } else if (cenParSize > 0) {
-        int size = cenParSize * cenVecSize;
-        DoubleArray array =
-          DoubleArray.create(size, false);
-        cenTable.addPartition(
-          new Partition<>(i, array));
-      } else {
-        break;
-      }
-    }
-  }
-
-  /**
-   * Fill data from centroid file to cenDataMap
-   * 
-   * @param cenDataMap
-   * @param vectorSize
-   * @param cFileName
-   * @param configuration
-   * @throws IOException
-   */
-  private void loadCentroids(
-    Table<DoubleArray> cenTable, int cenVecSize,
-    String cFileName, Configuration configuration)
-    throws IOException {
-    long startTime = System.currentTimeMillis();
-    Path cPath = new Path(cFileName);
-    FileSystem fs = FileSystem.get(configuration);
-    FSDataInputStream in = fs.open(cPath);
-    BufferedReader br = new BufferedReader(
-      new InputStreamReader(in));
-    String[] curLine = null;
-    int curPos = 0;
-    for (Partition<DoubleArray> partition : cenTable
-      .getPartitions()) {
-      DoubleArray array = partition.get();
-      double[] cData = array.get();
-      int start = array.start();
-      int size = array.size();
-      for (int i =
-        start; i < (start + size); i++) {
-        // Don't set the first element in each row
-        if (i % cenVecSize != 0) {
-          // cData[i] = in.readDouble();
-          if (curLine == null
-            || curPos == curLine.length) {
-            curLine = br.readLine().split(" ");
-            curPos = 0;
-          }
-          cData[i] =
-            Double.parseDouble(curLine[curPos]);
-          curPos++;
-        }
-      }
-    }
-    br.close();
-    long endTime = System.currentTimeMillis();
-    LOG.info("Load centroids (ms): "
-      + (endTime - startTime));
-  }
-
   /**
    * Broadcast centroids data in partitions
    * 
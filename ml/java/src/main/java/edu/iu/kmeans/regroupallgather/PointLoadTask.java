@@ -25,6 +25,8 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 
 public class PointLoadTask
   implements Task<String, double[]> {
@@ -32,6 +34,11 @@ public class PointLoadTask
   protected static final Log LOG =
     LogFactory.getLog(PointLoadTask.class);
 
+  /**
+   * The bytes read at a time
+   */
+  public static final int CHUNK_SIZE = 1 << 16;
+
   private int pointsPerFile;
   private int cenVecSize;
   private Configuration conf;
@@ -82,11 +89,28 @@ public class PointLoadTask
     FileSystem fs =
       pointFilePath.getFileSystem(conf);
     FSDataInputStream in = fs.open(pointFilePath);
+    // Read whole points in chunks instead of one
+    // double at a time
+    int vectorSize = cenVecSize - 1;
+    int pointsPerChunk = Math.max(1,
+      CHUNK_SIZE / (vectorSize * Double.BYTES));
+    byte[] bytes = new byte[Math.min(
+      pointsPerChunk, pointsPerFile) * vectorSize
+      * Double.BYTES];
     try {
-      for (int i = 0; i < points.length;) {
-        points[i++] = Double.MAX_VALUE;
-        for (int j = 1; j < cenVecSize; j++) {
-          points[i++] = in.readDouble();
+      for (int i = 0; i < pointsPerFile;) {
+        int numPoints = Math.min(pointsPerChunk,
+          pointsPerFile - i);
+        int len =
+          numPoints * vectorSize * Double.BYTES;
+        in.readFully(bytes, 0, len);
+        DoubleBuffer buffer =
+          ByteBuffer.wrap(bytes, 0, len)
+            .asDoubleBuffer();
+        for (int j = 0; j < numPoints; j++, i++) {
+          int pos = i * cenVecSize;
+          points[pos] = Double.MAX_VALUE;
+          buffer.get(points, pos + 1, vectorSize);
         }
       }
     } finally {
@@ -20,6 +20,7 @@ import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.harp.schdynamic.Task;
+import edu.iu.kmeans.regroupallgather.CenKernel;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -41,12 +42,24 @@ public class ExpTask
   private Table<DoubleArray> cenTable;
   private List<Partition<DoubleArray>> centroids;
   private final int cenVecSize;
+  /** Blocked distances, null to use the loop */
+  private final CenKernel kernel;
+  private double[] minDistances;
+  private int[] kernelCenIDs;
 
   public ExpTask(Table<DoubleArray> cenTable,
     int cenVecSize) {
+    this(cenTable, cenVecSize, null);
+  }
+
+  public ExpTask(Table<DoubleArray> cenTable,
+    int cenVecSize, CenKernel kernel) {
     this.cenTable = cenTable;
     this.centroids = new ArrayList<>();
     this.cenVecSize = cenVecSize;
+    this.kernel = kernel;
+    this.minDistances = null;
+    this.kernelCenIDs = null;
   }
 
   public void update() {
@@ -57,6 +70,9 @@ public class ExpTask
   @Override
   public Object run(Points points)
     throws Exception {
+    if (kernel != null) {
+      return runBlocked(points);
+    }
     double[] pointArray = points.pointArray;
     int[][] cenIDs = points.cenIDs;
     int pointIndex = 0;
@@ -89,4 +105,33 @@ public class ExpTask
     }
     return null;
   }
+
+  private Object runBlocked(Points points) {
+    double[] pointArray = points.pointArray;
+    int[][] cenIDs = points.cenIDs;
+    int numPoints = cenIDs.length;
+    if (kernelCenIDs == null
+      || kernelCenIDs.length < numPoints) {
+      minDistances = new double[numPoints];
+      kernelCenIDs = new int[numPoints];
+    }
+    // The minimum distance of the earlier rounds
+    // is kept in the first element of each point
+    for (int i = 0; i < numPoints; i++) {
+      minDistances[i] = pointArray[i * cenVecSize];
+      kernelCenIDs[i] = -1;
+    }
+    kernel.assign(pointArray, minDistances,
+      kernelCenIDs);
+    for (int i = 0; i < numPoints; i++) {
+      int cenID = kernelCenIDs[i];
+      if (cenID != -1) {
+        cenIDs[i][0] = kernel.getParID(cenID);
+        cenIDs[i][1] = kernel.getOffset(cenID);
+        pointArray[i * cenVecSize] =
+          minDistances[i];
+      }
+    }
+    return null;
+  }
 }
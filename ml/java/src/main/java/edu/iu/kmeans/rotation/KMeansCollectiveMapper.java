@@ -21,6 +21,7 @@ import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.harp.schdynamic.DynamicScheduler;
+import edu.iu.kmeans.regroupallgather.CenKernel;
 import edu.iu.kmeans.regroupallgather.Constants;
 import edu.iu.kmeans.regroupallgather.KMUtil;
 import org.apache.hadoop.conf.Configuration;
@@ -46,6 +47,7 @@ public class KMeansCollectiveMapper extends
   private int numThreads;
   private int numIterations;
   private String cenDir;
+  private boolean isBlocked;
 
   /**
    * Mapper configuration.
@@ -71,6 +73,8 @@ public class KMeansCollectiveMapper extends
     numIterations = configuration
       .getInt(Constants.NUM_ITERATIONS, 10);
     cenDir = configuration.get(Constants.CEN_DIR);
+    isBlocked = configuration
+      .getBoolean(Constants.BLOCKED_DISTANCE, false);
     LOG.info("Points Per File " + pointsPerFile);
     LOG.info("Num Centroids " + numCentroids);
     LOG.info("Vector Size " + vectorSize);
@@ -78,6 +82,7 @@ public class KMeansCollectiveMapper extends
     LOG.info("Num Threads " + numThreads);
     LOG.info("Num Iterations " + numIterations);
     LOG.info("Cen Dir " + cenDir);
+    LOG.info("Blocked Distance " + isBlocked);
     long endTime = System.currentTimeMillis();
     LOG.info(
       "config (ms) :" + (endTime - startTime));
@@ -128,10 +133,12 @@ public class KMeansCollectiveMapper extends
     generateCenTable(cenTable, numCentroids,
       numCenPars, cenVecSize);
     // Initialize tasks
+    CenKernel cenKernel =
+      isBlocked ? new CenKernel(cenVecSize) : null;
     List<ExpTask> expTasks = new LinkedList<>();
     for (int i = 0; i < numThreads; i++) {
-      expTasks
-        .add(new ExpTask(cenTable, cenVecSize));
+      expTasks.add(
+        new ExpTask(cenTable, cenVecSize, cenKernel));
     }
     DynamicScheduler<Points, Object, ExpTask> expCompute =
       new DynamicScheduler<>(expTasks);
@@ -157,6 +164,9 @@ public class KMeansCollectiveMapper extends
           .getTasks()) {
           task.update();
         }
+        if (cenKernel != null) {
+          cenKernel.update(cenTable);
+        }
         expCompute.submitAll(pointsList);
         while (expCompute.hasOutput()) {
           expCompute.waitForOutput();
@@ -16,6 +16,7 @@
 
 package edu.iu.lda;
 
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.schdynamic.DynamicScheduler;
 import edu.iu.harp.schdynamic.Task;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -26,8 +27,6 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -108,6 +107,8 @@ class VLoadTask implements Task<String, Object> {
   private final Int2ObjectOpenHashMap<String> docIDMap;
   private int numDocs;
   private final AtomicInteger idGenerator;
+  /** Reused by the files of the task */
+  private TextReader reader;
 
   public VLoadTask(Configuration conf,
     AtomicInteger idGenerator) {
@@ -125,24 +126,15 @@ class VLoadTask implements Task<String, Object> {
     // Open the file
     boolean isFailed = false;
     FSDataInputStream in = null;
-    BufferedReader reader = null;
     do {
       isFailed = false;
       try {
         FileSystem fs =
           inputFilePath.getFileSystem(conf);
         in = fs.open(inputFilePath);
-        reader = new BufferedReader(
-          new InputStreamReader(in), 1048576);
       } catch (Exception e) {
         LOG.error("Fail to open " + inputFile, e);
         isFailed = true;
-        if (reader != null) {
-          try {
-            reader.close();
-          } catch (Exception e1) {
-          }
-        }
         if (in != null) {
           try {
             in.close();
@@ -152,15 +144,20 @@ class VLoadTask implements Task<String, Object> {
       }
     } while (isFailed);
     // Read the file
+    if (reader == null) {
+      reader = new TextReader(in);
+    } else {
+      reader.reset(in);
+    }
     try {
-      String line = null;
-      while ((line = reader.readLine()) != null) {
-        String[] tokens =
-          line.split("\\p{Blank}");
+      // An empty line is still a document, as
+      // the doc IDs follow the line numbers
+      while (reader.nextAnyLine()) {
         int doc = idGenerator.incrementAndGet();
-        docIDMap.put(doc, tokens[0]);
-        for (int i = 1; i < tokens.length; i++) {
-          int word = Integer.parseInt(tokens[i]);
+        docIDMap.put(doc,
+          reader.hasNext() ? reader.readString() : "");
+        while (reader.hasNext()) {
+          int word = reader.readInt();
           LDAUtil.addToData(vDocMap, doc, word,
             1);
         }
@@ -169,7 +166,7 @@ class VLoadTask implements Task<String, Object> {
     } catch (Exception e) {
       LOG.error("Fail to read " + inputFile, e);
     } finally {
-      reader.close();
+      in.close();
     }
     return null;
   }
@@ -16,6 +16,7 @@
 
 package edu.iu.sgd;
 
+import edu.iu.harp.io.TextReader;
 import edu.iu.harp.schdynamic.DynamicScheduler;
 import edu.iu.harp.schdynamic.Task;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
@@ -28,8 +29,6 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -43,6 +42,8 @@ class VLoadTask implements Task<String, Object> {
   private final Int2ObjectOpenHashMap<VRowCol> vHMap;
   private final Int2ObjectOpenHashMap<VRowCol> vWMap;
   private int numPoints;
+  /** Reused by the files of the task */
+  private TextReader reader;
 
   public VLoadTask(Configuration conf,
     boolean useVHMap, boolean useVWMap) {
@@ -61,24 +62,15 @@ class VLoadTask implements Task<String, Object> {
     // Open the file
     boolean isFailed = false;
     FSDataInputStream in = null;
-    BufferedReader reader = null;
     do {
       isFailed = false;
       try {
         FileSystem fs =
           inputFilePath.getFileSystem(conf);
         in = fs.open(inputFilePath);
-        reader = new BufferedReader(
-          new InputStreamReader(in), 1048576);
       } catch (Exception e) {
         LOG.error("Fail to open " + inputFile, e);
         isFailed = true;
-        if (reader != null) {
-          try {
-            reader.close();
-          } catch (Exception e1) {
-          }
-        }
         if (in != null) {
           try {
             in.close();
@@ -88,20 +80,16 @@ class VLoadTask implements Task<String, Object> {
       }
     } while (isFailed);
     // Read the file
+    if (reader == null) {
+      reader = new TextReader(in);
+    } else {
+      reader.reset(in);
+    }
     try {
-      String line = null;
-      while ((line = reader.readLine()) != null) {
-        line =
-          line.replaceAll("\\p{Blank}+", " ");
-        if (line.charAt(0) == ' ') {
-          line = line.substring(1);
-        }
-        String[] tokens =
-          line.split("\\p{Blank}+");
-        int rowID = Integer.parseInt(tokens[0]);
-        int colID = Integer.parseInt(tokens[1]);
-        double vVal =
-          Double.parseDouble(tokens[2]);
+      while (reader.nextLine()) {
+        int rowID = reader.readInt();
+        int colID = reader.readInt();
+        double vVal = reader.readDouble();
         if (useVHMap) {
           VStore.add(vHMap, colID, rowID, vVal);
         }
@@ -113,7 +101,7 @@ class VLoadTask implements Task<String, Object> {
     } catch (Exception e) {
       LOG.error("Fail to read " + inputFile, e);
     } finally {
-      reader.close();
+      in.close();
     }
     return null;
   }
@@ -0,0 +1,176 @@
+package edu.iu.kmeans.regroupallgather;
+
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BoundedCenCalcTaskTest {
+  private static final int DIM = 8;
+  private static final int CEN_VEC_SIZE = DIM + 1;
+  private static final int NUM_ARRAYS = 4;
+  private static final int POINTS_PER_ARRAY = 500;
+  private static final int NUM_ITERATIONS = 10;
+  private static final int FEW_CENTROIDS = 16;
+  private static final int MANY_CENTROIDS =
+      Constants.ELKAN_MAX_CENTROIDS + 32;
+
+  @Test
+  public void testHamerlyFewCentroids() throws Exception {
+    check(FEW_CENTROIDS, false);
+  }
+
+  @Test
+  public void testHamerlyManyCentroids() throws Exception {
+    check(MANY_CENTROIDS, false);
+  }
+
+  @Test
+  public void testElkanFewCentroids() throws Exception {
+    check(FEW_CENTROIDS, true);
+  }
+
+  @Test
+  public void testElkanManyCentroids() throws Exception {
+    check(MANY_CENTROIDS, true);
+  }
+
+  private void check(int numCentroids, boolean isElkan)
+      throws Exception {
+    Random random = new Random(numCentroids);
+    List<double[]> pointArrays = createPoints(random);
+    Table<DoubleArray> cenTable =
+        createCentroids(random, pointArrays, numCentroids);
+    Table<DoubleArray> boundedTable =
+        createCentroids(random, pointArrays, numCentroids);
+    for (Partition<DoubleArray> partition : cenTable
+        .getPartitions()) {
+      System.arraycopy(partition.get().get(), 0,
+          boundedTable.getPartition(partition.id()).get().get(),
+          0, partition.get().size());
+    }
+    CenCalcTask task = new CenCalcTask(cenTable, CEN_VEC_SIZE);
+    CenGeometry geometry =
+        new CenGeometry(boundedTable, CEN_VEC_SIZE, isElkan);
+    BoundedCenCalcTask boundedTask = new BoundedCenCalcTask(
+        boundedTable, CEN_VEC_SIZE, geometry,
+        BoundedCenCalcTask.createBounds(pointArrays, CEN_VEC_SIZE,
+            geometry.getNumCentroids(), isElkan),
+        isElkan);
+    for (int i = 0; i < NUM_ITERATIONS; i++) {
+      for (double[] points : pointArrays) {
+        task.run(points);
+        boundedTask.run(points);
+      }
+      // The counts and the sums follow the
+      // assignments
+      for (Partition<DoubleArray> partition : cenTable
+          .getPartitions()) {
+        assertBitsEqual("Iteration " + i + " local sums",
+            task.getLocal()[partition.id()],
+            boundedTask.getLocal()[partition.id()]);
+      }
+      updateCentroids(cenTable, task);
+      updateCentroids(boundedTable, boundedTask);
+      for (Partition<DoubleArray> partition : cenTable
+          .getPartitions()) {
+        assertBitsEqual("Iteration " + i + " centroids",
+            partition.get().get(),
+            boundedTable.getPartition(partition.id()).get().get());
+      }
+      task.update(cenTable);
+      boundedTask.update(boundedTable);
+      geometry.update(boundedTable);
+    }
+  }
+
+  /**
+   * Points around a few random centers, so the
+   * centroids settle and the bounds prune
+   */
+  private static List<double[]> createPoints(Random random) {
+    double[][] centers = new double[10][DIM];
+    for (double[] center : centers) {
+      for (int j = 0; j < DIM; j++) {
+        center[j] = random.nextDouble() * 100.0;
+      }
+    }
+    List<double[]> pointArrays = new ArrayList<>();
+    for (int i = 0; i < NUM_ARRAYS; i++) {
+      double[] points = new double[POINTS_PER_ARRAY * CEN_VEC_SIZE];
+      for (int j = 0; j < POINTS_PER_ARRAY; j++) {
+        double[] center = centers[random.nextInt(centers.length)];
+        for (int k = 0; k < DIM; k++) {
+          points[j * CEN_VEC_SIZE + 1 + k] =
+              center[k] + random.nextGaussian() * 5.0;
+        }
+      }
+      pointArrays.add(points);
+    }
+    return pointArrays;
+  }
+
+  /**
+   * Centroids at random points, in a few
+   * partitions
+   */
+  private static Table<DoubleArray> createCentroids(Random random,
+      List<double[]> pointArrays, int numCentroids) {
+    Table<DoubleArray> cenTable = new Table<>(0, new DoubleArrPlus());
+    KMUtil.createCenTable(cenTable, numCentroids, 3, CEN_VEC_SIZE);
+    for (Partition<DoubleArray> partition : cenTable
+        .getPartitions()) {
+      double[] centroids = partition.get().get();
+      for (int j = 0; j < partition.get().size(); j +=
+          CEN_VEC_SIZE) {
+        double[] points =
+            pointArrays.get(random.nextInt(NUM_ARRAYS));
+        int pStart =
+            random.nextInt(POINTS_PER_ARRAY) * CEN_VEC_SIZE;
+        centroids[j] = 0.0;
+        System.arraycopy(points, pStart + 1, centroids, j + 1,
+            DIM);
+      }
+    }
+    return cenTable;
+  }
+
+  /**
+   * Merge the local sums and average them as the
+   * mapper does
+   */
+  private static void updateCentroids(Table<DoubleArray> cenTable,
+      CenCalcTask task) throws Exception {
+    CenMergeTask mergeTask =
+        new CenMergeTask(Collections.singletonList(task));
+    for (Partition<DoubleArray> partition : cenTable
+        .getPartitions()) {
+      mergeTask.run(partition);
+      double[] doubles = partition.get().get();
+      for (int j = 0; j < partition.get().size(); j +=
+          CEN_VEC_SIZE) {
+        for (int k = 1; k < CEN_VEC_SIZE; k++) {
+          if (doubles[j] != 0) {
+            doubles[j + k] /= doubles[j];
+          }
+        }
+      }
+    }
+  }
+
+  private static void assertBitsEqual(String message,
+      double[] expected, double[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertEquals(message + " at " + i,
+          Double.doubleToLongBits(expected[i]),
+          Double.doubleToLongBits(actual[i]));
+    }
+  }
+}